@@ -53,6 +53,23 @@ public class BrooklynServerConfig {
             + "if null or not set, the legacy beahviour of creating backups where possible (e.g. file system) is currently used, "
             + "but this may be changed in future versions");
 
+    public static final ConfigKey<Integer> PERSISTENCE_LOAD_THREADS =
+        ConfigKeys.newIntegerConfigKey("brooklyn.persistence.load.threads",
+            "Maximum number of threads used to read and deserialize persisted state when rebinding", 8);
+
+    public static final ConfigKey<String> PERSISTENCE_FORMAT = newStringConfigKey(
+        "brooklyn.persistence.format",
+        "Format for writing persisted state: 'xml' (the default), or 'compressed_xml'; "
+        + "compressed files are less than half the size, but take longer to write, cannot be read or edited by hand, "
+        + "and cannot be read by versions of brooklyn which predate the option; "
+        + "files in either format are read, so this can be changed for an existing persistence directory", 
+        "xml");
+
+    public static final ConfigKey<Boolean> ENTITY_ATTRIBUTE_SLOTS =
+        ConfigKeys.newBooleanConfigKey("brooklyn.entity.attributes.slots",
+            "Whether entities keep their attribute values in slots indexed per entity type (smaller, and faster to get and set), "
+            + "rather than in the management context's storage; only for use where that storage is local to this node", false);
+
     public static String getMgmtBaseDir(ManagementContext mgmt) {
         return getMgmtBaseDir(mgmt.getConfig());
     }
@@ -11,6 +11,7 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.config.ConfigKey;
 import brooklyn.config.ConfigKey.HasConfigKey;
 import brooklyn.enricher.basic.AbstractEnricher;
@@ -30,7 +31,9 @@ import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
 import brooklyn.event.basic.AttributeMap;
 import brooklyn.event.basic.AttributeSensorAndConfigKey;
+import brooklyn.event.basic.BasicAttributeSensor;
 import brooklyn.event.basic.BasicNotificationSensor;
+import brooklyn.event.basic.SensorPublishPolicy;
 import brooklyn.event.feed.ConfigToAttributes;
 import brooklyn.internal.storage.BrooklynStorage;
 import brooklyn.internal.storage.Reference;
@@ -60,6 +63,7 @@ import brooklyn.util.collections.SetFromLiveMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.flags.FlagUtils;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.guava.Maybe;
 import brooklyn.util.task.DeferredSupplier;
 import brooklyn.util.text.Identifiers;
@@ -185,6 +189,13 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
     // TODO Assigning temp value because not everything uses EntitySpec; see setManagementContext()
     private AttributeMap attributesInternal = new AttributeMap(this, Maps.<Collection<String>, Object>newLinkedHashMap());
 
+    /**
+     * The resolved {@link BrooklynConfigKeys#SENSOR_PUBLISH_POLICIES}, keyed by sensor name (plus
+     * {@link BrooklynConfigKeys#DEFAULT_SENSOR_PUBLISH_POLICY} keyed by null); null until next needed,
+     * being cleared whenever config is changed.
+     */
+    private transient volatile Map<String, SensorPublishPolicy> sensorPublishPolicies;
+
     /**
      * For temporary data, e.g. timestamps etc for calculating real attribute values, such as when
      * calculating averages over time etc.
@@ -444,7 +455,12 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
         }
         refreshInheritedConfig();
         
-        attributesInternal = new AttributeMap(this, managementContext.getStorage().<Collection<String>, Object>getMap(id+"-attributes"));
+        if (Boolean.TRUE.equals(managementContext.getConfig().getConfig(BrooklynServerConfig.ENTITY_ATTRIBUTE_SLOTS))) {
+            attributesInternal = new AttributeMap(this);
+        } else {
+            attributesInternal = new AttributeMap(this, managementContext.getStorage().<Collection<String>, Object>getMap(id+"-attributes"));
+        }
+        attributesInternal.setSuppressedEventTotals(oldAttribs.getSuppressedEventTotals());
         if (oldAttribs.asRawMap().size() > 0) {
             for (Map.Entry<Collection<String>,Object> entry : oldAttribs.asRawMap().entrySet()) {
                 attributesInternal.update(entry.getKey(), entry.getValue());
@@ -793,16 +809,57 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
     
     @Override
     public <T> T setAttribute(AttributeSensor<T> attribute, T val) {
-        T result = attributesInternal.update(attribute, val);
+        SensorPublishPolicy policy = getSensorPublishPolicy(attribute);
+        T result = attributesInternal.update(attribute, val, policy);
         if (result == null) {
             // could be this is a new sensor
             entityType.addSensorIfAbsent(attribute);
+        } else if (policy.getMode() != SensorPublishPolicy.Mode.ALWAYS && result.equals(val)) {
+            // unchanged, so nothing to persist
+            return result;
         }
         
         getManagementSupport().getEntityChangeListener().onAttributeChanged(attribute);
         return result;
     }
 
+    /**
+     * The policy for publishing events when the given attribute is set: from {@link BrooklynConfigKeys#SENSOR_PUBLISH_POLICIES}
+     * if set for this sensor, otherwise as declared on the sensor, otherwise {@link BrooklynConfigKeys#DEFAULT_SENSOR_PUBLISH_POLICY}.
+     * Config is only consulted once the entity is managed (config cannot be resolved before then).
+     */
+    public SensorPublishPolicy getSensorPublishPolicy(AttributeSensor<?> attribute) {
+        Map<String, SensorPublishPolicy> policies = sensorPublishPolicies;
+        if (policies == null && !getManagementSupport().isManagementContextReal()) {
+            SensorPublishPolicy result = (attribute instanceof BasicAttributeSensor) ? ((BasicAttributeSensor<?>) attribute).getPublishPolicy() : null;
+            return (result != null) ? result : SensorPublishPolicy.ALWAYS;
+        }
+        if (policies == null) {
+            policies = Maps.newHashMap();
+            Map<String, ?> configured = getConfig(BrooklynConfigKeys.SENSOR_PUBLISH_POLICIES);
+            if (configured != null) {
+                for (Map.Entry<String, ?> entry : configured.entrySet()) {
+                    if (entry.getValue() != null) {
+                        policies.put(entry.getKey(), TypeCoercions.coerce(entry.getValue(), SensorPublishPolicy.class));
+                    }
+                }
+            }
+            SensorPublishPolicy defaultPolicy = getConfig(BrooklynConfigKeys.DEFAULT_SENSOR_PUBLISH_POLICY);
+            policies.put(null, (defaultPolicy != null) ? defaultPolicy : SensorPublishPolicy.ALWAYS);
+            sensorPublishPolicies = policies;
+        }
+        SensorPublishPolicy result = policies.get(attribute.getName());
+        if (result == null && attribute instanceof BasicAttributeSensor) {
+            result = ((BasicAttributeSensor<?>) attribute).getPublishPolicy();
+        }
+        return (result != null) ? result : policies.get(null);
+    }
+
+    /** the number of events not published by {@link #setAttribute(AttributeSensor, Object)}, because of the sensors' {@link SensorPublishPolicy} */
+    public long getNumSuppressedAttributeEvents() {
+        return attributesInternal.getNumSuppressedEvents();
+    }
+
     @Override
     public <T> T setAttributeWithoutPublishing(AttributeSensor<T> attribute, T val) {
         T result = attributesInternal.updateWithoutPublishing(attribute, val);
@@ -876,6 +933,7 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
                     new Object[] { this, key, val });
         }
         T result = (T) configsInternal.setConfig(key, val);
+        sensorPublishPolicies = null;
         
         getManagementSupport().getEntityChangeListener().onConfigChanged(key);
         return result;
@@ -911,7 +969,9 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
     }
 
     public <T> T setConfigEvenIfOwned(ConfigKey<T> key, T val) {
-        return (T) configsInternal.setConfig(key, val);
+        T result = (T) configsInternal.setConfig(key, val);
+        sensorPublishPolicies = null;
+        return result;
     }
 
     public <T> T setConfigEvenIfOwned(HasConfigKey<T> key, T val) {
@@ -933,6 +993,7 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
         } else {
             configsInternal.clearInheritedConfig();
         }
+        sensorPublishPolicies = null;
 
         refreshInheritedConfigOfChildren();
     }
@@ -1237,6 +1298,16 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
         }
     }
     
+    /** For use by management plane, when management is starting: counts the attribute events not published in its totals */
+    public void setSuppressedAttributeEventTotals(AttributeMap.SuppressedEvents totals) {
+        attributesInternal.setSuppressedEventTotals(totals);
+    }
+    
+    /** For use by management plane, when management is stopping: no more rate-limited attribute values are published */
+    public void cancelPendingAttributePublications() {
+        attributesInternal.cancelPendingPublications();
+    }
+    
     /** For use by management plane, to invalidate all fields (e.g. when an entity is changing to being proxied) */
     public void invalidateReferences() {
         // TODO Just rely on GC of this entity instance, to get rid of the children map etc.
@@ -4,6 +4,8 @@ import static brooklyn.entity.basic.ConfigKeys.*;
 import brooklyn.config.BrooklynServerConfig;
 import brooklyn.config.ConfigKey;
 import brooklyn.event.basic.BasicAttributeSensorAndConfigKey;
+import brooklyn.event.basic.MapConfigKey;
+import brooklyn.event.basic.SensorPublishPolicy;
 import brooklyn.event.basic.TemplatedStringAttributeSensorAndConfigKey;
 import brooklyn.util.internal.ssh.ShellTool;
 import brooklyn.util.internal.ssh.SshTool;
@@ -90,6 +92,14 @@ public class BrooklynConfigKeys {
 
     public static final ConfigKey<Duration> START_TIMEOUT = newConfigKey(
             "start.timeout", "Time to wait for process and for SERVICE_UP before failing (in seconds, default 2m)", Duration.seconds(120));
+
+    public static final ConfigKey<SensorPublishPolicy> DEFAULT_SENSOR_PUBLISH_POLICY = newConfigKey(SensorPublishPolicy.class,
+            "sensorPublishPolicy.default", "Whether setting an attribute publishes an event, for sensors without a policy of their own: "
+            + "always, onChange, or atMostEvery <duration> (see SensorPublishPolicy)", SensorPublishPolicy.ALWAYS);
+
+    public static final MapConfigKey<SensorPublishPolicy> SENSOR_PUBLISH_POLICIES = new MapConfigKey<SensorPublishPolicy>(SensorPublishPolicy.class,
+            "sensorPublishPolicy", "Whether setting an attribute publishes an event, keyed by sensor name (overriding any policy declared on the sensor); "
+            + "e.g. sensorPublishPolicy.service.isUp=onChange");
         
     /* selected properties from SshTool for external public access (e.g. putting on entities) */
     
@@ -7,6 +7,8 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
@@ -50,6 +52,26 @@ public class EntityConfigMap implements ConfigMap {
     private final ConfigBag localConfigBag;
     private final ConfigBag inheritedConfigBag;
 
+    /**
+     * Values already resolved by {@link #getConfig(ConfigKey, Object)}, keyed by the requested key.
+     * Replaced (rather than cleared) whenever the own or inherited config changes, so a value resolved
+     * concurrently with a change can only be put in the discarded map. Values which must be resolved on
+     * every call (tasks and deferred suppliers, and maps and collections which might contain them) are not cached.
+     */
+    private volatile ConcurrentMap<ConfigKey<?>, ResolvedValue> resolvedConfig = new ConcurrentHashMap<ConfigKey<?>, ResolvedValue>();
+
+    private static class ResolvedValue {
+        final ConfigKey<?> key;
+        final Object value;
+        final boolean isDefault;
+        
+        ResolvedValue(ConfigKey<?> key, Object value, boolean isDefault) {
+            this.key = key;
+            this.value = value;
+            this.isDefault = isDefault;
+        }
+    }
+
     public EntityConfigMap(AbstractEntity entity, Map<ConfigKey<?>, Object> storage) {
         this.entity = checkNotNull(entity, "entity must be specified");
         this.ownConfig = checkNotNull(storage, "storage map must be specified");
@@ -82,6 +104,13 @@ public class EntityConfigMap implements ConfigMap {
         // TODO If ask for a config value that's not in our configKeys, should we really continue with rest of method and return key.getDefaultValue?
         //      e.g. SshBasedJavaAppSetup calls setAttribute(JMX_USER), which calls getConfig(JMX_USER)
         //           but that example doesn't have a default...
+        ConcurrentMap<ConfigKey<?>, ResolvedValue> resolved = resolvedConfig;
+        ResolvedValue cached = resolved.get(key);
+        // keys are equal if they have the same name, so check it is the same key (with the same type and default)
+        if (cached != null && cached.key == key && !(cached.isDefault && defaultValue != null)) {
+            return (T) cached.value;
+        }
+        
         ConfigKey<T> ownKey = entity!=null ? (ConfigKey<T>)elvis(entity.getEntityType().getConfigKey(key.getName()), key) : key;
         
         ExecutionContext exec = entity.getExecutionContext();
@@ -95,10 +124,13 @@ public class EntityConfigMap implements ConfigMap {
             Object rawval = ownConfig.get(key);
             T result = null;
             boolean complete = false;
+            boolean cacheable = !(ownKey instanceof StructuredConfigKey);
             if (((ConfigKeySelfExtracting<T>)ownKey).isSet(ownConfig)) {
+                cacheable &= isCacheable(ownConfig.get(ownKey));
                 result = ((ConfigKeySelfExtracting<T>)ownKey).extractValue(ownConfig, exec);
                 complete = true;
             } else if (((ConfigKeySelfExtracting<T>)ownKey).isSet(inheritedConfig)) {
+               cacheable &= isCacheable(inheritedConfig.get(ownKey));
                result = ((ConfigKeySelfExtracting<T>)ownKey).extractValue(inheritedConfig, exec);
                complete = true;
             } else if (localConfigBag.containsKey(ownKey)) {
@@ -114,12 +146,28 @@ public class EntityConfigMap implements ConfigMap {
                 entity.getManagementSupport().getEntityChangeListener().onConfigChanged(key);
             }
             if (complete) {
+                if (cacheable && isCacheable(result)) {
+                    resolved.put(key, new ResolvedValue(key, result, false));
+                }
                 return result;
             }
         } else {
             LOG.warn("Config key {} of {} is not a ConfigKeySelfExtracting; cannot retrieve value; returning default", ownKey, this);
         }
-        return TypeCoercions.coerce((defaultValue != null) ? defaultValue : ownKey.getDefaultValue(), key.getTypeToken());
+        T result = TypeCoercions.coerce((defaultValue != null) ? defaultValue : ownKey.getDefaultValue(), key.getTypeToken());
+        if (defaultValue == null && isCacheable(ownKey.getDefaultValue()) && isCacheable(result)) {
+            resolved.put(key, new ResolvedValue(key, result, true));
+        }
+        return result;
+    }
+    
+    /** whether a value (raw or resolved) will resolve the same on every call, so can be cached */
+    private static boolean isCacheable(Object val) {
+        return !(val instanceof Future || val instanceof DeferredSupplier || val instanceof Map || val instanceof Iterable);
+    }
+    
+    private void invalidateResolvedConfig() {
+        resolvedConfig = new ConcurrentHashMap<ConfigKey<?>, ResolvedValue>();
     }
     
     @Override
@@ -187,6 +235,7 @@ public class EntityConfigMap implements ConfigMap {
         } else {
             oldVal = ownConfig.put(key, val);
         }
+        invalidateResolvedConfig();
         entity.refreshInheritedConfigOfChildren();
         return oldVal;
     }
@@ -194,6 +243,7 @@ public class EntityConfigMap implements ConfigMap {
     public void setLocalConfig(Map<ConfigKey<?>, ? extends Object> vals) {
         ownConfig.clear();
         ownConfig.putAll(vals);
+        invalidateResolvedConfig();
     }
     
     public void setInheritedConfig(Map<ConfigKey<?>, ? extends Object> vals, ConfigBag configBagVals) {
@@ -236,15 +286,18 @@ public class EntityConfigMap implements ConfigMap {
                 inheritedConfigBag.putStringKey(name, value);
             }
         }
+        invalidateResolvedConfig();
     }
     
     public void addToLocalBag(Map<String,?> vals) {
         localConfigBag.putAll(vals);
+        invalidateResolvedConfig();
     }
 
     public void clearInheritedConfig() {
         inheritedConfig.clear();
         inheritedConfigBag.clear();
+        invalidateResolvedConfig();
     }
 
     @Override
@@ -38,10 +38,15 @@ import com.google.common.annotations.Beta;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /** This is the actual type of an entity instance at runtime,
  * which can change from the static {@link EntityType}, and can change over time;
@@ -58,23 +63,76 @@ public class EntityDynamicType {
     
     /** 
      * Effectors on this entity, by name.
+     * Initially those of the class (shared by all instances); copied when an effector is added.
      */
     // TODO support overloading; requires not using a map keyed off method name.
-    private final Map<String, Effector<?>> effectors = new ConcurrentHashMap<String, Effector<?>>();
+    private volatile Map<String, Effector<?>> effectors;
 
     /** 
      * Map of sensors on this entity, by name.
+     * Initially those of the class (shared by all instances); copied when a sensor is added or removed.
      */
-    private final ConcurrentMap<String,Sensor<?>> sensors = new ConcurrentHashMap<String, Sensor<?>>();
+    private volatile Map<String,Sensor<?>> sensors;
 
     /** 
-     * Map of config keys (and their fields) on this entity, by name.
+     * Map of config keys (and their fields) on this entity, by name; shared by all instances of the class.
      */
-    private final Map<String,FieldAndValue<ConfigKey<?>>> configKeys = new ConcurrentHashMap<String, FieldAndValue<ConfigKey<?>>>();
+    private final Map<String,FieldAndValue<ConfigKey<?>>> configKeys;
 
+    private final ClassMetadata classMetadata;
+    
     private volatile EntityTypeSnapshot snapshot;
     private final AtomicBoolean snapshotValid = new AtomicBoolean(false);
 
+    /**
+     * The effectors, sensors and config keys found by reflection on an entity class, which are
+     * the same for all its instances; {@link #forClass(Class)} caches these, so that the reflection
+     * is done only once per class (while any of its instances remain).
+     */
+    private static class ClassMetadata {
+        final Map<String, Effector<?>> effectors;
+        final Map<String, Sensor<?>> sensors;
+        final Map<String, FieldAndValue<ConfigKey<?>>> configKeys;
+        final Map<String, ConfigKey<?>> configKeyValues;
+        /** snapshots of instances with just these effectors and sensors, by type name */
+        final ConcurrentMap<String, EntityTypeSnapshot> snapshots = new ConcurrentHashMap<String, EntityTypeSnapshot>();
+        
+        ClassMetadata(Class<? extends Entity> clazz) {
+            effectors = ImmutableMap.copyOf(findEffectors(clazz, null));
+            if (LOG.isTraceEnabled())
+                LOG.trace("Entity class {} effectors: {}", clazz.getName(), Joiner.on(", ").join(effectors.keySet()));
+            
+            sensors = ImmutableMap.copyOf(findSensors(clazz, null));
+            if (LOG.isTraceEnabled())
+                LOG.trace("Entity class {} sensors: {}", clazz.getName(), Joiner.on(", ").join(sensors.keySet()));
+            
+            Map<String, FieldAndValue<ConfigKey<?>>> configKeysBuilt = Maps.newLinkedHashMap();
+            buildConfigKeys(clazz, null, configKeysBuilt);
+            configKeys = ImmutableMap.copyOf(configKeysBuilt);
+            configKeyValues = ImmutableMap.copyOf(value(configKeys));
+            if (LOG.isTraceEnabled())
+                LOG.trace("Entity class {} config keys: {}", clazz.getName(), Joiner.on(", ").join(configKeys.keySet()));
+        }
+    }
+    
+    // the metadata references the class (through its effector methods and config key fields), so is held
+    // weakly, by its instances' types, rather than by the cache; otherwise the class could never be unloaded
+    private static final LoadingCache<Class<? extends Entity>, ClassMetadata> CLASS_METADATA = CacheBuilder.newBuilder()
+            .weakKeys()
+            .weakValues()
+            .build(new CacheLoader<Class<? extends Entity>, ClassMetadata>() {
+                @Override public ClassMetadata load(Class<? extends Entity> clazz) {
+                    return new ClassMetadata(clazz);
+                }});
+    
+    private static ClassMetadata forClass(Class<? extends Entity> clazz) {
+        try {
+            return CLASS_METADATA.getUnchecked(clazz);
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
     public EntityDynamicType(AbstractEntity entity) {
         this(entity.getClass(), entity);
     }
@@ -87,19 +145,10 @@ public class EntityDynamicType {
         // NB: official name is usu injected later, from AbstractEntity.setManagementContext
         setName((clazz.getCanonicalName() == null) ? clazz.getName() : clazz.getCanonicalName());
         
-        String id = entity==null ? clazz.getName() : entity.getId();
-        
-        effectors.putAll(findEffectors(clazz, null));
-        if (LOG.isTraceEnabled())
-            LOG.trace("Entity {} effectors: {}", id, Joiner.on(", ").join(effectors.keySet()));
-        
-        sensors.putAll(findSensors(clazz, null));
-        if (LOG.isTraceEnabled())
-            LOG.trace("Entity {} sensors: {}", id, Joiner.on(", ").join(sensors.keySet()));
-        
-        buildConfigKeys(clazz, null, configKeys);
-        if (LOG.isTraceEnabled())
-            LOG.trace("Entity {} config keys: {}", id, Joiner.on(", ").join(configKeys.keySet()));
+        classMetadata = forClass(clazz);
+        effectors = classMetadata.effectors;
+        sensors = classMetadata.sensors;
+        configKeys = classMetadata.configKeys;
 
         refreshSnapshot();
     }
@@ -133,7 +182,7 @@ public class EntityDynamicType {
      * Effectors available on this entity.
      */
     public Map<String,Effector<?>> getEffectors() {
-        return Collections.unmodifiableMap(effectors);
+        return effectors;
     }
     
     /**
@@ -141,7 +190,12 @@ public class EntityDynamicType {
      */
     @Beta
     public void addEffector(Effector<?> newEffector) {
-        Effector<?> oldEffector = effectors.put(newEffector.getName(), newEffector);
+        Effector<?> oldEffector;
+        synchronized (this) {
+            Map<String, Effector<?>> newEffectors = Maps.newLinkedHashMap(effectors);
+            oldEffector = newEffectors.put(newEffector.getName(), newEffector);
+            effectors = Collections.unmodifiableMap(newEffectors);
+        }
         snapshotValid.set(false);
         if (oldEffector!=null)
             entity.emit(AbstractEntity.EFFECTOR_CHANGED, newEffector.getName());
@@ -166,7 +220,7 @@ public class EntityDynamicType {
      * Sensors available on this entity.
      */
     public Map<String,Sensor<?>> getSensors() {
-        return Collections.unmodifiableMap(sensors);
+        return sensors;
     }
     
     /** 
@@ -180,7 +234,11 @@ public class EntityDynamicType {
      * Adds the given {@link Sensor} to this entity.
      */
     public void addSensor(Sensor<?> newSensor) {
-        sensors.put(newSensor.getName(), newSensor);
+        synchronized (this) {
+            Map<String, Sensor<?>> newSensors = Maps.newLinkedHashMap(sensors);
+            newSensors.put(newSensor.getName(), newSensor);
+            sensors = Collections.unmodifiableMap(newSensors);
+        }
         snapshotValid.set(false);
         entity.emit(AbstractEntity.SENSOR_ADDED, newSensor);
     }
@@ -202,18 +260,30 @@ public class EntityDynamicType {
     }
     
     public Sensor<?> addSensorIfAbsentWithoutPublishing(Sensor<?> newSensor) {
-        Sensor<?> prev = sensors.putIfAbsent(newSensor.getName(), newSensor);
-        if (prev == null) {
-            snapshotValid.set(false);
+        Sensor<?> prev = sensors.get(newSensor.getName());
+        if (prev != null) return prev;
+        synchronized (this) {
+            prev = sensors.get(newSensor.getName());
+            if (prev != null) return prev;
+            Map<String, Sensor<?>> newSensors = Maps.newLinkedHashMap(sensors);
+            newSensors.put(newSensor.getName(), newSensor);
+            sensors = Collections.unmodifiableMap(newSensors);
         }
-        return prev;
+        snapshotValid.set(false);
+        return null;
     }
 
     /**
      * Removes the named {@link Sensor} from this entity.
      */
     public Sensor<?> removeSensor(String sensorName) {
-        Sensor<?> result = sensors.remove(sensorName);
+        Sensor<?> result;
+        synchronized (this) {
+            if (!sensors.containsKey(sensorName)) return null;
+            Map<String, Sensor<?>> newSensors = Maps.newLinkedHashMap(sensors);
+            result = newSensors.remove(sensorName);
+            sensors = Collections.unmodifiableMap(newSensors);
+        }
         if (result != null) {
             snapshotValid.set(false);
             entity.emit(AbstractEntity.SENSOR_REMOVED, result);
@@ -236,7 +306,7 @@ public class EntityDynamicType {
      * ConfigKeys available on this entity.
      */
     public Map<String,ConfigKey<?>> getConfigKeys() {
-        return Collections.unmodifiableMap(value(configKeys));
+        return classMetadata.configKeyValues;
     }
 
     /**
@@ -253,7 +323,21 @@ public class EntityDynamicType {
 
     private EntityTypeSnapshot refreshSnapshot() {
         if (snapshotValid.compareAndSet(false, true)) {
-            snapshot = new EntityTypeSnapshot(name, value(configKeys), sensors, effectors.values());
+            String currentName = name;
+            Map<String, Sensor<?>> currentSensors = sensors;
+            Map<String, Effector<?>> currentEffectors = effectors;
+            if (currentSensors == classMetadata.sensors && currentEffectors == classMetadata.effectors) {
+                // unchanged from the class, so can share the snapshot with other instances of the same name
+                EntityTypeSnapshot result = classMetadata.snapshots.get(currentName);
+                if (result == null) {
+                    classMetadata.snapshots.putIfAbsent(currentName, 
+                            new EntityTypeSnapshot(currentName, classMetadata.configKeyValues, currentSensors, currentEffectors.values()));
+                    result = classMetadata.snapshots.get(currentName);
+                }
+                snapshot = result;
+            } else {
+                snapshot = new EntityTypeSnapshot(currentName, classMetadata.configKeyValues, currentSensors, currentEffectors.values());
+            }
         }
         return snapshot;
     }
@@ -4,6 +4,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -17,6 +18,11 @@ import brooklyn.entity.basic.EntityLocal;
 import brooklyn.management.internal.EffectorUtils;
 
 import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -34,8 +40,6 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
     @SuppressWarnings("unused")
     private static final Logger LOG = LoggerFactory.getLogger(EntityProxyImpl.class);
 
-    private final Entity delegate;
-    
     private static final Set<MethodSignature> OBJECT_METHODS = Sets.newLinkedHashSet();
     static {
         for (Method m : Object.class.getMethods()) {
@@ -56,6 +60,57 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
         }
     }
 
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /** How a method called on the proxy is handled. */
+    private static enum Dispatch {
+        /** invoked on this handler */
+        OBJECT,
+        /** invoked on the entity */
+        ENTITY,
+        /** invoked as an effector if the entity has an effector of that name, otherwise invoked on the entity */
+        EFFECTOR_OR_ENTITY;
+
+        static Dispatch of(Method m) {
+            MethodSignature sig = new MethodSignature(m);
+            if (OBJECT_METHODS.contains(sig)) {
+                return OBJECT;
+            } else if (ENTITY_NON_EFFECTOR_METHODS.contains(sig)) {
+                return ENTITY;
+            } else {
+                return EFFECTOR_OR_ENTITY;
+            }
+        }
+    }
+
+    /**
+     * The dispatch of every method of each proxy class (i.e. of each combination of interfaces), 
+     * so that a call through the proxy is a single map lookup rather than a comparison of method signatures.
+     * The tables reference the proxy classes' interfaces (through their methods), so are held weakly,
+     * by the proxies' handlers, rather than by the cache; otherwise the classes could never be unloaded.
+     */
+    private static final LoadingCache<Class<?>, Map<Method, Dispatch>> DISPATCH_TABLES = CacheBuilder.newBuilder()
+            .weakKeys()
+            .weakValues()
+            .build(new CacheLoader<Class<?>, Map<Method, Dispatch>>() {
+                @Override public Map<Method, Dispatch> load(Class<?> proxyClass) {
+                    Map<Method, Dispatch> result = Maps.newLinkedHashMap();
+                    for (Method m : Object.class.getMethods()) {
+                        result.put(m, Dispatch.of(m));
+                    }
+                    for (Class<?> iface : proxyClass.getInterfaces()) {
+                        for (Method m : iface.getMethods()) {
+                            if (!result.containsKey(m)) result.put(m, Dispatch.of(m));
+                        }
+                    }
+                    return ImmutableMap.copyOf(result);
+                }});
+
+    private final Entity delegate;
+
+    /** the dispatch table for the proxy class, set on first call (as the proxy is created after its handler) */
+    private volatile Map<Method, Dispatch> dispatchTable;
+
     public EntityProxyImpl(Entity entity) {
         this.delegate = checkNotNull(entity, "entity");
     }
@@ -70,15 +125,23 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
             throw new IllegalArgumentException("Static methods not supported via proxy on entity "+delegate);
         }
         
-        MethodSignature sig = new MethodSignature(m);
+        Map<Method, Dispatch> table = dispatchTable;
+        if (table == null) {
+            dispatchTable = table = DISPATCH_TABLES.getUnchecked(proxy.getClass());
+        }
+        Dispatch dispatch = table.get(m);
+        if (dispatch == null) dispatch = Dispatch.of(m);
 
         Object result;
-        if (OBJECT_METHODS.contains(sig)) {
+        switch (dispatch) {
+        case OBJECT:
             result = m.invoke(this, args);
-        } else if (ENTITY_NON_EFFECTOR_METHODS.contains(sig)) {
+            break;
+        case ENTITY:
             result = m.invoke(delegate, args);
-        } else {
-            Object[] nonNullArgs = (args == null) ? new Object[0] : args;
+            break;
+        default:
+            Object[] nonNullArgs = (args == null) ? NO_ARGS : args;
             Effector<?> eff = findEffector(m, nonNullArgs);
             if (eff != null) {
                 result = EffectorUtils.invokeMethodEffector(delegate, eff, nonNullArgs);
@@ -92,6 +155,10 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
     
     private Effector<?> findEffector(Method m, Object[] args) {
         String name = m.getName();
+        if (delegate instanceof EntityInternal) {
+            // effectors can be added to an entity at any time, so not part of the dispatch table
+            return ((EntityInternal)delegate).getMutableEntityType().getEffector(name);
+        }
         Set<Effector<?>> effectors = delegate.getEntityType().getEffectors();
         for (Effector<?> contender : effectors) {
             if (name.equals(contender.getName())) {
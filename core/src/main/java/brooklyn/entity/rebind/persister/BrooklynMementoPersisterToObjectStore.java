@@ -3,15 +3,24 @@ package brooklyn.entity.rebind.persister;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.entity.rebind.RebindExceptionHandler;
 import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
 import brooklyn.entity.rebind.dto.BrooklynMementoManifestImpl;
@@ -26,31 +35,115 @@ import brooklyn.mementos.LocationMemento;
 import brooklyn.mementos.Memento;
 import brooklyn.mementos.PolicyMemento;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.guava.Maybe;
+import brooklyn.util.javalang.Enums;
+import brooklyn.util.text.Strings;
 import brooklyn.util.time.Duration;
 import brooklyn.util.time.Time;
 import brooklyn.util.xstream.XmlUtil;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /** Implementation of the {@link BrooklynMementoPersister} backed by a pluggable
- * {@link PersistenceObjectStore} such as a file system or a jclouds object store */
+ * {@link PersistenceObjectStore} such as a file system or a jclouds object store.
+ * <p>
+ * When loading, the persisted files are read and deserialized in parallel, by a bounded pool of threads;
+ * the manifest only reads the id and type at the start of each file.
+ * <p>
+ * Checkpoints and deltas are written behind: the latest requested memento for each object is recorded
+ * (replacing any earlier one not yet written) and a background job flushes them in batches,
+ * serializing each memento only then. Thus an object which changes repeatedly while a flush is in progress
+ * (e.g. with a slow object store) is serialized and written once. */
 public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPersister {
 
     private static final Logger LOG = LoggerFactory.getLogger(BrooklynMementoPersisterToObjectStore.class);
 
     private static final int MAX_SERIALIZATION_ATTEMPTS = 5;
 
+    /** how long {@link #stop()} waits for the writes already requested to be flushed */
+    public static final Duration DEFAULT_STOP_FLUSH_TIMEOUT = Duration.THIRTY_SECONDS;
+
     private final PersistenceObjectStore objectStore;
     private final MementoSerializer<Object> serializer;
 
+    private final Function<String, Object> deserializer = new Function<String, Object>() {
+        @Override
+        public Object apply(String contents) {
+            return serializer.fromString(contents);
+        }
+    };
+
+    /** reads and parses the persisted files when loading; bounded, as object stores may not like many concurrent requests */
+    private final ThreadPoolExecutor loadExecutor;
+    private final int maxLoadThreads;
+
     private final Map<String, StoreObjectAccessorWithLock> writers = new LinkedHashMap<String, PersistenceObjectStore.StoreObjectAccessorWithLock>();
 
+    /** 
+     * The latest requested write for each path which has not yet been flushed, in the order first requested;
+     * a null memento means delete. Also used as the monitor for the write counters and {@link #flushScheduled}.
+     */
+    private final Map<String, PendingWrite> pendingWrites = new LinkedHashMap<String, PendingWrite>();
+    /** true from when writes are pending until the flush job finds nothing more to write */
+    private boolean flushScheduled;
+    private long totalWritesRequested;
+    private long totalWritesCoalesced;
+    private long totalFlushes;
+    private long totalFlushNanos;
+
+    /** writes the pending writes, one batch at a time (so writes to any given path are in order) */
+    private final ThreadPoolExecutor flushExecutor;
+
+    private final Runnable flushJob = new Runnable() {
+        @Override
+        public void run() {
+            flushPendingWrites();
+        }
+    };
+
     private volatile boolean running = true;
 
     public BrooklynMementoPersisterToObjectStore(PersistenceObjectStore objectStore, ClassLoader classLoader) {
+        this(objectStore, classLoader, BrooklynServerConfig.PERSISTENCE_LOAD_THREADS.getDefaultValue());
+    }
+
+    /**
+     * @param maxLoadThreads  the maximum number of files to read and deserialize concurrently
+     *   when loading the memento (see {@link BrooklynServerConfig#PERSISTENCE_LOAD_THREADS})
+     */
+    public BrooklynMementoPersisterToObjectStore(PersistenceObjectStore objectStore, ClassLoader classLoader, int maxLoadThreads) {
+        this(objectStore, classLoader, maxLoadThreads, BrooklynServerConfig.PERSISTENCE_FORMAT.getDefaultValue());
+    }
+
+    /**
+     * @param format  the name of the format in which to write mementos, as given by {@link BrooklynServerConfig#PERSISTENCE_FORMAT}
+     *   (i.e. of a {@link MementoFormat}, ignoring case); existing files in either format are read
+     */
+    public BrooklynMementoPersisterToObjectStore(PersistenceObjectStore objectStore, ClassLoader classLoader, int maxLoadThreads, String format) {
+        this(objectStore, classLoader, maxLoadThreads, toMementoFormat(format));
+    }
+
+    /**
+     * @param format  the format in which to write mementos;
+     *   existing files in either format are read
+     */
+    public BrooklynMementoPersisterToObjectStore(PersistenceObjectStore objectStore, ClassLoader classLoader, int maxLoadThreads, MementoFormat format) {
         this.objectStore = checkNotNull(objectStore, "objectStore");
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        this.maxLoadThreads = Math.max(1, maxLoadThreads);
+        // threads are only created when loading, and then time out
+        this.loadExecutor = new ThreadPoolExecutor(this.maxLoadThreads, this.maxLoadThreads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-persister-load-%d").setDaemon(true).build());
+        this.loadExecutor.allowCoreThreadTimeOut(true);
+        this.flushExecutor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-persister-flush-%d").setDaemon(true).build());
+        this.flushExecutor.allowCoreThreadTimeOut(true);
+        MementoSerializer<Object> rawSerializer = checkNotNull(format, "format").newSerializer(classLoader);
         this.serializer = new RetryingMementoSerializer<Object>(rawSerializer, MAX_SERIALIZATION_ATTEMPTS);
 
         // TODO it's 95% the same code for each of these, throughout, so refactor to avoid repetition
@@ -69,7 +162,29 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
 
     @Override
     public void stop() {
+        stop(DEFAULT_STOP_FLUSH_TIMEOUT);
+    }
+
+    /**
+     * Stops accepting checkpoints and deltas, and waits up to the given time for the writes already requested
+     * to be flushed; any still pending then are discarded (as is done for changes not yet in a delta).
+     */
+    public void stop(Duration flushTimeout) {
         running = false;
+        loadExecutor.shutdownNow();
+        try {
+            waitForWritesCompleted(flushTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            LOG.warn("Persister stopping without completing writes to "+objectStore.getSummaryName()+": "+e.getMessage());
+        } finally {
+            synchronized (pendingWrites) {
+                if (!pendingWrites.isEmpty() && LOG.isDebugEnabled()) LOG.debug("Discarding {} pending writes, as persister stopped", pendingWrites.size());
+                pendingWrites.clear();
+            }
+            flushExecutor.shutdown();
+        }
     }
     
     protected StoreObjectAccessorWithLock getWriter(String path) {
@@ -90,80 +205,64 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             throw new IllegalStateException("Persister not running; cannot load memento manifest from " + objectStore.getSummaryName());
         }
 
-        List<String> entitySubPathList;
-        List<String> locationSubPathList;
-        List<String> policySubPathList;
-        List<String> enricherSubPathList;
-        try {
-            entitySubPathList = objectStore.listContentsWithSubPath("entities");
-            locationSubPathList = objectStore.listContentsWithSubPath("locations");
-            policySubPathList = objectStore.listContentsWithSubPath("policies");
-            enricherSubPathList = objectStore.listContentsWithSubPath("enrichers");
-        } catch (Exception e) {
-            Exceptions.propagateIfFatal(e);
-            exceptionHandler.onLoadBrooklynMementoFailed("Failed to list files", e);
-            throw new IllegalStateException("Failed to list memento files in "+objectStore, e);
-        }
-
         Stopwatch stopwatch = Stopwatch.createStarted();
+        SubPaths subPaths = listSubPaths(exceptionHandler);
+        long listingMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
 
         LOG.debug("Scanning persisted state: {} entities, {} locations, {} policies, {} enrichers, from {}", new Object[]{
-            entitySubPathList.size(), locationSubPathList.size(), policySubPathList.size(), enricherSubPathList.size(),
+            subPaths.entities.size(), subPaths.locations.size(), subPaths.policies.size(), subPaths.enrichers.size(),
             objectStore.getSummaryName() });
 
         BrooklynMementoManifestImpl.Builder builder = BrooklynMementoManifestImpl.builder();
-
-        for (String subPath : entitySubPathList) {
-            try {
-                StoreObjectAccessor objectAccessor = objectStore.newAccessor(subPath);
-                String contents = objectAccessor.get();
-                String id = (String) XmlUtil.xpath(contents, "/entity/id");
-                String type = (String) XmlUtil.xpath(contents, "/entity/type");
-                builder.entity(id, type);
-            } catch (Exception e) {
-                Exceptions.propagateIfFatal(e);
-                exceptionHandler.onLoadEntityMementoFailed("Memento "+subPath, e);
+        LoadTimings timings = new LoadTimings();
+        Map<String, Future<Map<String, String>>> entities = loadInParallel(subPaths.entities, HEADER_READER, timings);
+        Map<String, Future<Map<String, String>>> locations = loadInParallel(subPaths.locations, HEADER_READER, timings);
+        Map<String, Future<Map<String, String>>> policies = loadInParallel(subPaths.policies, HEADER_READER, timings);
+        Map<String, Future<Map<String, String>>> enrichers = loadInParallel(subPaths.enrichers, HEADER_READER, timings);
+        try {
+            for (Map.Entry<String, Future<Map<String, String>>> entry : entities.entrySet()) {
+                try {
+                    Map<String, String> header = getLoaded(entry.getValue());
+                    builder.entity(header.get("id"), header.get("type"));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    exceptionHandler.onLoadEntityMementoFailed("Memento "+entry.getKey(), e);
+                }
             }
-        }
-        for (String subPath : locationSubPathList) {
-            try {
-                StoreObjectAccessor objectAccessor = objectStore.newAccessor(subPath);
-                String contents = objectAccessor.get();
-                String id = (String) XmlUtil.xpath(contents, "/location/id");
-                String type = (String) XmlUtil.xpath(contents, "/location/type");
-                builder.location(id, type);
-            } catch (Exception e) {
-                Exceptions.propagateIfFatal(e);
-                exceptionHandler.onLoadLocationMementoFailed("Memento "+subPath, e);
+            for (Map.Entry<String, Future<Map<String, String>>> entry : locations.entrySet()) {
+                try {
+                    Map<String, String> header = getLoaded(entry.getValue());
+                    builder.location(header.get("id"), header.get("type"));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    exceptionHandler.onLoadLocationMementoFailed("Memento "+entry.getKey(), e);
+                }
             }
-        }
-        for (String subPath : policySubPathList) {
-            try {
-                StoreObjectAccessor objectAccessor = objectStore.newAccessor(subPath);
-                String contents = objectAccessor.get();
-                String id = (String) XmlUtil.xpath(contents, "/policy/id");
-                String type = (String) XmlUtil.xpath(contents, "/policy/type");
-                builder.policy(id, type);
-            } catch (Exception e) {
-                Exceptions.propagateIfFatal(e);
-                exceptionHandler.onLoadPolicyMementoFailed("Memento "+subPath, e);
+            for (Map.Entry<String, Future<Map<String, String>>> entry : policies.entrySet()) {
+                try {
+                    Map<String, String> header = getLoaded(entry.getValue());
+                    builder.policy(header.get("id"), header.get("type"));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    exceptionHandler.onLoadPolicyMementoFailed("Memento "+entry.getKey(), e);
+                }
             }
-        }
-        for (String subPath : enricherSubPathList) {
-            try {
-                StoreObjectAccessor objectAccessor = objectStore.newAccessor(subPath);
-                String contents = objectAccessor.get();
-                String id = (String) XmlUtil.xpath(contents, "/enricher/id");
-                String type = (String) XmlUtil.xpath(contents, "/enricher/type");
-                builder.enricher(id, type);
-            } catch (Exception e) {
-                Exceptions.propagateIfFatal(e);
-                exceptionHandler.onLoadEnricherMementoFailed("Memento "+subPath, e);
+            for (Map.Entry<String, Future<Map<String, String>>> entry : enrichers.entrySet()) {
+                try {
+                    Map<String, String> header = getLoaded(entry.getValue());
+                    builder.enricher(header.get("id"), header.get("type"));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    exceptionHandler.onLoadEnricherMementoFailed("Memento "+entry.getKey(), e);
+                }
             }
+        } finally {
+            cancelAll(entities, locations, policies, enrichers);
         }
-        
+
         if (LOG.isDebugEnabled())
-            LOG.debug("Loaded memento manifest; took {}", Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS)));
+            LOG.debug("Loaded memento manifest; took {} ({})", Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS)),
+                timings.toString(listingMillis, "scanning", maxLoadThreads));
         return builder.build();
     }
 
@@ -173,35 +272,27 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             throw new IllegalStateException("Persister not running; cannot load memento from " + objectStore.getSummaryName());
         }
         Stopwatch stopwatch = Stopwatch.createStarted();
+        SubPaths subPaths = listSubPaths(exceptionHandler);
+        long listingMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
 
-        List<String> entitySubPathList;
-        List<String> locationSubPathList;
-        List<String> policySubPathList;
-        List<String> enricherSubPathList;
-        try {
-            entitySubPathList = objectStore.listContentsWithSubPath("entities");
-            locationSubPathList = objectStore.listContentsWithSubPath("locations");
-            policySubPathList = objectStore.listContentsWithSubPath("policies");
-            enricherSubPathList = objectStore.listContentsWithSubPath("enrichers");
-        } catch (Exception e) {
-            Exceptions.propagateIfFatal(e);
-            exceptionHandler.onLoadBrooklynMementoFailed("Failed to list files", e);
-            throw new IllegalStateException("Failed to list memento files in "+objectStore+": "+e, e);
-        }
-        
         LOG.debug("Loading persisted state: {} entities, {} locations, {} policies, {} enrichers, from {}", new Object[]{
-            entitySubPathList.size(), locationSubPathList.size(), policySubPathList.size(), enricherSubPathList.size(),
+            subPaths.entities.size(), subPaths.locations.size(), subPaths.policies.size(), subPaths.enrichers.size(),
             objectStore.getSummaryName() });
 
         BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
+        LoadTimings timings = new LoadTimings();
         serializer.setLookupContext(lookupContext);
+        // the serializer is only read (by the load threads) until all the futures have completed or been cancelled
+        Map<String, Future<Object>> entities = loadInParallel(subPaths.entities, deserializer, timings);
+        Map<String, Future<Object>> locations = loadInParallel(subPaths.locations, deserializer, timings);
+        Map<String, Future<Object>> policies = loadInParallel(subPaths.policies, deserializer, timings);
+        Map<String, Future<Object>> enrichers = loadInParallel(subPaths.enrichers, deserializer, timings);
         try {
-            for (String subPath : entitySubPathList) {
+            for (Map.Entry<String, Future<Object>> entry : entities.entrySet()) {
                 try {
-                    StoreObjectAccessor objectAccessor = objectStore.newAccessor(subPath);
-                    EntityMemento memento = (EntityMemento) serializer.fromString(objectAccessor.get());
+                    EntityMemento memento = (EntityMemento) getLoaded(entry.getValue());
                     if (memento == null) {
-                        LOG.warn("No entity-memento deserialized from " + subPath + "; ignoring and continuing");
+                        LOG.warn("No entity-memento deserialized from " + entry.getKey() + "; ignoring and continuing");
                     } else {
                         builder.entity(memento);
                         if (memento.isTopLevelApp()) {
@@ -209,56 +300,149 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                         }
                     }
                 } catch (Exception e) {
-                    exceptionHandler.onLoadEntityMementoFailed("Memento "+subPath, e);
+                    Exceptions.propagateIfFatal(e);
+                    exceptionHandler.onLoadEntityMementoFailed("Memento "+entry.getKey(), e);
                 }
             }
-            for (String subPath : locationSubPathList) {
+            for (Map.Entry<String, Future<Object>> entry : locations.entrySet()) {
                 try {
-                    StoreObjectAccessor objectAccessor = objectStore.newAccessor(subPath);
-                    LocationMemento memento = (LocationMemento) serializer.fromString(objectAccessor.get());
+                    LocationMemento memento = (LocationMemento) getLoaded(entry.getValue());
                     if (memento == null) {
-                        LOG.warn("No location-memento deserialized from " + subPath + "; ignoring and continuing");
+                        LOG.warn("No location-memento deserialized from " + entry.getKey() + "; ignoring and continuing");
                     } else {
                         builder.location(memento);
                     }
                 } catch (Exception e) {
-                    exceptionHandler.onLoadLocationMementoFailed("Memento "+subPath, e);
+                    Exceptions.propagateIfFatal(e);
+                    exceptionHandler.onLoadLocationMementoFailed("Memento "+entry.getKey(), e);
                 }
             }
-            for (String subPath : policySubPathList) {
+            for (Map.Entry<String, Future<Object>> entry : policies.entrySet()) {
                 try {
-                    StoreObjectAccessor objectAccessor = objectStore.newAccessor(subPath);
-                    PolicyMemento memento = (PolicyMemento) serializer.fromString(objectAccessor.get());
+                    PolicyMemento memento = (PolicyMemento) getLoaded(entry.getValue());
                     if (memento == null) {
-                        LOG.warn("No policy-memento deserialized from " + subPath + "; ignoring and continuing");
+                        LOG.warn("No policy-memento deserialized from " + entry.getKey() + "; ignoring and continuing");
                     } else {
                         builder.policy(memento);
                     }
                 } catch (Exception e) {
-                    exceptionHandler.onLoadPolicyMementoFailed("Memento "+subPath, e);
+                    Exceptions.propagateIfFatal(e);
+                    exceptionHandler.onLoadPolicyMementoFailed("Memento "+entry.getKey(), e);
                 }
             }
-            for (String subPath : enricherSubPathList) {
+            for (Map.Entry<String, Future<Object>> entry : enrichers.entrySet()) {
                 try {
-                    StoreObjectAccessor objectAccessor = objectStore.newAccessor(subPath);
-                    EnricherMemento memento = (EnricherMemento) serializer.fromString(objectAccessor.get());
+                    EnricherMemento memento = (EnricherMemento) getLoaded(entry.getValue());
                     if (memento == null) {
-                        LOG.warn("No enricher-memento deserialized from " + subPath + "; ignoring and continuing");
+                        LOG.warn("No enricher-memento deserialized from " + entry.getKey() + "; ignoring and continuing");
                     } else {
                         builder.enricher(memento);
                     }
                 } catch (Exception e) {
-                    exceptionHandler.onLoadEnricherMementoFailed("Memento "+subPath, e);
+                    Exceptions.propagateIfFatal(e);
+                    exceptionHandler.onLoadEnricherMementoFailed("Memento "+entry.getKey(), e);
                 }
             }
             
         } finally {
+            cancelAll(entities, locations, policies, enrichers);
             serializer.unsetLookupContext();
         }
 
-        if (LOG.isDebugEnabled()) LOG.debug("Loaded memento; took {}", Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS)));
+        if (LOG.isDebugEnabled())
+            LOG.debug("Loaded memento; took {} ({})", Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS)),
+                timings.toString(listingMillis, "deserializing", maxLoadThreads));
         return builder.build();
     }
+
+    private SubPaths listSubPaths(RebindExceptionHandler exceptionHandler) {
+        try {
+            SubPaths result = new SubPaths();
+            result.entities = objectStore.listContentsWithSubPath("entities");
+            result.locations = objectStore.listContentsWithSubPath("locations");
+            result.policies = objectStore.listContentsWithSubPath("policies");
+            result.enrichers = objectStore.listContentsWithSubPath("enrichers");
+            return result;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            exceptionHandler.onLoadBrooklynMementoFailed("Failed to list files", e);
+            throw new IllegalStateException("Failed to list memento files in "+objectStore+": "+e, e);
+        }
+    }
+
+    /**
+     * Submits a job to the load executor for each sub-path, to read its contents and apply the given parser.
+     * @return the futures, keyed by sub-path (in the given order)
+     */
+    private <T> Map<String, Future<T>> loadInParallel(List<String> subPaths, final Function<String, T> parser, final LoadTimings timings) {
+        Map<String, Future<T>> result = new LinkedHashMap<String, Future<T>>();
+        for (final String subPath : subPaths) {
+            result.put(subPath, loadExecutor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    long start = System.nanoTime();
+                    String contents = objectStore.newAccessor(subPath).get();
+                    long fetched = System.nanoTime();
+                    T parsed = parser.apply(contents);
+                    timings.fetchNanos.addAndGet(fetched - start);
+                    timings.parseNanos.addAndGet(System.nanoTime() - fetched);
+                    return parsed;
+                }
+            }));
+        }
+        return result;
+    }
+
+    /** returns the result of the load job, rethrowing any exception it threw */
+    private static <T> T getLoaded(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw Exceptions.propagate(cause);
+        }
+    }
+
+    private static void cancelAll(Map<?, ?>... futuresMaps) {
+        // a no-op for those which are done; others are only still running if we are exiting abnormally
+        for (Map<?, ?> futures : futuresMaps) {
+            for (Object future : futures.values()) {
+                ((Future<?>) future).cancel(true);
+            }
+        }
+    }
+
+    private static class SubPaths {
+        List<String> entities;
+        List<String> locations;
+        List<String> policies;
+        List<String> enrichers;
+    }
+
+    /** time spent in the load jobs, summed across all the threads */
+    private static class LoadTimings {
+        final AtomicLong fetchNanos = new AtomicLong();
+        final AtomicLong parseNanos = new AtomicLong();
+
+        String toString(long listingMillis, String parsePhase, int maxThreads) {
+            return "listing "+Time.makeTimeStringRounded(listingMillis)
+                + "; reading "+Time.makeTimeStringRounded(TimeUnit.NANOSECONDS.toMillis(fetchNanos.get()))
+                + " and "+parsePhase+" "+Time.makeTimeStringRounded(TimeUnit.NANOSECONDS.toMillis(parseNanos.get()))
+                + " cumulatively, across up to "+maxThreads+" threads";
+        }
+    }
+
+    /** reads just the id and type of a persisted item, without parsing the rest of the document */
+    private static final Function<String, Map<String, String>> HEADER_READER = new Function<String, Map<String, String>>() {
+        @Override
+        public Map<String, String> apply(String contents) {
+            if (CompressedXmlMementoSerializer.isCompressed(contents)) {
+                return CompressedXmlMementoSerializer.readRootChildElements(contents, "id", "type");
+            }
+            return XmlUtil.readRootChildElements(checkNotNull(contents, "contents"), "id", "type");
+        }
+    };
     
     @Override
     public void checkpoint(BrooklynMemento newMemento) {
@@ -267,19 +451,21 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             return;
         }
         if (LOG.isDebugEnabled()) LOG.debug("Checkpointing entire memento");
-        objectStore.prepareForContendedWrite();
         
-        for (EntityMemento entity : newMemento.getEntityMementos().values()) {
-            persist("entities", entity);
-        }
-        for (LocationMemento location : newMemento.getLocationMementos().values()) {
-            persist("locations", location);
-        }
-        for (PolicyMemento policy : newMemento.getPolicyMementos().values()) {
-            persist("policies", policy);
-        }
-        for (EnricherMemento enricher : newMemento.getEnricherMementos().values()) {
-            persist("enrichers", enricher);
+        synchronized (pendingWrites) {
+            for (EntityMemento entity : newMemento.getEntityMementos().values()) {
+                persist("entities", entity);
+            }
+            for (LocationMemento location : newMemento.getLocationMementos().values()) {
+                persist("locations", location);
+            }
+            for (PolicyMemento policy : newMemento.getPolicyMementos().values()) {
+                persist("policies", policy);
+            }
+            for (EnricherMemento enricher : newMemento.getEnricherMementos().values()) {
+                persist("enrichers", enricher);
+            }
+            scheduleFlush();
         }
     }
     
@@ -293,32 +479,34 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         		"removing {} entities, {} locations and {} policies", 
                 new Object[] {delta.entities(), delta.locations(), delta.policies(),
                 delta.removedEntityIds(), delta.removedLocationIds(), delta.removedPolicyIds()});
-        objectStore.prepareForContendedWrite();
-        
-        for (EntityMemento entity : delta.entities()) {
-            persist("entities", entity);
-        }
-        for (LocationMemento location : delta.locations()) {
-            persist("locations", location);
-        }
-        for (PolicyMemento policy : delta.policies()) {
-            persist("policies", policy);
-        }
-        for (EnricherMemento enricher : delta.enrichers()) {
-            persist("enrichers", enricher);
-        }
         
-        for (String id : delta.removedEntityIds()) {
-            delete("entities", id);
-        }
-        for (String id : delta.removedLocationIds()) {
-            delete("locations", id);
-        }
-        for (String id : delta.removedPolicyIds()) {
-            delete("policies", id);
-        }
-        for (String id : delta.removedEnricherIds()) {
-            delete("enrichers", id);
+        synchronized (pendingWrites) {
+            for (EntityMemento entity : delta.entities()) {
+                persist("entities", entity);
+            }
+            for (LocationMemento location : delta.locations()) {
+                persist("locations", location);
+            }
+            for (PolicyMemento policy : delta.policies()) {
+                persist("policies", policy);
+            }
+            for (EnricherMemento enricher : delta.enrichers()) {
+                persist("enrichers", enricher);
+            }
+            
+            for (String id : delta.removedEntityIds()) {
+                delete("entities", id);
+            }
+            for (String id : delta.removedLocationIds()) {
+                delete("locations", id);
+            }
+            for (String id : delta.removedPolicyIds()) {
+                delete("policies", id);
+            }
+            for (String id : delta.removedEnricherIds()) {
+                delete("enrichers", id);
+            }
+            scheduleFlush();
         }
     }
 
@@ -329,20 +517,200 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     }
     
     public void waitForWritesCompleted(Duration timeout) throws InterruptedException, TimeoutException {
-        for (StoreObjectAccessorWithLock writer : writers.values())
-            writer.waitForCurrentWrites(timeout);
+        long maxEndTime = timeout.isPositive() ? System.currentTimeMillis() + timeout.toMillisecondsRoundingUp() : Long.MAX_VALUE;
+        synchronized (pendingWrites) {
+            while (flushScheduled) {
+                long remaining = maxEndTime - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Timeout waiting for "+pendingWrites.size()+" pending writes to "+objectStore.getSummaryName()+", after "+Time.makeTimeStringRounded(timeout));
+                }
+                pendingWrites.wait(remaining);
+            }
+        }
+        // snapshot, as flushing concurrently adds and removes writers
+        List<StoreObjectAccessorWithLock> currentWriters;
+        synchronized (writers) {
+            currentWriters = ImmutableList.copyOf(writers.values());
+        }
+        for (StoreObjectAccessorWithLock writer : currentWriters) {
+            if (timeout.isPositive()) {
+                long remaining = maxEndTime - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Timeout waiting for writes to "+objectStore.getSummaryName()+", after "+Time.makeTimeStringRounded(timeout));
+                }
+                writer.waitForCurrentWrites(Duration.millis(remaining));
+            } else {
+                writer.waitForCurrentWrites(timeout);
+            }
+        }
     }
 
-    private void persist(String subPath, Memento entity) {
-        getWriter(getPath(subPath, entity.getId())).put(serializer.toString(entity));
+    /** number of writes (and deletes) requested but not yet flushed to the object store */
+    public int getNumPendingWrites() {
+        synchronized (pendingWrites) {
+            return pendingWrites.size();
+        }
+    }
+
+    /** total number of writes (and deletes) requested, by checkpoints and deltas */
+    public long getTotalWritesRequested() {
+        synchronized (pendingWrites) {
+            return totalWritesRequested;
+        }
+    }
+
+    /** total number of requested writes which were superseded by a later write to the same object before being flushed */
+    public long getTotalWritesCoalesced() {
+        synchronized (pendingWrites) {
+            return totalWritesCoalesced;
+        }
+    }
+
+    /** total number of batches of writes flushed to the object store */
+    public long getTotalFlushes() {
+        synchronized (pendingWrites) {
+            return totalFlushes;
+        }
     }
 
+    /** total time spent flushing batches of writes (including serialization) */
+    public Duration getTotalFlushTime() {
+        synchronized (pendingWrites) {
+            return Duration.nanos(totalFlushNanos);
+        }
+    }
+
+    /** records the write, to be serialized and written when next flushed; caller must synchronize on {@link #pendingWrites} */
+    private void persist(String subPath, Memento memento) {
+        addPendingWrite(getPath(subPath, memento.getId()), memento);
+    }
+
+    /** records the delete, to be done when next flushed; caller must synchronize on {@link #pendingWrites} */
     private void delete(String subPath, String id) {
-        StoreObjectAccessorWithLock w = getWriter(getPath(subPath, id));
-        w.delete();
-        synchronized (writers) {
-            writers.remove(id);
+        addPendingWrite(getPath(subPath, id), null);
+    }
+
+    private void addPendingWrite(String path, Memento memento) {
+        totalWritesRequested++;
+        if (pendingWrites.put(path, new PendingWrite(memento)) != null) {
+            totalWritesCoalesced++;
+        }
+    }
+
+    /** caller must synchronize on {@link #pendingWrites} */
+    private void scheduleFlush() {
+        if (!flushScheduled && !pendingWrites.isEmpty()) {
+            try {
+                flushExecutor.execute(flushJob);
+                flushScheduled = true;
+            } catch (RejectedExecutionException e) {
+                // only happens if stopped concurrently
+                if (LOG.isDebugEnabled()) LOG.debug("Discarding {} pending writes, as persister stopped", pendingWrites.size());
+                pendingWrites.clear();
+            }
+        }
+    }
+
+    private void flushPendingWrites() {
+        while (true) {
+            Map<String, PendingWrite> batch;
+            synchronized (pendingWrites) {
+                // writes requested before stopping are still flushed (unless stop times out and discards them)
+                if (pendingWrites.isEmpty()) {
+                    flushScheduled = false;
+                    pendingWrites.notifyAll();
+                    return;
+                }
+                batch = new LinkedHashMap<String, PendingWrite>(pendingWrites);
+                pendingWrites.clear();
+            }
+            
+            long startTime = System.nanoTime();
+            try {
+                objectStore.prepareForContendedWrite();
+                for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+                    try {
+                        entry.getValue().writeTo(entry.getKey());
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        LOG.warn("Problem persisting "+entry.getKey()+" to "+objectStore.getSummaryName(), e);
+                    }
+                }
+            } catch (Throwable t) {
+                LOG.warn("Problem flushing "+batch.size()+" writes to "+objectStore.getSummaryName()+" (discarding)", t);
+                synchronized (pendingWrites) {
+                    flushScheduled = false;
+                    pendingWrites.notifyAll();
+                    // writes requested during this flush would otherwise wait for an unrelated later write
+                    scheduleFlush();
+                }
+                throw Exceptions.propagate(t);
+            } finally {
+                long duration = System.nanoTime() - startTime;
+                synchronized (pendingWrites) {
+                    totalFlushes++;
+                    totalFlushNanos += duration;
+                }
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("Flushed {} writes to {}", batch.size(), objectStore.getSummaryName());
+        }
+    }
+
+    private class PendingWrite {
+        /** null for delete; only serialized when flushed, so if superseded it is never serialized */
+        final Memento memento;
+        
+        PendingWrite(Memento memento) {
+            this.memento = memento;
+        }
+        
+        void writeTo(String path) {
+            if (memento != null) {
+                getWriter(path).put(serializer.toString(memento));
+            } else {
+                getWriter(path).delete();
+                synchronized (writers) {
+                    writers.remove(path.substring(path.lastIndexOf('/')+1));
+                }
+            }
+        }
+    }
+
+    /** the {@link MementoFormat} named by the value of {@link BrooklynServerConfig#PERSISTENCE_FORMAT}, defaulting to XML if blank */
+    @VisibleForTesting
+    static MementoFormat toMementoFormat(String format) {
+        if (Strings.isBlank(format)) return MementoFormat.XML;
+        Maybe<MementoFormat> result = Enums.valueOfIgnoreCase(MementoFormat.class, format.trim());
+        if (result.isAbsent()) {
+            throw new IllegalArgumentException("Invalid "+BrooklynServerConfig.PERSISTENCE_FORMAT.getName()+" '"+format+"'; "
+                    + "must be one of "+Arrays.toString(MementoFormat.values()));
+        }
+        return result.get();
+    }
+
+    /**
+     * Rewrites every persisted entity, location, policy and enricher in the given store in the given format,
+     * without deserializing them (so no management context is needed).
+     * Must not be used while a persister is writing to the store.
+     * 
+     * @return the number of files rewritten
+     */
+    public static int convertFormat(PersistenceObjectStore objectStore, MementoFormat format) {
+        int count = 0;
+        for (String subPath : ImmutableList.of("entities", "locations", "policies", "enrichers")) {
+            for (String path : objectStore.listContentsWithSubPath(subPath)) {
+                StoreObjectAccessor accessor = objectStore.newAccessor(path);
+                String contents = accessor.get();
+                if (contents == null) continue;
+                String converted = format.convert(contents);
+                if (!converted.equals(contents)) {
+                    accessor.put(converted);
+                    count++;
+                }
+            }
         }
+        LOG.info("Converted {} persisted files in {} to {}", new Object[] {count, objectStore.getSummaryName(), format});
+        return count;
     }
 
     private String getPath(String subPath, String id) {
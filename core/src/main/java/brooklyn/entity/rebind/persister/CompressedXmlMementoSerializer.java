@@ -0,0 +1,129 @@
+package brooklyn.entity.rebind.persister;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.google.common.io.BaseEncoding;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+
+/**
+ * Writes mementos as compressed XML: the same XStream document as {@link XmlMementoSerializer}, written with XStream's
+ * {@link BinaryStreamWriter} (which writes each element name once and then refers to it by id, and has no markup
+ * or indentation), deflated, and (as the {@link PersistenceObjectStore} stores strings) base64-encoded,
+ * after a {@link #PREFIX} which identifies the format.
+ * <p>
+ * The object graph, and so the converters and the {@link brooklyn.mementos.BrooklynMementoPersister.LookupContext}
+ * resolution of entities, locations, policies and enrichers, is exactly as for {@link XmlMementoSerializer}.
+ * The gain is in size, not speed: in {@code MementoSerializerPerformanceTest}, 5000 entity mementos take 4.3MB
+ * rather than 10.1MB, but take three to five times as long to write, and about as long to read. So this suits stores
+ * where the bytes written cost more than the CPU (e.g. a remote object store).
+ * <p>
+ * {@link XmlMementoSerializer} (and so this class) reads either format, so a store can be switched between formats;
+ * see {@link #toXml(String)} and {@link #fromXml(String)} for converting existing files.
+ */
+public class CompressedXmlMementoSerializer<T> extends XmlMementoSerializer<T> {
+
+    /** start of every memento written in this format; cannot be the start of an XML document */
+    public static final String PREFIX = "brooklyn-compressed-xml-memento:1:";
+
+    public CompressedXmlMementoSerializer(ClassLoader classLoader) {
+        super(classLoader);
+    }
+
+    @Override
+    public String toString(T memento) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = newDeflater();
+        try {
+            BinaryStreamWriter writer = new BinaryStreamWriter(new DeflaterOutputStream(bytes, deflater));
+            xstream.marshal(memento, writer);
+            writer.close();
+        } finally {
+            deflater.end();
+        }
+        return encode(bytes);
+    }
+
+    public static boolean isCompressed(String contents) {
+        return contents != null && contents.startsWith(PREFIX);
+    }
+
+    /** a reader for the given contents, which must be in this format; callers should close it */
+    public static HierarchicalStreamReader newReader(String contents) {
+        if (!isCompressed(contents)) throw new IllegalArgumentException("Not a compressed XML memento");
+        byte[] bytes = BaseEncoding.base64().decode(contents.substring(PREFIX.length()));
+        return new BinaryStreamReader(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /** as {@link brooklyn.util.xstream.XmlUtil#readRootChildElements(String, String...)}, for contents in this format */
+    public static Map<String, String> readRootChildElements(String contents, String... names) {
+        List<String> wanted = Arrays.asList(names);
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        HierarchicalStreamReader reader = newReader(contents);
+        try {
+            while (result.size() < wanted.size() && reader.hasMoreChildren()) {
+                reader.moveDown();
+                String name = reader.getNodeName();
+                if (wanted.contains(name) && !result.containsKey(name)) {
+                    result.put(name, reader.getValue());
+                }
+                reader.moveUp();
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /** converts a memento written by {@link XmlMementoSerializer} to this format, without deserializing it */
+    public static String fromXml(String xml) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = newDeflater();
+        try {
+            BinaryStreamWriter writer = new BinaryStreamWriter(new DeflaterOutputStream(bytes, deflater));
+            new HierarchicalStreamCopier().copy(new XppDriver().createReader(new StringReader(xml)), writer);
+            writer.close();
+        } finally {
+            deflater.end();
+        }
+        return encode(bytes);
+    }
+
+    /** converts a memento in this format to the XML that {@link XmlMementoSerializer} would have written */
+    public static String toXml(String contents) {
+        StringWriter result = new StringWriter();
+        HierarchicalStreamWriter writer = new PrettyPrintWriter(result);
+        HierarchicalStreamReader reader = newReader(contents);
+        try {
+            new HierarchicalStreamCopier().copy(reader, writer);
+        } finally {
+            reader.close();
+        }
+        writer.flush();
+        return result.append("\n").toString();
+    }
+
+    private static Deflater newDeflater() {
+        // mementos repeat the same (long) class names and config key descriptions, so compress well even at this level
+        return new Deflater(Deflater.BEST_SPEED);
+    }
+
+    private static String encode(ByteArrayOutputStream bytes) {
+        return PREFIX + BaseEncoding.base64().encode(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,35 @@
+package brooklyn.entity.rebind.persister;
+
+/**
+ * Format in which mementos are written to a {@link PersistenceObjectStore};
+ * files in either format are read, whichever is configured.
+ */
+public enum MementoFormat {
+    /** as written by {@link XmlMementoSerializer} */
+    XML {
+        @Override
+        public MementoSerializer<Object> newSerializer(ClassLoader classLoader) {
+            return new XmlMementoSerializer<Object>(classLoader);
+        }
+        @Override
+        public String convert(String contents) {
+            return CompressedXmlMementoSerializer.isCompressed(contents) ? CompressedXmlMementoSerializer.toXml(contents) : contents;
+        }
+    },
+    /** as written by {@link CompressedXmlMementoSerializer} */
+    COMPRESSED_XML {
+        @Override
+        public MementoSerializer<Object> newSerializer(ClassLoader classLoader) {
+            return new CompressedXmlMementoSerializer<Object>(classLoader);
+        }
+        @Override
+        public String convert(String contents) {
+            return CompressedXmlMementoSerializer.isCompressed(contents) ? contents : CompressedXmlMementoSerializer.fromXml(contents);
+        }
+    };
+
+    public abstract MementoSerializer<Object> newSerializer(ClassLoader classLoader);
+
+    /** returns the given persisted memento in this format (unchanged if it already is) */
+    public abstract String convert(String contents);
+}
@@ -105,6 +105,21 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         }
     }
 
+    /** also reads mementos written by {@link CompressedXmlMementoSerializer}, so a store may contain files in either format */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T fromString(String contents) {
+        if (CompressedXmlMementoSerializer.isCompressed(contents)) {
+            HierarchicalStreamReader reader = CompressedXmlMementoSerializer.newReader(contents);
+            try {
+                return (T) xstream.unmarshal(reader);
+            } finally {
+                reader.close();
+            }
+        }
+        return super.fromString(contents);
+    }
+
     @Override
     public void setLookupContext(LookupContext lookupContext) {
         this.lookupContext = checkNotNull(lookupContext, "lookupContext");
@@ -3,8 +3,14 @@ package brooklyn.event.basic;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,16 +18,29 @@ import org.slf4j.LoggerFactory;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.event.AttributeSensor;
+import brooklyn.management.ExecutionContext;
 import brooklyn.util.flags.TypeCoercions;
+import brooklyn.util.task.BasicExecutionContext;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
 /**
  * A {@link Map} of {@link Entity} attribute values.
+ * <p>
+ * Values are either kept in a storage map keyed by the sensor's name parts (see
+ * {@link #AttributeMap(AbstractEntity, Map)}), or in slots (see {@link #AttributeMap(AbstractEntity)}):
+ * each sensor name is interned to an index shared by all entities of the same type, and the values
+ * are held in a flat array, so getting and setting an attribute neither hashes a list of names nor allocates.
+ * A type's index is bounded (see {@link SlotIndex#MAX_SIZE}); the values of sensors beyond that are kept in a map.
  */
 public final class AttributeMap implements Serializable {
 
@@ -35,11 +54,57 @@ public final class AttributeMap implements Serializable {
     
     private final AbstractEntity entity;
 
+    /** 
+     * The number of events not published by the {@link AttributeMap}s of all entities of a management context
+     * (see {@link brooklyn.management.internal.AbstractManagementContext#getSuppressedAttributeEvents()}).
+     */
+    public static class SuppressedEvents {
+        private final AtomicLong unchanged = new AtomicLong();
+        private final AtomicLong rateLimited = new AtomicLong();
+
+        /** the number of events not published because the value was unchanged */
+        public long getUnchanged() {
+            return unchanged.get();
+        }
+
+        /** the number of events not published because they were superseded within a rate-limited period */
+        public long getRateLimited() {
+            return rateLimited.get();
+        }
+    }
+
+    /** when the last event of a rate-limited attribute was published, and the publication of the latest value if waiting */
+    private static class RateLimit {
+        boolean published;
+        long lastPublishedNanos;
+        Future<?> pendingPublish;
+    }
+
+    private static final AtomicLongFieldUpdater<AttributeMap> NUM_SUPPRESSED_UNCHANGED = 
+            AtomicLongFieldUpdater.newUpdater(AttributeMap.class, "numSuppressedUnchanged");
+    private static final AtomicLongFieldUpdater<AttributeMap> NUM_SUPPRESSED_RATE_LIMITED = 
+            AtomicLongFieldUpdater.newUpdater(AttributeMap.class, "numSuppressedRateLimited");
+
+    // created on first use, as most entities have no rate-limited attributes
+    private transient volatile ConcurrentMap<String, RateLimit> rateLimits;
+    private volatile long numSuppressedUnchanged;
+    private volatile long numSuppressedRateLimited;
+    // the totals for the entity's management context, or null if not known
+    private transient volatile SuppressedEvents totalSuppressed;
+
     // Note that we synchronize on the top-level map, to handle concurrent updates and and gets (ENGR-2111)
+    // null if values are held in slots
     private final Map<Collection<String>, Object> values;
 
+    // non-null iff values are held in slots; entries are null for absent attributes.
+    // Reads are lock-free; writes synchronize on this, so that growing the array cannot lose a concurrent write.
+    private final SlotIndex slotIndex;
+    private volatile AtomicReferenceArray<Object> slots;
+    // for slotted values, those of the sensors not in the (full) index, keyed by name parts; created on first use
+    private volatile ConcurrentMap<Collection<String>, Object> overflow;
+
     /**
-     * Creates a new AttributeMap.
+     * Creates a new AttributeMap, keeping the values in the given storage map.
      *
      * @param entity the EntityLocal this AttributeMap belongs to.
      * @throws IllegalArgumentException if entity is null
@@ -47,15 +112,53 @@ public final class AttributeMap implements Serializable {
     public AttributeMap(AbstractEntity entity, Map<Collection<String>, Object> storage) {
         this.entity = checkNotNull(entity, "entity must be specified");
         this.values = checkNotNull(storage, "storage map must not be null");
+        this.slotIndex = null;
+    }
+
+    /**
+     * Creates a new AttributeMap, keeping the values in slots indexed per entity type (rather than in
+     * the management context's {@link brooklyn.internal.storage.BrooklynStorage}).
+     *
+     * @param entity the EntityLocal this AttributeMap belongs to.
+     * @throws IllegalArgumentException if entity is null
+     */
+    public AttributeMap(AbstractEntity entity) {
+        this.entity = checkNotNull(entity, "entity must be specified");
+        this.values = null;
+        this.slotIndex = SlotIndex.forType(entity.getClass());
+        this.slots = new AtomicReferenceArray<Object>(slotIndex.size());
+    }
+
+    /** whether values are held in slots, i.e. this was created with {@link #AttributeMap(AbstractEntity)} */
+    public boolean isSlotted() {
+        return slotIndex != null;
     }
 
     public Map<Collection<String>, Object> asRawMap() {
+        if (isSlotted()) {
+            ImmutableMap.Builder<Collection<String>, Object> result = ImmutableMap.builder();
+            AtomicReferenceArray<Object> current = slots;
+            for (int i = 0; i < current.length(); i++) {
+                Object val = current.get(i);
+                if (val != null) result.put(slotIndex.getNameParts(i), val);
+            }
+            if (overflow != null) result.putAll(overflow);
+            return result.build();
+        }
         return ImmutableMap.copyOf(values);
     }
 
     public Map<String, Object> asMap() {
         Map<String, Object> result = Maps.newLinkedHashMap();
-        for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
+        if (isSlotted()) {
+            AtomicReferenceArray<Object> current = slots;
+            for (int i = 0; i < current.length(); i++) {
+                Object val = current.get(i);
+                if (val != null) result.put(slotIndex.getName(i), (isNull(val)) ? null : val);
+            }
+            if (overflow == null) return result;
+        }
+        for (Map.Entry<Collection<String>, Object> entry : (isSlotted() ? overflow : values).entrySet()) {
             String sensorName = Joiner.on('.').join(entry.getKey());
             Object val = (isNull(entry.getValue())) ? null : entry.getValue();
             result.put(sensorName, val);
@@ -84,7 +187,7 @@ public final class AttributeMap implements Serializable {
         }
 
         @SuppressWarnings("unchecked")
-        T oldValue = (T) values.put(path, newValue);
+        T oldValue = (T) (isSlotted() ? setSlotted(slotIndex.intern(path), path, newValue) : values.put(path, newValue));
         return (isNull(oldValue)) ? null : oldValue;
     }
 
@@ -93,12 +196,120 @@ public final class AttributeMap implements Serializable {
         Preconditions.checkArgument(!path.isEmpty(), "path can't be empty");
     }
 
+    /** updates the value, publishing an event according to the entity's {@link AbstractEntity#getSensorPublishPolicy(AttributeSensor)} */
     public <T> T update(AttributeSensor<T> attribute, T newValue) {
-        T oldValue = updateWithoutPublishing(attribute, newValue);
-        entity.emitInternal(attribute, newValue);
-        return oldValue;
+        return update(attribute, newValue, entity.getSensorPublishPolicy(attribute));
     }
-    
+
+    /**
+     * Updates the value, publishing an event according to the given policy.
+     *
+     * @return the old value
+     */
+    public <T> T update(AttributeSensor<T> attribute, T newValue, SensorPublishPolicy policy) {
+        switch (policy.getMode()) {
+        case ALWAYS:
+            T oldValue = updateWithoutPublishing(attribute, newValue);
+            entity.emitInternal(attribute, newValue);
+            return oldValue;
+        case ON_CHANGE:
+            Object rawOldValue = updateRaw(attribute, newValue);
+            @SuppressWarnings("unchecked")
+            T result = (T) (isNull(rawOldValue) ? null : rawOldValue);
+            if (rawOldValue != null && Objects.equal(result, newValue)) {
+                NUM_SUPPRESSED_UNCHANGED.incrementAndGet(this);
+                if (totalSuppressed != null) totalSuppressed.unchanged.incrementAndGet();
+            } else {
+                entity.emitInternal(attribute, newValue);
+            }
+            return result;
+        default:
+            T previous = updateWithoutPublishing(attribute, newValue);
+            publishRateLimited(attribute, newValue, policy.getPeriod().toNanoseconds());
+            return previous;
+        }
+    }
+
+    /**
+     * Publishes the new value now if nothing has been published for the period, otherwise schedules the
+     * (then latest) value to be published when the period ends, in the entity's execution context.
+     * Values are published immediately if the entity is not (or no longer) managed.
+     */
+    private <T> void publishRateLimited(final AttributeSensor<T> attribute, T newValue, long periodNanos) {
+        if (!entity.getManagementSupport().isDeployed()) {
+            entity.emitInternal(attribute, newValue);
+            return;
+        }
+        final RateLimit lim = getRateLimit(attribute.getName());
+        boolean publishNow = false;
+        synchronized (lim) {
+            long now = System.nanoTime();
+            if (lim.pendingPublish == null && (!lim.published || now - lim.lastPublishedNanos >= periodNanos)) {
+                lim.published = true;
+                lim.lastPublishedNanos = now;
+                publishNow = true;
+            } else if (lim.pendingPublish != null) {
+                // superseded the value already waiting to be published
+                NUM_SUPPRESSED_RATE_LIMITED.incrementAndGet(this);
+                if (totalSuppressed != null) totalSuppressed.rateLimited.incrementAndGet();
+            } else {
+                Runnable job = new Runnable() {
+                    @Override public void run() {
+                        synchronized (lim) {
+                            lim.pendingPublish = null;
+                            lim.lastPublishedNanos = System.nanoTime();
+                        }
+                        entity.emitInternal(attribute, getValue(attribute));
+                    }
+                    @Override public String toString() {
+                        return "Publish rate-limited "+attribute.getName()+" on "+entity;
+                    }};
+                ExecutionContext executionContext = entity.getExecutionContext();
+                if (executionContext instanceof BasicExecutionContext) {
+                    lim.pendingPublish = ((BasicExecutionContext)executionContext).scheduleTransient(job, 
+                            Duration.nanos(lim.lastPublishedNanos + periodNanos - now));
+                } else {
+                    lim.lastPublishedNanos = now;
+                    publishNow = true;
+                }
+            }
+        }
+        if (publishNow) entity.emitInternal(attribute, newValue);
+    }
+
+    private RateLimit getRateLimit(String name) {
+        ConcurrentMap<String, RateLimit> limits = rateLimits;
+        if (limits == null) {
+            synchronized (this) {
+                if (rateLimits == null) rateLimits = Maps.newConcurrentMap();
+                limits = rateLimits;
+            }
+        }
+        RateLimit result = limits.get(name);
+        if (result == null) {
+            limits.putIfAbsent(name, new RateLimit());
+            result = limits.get(name);
+        }
+        return result;
+    }
+
+    /**
+     * Cancels the publication of any rate-limited values waiting for the end of their period;
+     * for when the entity is no longer managed.
+     */
+    public void cancelPendingPublications() {
+        ConcurrentMap<String, RateLimit> limits = rateLimits;
+        if (limits == null) return;
+        for (RateLimit lim : limits.values()) {
+            synchronized (lim) {
+                if (lim.pendingPublish != null) {
+                    lim.pendingPublish.cancel(false);
+                    lim.pendingPublish = null;
+                }
+            }
+        }
+    }
+
     public <T> T updateWithoutPublishing(AttributeSensor<T> attribute, T newValue) {
         if (log.isTraceEnabled()) {
             Object oldValue = getValue(attribute);
@@ -109,17 +320,52 @@ public final class AttributeMap implements Serializable {
             }
         }
 
-        T oldValue = (T) update(attribute.getNameParts(), newValue);
-        
+        @SuppressWarnings("unchecked")
+        T oldValue = (T) updateRaw(attribute, newValue);
         return (isNull(oldValue)) ? null : oldValue;
     }
 
+    /** sets the value, returning the previous raw value: null if absent, or the null marker if set to null */
+    private Object updateRaw(AttributeSensor<?> attribute, Object newValue) {
+        Object val = (newValue == null) ? typedNull() : newValue;
+        if (isSlotted()) {
+            return setSlotted(slotIndex.intern(attribute), attribute.getNameParts(), val);
+        }
+        return values.put(attribute.getNameParts(), val);
+    }
+
+    /** sets the totals (normally of the entity's management context) in which to also count the events not published */
+    public void setSuppressedEventTotals(SuppressedEvents totals) {
+        totalSuppressed = totals;
+    }
+
+    public SuppressedEvents getSuppressedEventTotals() {
+        return totalSuppressed;
+    }
+
+    /** the number of events not published by {@link #update(AttributeSensor, Object, SensorPublishPolicy)}, as unchanged or rate-limited */
+    public long getNumSuppressedEvents() {
+        return numSuppressedUnchanged + numSuppressedRateLimited;
+    }
+
+    public long getNumSuppressedUnchangedEvents() {
+        return numSuppressedUnchanged;
+    }
+
+    public long getNumSuppressedRateLimitedEvents() {
+        return numSuppressedRateLimited;
+    }
+
     public void remove(AttributeSensor<?> attribute) {
         if (log.isDebugEnabled()) {
             log.debug("removing attribute {} on {}", attribute.getName(), entity);
         }
 
-        remove(attribute.getNameParts());
+        if (isSlotted()) {
+            setSlotted(slotIndex.indexOf(attribute.getName()), attribute.getNameParts(), null);
+        } else {
+            remove(attribute.getNameParts());
+        }
     }
 
     // TODO path must be ordered(and legal to contain duplicates like "a.b.a"; list would be better
@@ -130,7 +376,11 @@ public final class AttributeMap implements Serializable {
             log.trace("removing sensor {} for {}", new Object[] {path, entity});
         }
 
-        values.remove(path);
+        if (isSlotted()) {
+            setSlotted(slotIndex.indexOf(path), path, null);
+        } else {
+            values.remove(path);
+        }
     }
 
     /**
@@ -145,15 +395,53 @@ public final class AttributeMap implements Serializable {
         // or the leaf value if only one value. Arguably that is not required - what is/was the use-case?
         // 
         checkPath(path);
-        Object result = values.get(path);
+        Object result = isSlotted() ? getSlotted(slotIndex.indexOf(path), path) : values.get(path);
         return (isNull(result)) ? null : result;
     }
 
     @SuppressWarnings("unchecked")
     public <T> T getValue(AttributeSensor<T> sensor) {
+        if (isSlotted()) {
+            Object result = getSlotted(slotIndex.indexOf(sensor.getName()), sensor.getNameParts());
+            return (T) TypeCoercions.coerce((isNull(result)) ? null : result, sensor.getType());
+        }
         return (T) TypeCoercions.coerce(getValue(sensor.getNameParts()), sensor.getType());
     }
 
+    /** the value in the slot, or if none (i.e. the name is not in the index) in the overflow map */
+    private Object getSlotted(int slot, Collection<String> path) {
+        if (slot < 0) {
+            Map<Collection<String>, Object> current = overflow;
+            return (current != null) ? current.get(ImmutableList.copyOf(path)) : null;
+        }
+        AtomicReferenceArray<Object> current = slots;
+        return (slot < current.length()) ? current.get(slot) : null;
+    }
+
+    /** sets the slot, or if none the entry in the overflow map (null meaning absent), returning the previous value */
+    private synchronized Object setSlotted(int slot, Collection<String> path, Object val) {
+        if (slot < 0) {
+            if (overflow == null) {
+                if (val == null) return null;
+                overflow = Maps.newConcurrentMap();
+            }
+            return (val == null) ? overflow.remove(ImmutableList.copyOf(path)) : overflow.put(ImmutableList.copyOf(path), val);
+        }
+        AtomicReferenceArray<Object> current = slots;
+        if (slot >= current.length()) {
+            if (val == null) return null;
+            // size for all the sensors now known for this type, as other instances will likely set them too,
+            // and at least half as many again, so that setting a run of new sensors does not copy for each
+            int length = Math.max(slot+1, Math.max(slotIndex.size(), current.length() + (current.length() >> 1)));
+            AtomicReferenceArray<Object> grown = new AtomicReferenceArray<Object>(length);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            slots = current = grown;
+        }
+        return current.getAndSet(slot, val);
+    }
+
     @SuppressWarnings("unchecked")
     private <T> T typedNull() {
         return (T) Marker.NULL;
@@ -162,4 +450,94 @@ public final class AttributeMap implements Serializable {
     private boolean isNull(Object t) {
         return t == Marker.NULL;
     }
+
+    /**
+     * The interned sensor names for one entity type: each distinct name is given the next index, for use by
+     * all {@link AttributeMap}s of entities of that type. Names are never released (while the type has
+     * entities), so the slot arrays are sized by the number of distinct sensors ever set on that type;
+     * hence at most {@link #MAX_SIZE} names are interned per type (e.g. in case a type's sensor names are
+     * generated), beyond which values are kept in each {@link AttributeMap}'s overflow map.
+     */
+    private static class SlotIndex {
+        static final int MAX_SIZE = 1024;
+        private static final int INITIAL_CAPACITY = 16;
+
+        // held weakly, by the type's AttributeMaps, so that nothing is kept for types with no entities
+        private static final LoadingCache<Class<?>, SlotIndex> INDEXES = CacheBuilder.newBuilder()
+                .weakKeys()
+                .weakValues()
+                .build(new CacheLoader<Class<?>, SlotIndex>() {
+                    @Override public SlotIndex load(Class<?> type) {
+                        return new SlotIndex();
+                    }});
+
+        static SlotIndex forType(Class<?> type) {
+            return INDEXES.getUnchecked(type);
+        }
+
+        private final ConcurrentMap<String, Integer> indexes = Maps.newConcurrentMap();
+        // guarded by this; entries below size are never modified, and the arrays are replaced (doubling) when full,
+        // before size is incremented, so entries below size can be read without the lock
+        private volatile String[] names = new String[INITIAL_CAPACITY];
+        private volatile Object[] nameParts = new Object[INITIAL_CAPACITY];
+        private volatile int size;
+        private boolean loggedFull;
+
+        int size() {
+            return size;
+        }
+
+        String getName(int index) {
+            return names[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        Collection<String> getNameParts(int index) {
+            return (Collection<String>) nameParts[index];
+        }
+
+        /** the index for the given name, or -1 if it has not been interned (nor will be, if the index is full) */
+        int indexOf(String name) {
+            Integer result = indexes.get(name);
+            return (result == null) ? -1 : result;
+        }
+
+        int indexOf(Collection<String> path) {
+            return indexOf(Joiner.on('.').join(path));
+        }
+
+        int intern(AttributeSensor<?> sensor) {
+            Integer result = indexes.get(sensor.getName());
+            return (result != null) ? result : intern(sensor.getName(), sensor.getNameParts());
+        }
+
+        int intern(Collection<String> path) {
+            String name = Joiner.on('.').join(path);
+            Integer result = indexes.get(name);
+            return (result != null) ? result : intern(name, path);
+        }
+
+        private synchronized int intern(String name, Collection<String> path) {
+            Integer result = indexes.get(name);
+            if (result != null) return result;
+            
+            int index = size;
+            if (index >= MAX_SIZE) {
+                if (!loggedFull) {
+                    log.debug("Sensor index of entity type full, with {} sensors; keeping the values of others (such as {}) in maps", index, name);
+                    loggedFull = true;
+                }
+                return -1;
+            }
+            if (index == names.length) {
+                names = Arrays.copyOf(names, index*2);
+                nameParts = Arrays.copyOf(nameParts, index*2);
+            }
+            names[index] = name;
+            nameParts[index] = ImmutableList.copyOf(path);
+            indexes.put(name, index);
+            size = index+1;
+            return index;
+        }
+    }
 }
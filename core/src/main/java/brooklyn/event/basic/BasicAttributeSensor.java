@@ -11,6 +11,8 @@ import com.google.common.reflect.TypeToken;
 public class BasicAttributeSensor<T> extends BasicSensor<T> implements AttributeSensor<T> {
     private static final long serialVersionUID = -2493209215974820300L;
 
+    private SensorPublishPolicy publishPolicy;
+
     public BasicAttributeSensor(Class<T> type, String name) {
         this(type, name, name);
     }
@@ -27,4 +29,16 @@ public class BasicAttributeSensor<T> extends BasicSensor<T> implements Attribute
         super(typeToken, name, description);
     }
     
+    public BasicAttributeSensor(TypeToken<T> typeToken, String name, String description, SensorPublishPolicy publishPolicy) {
+        super(typeToken, name, description);
+        this.publishPolicy = publishPolicy;
+    }
+    
+    /**
+     * The policy for publishing events when this attribute is set, unless overridden by the entity's
+     * {@link brooklyn.entity.basic.BrooklynConfigKeys#SENSOR_PUBLISH_POLICIES}; null to use the entity's default.
+     */
+    public SensorPublishPolicy getPublishPolicy() {
+        return publishPolicy;
+    }
 }
@@ -0,0 +1,100 @@
+package brooklyn.event.basic;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Serializable;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Objects;
+
+/**
+ * Whether setting an attribute publishes a sensor event: {@link #ALWAYS} (the default), only when the value
+ * has changed ({@link #ON_CHANGE}), or at most once per period ({@link #atMostEvery(Duration)}), in which case
+ * changes made within the period are coalesced and the latest value is published at the end of the period.
+ * <p>
+ * The attribute value itself is always updated; the policy only controls the events (and, for unchanged values,
+ * the persistence of the entity).
+ * <p>
+ * A policy can be declared on a sensor (see {@link Sensors#newSensorWithPublishPolicy(SensorPublishPolicy, brooklyn.event.AttributeSensor)}),
+ * or configured per entity with {@link brooklyn.entity.basic.BrooklynConfigKeys#SENSOR_PUBLISH_POLICIES}
+ * and {@link brooklyn.entity.basic.BrooklynConfigKeys#DEFAULT_SENSOR_PUBLISH_POLICY}.
+ * Policies can be given as strings: "always", "onChange", or "atMostEvery 500ms".
+ */
+public final class SensorPublishPolicy implements Serializable {
+
+    private static final long serialVersionUID = 3367158236380920125L;
+
+    public static enum Mode {
+        ALWAYS,
+        ON_CHANGE,
+        RATE_LIMITED;
+    }
+
+    /** publishes an event every time the attribute is set */
+    public static final SensorPublishPolicy ALWAYS = new SensorPublishPolicy(Mode.ALWAYS, null);
+
+    /** publishes an event only when the attribute is set to a value different from (i.e. not equal to) its current value */
+    public static final SensorPublishPolicy ON_CHANGE = new SensorPublishPolicy(Mode.ON_CHANGE, null);
+
+    private static final String AT_MOST_EVERY = "atMostEvery";
+
+    /**
+     * publishes at most one event per period: the first change is published immediately,
+     * and later changes within the period are published as one event (of the latest value) when it ends
+     */
+    public static SensorPublishPolicy atMostEvery(Duration period) {
+        checkArgument(checkNotNull(period, "period").toNanoseconds() > 0, "period must be positive");
+        return new SensorPublishPolicy(Mode.RATE_LIMITED, period);
+    }
+
+    /** parses "always", "onChange" (or "on_change"), or "atMostEvery 500ms"; for use by {@link brooklyn.util.flags.TypeCoercions} */
+    public static SensorPublishPolicy valueOf(String val) {
+        String s = checkNotNull(val, "val").trim();
+        if (s.equalsIgnoreCase("always")) return ALWAYS;
+        if (s.equalsIgnoreCase("onChange") || s.equalsIgnoreCase("on_change") || s.equalsIgnoreCase("on-change")) return ON_CHANGE;
+        if (s.regionMatches(true, 0, AT_MOST_EVERY, 0, AT_MOST_EVERY.length())) {
+            return atMostEvery(Duration.parse(s.substring(AT_MOST_EVERY.length()).trim()));
+        }
+        throw new IllegalArgumentException("Invalid sensor publish policy '"+val+"'; expected always, onChange or atMostEvery <duration>");
+    }
+
+    private final Mode mode;
+    private final Duration period;
+
+    private SensorPublishPolicy(Mode mode, Duration period) {
+        this.mode = mode;
+        this.period = period;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** the minimum time between events, if {@link Mode#RATE_LIMITED}; otherwise null */
+    public Duration getPeriod() {
+        return period;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SensorPublishPolicy)) return false;
+        SensorPublishPolicy o = (SensorPublishPolicy) obj;
+        return mode == o.mode && Objects.equal(period, o.period);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(mode, period);
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+        case ALWAYS: return "always";
+        case ON_CHANGE: return "onChange";
+        default: return AT_MOST_EVERY+" "+period;
+        }
+    }
+}
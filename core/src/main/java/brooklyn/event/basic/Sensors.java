@@ -68,4 +68,9 @@ public class Sensors {
         return newSensorRenamed(prefix+sensor.getName(), sensor);
     }
 
+    /** a copy of the given sensor whose events are published according to the given policy */
+    public static <T> AttributeSensor<T> newSensorWithPublishPolicy(SensorPublishPolicy policy, AttributeSensor<T> sensor) {
+        return new BasicAttributeSensor<T>(sensor.getTypeToken(), sensor.getName(), sensor.getDescription(), policy);
+    }
+
 }
@@ -32,7 +32,7 @@ public abstract class AbstractFeed {
 
     public AbstractFeed(EntityLocal entity) {
         this.entity = checkNotNull(entity, "entity");
-        this.poller = new Poller<Object>(entity);
+        this.poller = new Poller<Object>(entity, getClass().getSimpleName());
     }
     
     /** true if everything has been _started_ (or it is starting) but not stopped,
@@ -0,0 +1,454 @@
+package brooklyn.event.feed;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Schedules the periodic polls of all {@link Poller}s of a management context
+ * (see {@link brooklyn.management.internal.AbstractManagementContext#getPollScheduler()}),
+ * using a hashed timing wheel driven by a single thread.
+ * <p>
+ * Each scheduled poll is one entry in the wheel, whichever its period; when due, it is handed to its
+ * {@link Dispatcher} (which runs it, e.g. in a task of the entity) and is re-inserted for its next due time.
+ * Dispatchers are called by a small pool of threads (see {@link #DISPATCH_THREADS}) rather than by the wheel
+ * thread, so a slow dispatcher does not delay other polls.
+ * If the previous run of a poll has not completed (or not been dispatched) when it is next due, that poll is skipped.
+ * <p>
+ * Periods can be jittered (see {@link #JITTER}), as can the first poll, so that many entities started
+ * (or rebinded) together do not all poll at the same instant. Alternatively, polls can be scheduled in phase with
+ * others of the same key (see {@link #scheduleInPhase(String, Duration, Object, Dispatcher, Runnable)}), e.g. so that
+ * the polls of one machine can be run together.
+ * <p>
+ * The number of polls and skipped polls, and the lateness and duration of polls, are recorded per feed type;
+ * see {@link #getStats()}.
+ */
+public class PollScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PollScheduler.class);
+
+    public static final ConfigKey<Duration> TICK_DURATION = ConfigKeys.newConfigKey(Duration.class,
+            "brooklyn.poll.tickDuration",
+            "The granularity of poll scheduling: polls are run at the first tick after they are due",
+            Duration.millis(10));
+
+    public static final ConfigKey<Integer> WHEEL_SIZE = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.poll.wheelSize",
+            "The number of ticks in one revolution of the poll scheduler's wheel (rounded up to a power of 2)",
+            512);
+
+    public static final ConfigKey<Double> JITTER = ConfigKeys.newDoubleConfigKey(
+            "brooklyn.poll.jitter",
+            "The fraction by which each poll period is randomly lengthened or shortened (and by which the first poll is delayed); "
+            + "0 for exact periods",
+            0.1);
+
+    public static final ConfigKey<Integer> DISPATCH_THREADS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.poll.dispatchThreads",
+            "The number of threads which hand due polls to their dispatchers (e.g. submitting them as tasks of their entity)",
+            4);
+
+    /** Runs a poll; for example by submitting a task which calls it. */
+    public interface Dispatcher {
+        void dispatch(Runnable poll);
+    }
+
+    /** A scheduled poll, for cancelling it. */
+    public interface Handle {
+        void cancel();
+        boolean isCancelled();
+    }
+
+    /** Counts for polls of one feed type. */
+    public static class PollStats {
+        private final AtomicLong polls = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong dispatchFailures = new AtomicLong();
+        private final AtomicLong totalLatenessNanos = new AtomicLong();
+        private final AtomicLong totalDurationNanos = new AtomicLong();
+
+        /** the number of polls run (completed or in progress) */
+        public long getPolls() {
+            return polls.get();
+        }
+
+        /** the number of polls not run, because the previous poll was still in progress when due */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /** the number of polls not run, because their dispatcher failed or rejected them */
+        public long getDispatchFailures() {
+            return dispatchFailures.get();
+        }
+
+        /** the total time from when polls were due until they started */
+        public Duration getTotalLateness() {
+            return Duration.nanos(totalLatenessNanos.get());
+        }
+
+        /** the total time taken by completed polls */
+        public Duration getTotalDuration() {
+            return Duration.nanos(totalDurationNanos.get());
+        }
+
+        @Override
+        public String toString() {
+            return "PollStats[polls="+getPolls()+"; skipped="+getSkipped()+"; dispatchFailures="+getDispatchFailures()+"; lateness="+getTotalLateness()+"; duration="+getTotalDuration()+"]";
+        }
+    }
+
+    private class Entry implements Handle, Runnable {
+        final PollStats stats;
+        final long periodNanos;
+        final Dispatcher dispatcher;
+        final Runnable poll;
+        /** for polls in phase with others of their key, the offset of their due times; otherwise -1 */
+        final long phaseOffsetNanos;
+        final AtomicBoolean inProgress = new AtomicBoolean();
+        volatile boolean cancelled;
+
+        // the following are only accessed by the wheel thread
+        long dueNanos;
+        long remainingRounds;
+        Entry prev, next;
+        int bucket = -1;
+
+        // set by the wheel thread before dispatching; inProgress is set from then until the poll completes,
+        // or until dispatching it fails
+        volatile long dispatchedDueNanos;
+
+        Entry(PollStats stats, long periodNanos, long phaseOffsetNanos, Dispatcher dispatcher, Runnable poll) {
+            this.stats = stats;
+            this.periodNanos = periodNanos;
+            this.phaseOffsetNanos = phaseOffsetNanos;
+            this.dispatcher = dispatcher;
+            this.poll = poll;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** the poll, as given to the dispatcher */
+        @Override
+        public void run() {
+            long startNanos = ticker.read();
+            stats.totalLatenessNanos.addAndGet(Math.max(0, startNanos - dispatchedDueNanos));
+            try {
+                if (!cancelled) poll.run();
+            } finally {
+                stats.totalDurationNanos.addAndGet(ticker.read() - startNanos);
+                inProgress.set(false);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "PollScheduler.Entry["+poll+"]";
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Entry[] wheel;
+    private final int mask;
+    private final double jitter;
+    private final Ticker ticker;
+    private final ExecutorService dispatchExecutor;
+    private final Random random = new Random();
+    private final Queue<Entry> newEntries = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger numEntries = new AtomicInteger();
+    private final ConcurrentMap<String, PollStats> stats = Maps.newConcurrentMap();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public PollScheduler(StringConfigMap config) {
+        this(config.getConfig(TICK_DURATION), config.getConfig(WHEEL_SIZE), config.getConfig(JITTER), 
+                config.getConfig(DISPATCH_THREADS), Ticker.systemTicker());
+    }
+
+    public PollScheduler(Duration tickDuration, int wheelSize, double jitter) {
+        this(tickDuration, wheelSize, jitter, DISPATCH_THREADS.getDefaultValue(), Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    PollScheduler(Duration tickDuration, int wheelSize, double jitter, int dispatchThreads, Ticker ticker) {
+        checkArgument(tickDuration.toNanoseconds() > 0, "tickDuration must be positive");
+        checkArgument(wheelSize > 0, "wheelSize must be positive");
+        checkArgument(jitter >= 0 && jitter < 1, "jitter must be at least 0 and less than 1");
+        checkArgument(dispatchThreads > 0, "dispatchThreads must be positive");
+        this.tickNanos = tickDuration.toNanoseconds();
+        this.jitter = jitter;
+        this.ticker = checkNotNull(ticker, "ticker");
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) size <<= 1;
+        this.wheel = new Entry[size];
+        this.mask = size - 1;
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 60, TimeUnit.SECONDS, 
+                new LinkedBlockingQueue<Runnable>(), 
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-poll-dispatcher-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        dispatchExecutor = executor;
+
+        startNanos = ticker.read();
+        thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    runWheel(startNanos);
+                }},
+                "brooklyn-poll-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedules the poll to run every period (jittered), until the returned handle is cancelled.
+     * The first run is immediate, or delayed by up to the jitter.
+     */
+    public Handle schedule(String feedType, Duration period, Dispatcher dispatcher, Runnable poll) {
+        long periodNanos = checkPeriod(period);
+        Entry entry = new Entry(getStats(checkNotNull(feedType, "feedType")), periodNanos, -1,
+                checkNotNull(dispatcher, "dispatcher"), checkNotNull(poll, "poll"));
+        entry.dueNanos = ticker.read() + (long) (periodNanos * jitter * nextRandom());
+        add(entry);
+        return entry;
+    }
+
+    /**
+     * Schedules the poll to run every period exactly (not jittered), in phase with the other polls with an equal
+     * phase key: each runs at a whole number of its periods after an offset derived from the key, so polls of one key
+     * run in the same tick whenever they are due at the same time (i.e. every time, if their periods are equal).
+     * The offsets of different keys are spread over the period. The first run is at the next such time.
+     */
+    public Handle scheduleInPhase(String feedType, Duration period, Object phaseKey, Dispatcher dispatcher, Runnable poll) {
+        long periodNanos = checkPeriod(period);
+        // spread the keys' hashes over a range of millis far longer than any period, so offsets are spread over any period
+        long phaseOffsetNanos = TimeUnit.MILLISECONDS.toNanos((checkNotNull(phaseKey, "phaseKey").hashCode() * 0x9E3779B9L) & 0xFFFFFFFFL);
+        Entry entry = new Entry(getStats(checkNotNull(feedType, "feedType")), periodNanos, phaseOffsetNanos,
+                checkNotNull(dispatcher, "dispatcher"), checkNotNull(poll, "poll"));
+        entry.dueNanos = nextDueInPhase(entry, ticker.read());
+        add(entry);
+        return entry;
+    }
+
+    private long checkPeriod(Duration period) {
+        if (!running) throw new IllegalStateException("Poll scheduler has been stopped");
+        long result = checkNotNull(period, "period").toNanoseconds();
+        checkArgument(result > 0, "period must be positive");
+        return result;
+    }
+
+    private void add(Entry entry) {
+        numEntries.incrementAndGet();
+        newEntries.add(entry);
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public Map<String, PollStats> getStats() {
+        return ImmutableMap.copyOf(stats);
+    }
+
+    /** the number of polls currently scheduled (including recently cancelled ones not yet discarded) */
+    public int getNumScheduled() {
+        return numEntries.get();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+        dispatchExecutor.shutdownNow();
+    }
+
+    private PollStats getStats(String feedType) {
+        PollStats result = stats.get(feedType);
+        if (result == null) {
+            stats.putIfAbsent(feedType, new PollStats());
+            result = stats.get(feedType);
+        }
+        return result;
+    }
+
+    private double nextRandom() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private long nextPeriod(Entry entry) {
+        if (jitter == 0 || entry.phaseOffsetNanos >= 0) return entry.periodNanos;
+        return (long) (entry.periodNanos * (1 + jitter * (2 * nextRandom() - 1)));
+    }
+
+    /** the first time at or after the given one at which the poll (scheduled in phase) is due */
+    private long nextDueInPhase(Entry entry, long nanos) {
+        long sincePhase = (nanos - startNanos - entry.phaseOffsetNanos) % entry.periodNanos;
+        if (sincePhase < 0) sincePhase += entry.periodNanos;
+        return (sincePhase == 0) ? nanos : nanos + entry.periodNanos - sincePhase;
+    }
+
+    /** @param startNanos the start of tick 0 */
+    private void runWheel(long startNanos) {
+        // the next tick to process; each tick is processed once it has ended
+        long tick = 0;
+        try {
+            while (running) {
+                synchronized (this) {
+                    if (numEntries.get() == 0) {
+                        while (running && numEntries.get() == 0) {
+                            wait();
+                        }
+                        // the wheel is empty, so the ticks while idle can be skipped (other than the last ended one)
+                        tick = Math.max(tick, (ticker.read() - startNanos) / tickNanos - 1);
+                    }
+                }
+                // sleep until the end of this tick
+                long now = ticker.read();
+                long sleepNanos = startNanos + (tick + 1) * tickNanos - now;
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                    now = ticker.read();
+                }
+
+                // process every tick that has ended, including any the wheel thread fell behind on (so that
+                // the remaining rounds of the entries in each bucket are counted down once per revolution);
+                // entries due in a tick (or earlier) are put in its bucket, to run when it is processed
+                long lastEndedTick = (now - startNanos) / tickNanos - 1;
+                while (running && tick <= lastEndedTick) {
+                    addNewEntries(tick, startNanos);
+                    expire(tick, now);
+                    tick++;
+                }
+            }
+        } catch (InterruptedException e) {
+            if (running) LOG.warn("Poll scheduler interrupted; no longer polling");
+        } catch (Throwable t) {
+            LOG.error("Poll scheduler failed; no longer polling", t);
+        }
+    }
+
+    private void addNewEntries(long tick, long startNanos) {
+        Entry entry;
+        while ((entry = newEntries.poll()) != null) {
+            if (entry.cancelled) {
+                numEntries.decrementAndGet();
+                continue;
+            }
+            long dueTick = Math.max(tick, (entry.dueNanos - startNanos) / tickNanos);
+            entry.remainingRounds = (dueTick - tick) / wheel.length;
+            int bucket = (int) (dueTick & mask);
+            entry.bucket = bucket;
+            entry.prev = null;
+            entry.next = wheel[bucket];
+            if (entry.next != null) entry.next.prev = entry;
+            wheel[bucket] = entry;
+        }
+    }
+
+    private void expire(long tick, long now) {
+        int bucket = (int) (tick & mask);
+        Entry entry = wheel[bucket];
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.cancelled) {
+                remove(entry);
+                numEntries.decrementAndGet();
+            } else if (entry.remainingRounds > 0) {
+                entry.remainingRounds--;
+            } else {
+                remove(entry);
+                fire(entry, now);
+            }
+            entry = next;
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            wheel[entry.bucket] = entry.next;
+        }
+        if (entry.next != null) entry.next.prev = entry.prev;
+        entry.prev = entry.next = null;
+        entry.bucket = -1;
+    }
+
+    private void fire(final Entry entry, long now) {
+        long dueNanos = entry.dueNanos;
+        long nextDueNanos = dueNanos + nextPeriod(entry);
+        if (nextDueNanos <= now) {
+            // fell behind by more than a period (e.g. the machine was suspended); don't try to catch up
+            nextDueNanos = (entry.phaseOffsetNanos >= 0) ? nextDueInPhase(entry, now + 1) : now + nextPeriod(entry);
+        }
+        entry.dueNanos = nextDueNanos;
+        newEntries.add(entry);
+
+        if (!entry.inProgress.compareAndSet(false, true)) {
+            entry.stats.skipped.incrementAndGet();
+            if (LOG.isTraceEnabled()) LOG.trace("Skipping poll {}, as previous poll still in progress", entry);
+            return;
+        }
+        entry.dispatchedDueNanos = dueNanos;
+        try {
+            dispatchExecutor.execute(new Runnable() {
+                @Override public void run() {
+                    dispatch(entry);
+                }});
+        } catch (RejectedExecutionException e) {
+            // only when stopping
+            dispatchFailed(entry, e);
+        }
+    }
+
+    private void dispatch(Entry entry) {
+        try {
+            entry.dispatcher.dispatch(entry);
+            entry.stats.polls.incrementAndGet();
+        } catch (Exception e) {
+            dispatchFailed(entry, e);
+        }
+    }
+
+    private void dispatchFailed(Entry entry, Exception e) {
+        // the poll will not run, so must not block later polls
+        entry.inProgress.set(false);
+        entry.stats.dispatchFailures.incrementAndGet();
+        if (LOG.isDebugEnabled()) LOG.debug("Failed to dispatch poll "+entry+" (continuing)", e);
+    }
+}
@@ -3,6 +3,10 @@ package brooklyn.event.feed;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,14 +15,21 @@ import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
+import brooklyn.management.ExecutionContext;
+import brooklyn.management.ManagementContext;
 import brooklyn.management.Task;
+import brooklyn.management.internal.AbstractManagementContext;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.DynamicSequentialTask;
 import brooklyn.util.task.ScheduledTask;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.time.Duration;
 
 import com.google.common.base.Objects;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 
 /** 
@@ -27,22 +38,50 @@ import com.google.common.base.Objects;
  * The jobs will then be executed periodically, and the handler called for the result/failure.
  * 
  * Assumes the schedule+start will be done single threaded, and that stop will not be done concurrently.
+ * <p>
+ * For a managed entity, periodic jobs are scheduled by the management context's {@link PollScheduler},
+ * each run being a transient job in the entity's execution context (see {@link BasicExecutionContext#executeTransient(Runnable)}),
+ * so polls are not recorded as tasks.
  */
 public class Poller<V> {
     public static final Logger log = LoggerFactory.getLogger(Poller.class);
 
     private final EntityLocal entity;
+    private final String feedType;
     private final Set<Callable<?>> oneOffJobs = new LinkedHashSet<Callable<?>>();
-    private final Set<PollJob<V>> pollJobs = new LinkedHashSet<PollJob<V>>();
+    private final Set<PollJob> pollJobs = new LinkedHashSet<PollJob>();
     private final Set<Task<?>> oneOffTasks = new LinkedHashSet<Task<?>>();
     private final Set<ScheduledTask> tasks = new LinkedHashSet<ScheduledTask>();
+    private final Set<PollScheduler.Handle> scheduledPolls = new LinkedHashSet<PollScheduler.Handle>();
     private volatile boolean running = false;
     
-    private static class PollJob<V> {
+    /**
+     * Runs the handlers of async polls as transient jobs in the entity's execution context, rather than in
+     * the thread which completes the poll (e.g. an I/O thread of a shared client); runs them in that thread
+     * only if the execution context does not support transient jobs, or rejects the job (e.g. when stopping).
+     */
+    private final Executor callbackExecutor = new Executor() {
+        @Override public void execute(Runnable command) {
+            ExecutionContext executionContext = ((EntityInternal)entity).getExecutionContext();
+            if (executionContext instanceof BasicExecutionContext) {
+                try {
+                    ((BasicExecutionContext)executionContext).executeTransient(command);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    if (log.isTraceEnabled()) log.trace("Poll handler rejected by {}; running in completing thread", executionContext);
+                }
+            }
+            command.run();
+        }
+    };
+    
+    private class PollJob {
         final PollHandler<? super V> handler;
         final Duration pollPeriod;
         final Runnable wrappedJob;
-        private boolean loggedPreviousException = false;
+        /** if non-null, the job is polled in phase with others of this key; see {@link PollScheduler#scheduleInPhase(String, Duration, Object, PollScheduler.Dispatcher, Runnable)} */
+        Object phaseKey;
+        private volatile boolean loggedPreviousException = false;
         
         PollJob(final Callable<V> job, final PollHandler<? super V> handler, Duration period) {
             this.handler = handler;
@@ -52,30 +91,103 @@ public class Poller<V> {
                 public void run() {
                     try {
                         V val = job.call();
-                        loggedPreviousException = false;
-                        if (handler.checkSuccess(val)) {
-                            handler.onSuccess(val);
-                        } else {
-                            handler.onFailure(val);
-                        }
+                        onResult(job, val);
                     } catch (Exception e) {
-                        // 2013-12-21 AH adding add'l logging because seeing strange scheduled task abortion from here
-                        // even though all paths should be catching it
-                        if (loggedPreviousException) {
-                            if (log.isTraceEnabled()) log.trace("PollJob for {}, repeated consecutive failures, handling {} using {}", new Object[] {job, e, handler});
-                        } else {
-                            if (log.isDebugEnabled()) log.debug("PollJob for {} handling {} using {}", new Object[] {job, e, handler});
-                            loggedPreviousException = true;
-                        }
-                        handler.onException(e);
+                        onException(job, e);
+                    }
+                }
+            };
+        }
+        
+        /**
+         * For a job which starts the poll and returns a future for its result (or null if nothing was started);
+         * the handler is called when that completes, in the entity's execution context (see {@link #callbackExecutor}).
+         * A poll is not started while the previous one is still in progress.
+         */
+        PollJob(final AsyncJob<V> job, final PollHandler<? super V> handler, Duration period) {
+            this.handler = handler;
+            this.pollPeriod = period;
+            
+            final AtomicBoolean inProgress = new AtomicBoolean(false);
+            wrappedJob = new Runnable() {
+                public void run() {
+                    if (!inProgress.compareAndSet(false, true)) {
+                        if (log.isTraceEnabled()) log.trace("PollJob for {} still in progress; skipping poll", job);
+                        return;
+                    }
+                    ListenableFuture<V> future;
+                    try {
+                        future = job.call();
+                    } catch (Exception e) {
+                        inProgress.set(false);
+                        onException(job, e);
+                        return;
+                    }
+                    if (future == null) {
+                        inProgress.set(false);
+                        return;
                     }
+                    Futures.addCallback(future, new FutureCallback<V>() {
+                        @Override public void onSuccess(V val) {
+                            try {
+                                if (running) onResult(job, val);
+                            } finally {
+                                inProgress.set(false);
+                            }
+                        }
+                        @Override public void onFailure(Throwable t) {
+                            try {
+                                if (running) onException(job, (t instanceof Exception) ? (Exception)t : new ExecutionException(t));
+                            } finally {
+                                inProgress.set(false);
+                            }
+                        }
+                    }, callbackExecutor);
                 }
             };
         }
+        
+        private void onResult(Object job, V val) {
+            try {
+                loggedPreviousException = false;
+                if (handler.checkSuccess(val)) {
+                    handler.onSuccess(val);
+                } else {
+                    handler.onFailure(val);
+                }
+            } catch (Exception e) {
+                onException(job, e);
+            }
+        }
+        
+        private void onException(Object job, Exception e) {
+            // 2013-12-21 AH adding add'l logging because seeing strange scheduled task abortion from here
+            // even though all paths should be catching it
+            if (loggedPreviousException) {
+                if (log.isTraceEnabled()) log.trace("PollJob for {}, repeated consecutive failures, handling {} using {}", new Object[] {job, e, handler});
+            } else {
+                if (log.isDebugEnabled()) log.debug("PollJob for {} handling {} using {}", new Object[] {job, e, handler});
+                loggedPreviousException = true;
+            }
+            handler.onException(e);
+        }
+    }
+    
+    /** 
+     * A poll job which does not block for the result: it starts the poll and returns a future
+     * (or null if it did not start one), for use with {@link Poller#scheduleAsyncAtFixedRate(AsyncJob, PollHandler, Duration)}.
+     */
+    public interface AsyncJob<V> extends Callable<ListenableFuture<V>> {
     }
     
     public Poller(EntityLocal entity) {
+        this(entity, Poller.class.getSimpleName());
+    }
+    
+    /** @param feedType  the type of feed using this poller, for recording poll statistics */
+    public Poller(EntityLocal entity, String feedType) {
         this.entity = entity;
+        this.feedType = feedType;
     }
     
     /** Submits a one-off poll job; recommended that callers supply to-String so that task has a decent description */
@@ -93,7 +205,29 @@ public class Poller<V> {
         if (running) {
             throw new IllegalStateException("Cannot schedule additional tasks after poller has started");
         }
-        PollJob<V> foo = new PollJob<V>(job, handler, period);
+        PollJob foo = new PollJob(job, handler, period);
+        pollJobs.add(foo);
+    }
+
+    /**
+     * As {@link #scheduleAtFixedRate(Callable, PollHandler, Duration)}, but the job returns a future rather
+     * than blocking, so no thread is held while the poll is in progress; see {@link AsyncJob}.
+     */
+    public void scheduleAsyncAtFixedRate(AsyncJob<V> job, PollHandler<? super V> handler, Duration period) {
+        scheduleAsyncAtFixedRate(job, handler, period, null);
+    }
+
+    /**
+     * As {@link #scheduleAsyncAtFixedRate(AsyncJob, PollHandler, Duration)}, but (where the management context's
+     * {@link PollScheduler} is used) polled in phase with all other jobs of an equal phase key, so that jobs with
+     * the same period, e.g. against the same machine, are polled at the same time.
+     */
+    public void scheduleAsyncAtFixedRate(AsyncJob<V> job, PollHandler<? super V> handler, Duration period, Object phaseKey) {
+        if (running) {
+            throw new IllegalStateException("Cannot schedule additional tasks after poller has started");
+        }
+        PollJob foo = new PollJob(job, handler, period);
+        foo.phaseKey = phaseKey;
         pollJobs.add(foo);
     }
 
@@ -115,25 +249,55 @@ public class Poller<V> {
             oneOffTasks.add(((EntityInternal)entity).getExecutionContext().submit(task));
         }
         
-        for (final PollJob<V> pollJob : pollJobs) {
+        PollScheduler scheduler = getPollScheduler();
+        for (final PollJob pollJob : pollJobs) {
             final String scheduleName = pollJob.handler.getDescription();
             if (pollJob.pollPeriod.compareTo(Duration.ZERO) > 0) {
-                Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
-                    public Task<?> call() {
-                        DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity), 
-                            new Callable<Void>() { public Void call() { pollJob.wrappedJob.run(); return null; } } );
-                        BrooklynTaskTags.setTransient(task);
-                        return task;
+                if (scheduler != null) {
+                    PollScheduler.Dispatcher dispatcher = new PollScheduler.Dispatcher() {
+                            public void dispatch(final Runnable poll) {
+                                ExecutionContext executionContext = ((EntityInternal)entity).getExecutionContext();
+                                if (executionContext instanceof BasicExecutionContext) {
+                                    ((BasicExecutionContext)executionContext).executeTransient(poll);
+                                    return;
+                                }
+                                DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity), 
+                                    new Callable<Void>() { public Void call() { poll.run(); return null; } } );
+                                BrooklynTaskTags.setTransient(task);
+                                executionContext.submit(task);
+                            }};
+                    if (pollJob.phaseKey != null) {
+                        scheduledPolls.add(scheduler.scheduleInPhase(feedType, pollJob.pollPeriod, pollJob.phaseKey, dispatcher, pollJob.wrappedJob));
+                    } else {
+                        scheduledPolls.add(scheduler.schedule(feedType, pollJob.pollPeriod, dispatcher, pollJob.wrappedJob));
                     }
-                };
-                ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod), pollingTaskFactory);
-                tasks.add((ScheduledTask)Entities.submit(entity, task));
+                } else {
+                    Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
+                        public Task<?> call() {
+                            DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity), 
+                                new Callable<Void>() { public Void call() { pollJob.wrappedJob.run(); return null; } } );
+                            BrooklynTaskTags.setTransient(task);
+                            return task;
+                        }
+                    };
+                    ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod), pollingTaskFactory);
+                    tasks.add((ScheduledTask)Entities.submit(entity, task));
+                }
             } else {
                 if (log.isDebugEnabled()) log.debug("Activating poll (but leaving off, as period {}) for {} (using {})", new Object[] {pollJob.pollPeriod, entity, this});
             }
         }
     }
     
+    /** the management context's shared scheduler, or null if not available (e.g. if the entity is not managed) */
+    private PollScheduler getPollScheduler() {
+        ManagementContext mgmt = ((EntityInternal)entity).getManagementContext();
+        if (mgmt instanceof AbstractManagementContext && mgmt.isRunning()) {
+            return ((AbstractManagementContext)mgmt).getPollScheduler();
+        }
+        return null;
+    }
+    
     public void stop() {
         if (log.isDebugEnabled()) log.debug("Stopping poll for {} (using {})", new Object[] {entity, this});
         if (!running) { 
@@ -148,8 +312,12 @@ public class Poller<V> {
         for (ScheduledTask task : tasks) {
             task.cancel();
         }
+        for (PollScheduler.Handle scheduledPoll : scheduledPolls) {
+            scheduledPoll.cancel();
+        }
         oneOffTasks.clear();
         tasks.clear();
+        scheduledPolls.clear();
     }
 
     public boolean isRunning() {
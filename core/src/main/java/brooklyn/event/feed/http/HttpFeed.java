@@ -17,11 +17,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.event.feed.Poller;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.internal.AbstractManagementContext;
 import brooklyn.util.http.HttpTool;
 import brooklyn.util.http.HttpTool.HttpClientBuilder;
 import brooklyn.util.http.HttpToolResponse;
@@ -37,6 +40,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Provides a feed of attribute values, by polling over http.
@@ -79,6 +83,10 @@ import com.google.common.collect.Sets;
  * and it may report errors if that sensor is not available.
  * Some guidance for controlling enablement of a feed based on availability of a sensor
  * can be seen in HttpLatencyDetector (in brooklyn-policy). 
+ * <p>
+ * For a managed entity, the requests use the connections and threads shared by all http feeds
+ * (see {@link HttpFeedClientPool}), and do not hold a thread of the entity's poll task while in progress;
+ * a poll is skipped if the previous one for the same request has not yet completed.
  * 
  * @author aled
  */
@@ -266,6 +274,8 @@ public class HttpFeed extends AbstractFeed {
 
     @Override
     protected void preStart() {
+        final HttpFeedClientPool clientPool = getClientPool();
+        
         for (final HttpPollIdentifier pollInfo : polls.keySet()) {
             // Though HttpClients are thread safe and can take advantage of connection pooling
             // and authentication caching, the httpcomponents documentation says:
@@ -273,7 +283,10 @@ public class HttpFeed extends AbstractFeed {
             //     threads of execution, it is highly recommended that each thread maintains its
             //     own dedicated instance of HttpContext.
             //  http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html
-            final HttpClient httpClient = createHttpClient(pollInfo);
+            // When there is a shared pool, the clients use its connections.
+            final HttpClient httpClient = (clientPool != null) 
+                    ? clientPool.newClient(pollInfo.uriProvider.get(), pollInfo.credentials, pollInfo.connectionTimeout, pollInfo.socketTimeout)
+                    : createHttpClient(pollInfo);
 
             Set<HttpPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
@@ -284,7 +297,7 @@ public class HttpFeed extends AbstractFeed {
                 if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
             }
 
-            Callable<HttpToolResponse> pollJob;
+            final Callable<HttpToolResponse> pollJob;
             
             if (pollInfo.method.equals("get")) {
                 pollJob = new Callable<HttpToolResponse>() {
@@ -308,8 +321,26 @@ public class HttpFeed extends AbstractFeed {
                 throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
             }
             
-            getPoller().scheduleAtFixedRate(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), minPeriod);
+            DelegatingPollHandler<HttpToolResponse> handler = new DelegatingPollHandler<HttpToolResponse>(handlers);
+            if (clientPool != null) {
+                getPoller().scheduleAsyncAtFixedRate(new Poller.AsyncJob<HttpToolResponse>() {
+                        public ListenableFuture<HttpToolResponse> call() {
+                            return clientPool.submit(pollJob);
+                        }},
+                    handler, Duration.millis(minPeriod));
+            } else {
+                getPoller().scheduleAtFixedRate(pollJob, handler, minPeriod);
+            }
+        }
+    }
+
+    /** the management context's shared pool, or null if not available (e.g. if the entity is not managed) */
+    private HttpFeedClientPool getClientPool() {
+        ManagementContext mgmt = ((EntityInternal)entity).getManagementContext();
+        if (mgmt instanceof AbstractManagementContext && mgmt.isRunning()) {
+            return ((AbstractManagementContext)mgmt).getHttpFeedClientPool();
         }
+        return null;
     }
 
     // TODO Should we really trustAll for https? Make configurable?
@@ -0,0 +1,175 @@
+package brooklyn.event.feed.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.http.HttpTool;
+import brooklyn.util.http.HttpToolResponse;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The http connections and threads shared by all {@link HttpFeed}s of a management context
+ * (see {@link brooklyn.management.internal.AbstractManagementContext#getHttpFeedClientPool()}).
+ * <p>
+ * Connections are pooled, with a limit per host and in total, and kept alive between polls (for at most
+ * {@link #KEEP_ALIVE}, after which idle connections are closed). Requests are executed by a bounded pool of
+ * threads, and the result is returned as a {@link ListenableFuture}, so the feed's poll task does not wait for it.
+ * <p>
+ * Note https connections trust all certificates, as {@link HttpFeed} has always done.
+ */
+public class HttpFeedClientPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpFeedClientPool.class);
+
+    public static final ConfigKey<Integer> MAX_CONNECTIONS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.http.feed.maxConnections",
+            "The maximum number of open connections used by http feeds, in total",
+            500);
+
+    public static final ConfigKey<Integer> MAX_CONNECTIONS_PER_HOST = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.http.feed.maxConnectionsPerHost",
+            "The maximum number of open connections used by http feeds, to any one host and port",
+            4);
+
+    public static final ConfigKey<Integer> MAX_THREADS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.http.feed.maxThreads",
+            "The maximum number of threads executing requests for http feeds; further requests are queued",
+            50);
+
+    public static final ConfigKey<Duration> KEEP_ALIVE = ConfigKeys.newConfigKey(Duration.class,
+            "brooklyn.http.feed.keepAlive",
+            "How long an idle connection is kept open for the next poll (unless the server says less)",
+            Duration.seconds(30));
+
+    private final PoolingClientConnectionManager connectionManager;
+    private final ThreadPoolExecutor executor;
+    private final ListeningExecutorService listeningExecutor;
+    private final ScheduledExecutorService idleConnectionReaper;
+    private final long keepAliveMillis;
+    private final AtomicLong totalRequests = new AtomicLong();
+
+    public HttpFeedClientPool(StringConfigMap config) {
+        int maxConnections = config.getConfig(MAX_CONNECTIONS);
+        int maxConnectionsPerHost = config.getConfig(MAX_CONNECTIONS_PER_HOST);
+        int maxThreads = config.getConfig(MAX_THREADS);
+        keepAliveMillis = config.getConfig(KEEP_ALIVE).toMilliseconds();
+
+        SchemeRegistry schemes = new SchemeRegistry();
+        schemes.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+        try {
+            schemes.register(new Scheme("https", 443,
+                    new SSLSocketFactory(new HttpTool.TrustAllStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)));
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+        connectionManager = new PoolingClientConnectionManager(schemes);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-http-feed-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        listeningExecutor = MoreExecutors.listeningDecorator(executor);
+
+        idleConnectionReaper = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-http-feed-reaper-%d").setDaemon(true).build());
+        long reapPeriod = Math.max(1000, keepAliveMillis / 2);
+        idleConnectionReaper.scheduleWithFixedDelay(new Runnable() {
+                @Override public void run() {
+                    try {
+                        connectionManager.closeExpiredConnections();
+                        connectionManager.closeIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS);
+                    } catch (Exception e) {
+                        LOG.warn("Error closing idle http feed connections (continuing)", e);
+                    }
+                }},
+                reapPeriod, reapPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a client using the shared connections. Clients are cheap, so one can be created for each
+     * distinct set of credentials and timeouts.
+     */
+    public HttpClient newClient(URI uri, Optional<Credentials> credentials, Duration connectionTimeout, Duration socketTimeout) {
+        HttpTool.HttpClientBuilder builder = HttpTool.httpClientBuilder()
+                .clientConnectionManager(connectionManager)
+                .laxRedirect(true);
+        if (connectionTimeout != null) builder.connectionTimeout(connectionTimeout);
+        if (socketTimeout != null) builder.socketTimeout(socketTimeout);
+        // Not passing the uri to the builder, as it would register an https scheme (defaulting to the uri's port)
+        // in the shared scheme registry
+        DefaultHttpClient result = (DefaultHttpClient) builder.build();
+        result.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+                @Override public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                    long serverKeepAlive = super.getKeepAliveDuration(response, context);
+                    return (serverKeepAlive > 0) ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+                }});
+        if (uri != null && credentials.isPresent()) {
+            result.getCredentialsProvider().setCredentials(new AuthScope(uri.getHost(), uri.getPort()), credentials.get());
+        }
+        return result;
+    }
+
+    /** executes the request (which should use a client from {@link #newClient(URI, Optional, Duration, Duration)}) in the shared pool of threads */
+    public ListenableFuture<HttpToolResponse> submit(Callable<HttpToolResponse> request) {
+        totalRequests.incrementAndGet();
+        return listeningExecutor.submit(checkNotNull(request, "request"));
+    }
+
+    public int getNumLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    public int getNumIdleConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    /** the number of requests being executed or waiting for a thread */
+    public int getNumPendingRequests() {
+        return executor.getActiveCount() + executor.getQueue().size();
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    public void shutdown() {
+        idleConnectionReaper.shutdownNow();
+        executor.shutdownNow();
+        connectionManager.shutdown();
+    }
+}
@@ -14,10 +14,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
+import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
 import brooklyn.location.Location;
 import brooklyn.location.basic.SshMachineLocation;
@@ -29,8 +31,10 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Provides a feed of attribute values, by polling over ssh.
@@ -81,6 +85,7 @@ public class SshFeed extends AbstractFeed {
         private TimeUnit periodUnits = TimeUnit.MILLISECONDS;
         private List<SshPollConfig<?>> polls = Lists.newArrayList();
         private boolean execAsCommand = false;
+        private boolean execInBatch = false;
         private volatile boolean built;
         
         public Builder entity(EntityLocal val) {
@@ -114,6 +119,15 @@ public class SshFeed extends AbstractFeed {
             execAsCommand = false;
             return this;
         }
+        /**
+         * Runs the commands in batches shared with the other batched feeds of the machine, so that
+         * all of the machine's commands due at about the same time are run in one ssh session
+         * (see {@link SshPollBatcher}).
+         */
+        public Builder execInBatch() {
+            execInBatch = true;
+            return this;
+        }
         public SshFeed build() {
             built = true;
             SshFeed result = new SshFeed(this);
@@ -153,6 +167,7 @@ public class SshFeed extends AbstractFeed {
     
     private final SshMachineLocation machine;
     private final boolean execAsCommand;
+    private final boolean execInBatch;
     
     // Treat as immutable once built
     private final SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = HashMultimap.<SshPollIdentifier,SshPollConfig<?>>create();
@@ -169,6 +184,7 @@ public class SshFeed extends AbstractFeed {
         super(builder.entity);
         machine = checkNotNull(builder.machine != null ? builder.machine : getMachineOfEntity(builder.entity), "machine");
         execAsCommand = builder.execAsCommand;
+        execInBatch = builder.execInBatch;
         
         for (SshPollConfig<?> config : builder.polls) {
             SshPollConfig<?> configCopy = new SshPollConfig(config);
@@ -181,6 +197,10 @@ public class SshFeed extends AbstractFeed {
 
     @Override
     protected void preStart() {
+        if (execInBatch) {
+            preStartBatched();
+            return;
+        }
         for (final SshPollIdentifier pollInfo : polls.keySet()) {
             Set<SshPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
@@ -201,10 +221,116 @@ public class SshFeed extends AbstractFeed {
         }
     }
     
+    /**
+     * Schedules one poll per distinct period, which submits all the commands of that period to the machine's
+     * {@link SshPollBatcher} together (so they are always run in the same batch); the polls of all feeds of the machine
+     * are in phase, so those with the same period are also run in the same batch.
+     */
+    private void preStartBatched() {
+        Map<Long, List<SshPollIdentifier>> pollsByPeriod = Maps.newLinkedHashMap();
+        Map<SshPollIdentifier, DelegatingPollHandler<SshPollValue>> handlersByPoll = Maps.newHashMap();
+        for (SshPollIdentifier pollInfo : polls.keySet()) {
+            long minPeriod = Integer.MAX_VALUE;
+            Set<AttributePollHandler<SshPollValue>> handlers = Sets.newLinkedHashSet();
+            for (SshPollConfig<?> config : polls.get(pollInfo)) {
+                handlers.add(new AttributePollHandler<SshPollValue>(config, entity, this));
+                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+            }
+            handlersByPoll.put(pollInfo, new DelegatingPollHandler(handlers));
+            List<SshPollIdentifier> pollsOfPeriod = pollsByPeriod.get(minPeriod);
+            if (pollsOfPeriod == null) {
+                pollsOfPeriod = Lists.newArrayList();
+                pollsByPeriod.put(minPeriod, pollsOfPeriod);
+            }
+            pollsOfPeriod.add(pollInfo);
+        }
+
+        final SshPollBatcher batcher = SshPollBatcher.forMachine(machine,
+                ((EntityInternal)entity).getManagementContext().getExecutionManager());
+        for (Map.Entry<Long, List<SshPollIdentifier>> entry : pollsByPeriod.entrySet()) {
+            final List<SshPollBatcher.Command> commands = Lists.newArrayList();
+            List<PollHandler<? super SshPollValue>> handlers = Lists.newArrayList();
+            for (SshPollIdentifier pollInfo : entry.getValue()) {
+                commands.add(new SshPollBatcher.Command(pollInfo.command, pollInfo.env));
+                handlers.add(handlersByPoll.get(pollInfo));
+            }
+            getBatchPoller().scheduleAsyncAtFixedRate(
+                    new Poller.AsyncJob<List<SshPollValue>>() {
+                        public ListenableFuture<List<SshPollValue>> call() {
+                            return batcher.submit(commands);
+                        }
+                        @Override public String toString() {
+                            return "ssh-feed-batch["+machine+"; "+commands.size()+" commands]";
+                        }},
+                    new BatchPollHandler(handlers),
+                    Duration.millis(entry.getKey()),
+                    machine);
+        }
+    }
+
+    /** passes the value of each command of a batch to the handler of that command */
+    private static class BatchPollHandler implements PollHandler<List<SshPollValue>> {
+        private final List<PollHandler<? super SshPollValue>> handlers;
+
+        BatchPollHandler(List<PollHandler<? super SshPollValue>> handlers) {
+            this.handlers = ImmutableList.copyOf(handlers);
+        }
+
+        @Override
+        public boolean checkSuccess(List<SshPollValue> val) {
+            // success or failure is checked for each command
+            return true;
+        }
+
+        @Override
+        public void onSuccess(List<SshPollValue> vals) {
+            for (int i = 0; i < handlers.size(); i++) {
+                PollHandler<? super SshPollValue> handler = handlers.get(i);
+                SshPollValue val = vals.get(i);
+                try {
+                    if (handler.checkSuccess(val)) {
+                        handler.onSuccess(val);
+                    } else {
+                        handler.onFailure(val);
+                    }
+                } catch (Exception e) {
+                    handler.onException(e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(List<SshPollValue> vals) {
+            onSuccess(vals);
+        }
+
+        @Override
+        public void onException(Exception exception) {
+            for (PollHandler<? super SshPollValue> handler : handlers) {
+                handler.onException(exception);
+            }
+        }
+
+        @Override
+        public String getDescription() {
+            StringBuilder result = new StringBuilder("batch[");
+            for (int i = 0; i < handlers.size(); i++) {
+                if (i > 0) result.append("; ");
+                result.append(handlers.get(i).getDescription());
+            }
+            return result.append("]").toString();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private Poller<SshPollValue> getPoller() {
         return (Poller<SshPollValue>) poller;
     }
+
+    @SuppressWarnings("unchecked")
+    private Poller<List<SshPollValue>> getBatchPoller() {
+        return (Poller<List<SshPollValue>>) poller;
+    }
     
     private SshPollValue exec(String command, Map<String,String> env) throws IOException {
         if (log.isTraceEnabled()) log.trace("Ssh polling for {}, executing {} with env {}", new Object[] {machine, command, env});
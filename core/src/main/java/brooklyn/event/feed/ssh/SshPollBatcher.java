@@ -0,0 +1,327 @@
+package brooklyn.event.feed.ssh;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.management.ExecutionManager;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.BasicExecutionContext;
+import brooklyn.util.text.StringEscapes.BashStringEscapes;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Runs the ssh poll commands of one machine in batches (see {@link SshFeed.Builder#execInBatch()}).
+ * <p>
+ * The commands submitted within a short window (see {@link #BATCH_WINDOW}), by any number of feeds,
+ * are run in one ssh session (feeds schedule their polls of a machine in phase, so that polls with the same period
+ * are submitted together; see {@link brooklyn.event.feed.PollScheduler#scheduleInPhase(String, Duration, Object, brooklyn.event.feed.PollScheduler.Dispatcher, Runnable)}), as a single shell command: this runs each poll command in its own subshell
+ * (all in parallel), and then writes their exit statuses, stdout and stderr to its stdout in length-delimited
+ * frames. Thus monitoring a machine takes one ssh session per tick, rather than one per poll command
+ * (and, unlike {@link SshFeed.Builder#execAsScript()}, no script is uploaded).
+ * <p>
+ * One batch at a time is run per machine; commands submitted while a batch is running are run in the next one.
+ * So that one hung command cannot hold up all later batches, each command is killed if it has not completed
+ * within {@link #COMMAND_TIMEOUT}, and its poll fails with exit status {@value #TIMED_OUT_EXIT_STATUS}.
+ * <p>
+ * Batches are run by the transient jobs of the execution manager of the feeds' management context.
+ */
+public class SshPollBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SshPollBatcher.class);
+
+    /**
+     * how long to wait after the first command of a batch is submitted, for others to join it
+     * (those of the other polls due in the same tick, which are dispatched at about the same time)
+     */
+    public static final Duration BATCH_WINDOW = Duration.millis(100);
+
+    /** how long each command of a batch can run before it is killed (rounded up to whole seconds) */
+    public static final Duration COMMAND_TIMEOUT = Duration.THIRTY_SECONDS;
+
+    /** the exit status of a command which was killed for running for longer than {@link #COMMAND_TIMEOUT} (as for coreutils' timeout) */
+    public static final int TIMED_OUT_EXIT_STATUS = 124;
+
+    private static final String FRAME_MARKER = "BROOKLYN-SSH-POLL-FRAME";
+
+    // batchers hold their machine weakly, so that they are discarded along with it
+    private static final Map<SshMachineLocation, SshPollBatcher> batchers = new WeakHashMap<SshMachineLocation, SshPollBatcher>();
+
+    /**
+     * The batcher for the given machine, shared by all feeds polling it, which runs its batches
+     * with the given execution manager (that of the feeds' management context).
+     */
+    public static SshPollBatcher forMachine(SshMachineLocation machine, ExecutionManager executionManager) {
+        checkNotNull(executionManager, "executionManager");
+        synchronized (batchers) {
+            SshPollBatcher result = batchers.get(checkNotNull(machine, "machine"));
+            // a machine polled from a new management context gets a new batcher
+            if (result == null || result.executionContext.getExecutionManager() != executionManager) {
+                result = new SshPollBatcher(machine, executionManager);
+                batchers.put(machine, result);
+            }
+            return result;
+        }
+    }
+
+    /** a command to run, with its environment */
+    public static class Command {
+        private final String command;
+        private final Map<String, String> env;
+
+        public Command(String command, Map<String, String> env) {
+            this.command = checkNotNull(command, "command");
+            this.env = (env != null) ? ImmutableMap.copyOf(env) : ImmutableMap.<String, String>of();
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public Map<String, String> getEnv() {
+            return env;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("command", command).add("env", env).toString();
+        }
+    }
+
+    /** the commands submitted together, whose results are returned together */
+    private static class Submission {
+        final List<Command> commands;
+        final SettableFuture<List<SshPollValue>> future = SettableFuture.create();
+
+        Submission(List<Command> commands) {
+            this.commands = commands;
+        }
+    }
+
+    private final WeakReference<SshMachineLocation> machine;
+    private final BasicExecutionContext executionContext;
+    private final Object mutex = new Object();
+    private List<Submission> pending = Lists.newArrayList();
+    private boolean flushScheduled;
+    private boolean running;
+    private final AtomicLong batchesRun = new AtomicLong();
+    private final AtomicLong commandsRun = new AtomicLong();
+
+    private final Runnable flush = new Runnable() {
+        @Override public void run() {
+            flush();
+        }
+        @Override public String toString() {
+            return "ssh-poll-batch["+machine.get()+"]";
+        }};
+
+    protected SshPollBatcher(SshMachineLocation machine, ExecutionManager executionManager) {
+        this.machine = new WeakReference<SshMachineLocation>(machine);
+        this.executionContext = new BasicExecutionContext(executionManager);
+    }
+
+    /**
+     * Submits the commands to be run in the next batch; the result is their values, in the same order,
+     * or fails if the batch could not be run.
+     */
+    public ListenableFuture<List<SshPollValue>> submit(List<Command> commands) {
+        Submission submission = new Submission(ImmutableList.copyOf(commands));
+        List<Submission> unscheduled = null;
+        RuntimeException scheduleFailure = null;
+        synchronized (mutex) {
+            pending.add(submission);
+            if (!flushScheduled && !running) {
+                try {
+                    executionContext.scheduleTransient(flush, BATCH_WINDOW);
+                    flushScheduled = true;
+                } catch (RuntimeException e) {
+                    // e.g. rejected when stopping; nothing would run the pending commands
+                    unscheduled = takePending();
+                    scheduleFailure = e;
+                }
+            }
+        }
+        if (unscheduled != null) fail(unscheduled, scheduleFailure);
+        return submission.future;
+    }
+
+    /** the number of batches run, i.e. the number of ssh sessions used */
+    public long getBatchesRun() {
+        return batchesRun.get();
+    }
+
+    /** the number of poll commands run, in all batches */
+    public long getCommandsRun() {
+        return commandsRun.get();
+    }
+
+    private void flush() {
+        List<Submission> batch;
+        synchronized (mutex) {
+            batch = takePending();
+            flushScheduled = false;
+            running = true;
+        }
+        List<Submission> unscheduled = null;
+        RuntimeException scheduleFailure = null;
+        try {
+            run(batch);
+        } finally {
+            synchronized (mutex) {
+                running = false;
+                if (!pending.isEmpty() && !flushScheduled) {
+                    // these have already waited for the running batch
+                    try {
+                        executionContext.executeTransient(flush);
+                        flushScheduled = true;
+                    } catch (RuntimeException e) {
+                        unscheduled = takePending();
+                        scheduleFailure = e;
+                    }
+                }
+            }
+        }
+        if (unscheduled != null) fail(unscheduled, scheduleFailure);
+    }
+
+    private List<Submission> takePending() {
+        List<Submission> result = pending;
+        pending = Lists.newArrayList();
+        return result;
+    }
+
+    /** fails the submissions (not holding the mutex, as this runs their callbacks) */
+    private void fail(List<Submission> submissions, Exception e) {
+        if (log.isDebugEnabled()) log.debug("Ssh poll batch for {} could not be scheduled; failing {} submissions: {}", 
+                new Object[] {machine.get(), submissions.size(), e});
+        for (Submission submission : submissions) {
+            submission.future.setException(e);
+        }
+    }
+
+    private void run(List<Submission> batch) {
+        try {
+            SshMachineLocation m = machine.get();
+            if (m == null) throw new IllegalStateException("Machine no longer available for ssh polling");
+
+            List<Command> commands = Lists.newArrayList();
+            for (Submission submission : batch) {
+                commands.addAll(submission.commands);
+            }
+            ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+            if (log.isTraceEnabled()) log.trace("Ssh polling for {}, executing batch {}", m, commands);
+            int exitStatus = m.execCommands(MutableMap.<String,Object>of("out", stdout, "err", stderr),
+                    "ssh-feed-batch", ImmutableList.of(toBatchCommand(commands, COMMAND_TIMEOUT)));
+            batchesRun.incrementAndGet();
+            commandsRun.addAndGet(commands.size());
+
+            List<SshPollValue> values = parseBatchOutput(m, stdout.toByteArray(), commands.size());
+            if (exitStatus != 0 && log.isDebugEnabled()) {
+                log.debug("Ssh poll batch for {} exited with {}; stderr: {}", new Object[] {m, exitStatus, new String(stderr.toByteArray())});
+            }
+            int i = 0;
+            for (Submission submission : batch) {
+                List<SshPollValue> result = Lists.newArrayList(values.subList(i, i + submission.commands.size()));
+                i += submission.commands.size();
+                submission.future.set(result);
+            }
+        } catch (Exception e) {
+            for (Submission submission : batch) {
+                submission.future.setException(e);
+            }
+        }
+    }
+
+    /**
+     * The shell command which runs all the given commands in parallel, each in a subshell with its own environment,
+     * and then writes for each: a line with {@value #FRAME_MARKER}, its index, exit status and the lengths
+     * of its stdout and stderr; followed by its stdout and stderr.
+     * <p>
+     * A command still running after the timeout is killed (along with its immediate child processes), and given the exit
+     * status {@value #TIMED_OUT_EXIT_STATUS}. Its watchdog checks once a second whether it is still running,
+     * so does not outlive it by more than that (and, with its output redirected, never holds up the batch).
+     */
+    static String toBatchCommand(List<Command> commands, Duration timeout) {
+        long timeoutSeconds = Math.max(1, (timeout.toMilliseconds() + 999) / 1000);
+        StringBuilder result = new StringBuilder();
+        result.append("d=$(mktemp -d \"${TMPDIR:-/tmp}/brooklyn-ssh-poll-XXXXXX\") || exit 1\n");
+        for (int i = 0; i < commands.size(); i++) {
+            Command command = commands.get(i);
+            result.append("( (");
+            for (Map.Entry<String, String> entry : command.getEnv().entrySet()) {
+                result.append(" export ").append(entry.getKey()).append("=").append(BashStringEscapes.wrapBash(entry.getValue())).append(";");
+            }
+            result.append("\n").append(command.getCommand()).append("\n");
+            result.append(") >\"$d/"+i+".o\" 2>\"$d/"+i+".e\" </dev/null & c=$!\n");
+            result.append("  ( n=0; while kill -0 $c; do if [ $n -ge "+timeoutSeconds+" ]; then : >\"$d/"+i+".t\"; kill -STOP $c; pkill -9 -P $c; kill -9 $c; break; fi; ");
+            result.append("sleep 1; n=$((n+1)); done ) >/dev/null 2>&1 </dev/null &\n");
+            result.append("  wait $c; echo $? >\"$d/"+i+".r\" ) &\n");
+        }
+        result.append("wait\n");
+        result.append("i=0; while [ $i -lt "+commands.size()+" ]; do\n");
+        result.append("  if [ -e \"$d/$i.t\" ]; then echo "+TIMED_OUT_EXIT_STATUS+" >\"$d/$i.r\"; ");
+        result.append("echo \"Timed out after "+timeoutSeconds+"s\" >>\"$d/$i.e\"; fi\n");
+        result.append("  echo \""+FRAME_MARKER+" $i $(cat \"$d/$i.r\" 2>/dev/null || echo -1) $(wc -c <\"$d/$i.o\") $(wc -c <\"$d/$i.e\")\"\n");
+        result.append("  cat \"$d/$i.o\" \"$d/$i.e\"\n");
+        result.append("  i=$((i+1))\n");
+        result.append("done\n");
+        result.append("rm -rf \"$d\"");
+        return result.toString();
+    }
+
+    /** parses the output of {@link #toBatchCommand(List)} */
+    static List<SshPollValue> parseBatchOutput(SshMachineLocation machine, byte[] out, int numCommands) {
+        SshPollValue[] result = new SshPollValue[numCommands];
+        byte[] marker = (FRAME_MARKER+" ").getBytes();
+        int pos = 0;
+        while ((pos = indexOf(out, marker, pos)) >= 0) {
+            int lineEnd = indexOf(out, new byte[] {'\n'}, pos);
+            if (lineEnd < 0) break;
+            String[] header = new String(out, pos + marker.length, lineEnd - pos - marker.length).trim().split("\\s+");
+            int index = Integer.parseInt(header[0]);
+            int exitStatus = Integer.parseInt(header[1]);
+            int stdoutLength = Integer.parseInt(header[2]);
+            int stderrLength = Integer.parseInt(header[3]);
+            int start = lineEnd + 1;
+            if (start + stdoutLength + stderrLength > out.length) {
+                throw new IllegalStateException("Truncated output of ssh poll batch, for command "+index);
+            }
+            String stdout = new String(out, start, stdoutLength);
+            String stderr = new String(out, start + stdoutLength, stderrLength);
+            result[index] = new SshPollValue(machine, exitStatus, stdout, stderr);
+            pos = start + stdoutLength + stderrLength;
+        }
+        for (int i = 0; i < numCommands; i++) {
+            if (result[i] == null) throw new IllegalStateException("No output for command "+i+" of ssh poll batch");
+        }
+        return ImmutableList.copyOf(result);
+    }
+
+    private static int indexOf(byte[] array, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= array.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (array[i + j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
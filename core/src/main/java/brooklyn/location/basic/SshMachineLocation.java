@@ -17,14 +17,12 @@ import java.io.StringReader;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.security.KeyPair;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
-
-import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +40,8 @@ import brooklyn.location.MachineLocation;
 import brooklyn.location.OsDetails;
 import brooklyn.location.PortRange;
 import brooklyn.location.PortSupplier;
-import brooklyn.management.Task;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.internal.AbstractManagementContext;
 import brooklyn.util.ResourceUtils;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
@@ -51,22 +50,21 @@ import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.file.ArchiveUtils;
 import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.flags.TypeCoercions;
-import brooklyn.util.guava.KeyTransformingLoadingCache.KeyTransformingSameTypeLoadingCache;
 import brooklyn.util.internal.ssh.ShellTool;
+import brooklyn.util.internal.ssh.SshConnectionKey;
+import brooklyn.util.internal.ssh.SshConnectionManager;
 import brooklyn.util.internal.ssh.SshException;
 import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.internal.ssh.sshj.SshjTool;
 import brooklyn.util.mutex.MutexSupport;
 import brooklyn.util.mutex.WithMutexes;
 import brooklyn.util.net.Urls;
-import brooklyn.util.pool.BasicPool;
-import brooklyn.util.pool.Pool;
+import brooklyn.util.pool.Lease;
 import brooklyn.util.ssh.BashCommands;
 import brooklyn.util.stream.KnownSizeInputStream;
 import brooklyn.util.stream.ReaderInputStream;
 import brooklyn.util.stream.StreamGobbler;
-import brooklyn.util.task.BasicTask;
-import brooklyn.util.task.ScheduledTask;
+import brooklyn.util.stream.Streams;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.task.system.internal.ExecWithLoggingHelpers;
 import brooklyn.util.task.system.internal.ExecWithLoggingHelpers.ExecRunner;
@@ -76,14 +74,8 @@ import brooklyn.util.time.Duration;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -184,8 +176,18 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
                 }
             }));
 
-    private Task<?> cleanupTask;
-    private transient LoadingCache<Map<String, ?>, Pool<SshTool>> sshPoolCache;
+    private static final Set<String> REUSABLE_SSH_PROP_NAMES = ImmutableSet.copyOf(
+            Iterables.transform(REUSABLE_SSH_PROPS, new Function<ConfigKey<?>, String>() {
+                @Override public String apply(ConfigKey<?> input) {
+                    return input.getName();
+                }
+            }));
+
+    /** the keys of the shared ssh connections used by this machine, registered with the management context's manager */
+    private transient Set<SshConnectionKey> sshConnectionKeys = newSshConnectionKeySet();
+
+    /** the ssh connections of this machine while it has no (running) management context; created on first use */
+    private transient SshConnectionManager unmanagedConnectionManager;
 
     public SshMachineLocation() {
         this(MutableMap.of());
@@ -196,100 +198,6 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
         usedPorts = (usedPorts != null) ? Sets.newLinkedHashSet(usedPorts) : Sets.<Integer>newLinkedHashSet();
     }
 
-    private LoadingCache<Map<String, ?>, Pool<SshTool>> buildSshToolPoolCacheLoader() {
-        // TODO: Appropriate numbers for maximum size and expire after access
-        // At the moment every SshMachineLocation instance creates its own pool.
-        // It might make more sense to create one pool and inject it into all SshMachineLocations.
-        Duration expiryDuration = getConfig(SSH_CACHE_EXPIRY_DURATION);
-        
-        LoadingCache<Map<String, ?>, Pool<SshTool>> delegate = CacheBuilder.newBuilder()
-                .maximumSize(10)
-                .expireAfterAccess(expiryDuration.toMilliseconds(), TimeUnit.MILLISECONDS)
-                .recordStats()
-                .removalListener(new RemovalListener<Map<String, ?>, Pool<SshTool>>() {
-                    // TODO: Does it matter that this is synchronous? - Can closing pools cause long delays?
-                    @Override
-                    public void onRemoval(RemovalNotification<Map<String, ?>, Pool<SshTool>> notification) {
-                        Pool<SshTool> removed = notification.getValue();
-                        if (removed == null) {
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("Pool evicted from SshTool cache is null so we can't call pool.close(). " +
-                                        "It's probably already been garbage collected. Eviction cause: {} ",
-                                        notification.getCause().name());
-                            }
-                        } else {
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("{} evicted from SshTool cache. Eviction cause: {}",
-                                        removed, notification.getCause().name());
-                            }
-                            try {
-                                removed.close();
-                            } catch (IOException e) {
-                                if (LOG.isDebugEnabled()) {
-                                    LOG.debug("Exception closing "+removed, e);
-                                }
-                            }
-                        }
-                    }
-                })
-                .build(new CacheLoader<Map<String, ?>, Pool<SshTool>>() {
-                    public Pool<SshTool> load(Map<String, ?> properties) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("{} building ssh pool for {} with properties: {}",
-                                    new Object[] {this, getSshHostAndPort(), properties});
-                        }
-                        return buildPool(properties);
-                    }
-                });
-
-        final Set<String> reusableSshProperties = ImmutableSet.copyOf(
-                Iterables.transform(REUSABLE_SSH_PROPS, new Function<ConfigKey<?>, String>() {
-                    @Override public String apply(ConfigKey<?> input) {
-                        return input.getName();
-                    }
-                }));
-        // Groovy-eclipse compiler refused to compile `KeyTransformingSameTypeLoadingCache.from(...)`
-        return new KeyTransformingSameTypeLoadingCache<Map<String, ?>, Pool<SshTool>>(
-                delegate,
-                new Function<Map<String, ?>, Map<String, ?>>() {
-                    @Override
-                    public Map<String, ?> apply(@Nullable Map<String, ?> input) {
-                        Map<String, Object> copy = new HashMap<String, Object>(input);
-                        copy.keySet().removeAll(reusableSshProperties);
-                        return copy;
-                    }
-                });
-    }
-
-    private BasicPool<SshTool> buildPool(final Map<String, ?> properties) {
-        return BasicPool.<SshTool>builder()
-                .name(getDisplayName()+"@"+address+
-                        (hasConfig(SSH_HOST, true) ? "("+getConfig(SSH_HOST)+":"+getConfig(SSH_PORT)+")" : "")+
-                        ":"+
-                        System.identityHashCode(this))
-                .supplier(new Supplier<SshTool>() {
-                        @Override public SshTool get() {
-                            return connectSsh(properties);
-                        }})
-                .viabilityChecker(new Predicate<SshTool>() {
-                        @Override public boolean apply(SshTool input) {
-                            return input != null && input.isConnected();
-                        }})
-                .closer(new Function<SshTool,Void>() {
-                        @Override public Void apply(SshTool input) {
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("{} closing pool for {}", this, input);
-                            }
-                            try {
-                                input.disconnect();
-                            } catch (Exception e) {
-                                if (logSsh.isDebugEnabled()) logSsh.debug("On machine "+SshMachineLocation.this+", ssh-disconnect failed", e);
-                            }
-                            return null;
-                        }})
-                .build();
-    }
-
     @Override
     public void configure(Map properties) {
         super.configure(properties);
@@ -309,48 +217,28 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
         }
     }
 
-    @Override
-    public void init() {
-        super.init();
-        
-        sshPoolCache = buildSshToolPoolCacheLoader();
-
-        Callable<Task<?>> cleanupTaskFactory = new Callable<Task<?>>() {
-            @Override public Task<Void> call() {
-                return new BasicTask<Void>(new Callable<Void>() {
-                    @Override public Void call() {
-                        try {
-                            if (sshPoolCache != null) sshPoolCache.cleanUp();
-                            return null;
-                        } catch (Exception e) {
-                            // Don't rethrow: the behaviour of executionManager is different from a scheduledExecutorService,
-                            // if we throw an exception, then our task will never get executed again
-                            LOG.warn("Problem cleaning up ssh-pool-cache", e);
-                            return null;
-                        } catch (Throwable t) {
-                            LOG.warn("Problem cleaning up ssh-pool-cache (rethrowing)", t);
-                            throw Exceptions.propagate(t);
-                        }
-                    }});
-            }
-        };
-        
-        Duration expiryDuration = getConfig(SSH_CACHE_EXPIRY_DURATION);
-        cleanupTask = getManagementContext().getExecutionManager().submit(new ScheduledTask(cleanupTaskFactory).period(expiryDuration));
-    }
-    
+    /**
+     * Closes the ssh connections used by this machine (once no longer in use), other than those
+     * still used by other machines.
+     */
     @Override
     public void close() throws IOException {
-        if (sshPoolCache != null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("{} invalidating all entries in ssh pool cache. Final stats: {}", this, sshPoolCache.stats());
+        if (sshConnectionKeys != null && !sshConnectionKeys.isEmpty()) {
+            SshConnectionManager connectionManager = getManagedSshConnectionManager();
+            // if the management context has stopped, so has its manager (closing all its connections)
+            if (connectionManager != null) {
+                for (SshConnectionKey key : sshConnectionKeys) {
+                    connectionManager.unregister(key);
+                }
             }
-            sshPoolCache.invalidateAll();
+            sshConnectionKeys.clear();
         }
-        if (cleanupTask != null) {
-            cleanupTask.cancel(false);
-            cleanupTask = null;
+        SshConnectionManager unmanaged;
+        synchronized (this) {
+            unmanaged = unmanagedConnectionManager;
+            unmanagedConnectionManager = null;
         }
+        if (unmanaged != null) unmanaged.stop();
     }
 
     @Override
@@ -392,33 +280,66 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
         return getConfig(SshTool.PROP_PORT);
     }
 
+    /**
+     * Runs the task with an ssh connection shared by all machines of the management context
+     * (see {@link SshConnectionManager}), connecting with the given properties (less {@link #REUSABLE_SSH_PROPS})
+     * if there is no such connection available. If {@link #CLOSE_CONNECTION} is set, all the connections for
+     * those properties (including the one used) are closed once no longer in use, so later commands reconnect.
+     * <p>
+     * Connections for a {@link #UNIQUE_ID} are not reused by later commands, so are closed after use; as with
+     * {@link #CLOSE_CONNECTION}, their keys are not registered for the lifetime of this machine.
+     */
     protected <T> T execSsh(final Map<String, ?> props, final Function<ShellTool, T> task) {
-        if (sshPoolCache == null) {
-            // required for uses that instantiate SshMachineLocation directly, so init() will not have been called
-            sshPoolCache = buildSshToolPoolCacheLoader();
+        final Map<String, Object> connectionProps = new HashMap<String, Object>(props);
+        connectionProps.keySet().removeAll(REUSABLE_SSH_PROP_NAMES);
+        SshConnectionKey key = SshConnectionKey.fromArgs(getSshToolArgs(connectionProps).getAllConfig(), REUSABLE_SSH_PROP_NAMES);
+
+        final boolean closeAfterUse = truth(props.get(CLOSE_CONNECTION.getName())) || truth(props.get(UNIQUE_ID.getName()));
+
+        SshConnectionManager connectionManager = getManagedSshConnectionManager();
+        if (connectionManager != null) {
+            if (!closeAfterUse) {
+                if (sshConnectionKeys == null) sshConnectionKeys = newSshConnectionKeySet();
+                if (sshConnectionKeys.add(key)) connectionManager.register(key);
+            }
+        } else {
+            connectionManager = getUnmanagedSshConnectionManager();
         }
-        Pool<SshTool> pool = sshPoolCache.getUnchecked(props);
         if (LOG.isTraceEnabled()) {
-            LOG.trace("{} execSsh got pool: {}", this, pool);
+            LOG.trace("{} execSsh using connection {} of {}", new Object[] {this, key, connectionManager});
         }
+        Lease<SshTool> lease = connectionManager.leaseConnection(key, getConfig(SSH_CACHE_EXPIRY_DURATION),
+                new Supplier<SshTool>() {
+                    @Override public SshTool get() {
+                        return connectSsh(connectionProps);
+                    }});
+        try {
+            return task.apply(lease.leasedObject());
+        } finally {
+            if (closeAfterUse) {
+                if (LOG.isDebugEnabled()) LOG.debug("{} closing ssh connections {}", this, key);
+                connectionManager.retire(key);
+            }
+            Streams.closeQuietly(lease);
+        }
+    }
 
-        if (truth(props.get(CLOSE_CONNECTION.getName()))) {
-            Function<SshTool, T> close = new Function<SshTool, T>() {
-                @Override
-                public T apply(SshTool input) {
-                    T result = task.apply(input);
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("{} invalidating all sshPoolCache entries: {}", SshMachineLocation.this, sshPoolCache.stats().toString());
-                    }
-                    sshPoolCache.invalidateAll();
-                    sshPoolCache.cleanUp();
-                    return result;
-                }
-            };
-            return pool.exec(close);
-        } else {
-            return pool.exec(task);
+    /** the manager of the management context, or null if this machine has no (running) management context */
+    protected SshConnectionManager getManagedSshConnectionManager() {
+        ManagementContext managementContext = getManagementContext();
+        if (managementContext instanceof AbstractManagementContext && managementContext.isRunning()) {
+            return ((AbstractManagementContext) managementContext).getSshConnectionManager();
         }
+        return null;
+    }
+
+    private synchronized SshConnectionManager getUnmanagedSshConnectionManager() {
+        if (unmanagedConnectionManager == null) unmanagedConnectionManager = SshConnectionManager.newUnmanaged();
+        return unmanagedConnectionManager;
+    }
+
+    private static Set<SshConnectionKey> newSshConnectionKeySet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<SshConnectionKey, Boolean>());
     }
 
     protected SshTool connectSsh() {
@@ -428,37 +349,7 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
     protected boolean previouslyConnected = false;
     protected SshTool connectSsh(Map props) {
         try {
-            if (!truth(user)) {
-                String newUser = getUser();
-                if (LOG.isTraceEnabled()) LOG.trace("For "+this+", setting user in connectSsh: oldUser="+user+"; newUser="+newUser);
-                user = newUser;
-            }
-
-            ConfigBag args = new ConfigBag()
-                .configure(SshTool.PROP_USER, user)
-                // default value of host, overridden if SSH_HOST is supplied
-                .configure(SshTool.PROP_HOST, address.getHostName())
-                .putAll(props);
-
-            for (Map.Entry<String,Object> entry: getAllConfigBag().getAllConfig().entrySet()) {
-                String key = entry.getKey();
-                if (key.startsWith(SshTool.BROOKLYN_CONFIG_KEY_PREFIX)) {
-                    key = Strings.removeFromStart(key, SshTool.BROOKLYN_CONFIG_KEY_PREFIX);
-                } else if (ALL_SSH_CONFIG_KEY_NAMES.contains(entry.getKey())) {
-                    // key should be included, and does not need to be changed
-
-                    // TODO make this config-setting mechanism more universal
-                    // currently e.g. it will not admit a tool-specific property.
-                    // thinking either we know about the tool here,
-                    // or we don't allow unadorned keys to be set
-                    // (require use of BROOKLYN_CONFIG_KEY_PREFIX)
-                } else {
-                    // this key is not applicable here; ignore it
-                    continue;
-                }
-                args.putStringKey(key, entry.getValue());
-            }
-            if (LOG.isTraceEnabled()) LOG.trace("creating ssh session for "+args);
+            ConfigBag args = getSshToolArgs(props);
             if (!user.equals(args.get(SshTool.PROP_USER))) {
                 LOG.warn("User mismatch configuring ssh for "+this+": preferring user "+args.get(SshTool.PROP_USER)+" over "+user);
                 user = args.get(SshTool.PROP_USER);
@@ -493,6 +384,42 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
         }
     }
 
+    /** the args for the ssh tool: the given properties, and the ssh config of this machine */
+    private ConfigBag getSshToolArgs(Map props) {
+        if (!truth(user)) {
+            String newUser = getUser();
+            if (LOG.isTraceEnabled()) LOG.trace("For "+this+", setting user in connectSsh: oldUser="+user+"; newUser="+newUser);
+            user = newUser;
+        }
+
+        ConfigBag args = new ConfigBag()
+            .configure(SshTool.PROP_USER, user)
+            // default value of host, overridden if SSH_HOST is supplied
+            .configure(SshTool.PROP_HOST, address.getHostName())
+            .putAll(props);
+
+        for (Map.Entry<String,Object> entry: getAllConfigBag().getAllConfig().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(SshTool.BROOKLYN_CONFIG_KEY_PREFIX)) {
+                key = Strings.removeFromStart(key, SshTool.BROOKLYN_CONFIG_KEY_PREFIX);
+            } else if (ALL_SSH_CONFIG_KEY_NAMES.contains(entry.getKey())) {
+                // key should be included, and does not need to be changed
+
+                // TODO make this config-setting mechanism more universal
+                // currently e.g. it will not admit a tool-specific property.
+                // thinking either we know about the tool here,
+                // or we don't allow unadorned keys to be set
+                // (require use of BROOKLYN_CONFIG_KEY_PREFIX)
+            } else {
+                // this key is not applicable here; ignore it
+                continue;
+            }
+            args.putStringKey(key, entry.getValue());
+        }
+        if (LOG.isTraceEnabled()) LOG.trace("creating ssh session for "+args);
+        return args;
+    }
+
     // TODO submitCommands and submitScript which submit objects we can subsequently poll (cf JcloudsSshMachineLocation.submitRunScript)
 
     /**
@@ -842,13 +769,11 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
         return mutexSupport.hasMutex(mutexId);
     }
 
-    //We want the SshMachineLocation to be serializable and therefore the pool needs to be dealt with correctly.
-    //In this case we are not serializing the pool (we made the field transient) and create a new pool when deserialized.
-    //This fix is currently needed for experiments, but isn't used in normal Brooklyn usage.
+    //We want the SshMachineLocation to be serializable; the record of its ssh connections is transient, so is recreated when deserialized.
     private void readObject(java.io.ObjectInputStream in)
             throws IOException, ClassNotFoundException {
         in.defaultReadObject();
-        sshPoolCache = buildSshToolPoolCacheLoader();
+        sshConnectionKeys = newSshConnectionKeySet();
     }
 
     /** returns the un-passphrased key-pair info if a key is being used, or else null */
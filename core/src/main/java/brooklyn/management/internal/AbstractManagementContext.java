@@ -32,6 +32,9 @@ import brooklyn.entity.drivers.downloads.BasicDownloadsManager;
 import brooklyn.entity.drivers.downloads.DownloadResolverManager;
 import brooklyn.entity.rebind.RebindManager;
 import brooklyn.entity.rebind.RebindManagerImpl;
+import brooklyn.event.basic.AttributeMap;
+import brooklyn.event.feed.PollScheduler;
+import brooklyn.event.feed.http.HttpFeedClientPool;
 import brooklyn.internal.storage.BrooklynStorage;
 import brooklyn.internal.storage.DataGrid;
 import brooklyn.internal.storage.DataGridFactory;
@@ -48,6 +51,7 @@ import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.ResourceUtils;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.internal.ssh.SshConnectionManager;
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.text.Strings;
@@ -118,6 +122,11 @@ public abstract class AbstractManagementContext implements ManagementContextInte
     
     protected volatile BrooklynGarbageCollector gc;
 
+    private HttpFeedClientPool httpFeedClientPool;
+    private PollScheduler pollScheduler;
+    private SshConnectionManager sshConnectionManager;
+    private final AttributeMap.SuppressedEvents suppressedAttributeEvents = new AttributeMap.SuppressedEvents();
+
     private final EntityDriverManager entityDriverManager;
     
     protected DownloadResolverManager downloadsManager;
@@ -152,6 +161,17 @@ public abstract class AbstractManagementContext implements ManagementContextInte
         highAvailabilityManager.stop();
         rebindManager.stop();
         storage.terminate();
+        SshConnectionManager sshConnectionManagerToStop;
+        synchronized (this) {
+            if (httpFeedClientPool != null) httpFeedClientPool.shutdown();
+            httpFeedClientPool = null;
+            if (pollScheduler != null) pollScheduler.stop();
+            pollScheduler = null;
+            sshConnectionManagerToStop = sshConnectionManager;
+            sshConnectionManager = null;
+        }
+        // outside the lock, as this disconnects the idle ssh connections
+        if (sshConnectionManagerToStop != null) sshConnectionManagerToStop.stop();
         // Don't unmanage everything; different entities get given their events at different times 
         // so can cause problems (e.g. a group finds out that a member is unmanaged, before the
         // group itself has been told that it is unmanaged).
@@ -375,6 +395,42 @@ public abstract class AbstractManagementContext implements ManagementContextInte
         return gc;
     }
 
+    /** the http connections and threads shared by {@link brooklyn.event.feed.http.HttpFeed}s; created on first use */
+    public synchronized HttpFeedClientPool getHttpFeedClientPool() {
+        if (!running) throw new IllegalStateException("Management context no longer running");
+        if (httpFeedClientPool == null) httpFeedClientPool = new HttpFeedClientPool(getConfig());
+        return httpFeedClientPool;
+    }
+
+    /** the scheduler for the periodic polls of all feeds; created on first use */
+    public synchronized PollScheduler getPollScheduler() {
+        if (!running) throw new IllegalStateException("Management context no longer running");
+        if (pollScheduler == null) pollScheduler = new PollScheduler(getConfig());
+        return pollScheduler;
+    }
+
+    /** as {@link #getPollScheduler()}, but null if it has not been created (or has been stopped), rather than creating it */
+    public synchronized PollScheduler getPollSchedulerIfCreated() {
+        return pollScheduler;
+    }
+
+    /** the number of attribute events not published by this management context's entities, due to their sensor publish policies */
+    public AttributeMap.SuppressedEvents getSuppressedAttributeEvents() {
+        return suppressedAttributeEvents;
+    }
+
+    /** the ssh connections shared by all {@link brooklyn.location.basic.SshMachineLocation}s; created on first use */
+    public synchronized SshConnectionManager getSshConnectionManager() {
+        if (!running) throw new IllegalStateException("Management context no longer running");
+        if (sshConnectionManager == null) sshConnectionManager = new SshConnectionManager(getConfig());
+        return sshConnectionManager;
+    }
+
+    /** as {@link #getSshConnectionManager()}, but null if it has not been created (or has been stopped), rather than creating it */
+    public synchronized SshConnectionManager getSshConnectionManagerIfCreated() {
+        return sshConnectionManager;
+    }
+
     @Override
     public void setManagementNodeUri(URI uri) {
         this.uri = Maybe.of(checkNotNull(uri, "uri"));
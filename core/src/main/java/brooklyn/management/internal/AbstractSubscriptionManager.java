@@ -77,6 +77,13 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
      * <li>subscriberExecutionManagerTag - a tag to pass to execution manager (without setting any execution semantics / TaskPreprocessor);
      *      if not supplied and there is a subscriber, this will be inferred from the subscriber and set up with SingleThreadedScheduler
      * <li>eventFilter - a Predicate&lt;SensorEvent&gt; instance to filter what events are delivered
+     * <li>deliveryMode - {@code individual} (the default) to submit a task per event, or {@code batched} to queue events 
+     *      in a bounded mailbox per subscriber (i.e. per subscriberExecutionManagerTag), which a single task drains in batches;
+     *      per-subscriber ordering is the same in both modes
+     * <li>deliveryMailboxCapacity - for batched delivery, the number of undelivered events at which publishers block
+     *      (only used when the subscriber's mailbox is first created)
+     * <li>deliveryMailboxBlockTimeout - for batched delivery, the longest publishers block for a full mailbox, after which
+     *      the event is accepted anyway (only used when the subscriber's mailbox is first created)
      * </ul>
      * 
      * @see SubscriptionManager#subscribe(Map, Entity, Sensor, SensorEventListener)
@@ -1,13 +1,19 @@
 package brooklyn.management.internal;
 
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +31,9 @@ import brooklyn.util.exceptions.RuntimeInterruptedException;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.ExecutionListener;
 import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -45,6 +53,11 @@ import com.google.common.collect.Lists;
  * 
  * The default is to check with a period of one minute, to keep at most 100 tasks per tag, and to
  * delete old completed tasks after one day.
+ * <p>
+ * Tasks are recorded against each of their tags as they complete, oldest first, so the oldest tasks
+ * beyond the maximum for a tag are deleted as each new task completes, and each periodic check only
+ * looks at the oldest tasks of each tag. Less often (see {@link #GC_FULL_PERIOD}), all tasks are checked,
+ * to also find any completed tasks which were never recorded (e.g. tasks cancelled before they started).
  * 
  * @author aled
  */
@@ -68,6 +81,54 @@ public class BrooklynGarbageCollector {
             "the number of milliseconds after which a completed task will be automatically deleted", 
             TimeUnit.DAYS.toMillis(1));
     
+    public static final ConfigKey<Long> GC_FULL_PERIOD = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.gc.fullPeriod", 
+            "the period, in milliseconds, for checking all tasks (rather than just those recorded as they completed)", 
+            TimeUnit.HOURS.toMillis(1));
+    
+    /**
+     * The completed top-level tasks with a given tag, in the order they completed.
+     * Once all have expired, it is discarded (and removed from {@link #completedTasksByTag}),
+     * so that nothing is kept for tags no longer used.
+     */
+    private static class CompletedTasks {
+        private final Deque<Task<?>> tasks = new ArrayDeque<Task<?>>();
+        private boolean discarded;
+
+        /**
+         * adds the task, returning the oldest tasks which are now beyond the maximum to keep;
+         * or null if this has been discarded, in which case the task is not added
+         */
+        synchronized List<Task<?>> addAndRemoveOldest(Task<?> task, int maxToKeep) {
+            if (discarded) return null;
+            tasks.addLast(task);
+            if (tasks.size() <= maxToKeep) return Collections.emptyList();
+            List<Task<?>> result = Lists.newArrayListWithCapacity(tasks.size() - maxToKeep);
+            while (tasks.size() > maxToKeep) {
+                result.add(tasks.removeFirst());
+            }
+            return result;
+        }
+
+        /**
+         * removes and returns the tasks which ended before the given time (stopping at the first which did not),
+         * discarding this if none remain
+         */
+        synchronized List<Task<?>> removeEndedBefore(long timeUtc) {
+            List<Task<?>> result = null;
+            while (!tasks.isEmpty() && tasks.peekFirst().getEndTimeUtc() < timeUtc) {
+                if (result == null) result = Lists.newArrayList();
+                result.add(tasks.removeFirst());
+            }
+            if (tasks.isEmpty()) discarded = true;
+            return (result != null) ? result : Collections.<Task<?>>emptyList();
+        }
+
+        synchronized boolean isDiscarded() {
+            return discarded;
+        }
+    }
+
     private final BasicExecutionManager executionManager;
     private final BrooklynStorage storage;
     private final ScheduledExecutorService executor;
@@ -75,6 +136,13 @@ public class BrooklynGarbageCollector {
     private final int maxTasksPerTag;
     private final long maxTaskAge;
     private final boolean doSystemGc;
+    private final long gcFullPeriodMs;
+    private final ConcurrentMap<Object, CompletedTasks> completedTasksByTag = new ConcurrentHashMap<Object, CompletedTasks>();
+    private final AtomicLong totalTasksEvicted = new AtomicLong();
+    private final AtomicLong totalTasksExpired = new AtomicLong();
+    private final AtomicLong totalGcPasses = new AtomicLong();
+    private volatile long lastGcPassDurationNanos;
+    private long lastFullGcTime;
     private volatile boolean running = true;
 
     
@@ -86,6 +154,8 @@ public class BrooklynGarbageCollector {
         maxTasksPerTag = brooklynProperties.getConfig(MAX_TASKS_PER_TAG);
         maxTaskAge = brooklynProperties.getConfig(MAX_TASK_AGE);
         doSystemGc = brooklynProperties.getConfig(DO_SYSTEM_GC);
+        gcFullPeriodMs = brooklynProperties.getConfig(GC_FULL_PERIOD);
+        lastFullGcTime = System.currentTimeMillis();
         
         executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
                 @Override public Thread newThread(Runnable r) {
@@ -102,7 +172,14 @@ public class BrooklynGarbageCollector {
                 @Override public void run() {
                     try {
                         logUsage("brooklyn gc (before)");
-                        gcTasks();
+                        long startNanos = System.nanoTime();
+                        expireTasks();
+                        if (System.currentTimeMillis() - lastFullGcTime >= gcFullPeriodMs) {
+                            gcTasks();
+                            lastFullGcTime = System.currentTimeMillis();
+                        }
+                        lastGcPassDurationNanos = System.nanoTime() - startNanos;
+                        totalGcPasses.incrementAndGet();
                         logUsage("brooklyn gc (after)");
                         
                         if (doSystemGc) {
@@ -140,7 +217,28 @@ public class BrooklynGarbageCollector {
             executionManager.getNumActiveTasks()+" active, "+
             executionManager.getNumInMemoryTasks()+" in memory "+
             "("+executionManager.getNumIncompleteTasks()+" incomplete and "+
-            executionManager.getTotalTasksSubmitted()+" total submitted)";
+            executionManager.getTotalTasksSubmitted()+" total submitted); "+
+            "gc: "+totalTasksEvicted+" evicted, "+totalTasksExpired+" expired";
+    }
+
+    /** the number of completed tasks deleted because a tag had more than {@link #MAX_TASKS_PER_TAG} tasks */
+    public long getTotalTasksEvicted() {
+        return totalTasksEvicted.get();
+    }
+
+    /** the number of completed tasks deleted because they were older than {@link #MAX_TASK_AGE} */
+    public long getTotalTasksExpired() {
+        return totalTasksExpired.get();
+    }
+
+    /** the number of periodic checks for tasks to delete */
+    public long getTotalGcPasses() {
+        return totalGcPasses.get();
+    }
+
+    /** the time taken by the most recent periodic check for tasks to delete */
+    public Duration getLastGcPassDuration() {
+        return Duration.nanos(lastGcPassDurationNanos);
     }
     
     public void shutdownNow() {
@@ -154,6 +252,10 @@ public class BrooklynGarbageCollector {
         executionManager.deleteTag(BrooklynTaskTags.tagForContextEntity(entity));
         executionManager.deleteTag(BrooklynTaskTags.tagForCallerEntity(entity));
         executionManager.deleteTag(BrooklynTaskTags.tagForTargetEntity(entity));
+        completedTasksByTag.remove(entity);
+        completedTasksByTag.remove(BrooklynTaskTags.tagForContextEntity(entity));
+        completedTasksByTag.remove(BrooklynTaskTags.tagForCallerEntity(entity));
+        completedTasksByTag.remove(BrooklynTaskTags.tagForTargetEntity(entity));
     }
     
     public void onUnmanaged(Location loc) {
@@ -163,6 +265,66 @@ public class BrooklynGarbageCollector {
     public void onTaskDone(Task<?> task) {
         if (shouldDeleteTask(task)) {
             executionManager.deleteTask(task);
+        } else if (!task.getTags().contains(ManagementContextInternal.SUB_TASK_TAG)) {
+            // sub-tasks will be deleted with their parent task
+            for (Object tag : task.getTags()) {
+                if (isGcTag(tag)) {
+                    deleteEvicted(addCompletedTask(tag, task), totalTasksEvicted);
+                }
+            }
+        }
+    }
+    
+    private static boolean isGcTag(Object tag) {
+        return !(tag == null || tag.equals(ManagementContextInternal.EFFECTOR_TAG) 
+                || tag.equals(ManagementContextInternal.SUB_TASK_TAG)
+                || tag.equals(ManagementContextInternal.NON_TRANSIENT_TASK_TAG)
+                || tag.equals(ManagementContextInternal.TRANSIENT_TASK_TAG));
+    }
+    
+    /** records the task as completed for the tag, returning the oldest tasks of the tag which are now beyond the maximum to keep */
+    private List<Task<?>> addCompletedTask(Object tag, Task<?> task) {
+        while (true) {
+            CompletedTasks tasks = completedTasksByTag.get(tag);
+            if (tasks == null) {
+                completedTasksByTag.putIfAbsent(tag, new CompletedTasks());
+                continue;
+            }
+            List<Task<?>> result = tasks.addAndRemoveOldest(task, maxTasksPerTag);
+            if (result != null) return result;
+            // drained and discarded by expireTasks, which may not have removed it yet
+            completedTasksByTag.remove(tag, tasks);
+        }
+    }
+
+    /** whether any completed tasks are recorded for the tag (i.e. it has some which have not yet expired) */
+    @VisibleForTesting
+    boolean hasCompletedTasks(Object tag) {
+        return completedTasksByTag.containsKey(tag);
+    }
+    
+    private void deleteEvicted(List<Task<?>> tasks, AtomicLong counter) {
+        for (Task<?> task : tasks) {
+            // may already have been deleted, e.g. when evicted for another of its tags
+            if (executionManager.getTask(task.getId()) == task) {
+                executionManager.deleteTask(task);
+                counter.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Deletes tasks older than {@link #maxTaskAge}, looking only at the oldest completed tasks of each tag,
+     * and forgets the tags with no completed tasks left.
+     */
+    private void expireTasks() {
+        if (!running || maxTaskAge <= 0) return;
+        
+        long cutoff = System.currentTimeMillis() - maxTaskAge;
+        for (Map.Entry<Object, CompletedTasks> entry : completedTasksByTag.entrySet()) {
+            CompletedTasks tasks = entry.getValue();
+            deleteEvicted(tasks.removeEndedBefore(cutoff), totalTasksExpired);
+            if (tasks.isDiscarded()) completedTasksByTag.remove(entry.getKey(), tasks);
         }
     }
     
@@ -180,7 +342,7 @@ public class BrooklynGarbageCollector {
     }
 
     /**
-     * Deletes old tasks. The age/number of tasks to keep is controlled by fields like 
+     * Deletes old tasks, checking all tasks of every tag. The age/number of tasks to keep is controlled by fields like 
      * {@link #maxTasksPerTag} and {@link #maxTaskAge}. 
      */
     private void gcTasks() {
@@ -188,10 +350,7 @@ public class BrooklynGarbageCollector {
         
         Set<Object> taskTags = executionManager.getTaskTags();
         for (Object tag : taskTags) {
-            if (tag == null || tag.equals(ManagementContextInternal.EFFECTOR_TAG) 
-                    || tag.equals(ManagementContextInternal.SUB_TASK_TAG)
-                    || tag.equals(ManagementContextInternal.NON_TRANSIENT_TASK_TAG)
-                    || tag.equals(ManagementContextInternal.TRANSIENT_TASK_TAG)) {
+            if (!isGcTag(tag)) {
                 continue; // there'll be other tags
             }
             
@@ -217,12 +376,14 @@ public class BrooklynGarbageCollector {
                     for (Task<?> taskToDelete : sortedTasks.subList(0, numTasksToDelete)) {
                         if (!taskToDelete.isDone()) break;
                         executionManager.deleteTask(taskToDelete);
+                        totalTasksEvicted.incrementAndGet();
                     }
                 }
                 if (maxTaskAge > 0) {
                     for (Task<?> taskContender : sortedTasks.subList((numTasksToDelete > 0 ? numTasksToDelete : 0), sortedTasks.size())) {
                         if (taskContender.isDone() && (System.currentTimeMillis() - taskContender.getEndTimeUtc() > maxTaskAge)) {
                             executionManager.deleteTask(taskContender);
+                            totalTasksExpired.incrementAndGet();
                         } else {
                             break; // all subsequent tasks will be newer; stop looking
                         }
@@ -128,6 +128,9 @@ public class EntityManagementSupport {
                 }
                 
                 this.managementContext = info.getManagementContext();
+                if (managementContext instanceof AbstractManagementContext) {
+                    entity.setSuppressedAttributeEventTotals(((AbstractManagementContext)managementContext).getSuppressedAttributeEvents());
+                }
                 nonDeploymentManagementContext.setMode(NonDeploymentManagementContext.NonDeploymentManagementContextMode.MANAGEMENT_STARTING);
                 
                 nonDeploymentManagementContext.getSubscriptionManager().setDelegate((AbstractSubscriptionManager) managementContext.getSubscriptionManager());
@@ -240,6 +243,7 @@ public class EntityManagementSupport {
         nonDeploymentManagementContext.getSubscriptionManager().stopDelegatingForSubscribing();
         // new publications will be queued / not allowed
         nonDeploymentManagementContext.getSubscriptionManager().stopDelegatingForPublishing();
+        entity.cancelPendingAttributePublications();
         
         entity.onManagementNoLongerMaster();
         entity.onManagementStopped();
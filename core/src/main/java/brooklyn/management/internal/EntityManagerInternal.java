@@ -1,5 +1,7 @@
 package brooklyn.management.internal;
 
+import java.util.Collection;
+
 import brooklyn.entity.Application;
 import brooklyn.entity.Entity;
 import brooklyn.management.EntityManager;
@@ -9,4 +11,7 @@ public interface EntityManagerInternal extends EntityManager {
     /** gets all entities currently known to the application, including entities that are not yet managed */
     Iterable<Entity> getAllEntitiesInApplication(Application application);
 
+    /** all managed entities which are instances of the given type (more efficient than {@link #findEntities(com.google.common.base.Predicate)}) */
+    <T extends Entity> Collection<T> getEntitiesOfType(Class<T> type);
+
 }
@@ -8,7 +8,13 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,13 +43,10 @@ import brooklyn.util.exceptions.Exceptions;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 public class LocalEntityManager implements EntityManagerInternal {
 
@@ -61,16 +64,41 @@ public class LocalEntityManager implements EntityManagerInternal {
     protected final Map<String,Entity> preManagedEntitiesById = new WeakHashMap<String, Entity>();
     
     /** Proxies of the managed entities */
-    protected final Map<String,Entity> entityProxiesById = Maps.newLinkedHashMap();
+    protected final Map<String,Entity> entityProxiesById = new ConcurrentHashMap<String, Entity>();
     
     /** Real managed entities */
-    protected final Map<String,Entity> entitiesById = Maps.newLinkedHashMap();
+    protected final Map<String,Entity> entitiesById = new ConcurrentHashMap<String, Entity>();
     
     /** Proxies of the managed entities */
     protected final ObservableList entities = new ObservableList();
     
     /** Proxies of the managed entities that are applications */
-    protected final Set<Application> applications = Sets.newLinkedHashSet();
+    protected final Set<Application> applications = new CopyOnWriteArraySet<Application>();
+
+    /*
+     * The maps above are written only when synchronized on this manager, but read without locking.
+     * For reads of many entities, the proxies are also kept in the order in which they became managed 
+     * (keyed by a sequence number), in total and indexed by application id and by type (the class of 
+     * the proxy, i.e. the interfaces through which the entity is accessed).
+     */
+    private final AtomicLong managementSequence = new AtomicLong();
+    private final Map<String,IndexEntry> indexEntriesById = new ConcurrentHashMap<String, IndexEntry>();
+    private final ConcurrentNavigableMap<Long,Entity> entityProxiesInOrder = new ConcurrentSkipListMap<Long, Entity>();
+    private final Map<String,ConcurrentNavigableMap<Long,Entity>> entityProxiesByApplicationId = new ConcurrentHashMap<String, ConcurrentNavigableMap<Long,Entity>>();
+    private final Map<Class<?>,ConcurrentNavigableMap<Long,Entity>> entityProxiesByType = new ConcurrentHashMap<Class<?>, ConcurrentNavigableMap<Long,Entity>>();
+    
+    /** Where a managed entity's proxy is in the ordered maps */
+    private static class IndexEntry {
+        final long sequence;
+        final String applicationId;
+        final Class<?> type;
+        
+        IndexEntry(long sequence, String applicationId, Class<?> type) {
+            this.sequence = sequence;
+            this.applicationId = applicationId;
+            this.type = type;
+        }
+    }
 
     private final BrooklynStorage storage;
     private final Map<String,String> entityTypes;
@@ -142,25 +170,38 @@ public class LocalEntityManager implements EntityManagerInternal {
     }
 
     @Override
-    public synchronized Collection<Entity> getEntities() {
-        return ImmutableList.copyOf(entityProxiesById.values());
+    public Collection<Entity> getEntities() {
+        return ImmutableList.copyOf(entityProxiesInOrder.values());
     }
     
     @Override
-    public synchronized Collection<Entity> getEntitiesInApplication(Application application) {
-        Predicate<Entity> predicate = EntityPredicates.applicationIdEqualTo(application.getId());
-        return ImmutableList.copyOf(Iterables.filter(entityProxiesById.values(), predicate));
+    public Collection<Entity> getEntitiesInApplication(Application application) {
+        Map<Long,Entity> inApplication = entityProxiesByApplicationId.get(application.getId());
+        return (inApplication == null) ? ImmutableList.<Entity>of() : ImmutableList.copyOf(inApplication.values());
     }
 
     @Override
-    public synchronized Collection<Entity> findEntities(Predicate<? super Entity> filter) {
-        return ImmutableList.copyOf(Iterables.filter(entityProxiesById.values(), filter));
+    public Collection<Entity> findEntities(Predicate<? super Entity> filter) {
+        return ImmutableList.copyOf(Iterables.filter(entityProxiesInOrder.values(), filter));
     }
     
     @Override
-    public synchronized Collection<Entity> findEntitiesInApplication(Application application, Predicate<? super Entity> filter) {
-        Predicate<Entity> predicate = Predicates.and(EntityPredicates.applicationIdEqualTo(application.getId()), filter);
-        return ImmutableList.copyOf(Iterables.filter(entityProxiesById.values(), predicate));
+    public Collection<Entity> findEntitiesInApplication(Application application, Predicate<? super Entity> filter) {
+        Map<Long,Entity> inApplication = entityProxiesByApplicationId.get(application.getId());
+        return (inApplication == null) ? ImmutableList.<Entity>of() : ImmutableList.copyOf(Iterables.filter(inApplication.values(), filter));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Entity> Collection<T> getEntitiesOfType(Class<T> type) {
+        Map<Long,Entity> result = null;
+        for (Map.Entry<Class<?>,ConcurrentNavigableMap<Long,Entity>> entry : entityProxiesByType.entrySet()) {
+            if (type.isAssignableFrom(entry.getKey())) {
+                if (result == null) result = new TreeMap<Long,Entity>();
+                result.putAll(entry.getValue());
+            }
+        }
+        return (result == null) ? ImmutableList.<T>of() : (Collection<T>) ImmutableList.copyOf(result.values());
     }
 
     @Override
@@ -175,11 +216,11 @@ public class LocalEntityManager implements EntityManagerInternal {
     }
 
     @Override
-    public synchronized Entity getEntity(String id) {
+    public Entity getEntity(String id) {
         return entityProxiesById.get(id);
     }
     
-    synchronized Collection<Application> getApplications() {
+    Collection<Application> getApplications() {
         return ImmutableList.copyOf(applications);
     }
     
@@ -367,6 +408,7 @@ public class LocalEntityManager implements EntityManagerInternal {
         } else {
             if (log.isDebugEnabled()) log.debug("{} starting management of entity {}", this, e);
             preManagedEntitiesById.remove(e.getId());
+            addToIndexes(e.getId(), proxyE);
             if ((e instanceof Application) && (e.getParent()==null)) {
                 applications.add((Application)proxyE);
                 applicationIds.add(e.getId());
@@ -390,6 +432,7 @@ public class LocalEntityManager implements EntityManagerInternal {
         }
         entities.remove(proxyE);
         entityProxiesById.remove(e.getId());
+        removeFromIndexes(e.getId());
         Object old = entitiesById.remove(e.getId());
 
         entityTypes.remove(e.getId());
@@ -407,6 +450,47 @@ public class LocalEntityManager implements EntityManagerInternal {
         }
     }
 
+    private void addToIndexes(String id, Entity proxyE) {
+        IndexEntry entry = new IndexEntry(managementSequence.incrementAndGet(), proxyE.getApplicationId(), proxyE.getClass());
+        IndexEntry old = indexEntriesById.put(id, entry);
+        if (old != null) removeFromIndexes(old);
+        entityProxiesInOrder.put(entry.sequence, proxyE);
+        if (entry.applicationId != null) {
+            getOrCreateIndexValues(entityProxiesByApplicationId, entry.applicationId).put(entry.sequence, proxyE);
+        }
+        getOrCreateIndexValues(entityProxiesByType, entry.type).put(entry.sequence, proxyE);
+    }
+    
+    private void removeFromIndexes(String id) {
+        IndexEntry entry = indexEntriesById.remove(id);
+        if (entry != null) removeFromIndexes(entry);
+    }
+    
+    private void removeFromIndexes(IndexEntry entry) {
+        entityProxiesInOrder.remove(entry.sequence);
+        if (entry.applicationId != null) {
+            removeIndexValue(entityProxiesByApplicationId, entry.applicationId, entry.sequence);
+        }
+        removeIndexValue(entityProxiesByType, entry.type, entry.sequence);
+    }
+    
+    private static <K> ConcurrentNavigableMap<Long,Entity> getOrCreateIndexValues(Map<K,ConcurrentNavigableMap<Long,Entity>> index, K key) {
+        ConcurrentNavigableMap<Long,Entity> result = index.get(key);
+        if (result == null) {
+            result = new ConcurrentSkipListMap<Long, Entity>();
+            index.put(key, result);
+        }
+        return result;
+    }
+    
+    private static <K> void removeIndexValue(Map<K,ConcurrentNavigableMap<Long,Entity>> index, K key, long sequence) {
+        ConcurrentNavigableMap<Long,Entity> values = index.get(key);
+        if (values != null) {
+            values.remove(sequence);
+            if (values.isEmpty()) index.remove(key);
+        }
+    }
+
     void addEntitySetListener(CollectionChangeListener<Entity> listener) {
         //must notify listener in a different thread to avoid deadlock (issue #378)
         AsyncCollectionChangeAdapter<Entity> wrappedListener = new AsyncCollectionChangeAdapter<Entity>(managementContext.getExecutionManager(), listener);
@@ -1,7 +1,6 @@
 package brooklyn.management.internal;
 
 import static brooklyn.util.JavaGroovyEquivalents.elvis;
-import static brooklyn.util.JavaGroovyEquivalents.groovyTruth;
 import static brooklyn.util.JavaGroovyEquivalents.join;
 import static brooklyn.util.JavaGroovyEquivalents.mapOf;
 
@@ -13,6 +12,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -28,6 +28,7 @@ import brooklyn.management.SubscriptionManager;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.SingleThreadedScheduler;
 import brooklyn.util.text.Identifiers;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
@@ -41,19 +42,40 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     
     private static final Logger LOG = LoggerFactory.getLogger(LocalSubscriptionManager.class);
 
+    /** default maximum number of undelivered events held for a subscriber using {@code deliveryMode=batched} */
+    public static final int DEFAULT_DELIVERY_MAILBOX_CAPACITY = 10000;
+    /** maximum number of events delivered by a single batched-delivery task, before yielding to other tasks */
+    public static final int DEFAULT_DELIVERY_BATCH_SIZE = 100;
+    /** 
+     * default longest time a publisher waits for space in a full mailbox of a {@code deliveryMode=batched} subscriber, 
+     * before the event is accepted anyway (so that subscribers publishing to each other cannot deadlock)
+     */
+    public static final Duration DEFAULT_DELIVERY_MAILBOX_BLOCK_TIMEOUT = Duration.ONE_SECOND;
+
     protected final ExecutionManager em;
     
     private final String tostring = "SubscriptionContext("+Identifiers.getBase64IdFromValue(System.identityHashCode(this), 5)+")";
 
     private final AtomicLong totalEventsPublishedCount = new AtomicLong();
     private final AtomicLong totalEventsDeliveredCount = new AtomicLong();
+    private final AtomicLong totalMailboxOverflowCount = new AtomicLong();
     
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<String, Subscription> allSubscriptions = new ConcurrentHashMap<String, Subscription>();
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsBySubscriber = new ConcurrentHashMap<Object, Set<Subscription>>();
+    /** mailboxes for subscriptions with deliveryMode=batched, keyed by execution manager tag; guarded by this */
+    private final Map<Object, SubscriberMailbox> mailboxesByTag = new LinkedHashMap<Object, SubscriberMailbox>();
+
+    /**
+     * Index of subscriptions keyed by {@link EntitySensorToken} (producer and sensor, either of which may be a wildcard).
+     * <p>
+     * Values are copy-on-write, so that {@link #publish(SensorEvent)} can iterate without taking any lock;
+     * all changes are made while holding the lock on this manager (in subscribe/unsubscribe), which are far
+     * less frequent than publishes.
+     */
     @SuppressWarnings("rawtypes")
-    protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
+    protected final ConcurrentMap<Object, CopyOnWriteArraySet<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, CopyOnWriteArraySet<Subscription>>();
     
     public LocalSubscriptionManager(ExecutionManager m) {
         this.em = m;
@@ -70,6 +92,11 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     public long getTotalEventsDelivered() {
         return totalEventsDeliveredCount.get();
     }
+
+    /** number of events accepted by full mailboxes of {@code deliveryMode=batched} subscribers, after the publisher timed out waiting */
+    public long getTotalMailboxOverflows() {
+        return totalMailboxOverflowCount.get();
+    }
     
     @SuppressWarnings("unchecked")
     protected synchronized <T> SubscriptionHandle subscribe(Map<String, Object> flags, Subscription<T> s) {
@@ -87,11 +114,21 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             s.subscriberExecutionManagerTagSupplied = false;
         }
         s.eventFilter = (Predicate<SensorEvent<T>>) flags.remove("eventFilter");
+        Object deliveryMode = flags.remove("deliveryMode");
+        Object mailboxCapacity = flags.remove("deliveryMailboxCapacity");
+        Object mailboxBlockTimeout = flags.remove("deliveryMailboxBlockTimeout");
+        if (deliveryMode!=null && "batched".equalsIgnoreCase(deliveryMode.toString())) {
+            s.mailbox = getOrCreateMailbox(s.subscriberExecutionManagerTag, 
+                    mailboxCapacity!=null ? Integer.parseInt(mailboxCapacity.toString()) : DEFAULT_DELIVERY_MAILBOX_CAPACITY,
+                    mailboxBlockTimeout!=null ? Duration.of(mailboxBlockTimeout) : DEFAULT_DELIVERY_MAILBOX_BLOCK_TIMEOUT);
+        } else if (deliveryMode!=null && !"individual".equalsIgnoreCase(deliveryMode.toString())) {
+            throw new IllegalArgumentException("Unsupported deliveryMode '"+deliveryMode+"' for subscription to "+producer+" "+sensor+"; expected 'batched' or 'individual'");
+        }
         s.flags = flags;
         
         if (LOG.isDebugEnabled()) LOG.debug("Creating subscription {} for {} on {} {} in {}", new Object[] {s.id, s.subscriber, producer, sensor, this});
         allSubscriptions.put(s.id, s);
-        addToMapOfSets(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        addToIndex(makeEntitySensorToken(s.producer, s.sensor), s);
         if (s.subscriber!=null) {
             addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
@@ -106,7 +143,11 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return (Set<SubscriptionHandle>) ((Set<?>) elvis(subscriptionsBySubscriber.get(subscriber), Collections.emptySet()));
     }
 
-    public synchronized Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+    /**
+     * Returns a snapshot of the subscriptions that match the given producer and sensor (including wildcard subscriptions).
+     * Not used when publishing, which reads the index directly.
+     */
+    public Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
         Set<SubscriptionHandle> subscriptions = new LinkedHashSet<SubscriptionHandle>();
         subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, sensor)), Collections.emptySet()));
         subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, sensor)), Collections.emptySet()));
@@ -125,19 +166,23 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (!(sh instanceof Subscription)) throw new IllegalArgumentException("Only subscription handles of type Subscription supported: sh="+sh+"; type="+(sh != null ? sh.getClass().getCanonicalName() : null));
         Subscription s = (Subscription) sh;
         boolean result = allSubscriptions.remove(s.id) != null;
-        boolean b2 = removeFromMapOfCollections(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        boolean b2 = removeFromIndex(makeEntitySensorToken(s.producer, s.sensor), s);
         assert result==b2;
         if (s.subscriber!=null) {
             boolean b3 = removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
             assert b3 == b2;
         }
 
+        if (result && s.mailbox!=null && --s.mailbox.useCount==0) {
+            // any events already queued are still delivered, as for submitted tasks
+            mailboxesByTag.remove(s.subscriberExecutionManagerTag);
+        }
+
         // FIXME ALEX - this seems wrong
         ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
         return result;
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public <T> void publish(final SensorEvent<T> event) {
         // REVIEW 1459 - execution
         
@@ -154,19 +199,41 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (LOG.isTraceEnabled()) LOG.trace("{} got event {}", this, event);
         totalEventsPublishedCount.incrementAndGet();
         
-        Set<Subscription> subs = (Set<Subscription>) ((Set<?>) getSubscriptionsForEntitySensor(event.getSource(), event.getSensor()));
-        if (groovyTruth(subs)) {
-            if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
-            for (Subscription s : subs) {
-                if (s.eventFilter!=null && !s.eventFilter.apply(event))
-                    continue;
-                final Subscription sAtClosureCreation = s;
-                em.submit(mapOf("tag", s.subscriberExecutionManagerTag), new Runnable() {
-                    public void run() {
-                        sAtClosureCreation.listener.onEvent(event);
-                    }});
+        // no lock and no aggregate set: each subscription is in exactly one of these (copy-on-write) sets,
+        // so visit them in turn, most specific first (with no source, the source-specific sets are the same as the others)
+        Entity source = event.getSource();
+        Sensor<T> sensor = event.getSensor();
+        if (source != null) deliver(subscriptionsByToken.get(makeEntitySensorToken(source, sensor)), event);
+        deliver(subscriptionsByToken.get(makeEntitySensorToken(null, sensor)), event);
+        if (source != null) deliver(subscriptionsByToken.get(makeEntitySensorToken(source, null)), event);
+        deliver(subscriptionsByToken.get(makeEntitySensorToken(null, null)), event);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private <T> void deliver(Set<Subscription> subs, final SensorEvent<T> event) {
+        if (subs==null || subs.isEmpty()) return;
+        if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
+        for (Subscription s : subs) {
+            if (s.eventFilter!=null && !s.eventFilter.apply(event))
+                continue;
+            if (s.mailbox!=null) {
+                s.mailbox.offer(s, event);
                 totalEventsDeliveredCount.incrementAndGet();
+                continue;
+            }
+            final Subscription sAtClosureCreation = s;
+            Runnable delivery = new Runnable() {
+                public void run() {
+                    sAtClosureCreation.listener.onEvent(event);
+                }};
+            if (em instanceof BasicExecutionManager) {
+                // no task is recorded per event, so deliveries do not fill the task registry
+                ((BasicExecutionManager)em).executeTransient(s.subscriberExecutionManagerTag!=null ? 
+                        Collections.singleton(s.subscriberExecutionManagerTag) : Collections.emptySet(), delivery);
+            } else {
+                em.submit(mapOf("tag", s.subscriberExecutionManagerTag), delivery);
             }
+            totalEventsDeliveredCount.incrementAndGet();
         }
     }
     
@@ -175,6 +242,38 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return tostring;
     }
     
+    /** caller must hold the lock on this manager */
+    private SubscriberMailbox getOrCreateMailbox(Object tag, int capacity, Duration blockTimeout) {
+        SubscriberMailbox result = mailboxesByTag.get(tag);
+        if (result==null) {
+            result = new SubscriberMailbox(em, tag, capacity, DEFAULT_DELIVERY_BATCH_SIZE, blockTimeout, totalMailboxOverflowCount);
+            mailboxesByTag.put(tag, result);
+        }
+        result.useCount++;
+        return result;
+    }
+
+    /** caller must hold the lock on this manager */
+    @SuppressWarnings("rawtypes")
+    private void addToIndex(Object token, Subscription s) {
+        CopyOnWriteArraySet<Subscription> subs = subscriptionsByToken.get(token);
+        if (subs==null) {
+            subs = new CopyOnWriteArraySet<Subscription>();
+            subscriptionsByToken.put(token, subs);
+        }
+        subs.add(s);
+    }
+
+    /** caller must hold the lock on this manager */
+    @SuppressWarnings("rawtypes")
+    private boolean removeFromIndex(Object token, Subscription s) {
+        CopyOnWriteArraySet<Subscription> subs = subscriptionsByToken.get(token);
+        if (subs==null) return false;
+        boolean result = subs.remove(s);
+        if (subs.isEmpty()) subscriptionsByToken.remove(token, subs);
+        return result;
+    }
+
     /**
      * Copied from LanguageUtils.groovy, to remove dependency.
      * 
@@ -101,6 +101,15 @@ public class NonDeploymentEntityManager implements EntityManagerInternal {
         }
     }
 
+    @Override
+    public <T extends Entity> Collection<T> getEntitiesOfType(Class<T> type) {
+        if (isInitialManagementContextReal()) {
+            return ((EntityManagerInternal)initialManagementContext.getEntityManager()).getEntitiesOfType(type);
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
     @Override
     public Entity getEntity(String id) {
         if (isInitialManagementContextReal()) {
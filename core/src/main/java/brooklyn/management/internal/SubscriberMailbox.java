@@ -0,0 +1,144 @@
+package brooklyn.management.internal;
+
+import static brooklyn.util.JavaGroovyEquivalents.mapOf;
+
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.management.ExecutionManager;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.time.Duration;
+
+/**
+ * Bounded mailbox of pending events for the subscriptions sharing one execution manager tag
+ * (i.e. normally one subscriber), used for subscriptions with {@code deliveryMode=batched}.
+ * <p>
+ * Rather than submitting a task per event, publishers append to the mailbox and at most one drain job
+ * per mailbox is submitted (with the subscriber's tag, so it still goes through the subscriber's
+ * {@link brooklyn.util.task.SingleThreadedScheduler}); that job delivers events in the order they
+ * were published, up to {@link #maxBatchSize} per job. Drain jobs are transient (see
+ * {@link BasicExecutionManager#executeTransient(java.util.Collection, Runnable)}), so are not recorded as tasks.
+ * <p>
+ * When the mailbox is full, publishers block until the subscriber catches up, unless the publisher is
+ * itself running with the subscriber's tag (e.g. a listener setting a sensor it subscribes to), in which
+ * case the event is accepted anyway, as blocking would deadlock. Publishers block for at most the given
+ * timeout, after which the event is accepted anyway (and counted as an overflow), as the subscriber may be
+ * waiting on the publisher (e.g. two subscribers which publish to each other).
+ */
+class SubscriberMailbox {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriberMailbox.class);
+
+    private final ExecutionManager em;
+    private final Object tag;
+    private final int maxBatchSize;
+    private final Semaphore capacity;
+    private final long blockTimeoutNanos;
+    private final AtomicLong overflowCount;
+    private final Queue<Delivery<?>> queue = new ConcurrentLinkedQueue<Delivery<?>>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    /** number of subscriptions using this mailbox; guarded by the subscription manager */
+    int useCount;
+
+    private final Runnable drainJob = new Runnable() {
+        public void run() {
+            drain();
+        }
+        @Override
+        public String toString() {
+            return "Batched delivery to "+tag;
+        }
+    };
+
+    /**
+     * @param blockTimeout the longest a publisher waits for space when the mailbox is full
+     * @param overflowCount incremented for each event accepted when the mailbox was full
+     */
+    SubscriberMailbox(ExecutionManager em, Object tag, int capacity, int maxBatchSize, Duration blockTimeout, AtomicLong overflowCount) {
+        this.em = em;
+        this.tag = tag;
+        this.capacity = new Semaphore(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.blockTimeoutNanos = blockTimeout.toNanoseconds();
+        this.overflowCount = overflowCount;
+    }
+
+    <T> void offer(Subscription<T> s, SensorEvent<T> event) {
+        boolean permitted = capacity.tryAcquire();
+        if (!permitted && !isCallerDraining()) {
+            if (LOG.isDebugEnabled()) LOG.debug("Mailbox for {} full; blocking publisher of {}", tag, event);
+            try {
+                permitted = capacity.tryAcquire(blockTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                throw Exceptions.propagate(e);
+            }
+            if (!permitted && LOG.isDebugEnabled()) {
+                LOG.debug("Mailbox for {} still full after {}; accepting {} anyway", new Object[] {tag, Duration.nanos(blockTimeoutNanos), event});
+            }
+        }
+        if (!permitted) overflowCount.incrementAndGet();
+        queue.add(new Delivery<T>(s, event, permitted));
+        scheduleDrain();
+    }
+
+    private boolean isCallerDraining() {
+        return BasicExecutionManager.isCurrentThreadRunningWithTag(tag);
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            if (em instanceof BasicExecutionManager) {
+                ((BasicExecutionManager)em).executeTransient(Collections.singleton(tag), drainJob);
+            } else {
+                em.submit(mapOf("tag", tag), drainJob);
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < maxBatchSize; i++) {
+                Delivery<?> d = queue.poll();
+                if (d == null) break;
+                if (d.permitted) capacity.release();
+                try {
+                    d.deliver();
+                } catch (Exception e) {
+                    // as with one task per event, a failing listener must not stop delivery of subsequent events
+                    LOG.warn("Error delivering "+d.event+" to "+d.subscription+" (continuing)", e);
+                }
+            }
+        } finally {
+            drainScheduled.set(false);
+            if (!queue.isEmpty()) scheduleDrain();
+        }
+    }
+
+    private static class Delivery<T> {
+        final Subscription<T> subscription;
+        final SensorEvent<T> event;
+        final boolean permitted;
+
+        Delivery(Subscription<T> subscription, SensorEvent<T> event, boolean permitted) {
+            this.subscription = subscription;
+            this.event = event;
+            this.permitted = permitted;
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        void deliver() {
+            ((SensorEventListener) subscription.listener).onEvent(event);
+        }
+    }
+}
@@ -23,6 +23,8 @@ class Subscription<T> implements SubscriptionHandle {
     public final SensorEventListener<? super T> listener;
     public Map<String,Object> flags;
     public Predicate<SensorEvent<T>> eventFilter;
+    /** set if events are delivered in batches (deliveryMode=batched), rather than as one task per event */
+    public SubscriberMailbox mailbox;
 
     public Subscription(Entity producer, Sensor<T> sensor, SensorEventListener<? super T> listener) {
         this.producer = producer;
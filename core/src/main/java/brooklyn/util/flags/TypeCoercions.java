@@ -40,11 +40,19 @@ import brooklyn.util.net.UserAndHostAndPort;
 import brooklyn.util.text.StringEscapes.JavaStringEscapes;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -82,7 +90,7 @@ public class TypeCoercions {
     }
 
     /** @see #coerce(Object, Class) */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @SuppressWarnings("unchecked")
     public static <T> T coerce(Object value, TypeToken<T> targetTypeToken) {
         if (value==null) return null;
         // does not actually cast generified contents; that is left to the caller
@@ -90,93 +98,200 @@ public class TypeCoercions {
 
         if (targetType.isInstance(value)) return (T) value;
 
+        return (T) getCoercer(value.getClass(), targetType).apply(value);
+    }
+
+    /** Coerces values of one class to one target type; see {@link TypeCoercions#getCoercer(Class, Class)}. */
+    private interface Coercer {
+        Object apply(Object value);
+    }
+
+    /**
+     * The coercer for each target type and value class, found on first use by {@link #findCoercer(Class, Class)}.
+     * Replaced (rather than cleared) when an adapter is registered, so a coercer found concurrently using
+     * the old registry can only be put in the discarded cache.
+     * <p>
+     * Keys are weak, so that classes can be unloaded. Coercers refer to the classes they convert between,
+     * so they are held softly: they are cleared under memory pressure, after which the classes are only held weakly.
+     * <p>
+     * The caches of each target type record their hits and misses; see {@link #getCoercerCacheStats()}.
+     */
+    private static volatile LoadingCache<Class<?>, Cache<Class<?>, Coercer>> coercers = newCoercersCache();
+
+    /** the stats of the caches discarded from {@link #coercers}, or with it; guarded by {@link #coercerStatsMutex} */
+    private static CacheStats discardedCoercerStats = new CacheStats(0, 0, 0, 0, 0, 0);
+    private static final Object coercerStatsMutex = new Object();
+
+    private static LoadingCache<Class<?>, Cache<Class<?>, Coercer>> newCoercersCache() {
+        return CacheBuilder.newBuilder().weakKeys()
+                .removalListener(new RemovalListener<Class<?>, Cache<Class<?>, Coercer>>() {
+                    @Override public void onRemoval(RemovalNotification<Class<?>, Cache<Class<?>, Coercer>> notification) {
+                        // the target type has been unloaded
+                        synchronized (coercerStatsMutex) {
+                            discardedCoercerStats = discardedCoercerStats.plus(notification.getValue().stats());
+                        }
+                    }})
+                .build(new CacheLoader<Class<?>, Cache<Class<?>, Coercer>>() {
+                    @Override public Cache<Class<?>, Coercer> load(Class<?> targetType) {
+                        return CacheBuilder.newBuilder().weakKeys().softValues().recordStats().build();
+                    }
+                });
+    }
+
+    private static Coercer getCoercer(Class<?> valueType, Class<?> targetType) {
+        Cache<Class<?>, Coercer> forTarget = coercers.getUnchecked(targetType);
+        Coercer result = forTarget.getIfPresent(valueType);
+        if (result == null) {
+            result = findCoercer(valueType, targetType);
+            forTarget.put(valueType, result);
+        }
+        return result;
+    }
+
+    /** the hits and misses of the coercer caches, since startup (including those of caches since discarded) */
+    public static CacheStats getCoercerCacheStats() {
+        synchronized (coercerStatsMutex) {
+            CacheStats result = discardedCoercerStats;
+            for (Cache<Class<?>, Coercer> forTarget : coercers.asMap().values()) {
+                result = result.plus(forTarget.stats());
+            }
+            return result;
+        }
+    }
+
+    /** whether the coercer for values of the given class to the target type has been found and is still cached */
+    @VisibleForTesting
+    public static boolean isCoercerCached(Class<?> valueType, Class<?> targetType) {
+        Cache<Class<?>, Coercer> forTarget = coercers.getIfPresent(targetType);
+        return forTarget != null && forTarget.getIfPresent(valueType) != null;
+    }
+
+    /**
+     * Finds how to coerce values of the given class to the target type, checking the strategies described 
+     * in {@link #coerce(Object, Class)} in order. All of these depend only on the value's class
+     * (apart from enums, where a value which is not a name of the enum falls back to the registry).
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Coercer findCoercer(final Class<?> valueType, final Class<?> targetType) {
         // TODO use registry first?
 
         //deal with primitive->primitive casting
-        if (isPrimitiveOrBoxer(targetType) && isPrimitiveOrBoxer(value.getClass())) {
+        if (isPrimitiveOrBoxer(targetType) && isPrimitiveOrBoxer(valueType)) {
             // Don't just rely on Java to do its normal casting later; if caller writes
             // long `l = coerce(new Integer(1), Long.class)` then letting java do its casting will fail,
             // because an Integer will not automatically be unboxed and cast to a long
-            return castPrimitive(value, (Class<T>)targetType);
+            return new Coercer() {
+                @Override public Object apply(Object value) {
+                    return castPrimitive(value, targetType);
+                }};
         }
 
         //deal with string->primitive
-        if (value instanceof String && isPrimitiveOrBoxer(targetType)) {
-            return stringToPrimitive((String)value, (Class<T>)targetType);
+        if (valueType == String.class && isPrimitiveOrBoxer(targetType)) {
+            return new Coercer() {
+                @Override public Object apply(Object value) {
+                    return stringToPrimitive((String)value, targetType);
+                }};
         }
 
         //deal with primitive->string
-        if (isPrimitiveOrBoxer(value.getClass()) && targetType.equals(String.class)) {
-            return (T) value.toString();
+        if (isPrimitiveOrBoxer(valueType) && targetType.equals(String.class)) {
+            return new Coercer() {
+                @Override public Object apply(Object value) {
+                    return value.toString();
+                }};
         }
 
         //look for value.asType where Type is castable to targetType
         String targetTypeSimpleName = getVerySimpleName(targetType);
         if (targetTypeSimpleName!=null && targetTypeSimpleName.length()>0) {
-            for (Method m: value.getClass().getMethods()) {
+            for (final Method m: valueType.getMethods()) {
                 if (m.getName().startsWith("as") && m.getParameterTypes().length==0 &&
                         targetType.isAssignableFrom(m.getReturnType()) ) {
                     if (m.getName().equals("as"+getVerySimpleName(m.getReturnType()))) {
-                        try {
-                            return (T) m.invoke(value);
-                        } catch (Exception e) {
-                            throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                        }
+                        return new Coercer() {
+                            @Override public Object apply(Object value) {
+                                try {
+                                    return m.invoke(value);
+                                } catch (Exception e) {
+                                    throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
+                                }
+                            }};
                     }
                 }
             }
         }
         
         //now look for static TargetType.fromType(Type t) where value instanceof Type  
-        for (Method m: targetType.getMethods()) {
+        for (final Method m: targetType.getMethods()) {
             if (((m.getModifiers()&Modifier.STATIC)==Modifier.STATIC) && 
                     m.getName().startsWith("from") && m.getParameterTypes().length==1 &&
-                    m.getParameterTypes()[0].isInstance(value)) {
+                    m.getParameterTypes()[0].isAssignableFrom(valueType)) {
                 if (m.getName().equals("from"+getVerySimpleName(m.getParameterTypes()[0]))) {
-                    try {
-                        return (T) m.invoke(null, value);
-                    } catch (Exception e) {
-                        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                    }
+                    return new Coercer() {
+                        @Override public Object apply(Object value) {
+                            try {
+                                return m.invoke(null, value);
+                            } catch (Exception e) {
+                                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
+                            }
+                        }};
                 }
             }
         }
         
        //ENHANCEMENT could look in type hierarchy of both types for a conversion method...
         
-        //primitives get run through again boxed up
-        Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
-        Class boxedVT = UNBOXED_TO_BOXED_TYPES.get(value.getClass());
-        if (boxedT!=null || boxedVT!=null) {
-            try {
-                if (boxedT==null) boxedT=targetType;
-                Object boxedV;
-                if (boxedVT==null) { boxedV = value; }
-                else { boxedV = boxedVT.getConstructor(value.getClass()).newInstance(value); }
-                return (T) coerce(boxedV, boxedT);
-            } catch (Exception e) {
-                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
-            }
-        }
-
-        //for enums call valueOf with the string representation of the value
-        if (targetType.isEnum()) {
-            T result = (T) stringToEnum((Class<Enum>) targetType, null).apply(String.valueOf(value));
-            if (result != null) return result;
+        //primitives get run through again boxed up (values are never primitive, so it is only the target type)
+        final Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
+        if (boxedT!=null) {
+            return new Coercer() {
+                @Override public Object apply(Object value) {
+                    try {
+                        return coerce(value, boxedT);
+                    } catch (Exception e) {
+                        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
+                    }
+                }};
         }
 
         //now look in registry
+        Function adapter = null;
         synchronized (TypeCoercions.class) {
             Map<Class, Function> adapters = registry.row(targetType);
             for (Map.Entry<Class, Function> entry : adapters.entrySet()) {
-                if (entry.getKey().isInstance(value)) {
-                    return (T) entry.getValue().apply(value);
+                if (entry.getKey().isAssignableFrom(valueType)) {
+                    adapter = entry.getValue();
+                    break;
                 }
             }
         }
+        final Coercer fromRegistry;
+        if (adapter != null) {
+            final Function adapterFinal = adapter;
+            fromRegistry = new Coercer() {
+                @Override public Object apply(Object value) {
+                    return adapterFinal.apply(value);
+                }};
+        } else {
+            fromRegistry = new Coercer() {
+                @Override public Object apply(Object value) {
+                    //not found
+                    throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+                }};
+        }
 
-        //not found
-        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+        //for enums call valueOf with the string representation of the value (before looking in the registry)
+        if (targetType.isEnum()) {
+            final Function<String, ?> toEnum = stringToEnum((Class<Enum>) targetType, null);
+            return new Coercer() {
+                @Override public Object apply(Object value) {
+                    Object result = toEnum.apply(String.valueOf(value));
+                    return (result != null) ? result : fromRegistry.apply(value);
+                }};
+        }
+
+        return fromRegistry;
     }
 
     /**
@@ -377,6 +492,12 @@ public class TypeCoercions {
 
     public synchronized static <A,B> void registerAdapter(Class<A> sourceType, Class<B> targetType, Function<A,B> fn) {
         registry.put(targetType, sourceType, fn);
+        synchronized (coercerStatsMutex) {
+            for (Cache<Class<?>, Coercer> forTarget : coercers.asMap().values()) {
+                discardedCoercerStats = discardedCoercerStats.plus(forTarget.stats());
+            }
+            coercers = newCoercersCache();
+        }
     }
 
     static {
@@ -0,0 +1,95 @@
+package brooklyn.util.internal.ssh;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import brooklyn.util.flags.TypeCoercions;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * Identifies an ssh connection which can be shared (see {@link SshConnectionManager}): the host, port and user,
+ * and a fingerprint of everything else used to create the {@link SshTool} (i.e. the credentials and other
+ * connection settings), so that connections are only shared by callers which would connect identically.
+ * <p>
+ * The fingerprint is a hash, so that credentials do not appear in keys (e.g. when logged).
+ */
+public final class SshConnectionKey {
+
+    private static final Set<String> ADDRESS_KEYS = ImmutableSet.of(
+            SshTool.PROP_HOST.getName(), SshTool.PROP_PORT.getName(), SshTool.PROP_USER.getName());
+
+    /**
+     * The key for connections made by an {@link SshTool} constructed with the given args, ignoring those of the
+     * excluded args which do not affect the connection (e.g. the per-command properties).
+     */
+    public static SshConnectionKey fromArgs(Map<String, ?> args, Set<String> excludedArgs) {
+        Object port = args.get(SshTool.PROP_PORT.getName());
+        Object user = args.get(SshTool.PROP_USER.getName());
+
+        SortedMap<String, String> settings = Maps.newTreeMap();
+        for (Map.Entry<String, ?> entry : args.entrySet()) {
+            if (ADDRESS_KEYS.contains(entry.getKey()) || excludedArgs.contains(entry.getKey())) continue;
+            settings.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        String fingerprint = Hashing.sha256().hashString(settings.toString(), Charsets.UTF_8).toString();
+
+        return new SshConnectionKey(
+                (String) checkNotNull(args.get(SshTool.PROP_HOST.getName()), "host"),
+                (port != null) ? TypeCoercions.coerce(port, Integer.class) : SshTool.PROP_PORT.getDefaultValue(),
+                (user != null) ? user.toString() : SshTool.PROP_USER.getDefaultValue(),
+                fingerprint);
+    }
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String fingerprint;
+
+    public SshConnectionKey(String host, int port, String user, String fingerprint) {
+        this.host = checkNotNull(host, "host");
+        this.port = port;
+        this.user = user;
+        this.fingerprint = checkNotNull(fingerprint, "fingerprint");
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SshConnectionKey)) return false;
+        SshConnectionKey o = (SshConnectionKey) obj;
+        return host.equals(o.host) && port == o.port && Objects.equal(user, o.user) && fingerprint.equals(o.fingerprint);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(host, port, user, fingerprint);
+    }
+
+    @Override
+    public String toString() {
+        return user+"@"+host+":"+port+"["+fingerprint.substring(0, Math.min(8, fingerprint.length()))+"]";
+    }
+}
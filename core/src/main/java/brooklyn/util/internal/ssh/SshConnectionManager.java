@@ -0,0 +1,557 @@
+package brooklyn.util.internal.ssh;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.util.pool.Lease;
+import brooklyn.util.stream.Streams;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Shares ssh connections (i.e. connected {@link SshTool}s) between all the
+ * {@link brooklyn.location.basic.SshMachineLocation}s of a management context
+ * (see {@link brooklyn.management.internal.AbstractManagementContext#getSshConnectionManager()}).
+ * <p>
+ * Connections are keyed by {@link SshConnectionKey}, so any number of machines (and of callers passing different
+ * per-command properties) which would connect identically use the same connections, rather than each making
+ * their own. Each connection can be leased by up to {@link #MAX_SESSIONS_PER_CONNECTION} callers at once,
+ * each running its commands in its own channel over the connection's one transport; another connection is
+ * only opened when all those for the key are fully leased.
+ * <p>
+ * The number of pooled connections is capped in total ({@link #MAX_CONNECTIONS}) and per host ({@link #MAX_CONNECTIONS_PER_HOST}).
+ * When at a cap, the least recently used idle connection (of any key) is closed to make room; if there is none,
+ * the caller is given a new connection of its own, outside the pool, which is closed when its lease is released
+ * (so callers never wait for a connection). Connections left idle for longer than their idle timeout are closed
+ * by a periodic sweep (see {@link #EVICTION_PERIOD}), or, for a manager made by {@link #newUnmanaged()}, when
+ * next leasing a connection.
+ * <p>
+ * Callers which use connections for a key over time (e.g. machines) can {@link #register(SshConnectionKey) register}
+ * it, so that its connections are closed when the last of them {@link #unregister(SshConnectionKey) unregisters}.
+ * <p>
+ * The handshakes made and avoided, and the latency of handshakes, are recorded; see {@link #getTotalHandshakes()},
+ * {@link #getTotalHandshakesAvoided()} and {@link #getHandshakeLatencyHistogram()}.
+ */
+public class SshConnectionManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SshConnectionManager.class);
+
+    public static final ConfigKey<Integer> MAX_CONNECTIONS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.ssh.connections.max",
+            "The maximum number of pooled ssh connections open at once, to all hosts (beyond which connections are not shared)",
+            500);
+
+    public static final ConfigKey<Integer> MAX_CONNECTIONS_PER_HOST = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.ssh.connections.maxPerHost",
+            "The maximum number of pooled ssh connections open at once to any one host (beyond which connections are not shared)",
+            10);
+
+    public static final ConfigKey<Integer> MAX_SESSIONS_PER_CONNECTION = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.ssh.connections.maxSessionsPerConnection",
+            "The maximum number of callers using an ssh connection at once, each in its own channel; 1 for exclusive use "
+            + "(the ssh server may also limit the number of channels per connection, e.g. MaxSessions in sshd_config)",
+            4);
+
+    public static final ConfigKey<Duration> EVICTION_PERIOD = ConfigKeys.newConfigKey(Duration.class,
+            "brooklyn.ssh.connections.evictionPeriod",
+            "How often to close the ssh connections which have been idle for longer than their idle timeout",
+            Duration.ONE_SECOND);
+
+    /** the upper bounds (exclusive) of the buckets of {@link #getHandshakeLatencyHistogram()}, in millis */
+    private static final long[] HANDSHAKE_LATENCY_BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    /**
+     * A manager with the default settings and no thread of its own, for the machines which have no (running)
+     * management context: idle connections are closed when next leasing a connection, and by {@link #stop()}.
+     */
+    public static SshConnectionManager newUnmanaged() {
+        return new SshConnectionManager(MAX_CONNECTIONS.getDefaultValue(), MAX_CONNECTIONS_PER_HOST.getDefaultValue(),
+                MAX_SESSIONS_PER_CONNECTION.getDefaultValue(), null);
+    }
+
+    private static class Connection {
+        final SshConnectionKey key;
+        final SshTool tool;
+        /** false if outside the pool (made when at a cap), so used by just one lease */
+        final boolean pooled;
+        // the following are guarded by the manager's mutex
+        int leases;
+        long lastReleasedNanos = System.nanoTime();
+        long idleTimeoutNanos;
+        boolean retired;
+
+        Connection(SshConnectionKey key, SshTool tool, boolean pooled) {
+            this.key = key;
+            this.tool = tool;
+            this.pooled = pooled;
+        }
+
+        @Override
+        public String toString() {
+            return "SshConnection["+key+"; "+tool+(pooled ? "" : "; unpooled")+"]";
+        }
+    }
+
+    private class ConnectionLease implements Lease<SshTool> {
+        final Connection connection;
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        ConnectionLease(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public SshTool leasedObject() {
+            if (closed.get()) throw new IllegalStateException("Lease of "+connection+" has been closed");
+            return connection.tool;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) release(connection);
+        }
+    }
+
+    private final int maxConnections;
+    private final int maxConnectionsPerHost;
+    private final int maxSessionsPerConnection;
+
+    private final Object mutex = new Object();
+    private final Map<SshConnectionKey, List<Connection>> connections = Maps.newLinkedHashMap();
+    // the number of connections per host, including those being connected
+    private final Multiset<String> hostConnections = HashMultiset.create();
+    // the number of callers registered for each key
+    private final Multiset<SshConnectionKey> registrations = HashMultiset.create();
+    private int numLeases;
+    private boolean running = true;
+
+    private final ScheduledExecutorService evictor; // null if idle connections are evicted when leasing
+
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong handshakesAvoided = new AtomicLong();
+    private final AtomicLong failedHandshakes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong unpooledConnections = new AtomicLong();
+    private final AtomicLongArray handshakeLatencies = new AtomicLongArray(HANDSHAKE_LATENCY_BUCKETS.length + 1);
+
+    public SshConnectionManager(StringConfigMap config) {
+        this(config.getConfig(MAX_CONNECTIONS), config.getConfig(MAX_CONNECTIONS_PER_HOST), config.getConfig(MAX_SESSIONS_PER_CONNECTION),
+                checkNotNull(config.getConfig(EVICTION_PERIOD), "evictionPeriod"));
+    }
+
+    /**
+     * @param evictionPeriod how often to close the idle connections, in a thread of the manager's own;
+     *        or null to do so when leasing instead
+     */
+    public SshConnectionManager(int maxConnections, int maxConnectionsPerHost, int maxSessionsPerConnection, Duration evictionPeriod) {
+        checkArgument(maxConnections > 0, "maxConnections must be positive");
+        checkArgument(maxConnectionsPerHost > 0, "maxConnectionsPerHost must be positive");
+        checkArgument(maxSessionsPerConnection > 0, "maxSessionsPerConnection must be positive");
+        checkArgument(evictionPeriod == null || evictionPeriod.toMilliseconds() > 0, "evictionPeriod must be positive");
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxSessionsPerConnection = maxSessionsPerConnection;
+
+        if (evictionPeriod == null) {
+            evictor = null;
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-ssh-connection-evictor").setDaemon(true).build());
+        evictor.scheduleWithFixedDelay(new Runnable() {
+                @Override public void run() {
+                    try {
+                        evictIdleConnections();
+                    } catch (Exception e) {
+                        // don't rethrow: that would cancel all later runs
+                        LOG.warn("Problem evicting idle ssh connections", e);
+                    }
+                }},
+                evictionPeriod.toMilliseconds(), evictionPeriod.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the task with a connection for the given key: an existing connection if one is available,
+     * or else a new one from the connector.
+     *
+     * @see #leaseConnection(SshConnectionKey, Duration, Supplier)
+     */
+    public <T> T exec(SshConnectionKey key, Duration idleTimeout, Supplier<? extends SshTool> connector, Function<? super SshTool, T> task) {
+        Lease<SshTool> lease = leaseConnection(key, idleTimeout, connector);
+        try {
+            return task.apply(lease.leasedObject());
+        } finally {
+            Streams.closeQuietly(lease);
+        }
+    }
+
+    /**
+     * Leases a connection for the given key, which must be closed when done with: an existing connection
+     * if one is available, or else a new one from the connector (which must return a connected tool for
+     * that key). If at a cap on the number of connections, with none idle to close, the new connection
+     * is outside the pool: it is used by this lease alone, and closed when the lease is.
+     *
+     * @param idleTimeout how long the connection can be left idle before it is closed
+     */
+    public Lease<SshTool> leaseConnection(SshConnectionKey key, Duration idleTimeout, Supplier<? extends SshTool> connector) {
+        checkNotNull(key, "key");
+        checkNotNull(connector, "connector");
+        long idleTimeoutNanos = checkNotNull(idleTimeout, "idleTimeout").toNanoseconds();
+        if (evictor == null) evictIdleConnections();
+        boolean pooled;
+        List<Connection> toClose = Lists.newArrayList();
+        try {
+            synchronized (mutex) {
+                checkRunning();
+                Connection available = findAvailable(key, toClose);
+                if (available != null) {
+                    available.leases++;
+                    available.idleTimeoutNanos = idleTimeoutNanos;
+                    numLeases++;
+                    handshakesAvoided.incrementAndGet();
+                    return new ConnectionLease(available);
+                }
+                pooled = hasCapacity(key.getHost()) || evictForCapacity(key.getHost(), toClose);
+                // reserve the connection, then connect without holding the mutex
+                if (pooled) hostConnections.add(key.getHost());
+            }
+        } finally {
+            closeAll(toClose);
+        }
+        if (!pooled) {
+            unpooledConnections.incrementAndGet();
+            if (LOG.isDebugEnabled()) LOG.debug("At cap on ssh connections to {} ({} connections to host, {} in total); opening unpooled connection",
+                    new Object[] {key, hostConnections.count(key.getHost()), hostConnections.size()});
+        }
+        return connect(key, idleTimeoutNanos, connector, pooled);
+    }
+
+    /**
+     * Stops reusing the connection of the given lease (e.g. because the caller has changed something which
+     * only takes effect for new connections): it is closed once no longer leased, and later leases use new
+     * connections. Other connections for the same key are unaffected.
+     */
+    public void retire(Lease<SshTool> lease) {
+        Connection conn = ((ConnectionLease) lease).connection;
+        synchronized (mutex) {
+            conn.retired = true;
+        }
+    }
+
+    /**
+     * Stops reusing all the pooled connections for the given key (e.g. because the caller has changed something
+     * which only takes effect for new connections, such as a user's groups): idle ones are closed now, and those
+     * leased are closed once released. Later leases for the key use new connections.
+     */
+    public void retire(SshConnectionKey key) {
+        List<Connection> toClose = Lists.newArrayList();
+        synchronized (mutex) {
+            retireAll(key, toClose);
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Records that a caller will use connections for the given key, until it calls {@link #unregister(SshConnectionKey)}.
+     */
+    public void register(SshConnectionKey key) {
+        synchronized (mutex) {
+            registrations.add(checkNotNull(key, "key"));
+        }
+    }
+
+    /**
+     * Records that a caller no longer uses connections for the given key: if it was the last registered for the key,
+     * the key's connections are closed, once no longer leased.
+     */
+    public void unregister(SshConnectionKey key) {
+        List<Connection> toClose = Lists.newArrayList();
+        synchronized (mutex) {
+            if (registrations.remove(key) && !registrations.contains(key)) {
+                retireAll(key, toClose);
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /** Closes all connections (those leased, when released), and fails later (and waiting) leases. */
+    public void stop() {
+        List<Connection> toClose = Lists.newArrayList();
+        synchronized (mutex) {
+            running = false;
+            for (List<Connection> conns : Lists.newArrayList(connections.values())) {
+                for (Connection conn : Lists.newArrayList(conns)) {
+                    conn.retired = true;
+                    if (conn.leases == 0) {
+                        remove(conn);
+                        toClose.add(conn);
+                    }
+                }
+            }
+        }
+        if (evictor != null) evictor.shutdownNow();
+        closeAll(toClose);
+        if (LOG.isDebugEnabled()) LOG.debug("Stopped {}: handshakes={}; handshakesAvoided={}; evictions={}",
+                new Object[] {this, getTotalHandshakes(), getTotalHandshakesAvoided(), getTotalEvictions()});
+    }
+
+    /** the number of open connections */
+    public int getNumConnections() {
+        synchronized (mutex) {
+            int result = 0;
+            for (List<Connection> conns : connections.values()) {
+                result += conns.size();
+            }
+            return result;
+        }
+    }
+
+    /** the number of registrations, over all keys (counting each key once per caller registered for it) */
+    public int getNumRegistrations() {
+        synchronized (mutex) {
+            return registrations.size();
+        }
+    }
+
+    /** the number of connections leased and not yet released (each using its own channel) */
+    public int getNumLeases() {
+        synchronized (mutex) {
+            return numLeases;
+        }
+    }
+
+    /** the number of connections made */
+    public long getTotalHandshakes() {
+        return handshakes.get();
+    }
+
+    /** the number of leases which used an existing connection, rather than making a new one */
+    public long getTotalHandshakesAvoided() {
+        return handshakesAvoided.get();
+    }
+
+    /** the number of attempts to connect which failed */
+    public long getTotalFailedHandshakes() {
+        return failedHandshakes.get();
+    }
+
+    /** the number of connections closed because they were idle, either for too long or when at a cap */
+    public long getTotalEvictions() {
+        return evictions.get();
+    }
+
+    /** the number of connections made outside the pool, because at a cap with no idle connection to close */
+    public long getTotalUnpooledConnections() {
+        return unpooledConnections.get();
+    }
+
+    /**
+     * The number of handshakes (successful or not) by how long they took: the keys are the upper bound of each bucket
+     * (e.g. "&lt;100ms"), in increasing order, and the last is "&gt;=30000ms".
+     */
+    public Map<String, Long> getHandshakeLatencyHistogram() {
+        Map<String, Long> result = Maps.newLinkedHashMap();
+        for (int i = 0; i < HANDSHAKE_LATENCY_BUCKETS.length; i++) {
+            result.put("<"+HANDSHAKE_LATENCY_BUCKETS[i]+"ms", handshakeLatencies.get(i));
+        }
+        result.put(">="+HANDSHAKE_LATENCY_BUCKETS[HANDSHAKE_LATENCY_BUCKETS.length-1]+"ms", handshakeLatencies.get(HANDSHAKE_LATENCY_BUCKETS.length));
+        return result;
+    }
+
+    private Lease<SshTool> connect(SshConnectionKey key, long idleTimeoutNanos, Supplier<? extends SshTool> connector, boolean pooled) {
+        SshTool tool = null;
+        long startTime = System.nanoTime();
+        try {
+            tool = checkNotNull(connector.get(), "connector returned null");
+        } finally {
+            recordHandshake(System.nanoTime() - startTime, tool != null);
+            if (tool == null && pooled) {
+                synchronized (mutex) {
+                    hostConnections.remove(key.getHost());
+                }
+            }
+        }
+
+        Connection conn = new Connection(key, tool, pooled);
+        synchronized (mutex) {
+            if (running) {
+                if (pooled) {
+                    List<Connection> conns = connections.get(key);
+                    if (conns == null) {
+                        conns = Lists.newArrayList();
+                        connections.put(key, conns);
+                    }
+                    conns.add(conn);
+                }
+                conn.leases = 1;
+                conn.idleTimeoutNanos = idleTimeoutNanos;
+                numLeases++;
+                if (LOG.isDebugEnabled()) LOG.debug("Opened {} ({} connections to host, {} in total)",
+                        new Object[] {conn, hostConnections.count(key.getHost()), hostConnections.size()});
+                return new ConnectionLease(conn);
+            }
+            if (pooled) hostConnections.remove(key.getHost());
+        }
+        close(conn);
+        throw new IllegalStateException("Ssh connection manager has been stopped");
+    }
+
+    private void release(Connection conn) {
+        boolean close = false;
+        synchronized (mutex) {
+            conn.leases--;
+            numLeases--;
+            conn.lastReleasedNanos = System.nanoTime();
+            if (conn.leases == 0 && (!conn.pooled || conn.retired || !isViable(conn))) {
+                remove(conn);
+                close = true;
+            }
+        }
+        if (close) close(conn);
+    }
+
+    /** a connection for the key which can take another lease, closing (via toClose) any idle ones which are no longer viable */
+    private Connection findAvailable(SshConnectionKey key, List<Connection> toClose) {
+        List<Connection> conns = connections.get(key);
+        if (conns == null) return null;
+        for (Connection conn : Lists.newArrayList(conns)) {
+            if (conn.retired || conn.leases >= maxSessionsPerConnection) continue;
+            if (conn.leases == 0 && !isViable(conn)) {
+                remove(conn);
+                toClose.add(conn);
+                continue;
+            }
+            return conn;
+        }
+        return null;
+    }
+
+    private boolean hasCapacity(String host) {
+        return hostConnections.size() < maxConnections && hostConnections.count(host) < maxConnectionsPerHost;
+    }
+
+    /** evicts the least recently used idle connection which makes room for a connection to the host, if there is one */
+    private boolean evictForCapacity(String host, List<Connection> toClose) {
+        boolean hostFull = hostConnections.count(host) >= maxConnectionsPerHost;
+        Connection victim = null;
+        for (List<Connection> conns : connections.values()) {
+            for (Connection conn : conns) {
+                if (conn.leases > 0 || (hostFull && !conn.key.getHost().equals(host))) continue;
+                if (victim == null || conn.lastReleasedNanos < victim.lastReleasedNanos) victim = conn;
+            }
+        }
+        if (victim == null) return false;
+        if (LOG.isDebugEnabled()) LOG.debug("Evicting idle {}, to make room for connection to {}", victim, host);
+        remove(victim);
+        toClose.add(victim);
+        evictions.incrementAndGet();
+        return hasCapacity(host);
+    }
+
+    private void evictIdleConnections() {
+        List<Connection> toClose = Lists.newArrayList();
+        synchronized (mutex) {
+            long now = System.nanoTime();
+            for (Iterator<List<Connection>> iter = connections.values().iterator(); iter.hasNext();) {
+                List<Connection> conns = iter.next();
+                for (Iterator<Connection> connIter = conns.iterator(); connIter.hasNext();) {
+                    Connection conn = connIter.next();
+                    if (conn.leases == 0 && now - conn.lastReleasedNanos > conn.idleTimeoutNanos) {
+                        connIter.remove();
+                        hostConnections.remove(conn.key.getHost());
+                        toClose.add(conn);
+                    }
+                }
+                if (conns.isEmpty()) iter.remove();
+            }
+        }
+        if (toClose.size() > 0) {
+            if (LOG.isDebugEnabled()) LOG.debug("Closing {} idle ssh connections: {}", toClose.size(), toClose);
+            evictions.addAndGet(toClose.size());
+            closeAll(toClose);
+        }
+    }
+
+    /** retires the connections for the key, removing the idle ones (to be closed, via toClose); caller must hold the mutex */
+    private void retireAll(SshConnectionKey key, List<Connection> toClose) {
+        List<Connection> conns = connections.get(key);
+        if (conns == null) return;
+        for (Connection conn : Lists.newArrayList(conns)) {
+            conn.retired = true;
+            if (conn.leases == 0) {
+                remove(conn);
+                toClose.add(conn);
+            }
+        }
+    }
+
+    private void remove(Connection conn) {
+        List<Connection> conns = connections.get(conn.key);
+        if (conns != null && conns.remove(conn)) {
+            hostConnections.remove(conn.key.getHost());
+            if (conns.isEmpty()) connections.remove(conn.key);
+        }
+    }
+
+    private boolean isViable(Connection conn) {
+        try {
+            return conn.tool.isConnected();
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) LOG.debug("Failed to check whether "+conn+" is connected; treating as disconnected", e);
+            return false;
+        }
+    }
+
+    private void recordHandshake(long durationNanos, boolean succeeded) {
+        (succeeded ? handshakes : failedHandshakes).incrementAndGet();
+        long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        int bucket = 0;
+        while (bucket < HANDSHAKE_LATENCY_BUCKETS.length && millis >= HANDSHAKE_LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        handshakeLatencies.incrementAndGet(bucket);
+    }
+
+    private void checkRunning() {
+        if (!running) throw new IllegalStateException("Ssh connection manager has been stopped");
+    }
+
+    private void closeAll(List<Connection> conns) {
+        for (Connection conn : conns) {
+            close(conn);
+        }
+    }
+
+    private void close(Connection conn) {
+        if (LOG.isTraceEnabled()) LOG.trace("Closing {}", conn);
+        try {
+            conn.tool.disconnect();
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) LOG.debug("Failed to disconnect "+conn, e);
+        }
+    }
+}
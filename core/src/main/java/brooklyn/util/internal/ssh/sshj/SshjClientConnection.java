@@ -168,27 +168,33 @@ public class SshjClientConnection implements SshAction<SSHClient> {
         if (sessionTimeout != 0) {
             ssh.setTimeout(sessionTimeout);
         }
-        ssh.connect(hostAndPort.getHostText(), hostAndPort.getPortOrDefault(22));
+        try {
+            ssh.connect(hostAndPort.getHostText(), hostAndPort.getPortOrDefault(22));
         
-        if (password != null) {
-            ssh.authPassword(username, password);
-        } else if (privateKeyData != null) {
-            OpenSSHKeyFile key = new OpenSSHKeyFile();
-            key.init(privateKeyData, null, 
-                    GroovyJavaMethods.truth(privateKeyPassphrase) ? 
-                            PasswordUtils.createOneOff(privateKeyPassphrase.toCharArray())
-                            : null);
-            ssh.authPublickey(username, key);
-        } else if (privateKeyFile != null) {
-            OpenSSHKeyFile key = new OpenSSHKeyFile();
-            key.init(privateKeyFile, 
-                    GroovyJavaMethods.truth(privateKeyPassphrase) ? 
-                            PasswordUtils.createOneOff(privateKeyPassphrase.toCharArray())
-                            : null);
-            ssh.authPublickey(username, key);
-        } else {
-            // Accept defaults (in ~/.ssh)
-            ssh.authPublickey(username);
+            if (password != null) {
+                ssh.authPassword(username, password);
+            } else if (privateKeyData != null) {
+                OpenSSHKeyFile key = new OpenSSHKeyFile();
+                key.init(privateKeyData, null, 
+                        GroovyJavaMethods.truth(privateKeyPassphrase) ? 
+                                PasswordUtils.createOneOff(privateKeyPassphrase.toCharArray())
+                                : null);
+                ssh.authPublickey(username, key);
+            } else if (privateKeyFile != null) {
+                OpenSSHKeyFile key = new OpenSSHKeyFile();
+                key.init(privateKeyFile, 
+                        GroovyJavaMethods.truth(privateKeyPassphrase) ? 
+                                PasswordUtils.createOneOff(privateKeyPassphrase.toCharArray())
+                                : null);
+                ssh.authPublickey(username, key);
+            } else {
+                // Accept defaults (in ~/.ssh)
+                ssh.authPublickey(username);
+            }
+        } catch (Exception e) {
+            // don't leave a half-open connection (e.g. if authentication failed)
+            clear();
+            throw e;
         }
         
         return ssh;
@@ -0,0 +1,315 @@
+package brooklyn.util.internal.ssh.sshj;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.ConnectionException;
+import net.schmizz.sshj.transport.TransportException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.internal.ssh.SshAbstractTool.SshAction;
+
+import com.google.common.base.Throwables;
+
+/**
+ * The sshj transport (i.e. connected and authenticated {@link SSHClient}) shared by all the concurrent commands
+ * of an {@link SshjTool}.
+ * <p>
+ * Each user of the transport (e.g. a session, or an sftp client) holds a reference to it, from {@link #acquire()}
+ * until {@link #release(Transport)}. A transport is retired when it breaks, or when the tool is disconnected:
+ * later users get a new transport, but the retired one is only closed when its last user releases it,
+ * so one thread never breaks another's in-flight command.
+ * <p>
+ * Connecting is done by one thread at a time: others needing the transport wait for that attempt, rather than
+ * each connecting (or disconnecting) in turn. The connection's {@link State} is:
+ * <ul>
+ *   <li>{@link State#DISCONNECTED}: no transport; the next acquirer connects
+ *   <li>{@link State#CONNECTING}: an acquirer is connecting; others wait for the outcome
+ *   <li>{@link State#CONNECTED}: acquirers share the transport
+ *   <li>{@link State#BACKING_OFF}: the last attempt(s) to connect failed; acquirers wait until the backoff delay
+ *       (doubling with each consecutive failure, up to a maximum) has passed, and then one connects again
+ * </ul>
+ */
+public class SshjSharedConnection {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SshjSharedConnection.class);
+
+    public static enum State {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED,
+        BACKING_OFF;
+    }
+
+    /** A transport, and the number of its users. */
+    public static class Transport {
+        private final SSHClient ssh;
+        private final long generation;
+        // guarded by the connection
+        private int references;
+        private boolean retired;
+        private boolean closed;
+
+        Transport(SSHClient ssh, long generation) {
+            this.ssh = ssh;
+            this.generation = generation;
+        }
+
+        public SSHClient getClient() {
+            return ssh;
+        }
+
+        /** incremented for each new transport of the connection */
+        public long getGeneration() {
+            return generation;
+        }
+
+        boolean isUsable() {
+            return ssh.isConnected() && ssh.isAuthenticated();
+        }
+
+        @Override
+        public String toString() {
+            return "Transport[generation="+generation+"; references="+references+(retired ? "; retired" : "")+"]";
+        }
+    }
+
+    private final SshAction<SSHClient> connector;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    // all guarded by this
+    private State state = State.DISCONNECTED;
+    private Transport current;
+    private long generation;
+    private long connectAttempts;
+    private int consecutiveFailures;
+    private long retryAtNanos;
+    private Exception lastFailure;
+
+    /**
+     * @param connector creates a new connected and authenticated client each time it is called
+     * @param initialBackoffMillis the delay before reconnecting after a failed connect
+     * @param maxBackoffMillis the maximum delay, however many consecutive connects have failed
+     */
+    public SshjSharedConnection(SshAction<SSHClient> connector, long initialBackoffMillis, long maxBackoffMillis) {
+        checkArgument(initialBackoffMillis >= 0, "initialBackoffMillis must not be negative");
+        checkArgument(maxBackoffMillis >= initialBackoffMillis, "maxBackoffMillis must be at least initialBackoffMillis");
+        this.connector = checkNotNull(connector, "connector");
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Returns a reference to the transport, connecting if there is none, which must be released when done with.
+     * Fails if the connect attempt (by this thread, or by another which this one waited for) fails.
+     */
+    public Transport acquire() throws Exception {
+        long attempt;
+        Transport unusable = null;
+        synchronized (this) {
+            while (true) {
+                if (state == State.CONNECTED) {
+                    if (current.isUsable()) {
+                        current.references++;
+                        return current;
+                    }
+                    if (LOG.isDebugEnabled()) LOG.debug("Ssh transport {} of {} no longer connected; reconnecting", current, connector);
+                    unusable = current;
+                    retireCurrent(State.DISCONNECTED);
+                    if (!shouldClose(unusable)) unusable = null;
+                    continue;
+                }
+                if (state == State.CONNECTING) {
+                    long waitingFor = connectAttempts;
+                    while (state == State.CONNECTING && connectAttempts == waitingFor) {
+                        wait();
+                    }
+                    if (state != State.CONNECTED && lastFailure != null) {
+                        // the attempt we waited for failed
+                        throw lastFailure;
+                    }
+                    continue;
+                }
+                if (state == State.BACKING_OFF) {
+                    long remainingNanos = retryAtNanos - System.nanoTime();
+                    if (remainingNanos > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                        continue;
+                    }
+                }
+                // DISCONNECTED, or BACKING_OFF and the delay has passed: this thread connects
+                state = State.CONNECTING;
+                attempt = ++connectAttempts;
+                break;
+            }
+        }
+
+        if (unusable != null) close(unusable);
+
+        SSHClient ssh = null;
+        Exception failure = null;
+        try {
+            ssh = checkNotNull(connector.create(), "client");
+        } catch (Exception e) {
+            failure = e;
+        } catch (AssertionError e) {
+            // thrown by sshj 0.8.1 if a client is used when not connected; see SshjTool
+            failure = new IllegalStateException("Problem connecting "+connector, e);
+        } catch (Error e) {
+            synchronized (this) {
+                state = State.DISCONNECTED;
+                lastFailure = null;
+                notifyAll();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            try {
+                if (failure != null) {
+                    consecutiveFailures++;
+                    long delay = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(consecutiveFailures - 1, 30));
+                    if (delay < 0) delay = maxBackoffMillis;
+                    retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                    lastFailure = failure;
+                    state = State.BACKING_OFF;
+                    if (LOG.isDebugEnabled()) LOG.debug("Failed to connect {} (attempt {}, {} consecutive failures); backing off for {}ms: {}",
+                            new Object[] {connector, attempt, consecutiveFailures, delay, failure});
+                    throw failure;
+                }
+                consecutiveFailures = 0;
+                lastFailure = null;
+                current = new Transport(ssh, ++generation);
+                current.references++;
+                state = State.CONNECTED;
+                return current;
+            } finally {
+                notifyAll();
+            }
+        }
+    }
+
+    /** Releases a reference from {@link #acquire()}; the last release of a retired transport closes it. */
+    public void release(Transport transport) {
+        boolean close;
+        synchronized (this) {
+            checkArgument(transport.references > 0, "Transport %s not acquired", transport);
+            transport.references--;
+            close = shouldClose(transport);
+        }
+        if (close) close(transport);
+    }
+
+    /**
+     * Retires the given transport if it is still the current one, so that later acquirers reconnect, if it has broken:
+     * i.e. is no longer connected, or the given failure was a failure of the transport (rather than, say,
+     * of a command or channel). The generation should be that of the transport which failed, as returned by
+     * {@link #acquire()}, rather than {@link #getGeneration()} read beforehand (as acquiring may have reconnected).
+     *
+     * @return whether the transport was retired
+     */
+    public boolean retireIfBroken(long transportGeneration, Throwable failure) {
+        Transport retired;
+        synchronized (this) {
+            if (state != State.CONNECTED || current.generation != transportGeneration) return false;
+            if (current.isUsable() && !isTransportFailure(failure)) return false;
+            if (LOG.isDebugEnabled()) LOG.debug("Retiring broken ssh transport {} of {}: {}", new Object[] {current, connector, failure});
+            retired = current;
+            retireCurrent(State.DISCONNECTED);
+            if (!shouldClose(retired)) retired = null;
+        }
+        if (retired != null) close(retired);
+        return true;
+    }
+
+    /**
+     * Retires the current transport, so that later acquirers reconnect; it is closed once no longer in use.
+     * Also resets any backoff.
+     */
+    public void disconnect() {
+        Transport retired = null;
+        synchronized (this) {
+            if (state == State.CONNECTED) {
+                retired = current;
+                retireCurrent(State.DISCONNECTED);
+            } else if (state == State.BACKING_OFF) {
+                state = State.DISCONNECTED;
+            }
+            consecutiveFailures = 0;
+            lastFailure = null;
+            if (retired != null && !shouldClose(retired)) retired = null;
+            notifyAll();
+        }
+        if (retired != null) close(retired);
+    }
+
+    /** whether there is a transport, which is still connected and authenticated */
+    public synchronized boolean isConnected() {
+        return state == State.CONNECTED && current.isUsable();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /** the generation of the current transport, or of the last one if none */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /** the number of references to the current transport */
+    public synchronized int getReferences() {
+        return (state == State.CONNECTED) ? current.references : 0;
+    }
+
+    /** the number of consecutive failed attempts to connect (reset when one succeeds) */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    private void retireCurrent(State newState) {
+        current.retired = true;
+        current = null;
+        state = newState;
+    }
+
+    private boolean shouldClose(Transport transport) {
+        if (transport.retired && transport.references == 0 && !transport.closed) {
+            transport.closed = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void close(Transport transport) {
+        if (LOG.isTraceEnabled()) LOG.trace("Closing ssh transport {} of {}", transport, connector);
+        try {
+            if (transport.ssh.isConnected()) transport.ssh.disconnect();
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) LOG.debug("<< exception disconnecting ssh transport "+transport+" of "+connector+": "+e);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            if (LOG.isDebugEnabled()) LOG.debug("<< exception disconnecting ssh transport "+transport+" of "+connector+": "+e);
+        }
+    }
+
+    private static boolean isTransportFailure(Throwable failure) {
+        if (failure == null) return false;
+        for (Throwable t : Throwables.getCausalChain(failure)) {
+            if (t instanceof TransportException || t instanceof AssertionError) return true;
+            if (t instanceof ConnectionException && !String.valueOf(t.getMessage()).contains("Request failed")) {
+                // (a "Request failed" is a rejected channel request, e.g. sftp subsystem disabled: the transport is fine)
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -28,7 +28,6 @@ import net.schmizz.sshj.sftp.SFTPClient;
 import net.schmizz.sshj.transport.TransportException;
 import net.schmizz.sshj.xfer.InMemorySourceFile;
 
-import org.apache.commons.io.input.ProxyInputStream;
 import org.bouncycastle.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,18 +59,16 @@ import com.google.common.primitives.Ints;
 public class SshjTool extends SshAbstractTool implements SshTool {
 
     /*
-     * TODO synchronization of connect/disconnect needs revisited!
-     * Saw SshjToolIntegrationTest.testExecBigConcurrentCommand fail with:
-     *     Caused by: java.lang.AssertionError
-     *         at net.schmizz.sshj.SSHClient.auth(SSHClient.java:204)
-     * i.e. another thread had called disconnect just before the failing thread
-     * did SSHClient.auth.
-     * Having multiple threads call connect/disconnect is going to be brittle. With
-     * our retries we can get away with it usually, but it's not good!
+     * All commands of a tool share one sshj transport (see SshjSharedConnection), each in its own channel.
+     * Each holds a reference to the transport while using it: a transport is only closed when the tool is
+     * disconnected, or the transport breaks, and then only once no command is using it; so one thread's
+     * disconnect (or failure) does not break another's in-flight command. Reconnecting is done by one thread,
+     * with the others waiting for it, and is backed off after consecutive failures.
      *
      * TODO need to upgrade sshj version from 0.8.1 to 0.9, but jclouds 1.7.2 still 
      * relies on 0.8.1. In 0.9, it fixes the https://github.com/shikhar/sshj/issues/89
-     * so does not throw AssertionError.
+     * so does not throw AssertionError (if a client is used concurrently with it being disconnected;
+     * this can no longer happen, as the transport is not disconnected while in use).
      */
 
     private static final Logger LOG = LoggerFactory.getLogger(SshjTool.class);
@@ -83,22 +80,14 @@ public class SshjTool extends SshAbstractTool implements SshTool {
     /** Terminal type name for {@code allocatePTY} option. */
     final static String TERM = "vt100"; // "dumb"
     
-    private class CloseFtpChannelOnCloseInputStream extends ProxyInputStream {
-        private final SFTPClient sftp;
-
-        private CloseFtpChannelOnCloseInputStream(InputStream proxy, SFTPClient sftp) {
-            super(proxy);
-            this.sftp = sftp;
-        }
-
-        @Override
-        public void close() throws IOException {
-            super.close();
-            closeWhispering(sftp, this);
-        }
-    }
+    /** the maximum delay before reconnecting, after consecutive failures to connect */
+    private static final long MAX_RECONNECT_BACKOFF_MILLIS = 10*1000;
 
     private final SshjClientConnection sshClientConnection;
+    private final SshjSharedConnection connection;
+
+    /** the generation of the transport last acquired by this thread's current attempt (see {@link #acquire(SshAction)}) */
+    private final ThreadLocal<Long> attemptTransportGeneration = new ThreadLocal<Long>();
 
     public static SshjToolBuilder builder() {
         return new SshjToolBuilder();
@@ -168,6 +157,8 @@ public class SshjTool extends SshAbstractTool implements SshTool {
                 .connectTimeout(builder.connectTimeout)
                 .sessionTimeout(builder.sessionTimeout)
                 .build();
+        connection = new SshjSharedConnection(sshClientConnection, builder.sshRetryDelay, 
+                Math.max(builder.sshRetryDelay, MAX_RECONNECT_BACKOFF_MILLIS));
         
         if (LOG.isTraceEnabled()) LOG.trace("Created SshTool {} ({})", this, System.identityHashCode(this));
     }
@@ -176,7 +167,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
     public void connect() {
         try {
             if (LOG.isTraceEnabled()) LOG.trace("Connecting SshjTool {} ({})", this, System.identityHashCode(this));
-            acquire(sshClientConnection);
+            acquire(new ConnectAction());
         } catch (Exception e) {
             if (LOG.isDebugEnabled()) LOG.debug(toString()+" failed to connect (rethrowing)", e);
             throw propagate(e, "failed to connect");
@@ -189,12 +180,16 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         connect(); // FIXME Should callers instead configure sshTries? But that would apply to all ssh attempts
     }
 
+    /**
+     * Disconnects the transport, once the commands in progress (in other threads) have completed;
+     * later commands reconnect.
+     */
     @Override
     public void disconnect() {
         if (LOG.isTraceEnabled()) LOG.trace("Disconnecting SshjTool {} ({})", this, System.identityHashCode(this));
         try {
             Stopwatch perfStopwatch = Stopwatch.createStarted();
-            sshClientConnection.clear();
+            connection.disconnect();
             if (LOG.isTraceEnabled()) LOG.trace("SSH Performance: {} disconnect took {}", sshClientConnection.getHostAndPort(), Time.makeTimeStringRounded(perfStopwatch));
         } catch (Exception e) {
             throw Exceptions.propagate(e);
@@ -203,7 +198,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
 
     @Override
     public boolean isConnected() {
-        return sshClientConnection.isConnected() && sshClientConnection.isAuthenticated();
+        return connection.isConnected();
     }
     
     @Override
@@ -247,13 +242,8 @@ public class SshjTool extends SshAbstractTool implements SshTool {
 
     @Override
     public int copyFromServer(Map<String,?> props, String pathAndFileOnRemoteServer, File localFile) {
-        InputStream contents = acquire(new GetFileAction(pathAndFileOnRemoteServer));
-        try {
-            Files.copy(InputStreamSupplier.of(contents), localFile);
-            return 0; // TODO Can we assume put will have thrown exception if failed? Rather than exit code != 0?
-        } catch (IOException e) {
-            throw Exceptions.propagate(e);
-        }
+        acquire(new GetFileAction(pathAndFileOnRemoteServer, localFile));
+        return 0; // TODO Can we assume get will have thrown exception if failed? Rather than exit code != 0?
     }
 
     /**
@@ -349,12 +339,17 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         backoffLimitedRetryHandler.imposeBackoffExponentialDelay(retryAttempt, message);
     }
 
+    /**
+     * Runs the action, retrying (after a backoff) if it fails, up to {@link #sshTries} times and {@link #sshTriesTimeout}.
+     * The action is cleared after each attempt. If the transport broke, it is retired (see {@link SshjSharedConnection}), 
+     * so the next attempt reconnects; otherwise the next attempt uses the same transport.
+     */
     protected <T, C extends SshAction<T>> T acquire(C action) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         
         for (int i = 0; i < sshTries; i++) {
+            attemptTransportGeneration.remove();
             try {
-                action.clear();
                 if (LOG.isTraceEnabled()) LOG.trace(">> ({}) acquiring {}", toString(), action);
                 Stopwatch perfStopwatch = Stopwatch.createStarted();
                 
@@ -364,12 +359,13 @@ public class SshjTool extends SshAbstractTool implements SshTool {
                 } catch (AssertionError e) {
                     /*
                      * TODO In net.schmizz.sshj.SSHClient.auth(SSHClient.java:204) throws AssertionError
-                     * if not connected. This can happen if another thread has called disconnect
-                     * concurrently. This is changed in sshj v0.9.0 to instead throw an IllegalStateException.
+                     * if not connected. This is changed in sshj v0.9.0 to instead throw an IllegalStateException.
                      * 
-                     * For now, we'll retry. See "TODO" at top of class about synchronization.
+                     * For now, we'll retry. See "TODO" at top of class.
                      */
                     throw new IllegalStateException("Problem in "+toString()+" for "+action, e);
+                } finally {
+                    clearWhispering(action);
                 }
                 
                 if (LOG.isTraceEnabled()) LOG.trace("<< ({}) acquired {}", toString(), returnVal);
@@ -386,11 +382,9 @@ public class SshjTool extends SshAbstractTool implements SshTool {
                 String fullMessage = String.format("%s (attempt %s/%s, in time %s/%s)", 
                         errorMessage, (i+1), sshTries, Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS)), 
                         (sshTriesTimeout > 0 ? Time.makeTimeStringRounded(sshTriesTimeout) : "unlimited"));
-                try {
-                    disconnect();
-                } catch (Exception e2) {
-                    LOG.debug("<< ("+toString()+") error closing connection: "+e+" / "+e2, e);
-                }
+                // the attempt may have connected a new transport, so check the one it actually used
+                Long transportGeneration = attemptTransportGeneration.get();
+                if (transportGeneration != null) connection.retireIfBroken(transportGeneration, e);
                 if (i + 1 == sshTries) {
                     LOG.debug("<< {} (rethrowing, out of retries): {}", fullMessage, e.getMessage());
                     throw propagate(e, fullMessage + "; out of retries");
@@ -399,9 +393,10 @@ public class SshjTool extends SshAbstractTool implements SshTool {
                     throw propagate(e, fullMessage + "; out of time");
                 } else {
                     if (LOG.isDebugEnabled()) LOG.debug("<< {}: {}", fullMessage, e.getMessage());
-                    backoffForAttempt(i + 1, errorMessage + ": " + e.getMessage());
-                    if (action != sshClientConnection)
-                        connect();
+                    // if failed to connect, the connection backs off before the next attempt to connect
+                    if (connection.getState() != SshjSharedConnection.State.BACKING_OFF) {
+                        backoffForAttempt(i + 1, errorMessage + ": " + e.getMessage());
+                    }
                     continue;
                 }
             }
@@ -410,48 +405,94 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         return null;
     }
 
-    private final SshAction<SFTPClient> sftpConnection = new SshAction<SFTPClient>() {
+    private void clearWhispering(SshAction<?> action) {
+        try {
+            action.clear();
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) LOG.debug("<< ("+toString()+") error clearing "+action+": "+e);
+        }
+    }
 
-        private SFTPClient sftp;
+    private SshjSharedConnection.Transport acquireTransport() throws Exception {
+        SshjSharedConnection.Transport result = connection.acquire();
+        attemptTransportGeneration.set(result.getGeneration());
+        return result;
+    }
 
+    /** connects the transport, if not already connected */
+    private class ConnectAction implements SshAction<Void> {
         @Override
         public void clear() {
-            closeWhispering(sftp, this);
-            sftp = null;
         }
 
         @Override
-        public SFTPClient create() throws IOException {
-            checkConnected();
-            sftp = sshClientConnection.ssh.newSFTPClient();
-            return sftp;
+        public Void create() throws Exception {
+            connection.release(acquireTransport());
+            return null;
         }
 
         @Override
         public String toString() {
-            return "SFTPClient()";
+            return "Connect("+sshClientConnection+")";
         }
-    };
+    }
+
+    /** opens an sftp client, holding a reference to the transport until cleared */
+    protected SshAction<SFTPClient> newSftpAction() {
+        return new SshAction<SFTPClient>() {
+
+            private SshjSharedConnection.Transport transport;
+            private SFTPClient sftp;
+
+            @Override
+            public void clear() {
+                closeWhispering(sftp, this);
+                sftp = null;
+                if (transport != null) connection.release(transport);
+                transport = null;
+            }
+
+            @Override
+            public SFTPClient create() throws Exception {
+                transport = acquireTransport();
+                sftp = transport.getClient().newSFTPClient();
+                return sftp;
+            }
 
-    private class GetFileAction implements SshAction<InputStream> {
+            @Override
+            public String toString() {
+                return "SFTPClient()";
+            }
+        };
+    }
+
+    private class GetFileAction implements SshAction<Void> {
         private final String path;
-        private SFTPClient sftp;
+        private final File localFile;
+        private SshAction<SFTPClient> sftpAction;
 
-        GetFileAction(String path) {
+        GetFileAction(String path, File localFile) {
             this.path = checkNotNull(path, "path");
+            this.localFile = checkNotNull(localFile, "localFile");
         }
 
         @Override
-        public void clear() throws IOException {
-            closeWhispering(sftp, this);
-            sftp = null;
+        public void clear() throws Exception {
+            if (sftpAction != null) sftpAction.clear();
+            sftpAction = null;
         }
 
         @Override
-        public InputStream create() throws Exception {
-            sftp = acquire(sftpConnection);
-            return new CloseFtpChannelOnCloseInputStream(
-                    sftp.getSFTPEngine().open(path).getInputStream(), sftp);
+        public Void create() throws Exception {
+            sftpAction = newSftpAction();
+            SFTPClient sftp = sftpAction.create();
+            InputStream contents = sftp.getSFTPEngine().open(path).getInputStream();
+            try {
+                Files.copy(InputStreamSupplier.of(contents), localFile);
+            } finally {
+                closeWhispering(contents, this);
+            }
+            return null;
         }
 
         @Override
@@ -463,7 +504,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
     private class PutFileAction implements SshAction<Void> {
         // TODO support backup as a property?
         
-        private SFTPClient sftp;
+        private SshAction<SFTPClient> sftpAction;
         private final String path;
         private final int permissionsMask;
         private final long lastModificationDate;
@@ -490,15 +531,16 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         }
 
         @Override
-        public void clear() {
-            closeWhispering(sftp, this);
-            sftp = null;
+        public void clear() throws Exception {
+            if (sftpAction != null) sftpAction.clear();
+            sftpAction = null;
         }
 
         @Override
         public Void create() throws Exception {
             final AtomicReference<InputStream> inputStreamRef = new AtomicReference<InputStream>();
-            sftp = acquire(sftpConnection);
+            sftpAction = newSftpAction();
+            SFTPClient sftp = sftpAction.create();
             try {
                 sftp.put(new InMemorySourceFile() {
                     @Override public String getName() {
@@ -551,22 +593,26 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         };
     }
     
+    /** opens a session, holding a reference to the transport until cleared */
     protected SshAction<Session> newSessionAction() {
 
         return new SshAction<Session>() {
 
+            private SshjSharedConnection.Transport transport;
             private Session session = null;
 
             @Override
             public void clear() throws TransportException, ConnectionException {
                 closeWhispering(session, this);
                 session = null;
+                if (transport != null) connection.release(transport);
+                transport = null;
             }
 
             @Override
             public Session create() throws Exception {
-                checkConnected();
-                session = sshClientConnection.ssh.startSession();
+                transport = acquireTransport();
+                session = transport.getClient().startSession();
                 if (allocatePTY) {
                     session.allocatePTY(TERM, 80, 24, 0, 0, Collections.<PTYMode, Integer> emptyMap());
                 }
@@ -584,6 +630,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
     class ExecAction implements SshAction<Command> {
         private final String command;
         
+        private SshAction<Session> sessionAction;
         private Session session;
         private Shell shell;
         private StreamGobbler outgobbler;
@@ -598,19 +645,22 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         }
 
         @Override
-        public void clear() throws TransportException, ConnectionException {
+        public void clear() throws Exception {
             closeWhispering(session, this);
             closeWhispering(shell, this);
             closeWhispering(outgobbler, this);
             closeWhispering(errgobbler, this);
             session = null;
             shell = null;
+            if (sessionAction != null) sessionAction.clear();
+            sessionAction = null;
         }
 
         @Override
         public Command create() throws Exception {
             try {
-                session = acquire(newSessionAction());
+                sessionAction = newSessionAction();
+                session = sessionAction.create();
                 
                 Command output = session.exec(checkNotNull(command, "command"));
                 
@@ -651,6 +701,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
     class ShellAction implements SshAction<Integer> {
         private final List<String> commands;
         
+        private SshAction<Session> sessionAction;
         private Session session;
         private Shell shell;
         private StreamGobbler outgobbler;
@@ -665,19 +716,22 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         }
 
         @Override
-        public void clear() throws TransportException, ConnectionException {
+        public void clear() throws Exception {
             closeWhispering(session, this);
             closeWhispering(shell, this);
             closeWhispering(outgobbler, this);
             closeWhispering(errgobbler, this);
             session = null;
             shell = null;
+            if (sessionAction != null) sessionAction.clear();
+            sessionAction = null;
         }
 
         @Override
         public Integer create() throws Exception {
             try {
-                session = acquire(newSessionAction());
+                sessionAction = newSessionAction();
+                session = sessionAction.create();
                 
                 shell = session.startShell();
                 
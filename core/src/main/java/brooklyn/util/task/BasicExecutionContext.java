@@ -10,6 +10,7 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +24,8 @@ import brooklyn.management.ExecutionManager;
 import brooklyn.management.HasTaskChildren;
 import brooklyn.management.Task;
 import brooklyn.management.TaskAdaptable;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
@@ -168,6 +171,47 @@ public class BasicExecutionContext extends AbstractExecutionContext {
         }
     }
     
+    /**
+     * Runs the job with this context's tags and as the current execution context, but without creating a task,
+     * if the execution manager supports it (see {@link BasicExecutionManager#executeTransient(Collection, Runnable)});
+     * otherwise submits it as a transient task.
+     */
+    public Future<?> executeTransient(final Runnable job) {
+        if (!(executionManager instanceof BasicExecutionManager)) {
+            return submit(MutableMap.of("tag", BrooklynTaskTags.TRANSIENT_TASK_TAG), job);
+        }
+        return ((BasicExecutionManager)executionManager).executeTransient(tags, withThisContext(job));
+    }
+
+    /**
+     * As {@link #executeTransient(Runnable)}, but after the given delay.
+     * 
+     * @return a future which can be used to cancel the job before it is run
+     */
+    public Future<?> scheduleTransient(final Runnable job, Duration delay) {
+        if (!(executionManager instanceof BasicExecutionManager)) {
+            return submit(MutableMap.of("tag", BrooklynTaskTags.TRANSIENT_TASK_TAG), 
+                    new ScheduledTask(MutableMap.of("delay", delay), new BasicTask<Void>(job)));
+        }
+        return ((BasicExecutionManager)executionManager).scheduleTransient(tags, withThisContext(job), delay);
+    }
+
+    private Runnable withThisContext(final Runnable job) {
+        return new Runnable() {
+            public void run() {
+                registerPerThreadExecutionContext();
+                try {
+                    job.run();
+                } finally {
+                    clearPerThreadExecutionContext();
+                }
+            }
+            @Override
+            public String toString() {
+                return job.toString();
+            }};
+    }
+    
     private void registerPerThreadExecutionContext() { perThreadExecutionContext.set(this); }
 
     private void clearPerThreadExecutionContext() { perThreadExecutionContext.remove(); }
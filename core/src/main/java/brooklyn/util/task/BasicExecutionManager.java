@@ -16,8 +16,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -29,12 +34,16 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.ConfigKey;
+import brooklyn.config.ConfigMap;
+import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.HasTaskChildren;
 import brooklyn.management.Task;
 import brooklyn.management.TaskAdaptable;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.text.Identifiers;
+import brooklyn.util.time.Duration;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CaseFormat;
@@ -60,6 +69,26 @@ public class BasicExecutionManager implements ExecutionManager {
      * Defaults to false if system property is not set.
      */
     private static final boolean RENAME_THREADS = Boolean.parseBoolean(System.getProperty("brooklyn.executionManager.renameThreads"));
+
+    /**
+     * How tasks are run:
+     * <ul>
+     *   <li>{@code cached} (the default) - an unbounded pool, creating a thread whenever none is idle
+     *   <li>{@code bounded} - at most {@link #RUNNER_MAX_THREADS} threads, with up to {@link #RUNNER_QUEUE_SIZE} tasks
+     *       waiting; when the queue is full, submitters block until there is space. Tasks submitted by the runner's own
+     *       threads (e.g. a task's children) are always queued, as blocking those threads could deadlock the task tree.
+     *       Note that tasks which block waiting on other tasks can still deadlock if the pool is too small.
+     *   <li>{@code virtual} - a new virtual thread per task, on JVMs which support them (falling back to {@code cached} otherwise)
+     * </ul>
+     */
+    public static final ConfigKey<String> RUNNER_TYPE = ConfigKeys.newStringConfigKey(
+            "brooklyn.executionManager.runner.type", "How tasks are run: cached, bounded or virtual", "cached");
+
+    public static final ConfigKey<Integer> RUNNER_MAX_THREADS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.executionManager.runner.maxThreads", "Maximum number of threads, for the bounded runner", 256);
+
+    public static final ConfigKey<Integer> RUNNER_QUEUE_SIZE = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.executionManager.runner.queueSize", "Maximum number of tasks waiting for a thread, for the bounded runner", 10000);
     
     private static class PerThreadCurrentTaskHolder {
         public static final ThreadLocal<Task<?>> perThreadCurrentTask = new ThreadLocal<Task<?>>();
@@ -69,11 +98,27 @@ public class BasicExecutionManager implements ExecutionManager {
         return PerThreadCurrentTaskHolder.perThreadCurrentTask;
     }
 
+    private static final ThreadLocal<Collection<?>> perThreadTransientJobTags = new ThreadLocal<Collection<?>>();
+
+    /**
+     * Whether the current thread is running a task or a transient job (see {@link #executeTransient(Collection, Runnable)})
+     * with the given tag.
+     */
+    public static boolean isCurrentThreadRunningWithTag(Object tag) {
+        Task<?> current = PerThreadCurrentTaskHolder.perThreadCurrentTask.get();
+        if (current != null && current.getTags().contains(tag)) return true;
+        Collection<?> transientTags = perThreadTransientJobTags.get();
+        return transientTags != null && transientTags.contains(tag);
+    }
+
     private final ThreadFactory threadFactory;
     
     private final ThreadFactory daemonThreadFactory;
     
     private final ExecutorService runner;
+
+    // set in the runner's threads (if bounded), so that their submissions are never blocked
+    private final ThreadLocal<Boolean> runnerThread = new ThreadLocal<Boolean>();
         
 	private final ScheduledExecutorService delayedRunner;
 	
@@ -96,22 +141,174 @@ public class BasicExecutionManager implements ExecutionManager {
     
     private final AtomicInteger activeTaskCount = new AtomicInteger();
     
+    private final AtomicLong blockedSubmissionCount = new AtomicLong();
+    
+    private final AtomicLong transientJobCount = new AtomicLong();
+    
+    private final AtomicInteger activeTransientJobCount = new AtomicInteger();
+    
+    private final AtomicLong failedTransientJobCount = new AtomicLong();
+    
     private final List<ExecutionListener> listeners = new CopyOnWriteArrayList<ExecutionListener>();
     
+    /** 
+     * As {@link #BasicExecutionManager(String)} with a null contextid; needed so that groovy's 
+     * {@code new BasicExecutionManager()} is not ambiguous.
+     */
+    public BasicExecutionManager() {
+        this((String)null);
+    }
+    
     public BasicExecutionManager(String contextid) {
+        this(contextid, null);
+    }
+    
+    /**
+     * @param config used to choose the runner, see {@link #RUNNER_TYPE}; if null, the default (cached) runner is used
+     */
+    public BasicExecutionManager(String contextid, ConfigMap config) {
         threadFactory = newThreadFactory(contextid);
         daemonThreadFactory = new ThreadFactoryBuilder()
                 .setThreadFactory(threadFactory)
                 .setDaemon(true)
                 .build();
                 
-        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
-        runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
-                daemonThreadFactory);
+        runner = newRunner(config);
             
         delayedRunner = new ScheduledThreadPoolExecutor(1, daemonThreadFactory);
     }
     
+    /** 
+     * Creates the executor used to run tasks (directly or via a {@link TaskScheduler}).
+     * Called by constructor, after {@link #newThreadFactory(String)}.
+     */
+    protected ExecutorService newRunner(ConfigMap config) {
+        String type = (config != null) ? config.getConfig(RUNNER_TYPE) : null;
+        if (type == null || type.equalsIgnoreCase("cached")) {
+            return newCachedRunner();
+        } else if (type.equalsIgnoreCase("bounded")) {
+            int maxThreads = config.getConfig(RUNNER_MAX_THREADS);
+            int queueSize = config.getConfig(RUNNER_QUEUE_SIZE);
+            ThreadPoolExecutor result = new ThreadPoolExecutor(maxThreads, maxThreads, 1L, TimeUnit.SECONDS, 
+                    new SubmissionQueue(queueSize), newRunnerThreadFactory(), new BlockWhenFullPolicy());
+            result.allowCoreThreadTimeOut(true);
+            return result;
+        } else if (type.equalsIgnoreCase("virtual")) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception e) {
+                log.warn("Virtual threads not supported on this JVM ("+e+"); using cached thread pool for execution manager");
+                return newCachedRunner();
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported "+RUNNER_TYPE.getName()+" '"+type+"'; expected cached, bounded or virtual");
+        }
+    }
+
+    private ExecutorService newCachedRunner() {
+        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
+                daemonThreadFactory);
+    }
+
+    private ThreadFactory newRunnerThreadFactory() {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return daemonThreadFactory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runnerThread.set(Boolean.TRUE);
+                        r.run();
+                    }});
+            }};
+    }
+
+    private boolean isRunnerThread() {
+        return runnerThread.get() != null;
+    }
+
+    /**
+     * The bounded runner's queue: it holds at most its capacity of tasks submitted from other threads,
+     * but always accepts tasks submitted by the runner's own threads.
+     */
+    private class SubmissionQueue extends LinkedBlockingQueue<Runnable> {
+        private static final long serialVersionUID = 1L;
+        
+        private final int capacity;
+        private final Object spaceAvailable = new Object();
+        private final AtomicInteger numWaiting = new AtomicInteger();
+
+        SubmissionQueue(int capacity) {
+            Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            if (size() >= capacity && !isRunnerThread()) return false;
+            return super.offer(r);
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            return removed(super.take());
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return removed(super.poll(timeout, unit));
+        }
+
+        private Runnable removed(Runnable r) {
+            if (r != null && numWaiting.get() > 0) {
+                synchronized (spaceAvailable) {
+                    spaceAvailable.notifyAll();
+                }
+            }
+            return r;
+        }
+
+        /** waits until there is space for the task, unless the executor is shut down */
+        void putWhenSpace(Runnable r, ThreadPoolExecutor executor) throws InterruptedException {
+            numWaiting.incrementAndGet();
+            try {
+                while (!offer(r)) {
+                    if (executor.isShutdown()) throw newShutdownException();
+                    synchronized (spaceAvailable) {
+                        // timed, in case of shutdown
+                        if (size() >= capacity) spaceAvailable.wait(100);
+                    }
+                }
+            } finally {
+                numWaiting.decrementAndGet();
+            }
+        }
+    }
+
+    /** 
+     * Back-pressure for the bounded runner: a submitter waits for space in the queue
+     * (only if it is not one of the runner's threads, whose submissions are always queued).
+     */
+    private class BlockWhenFullPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) throw newShutdownException();
+            blockedSubmissionCount.incrementAndGet();
+            try {
+                ((SubmissionQueue)executor.getQueue()).putWhenSpace(r, executor);
+            } catch (InterruptedException e) {
+                throw Exceptions.propagate(e);
+            }
+            // if shut down while waiting, the runner's threads may have already exited so would never run it
+            if (executor.isShutdown() && executor.remove(r)) throw newShutdownException();
+        }
+    }
+
+    private RejectedExecutionException newShutdownException() {
+        return new RejectedExecutionException("Execution manager "+this+" has been shut down");
+    }
+    
 	/** 
 	 * For use by overriders to use custom thread factory.
 	 * But be extremely careful: called by constructor, so before sub-class' constructor will
@@ -198,6 +395,40 @@ public class BasicExecutionManager implements ExecutionManager {
         return tasksById.size();
     }
 
+    /** number of tasks waiting for a thread; always 0 unless using the bounded runner */
+    public long getNumQueuedTasks() {
+        return (runner instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor)runner).getQueue().size() : 0;
+    }
+
+    /** number of tasks waiting in {@link SingleThreadedScheduler}s for their turn (summed over all tags) */
+    public long getNumTasksQueuedInSchedulers() {
+        long result = 0;
+        for (TaskScheduler scheduler : schedulerByTag.values()) {
+            if (scheduler instanceof SingleThreadedScheduler) result += ((SingleThreadedScheduler)scheduler).getQueueSize();
+        }
+        return result;
+    }
+
+    /** number of times a submitter has had to wait because the bounded runner's queue was full */
+    public long getNumBlockedSubmissions() {
+        return blockedSubmissionCount.get();
+    }
+
+    /** number of jobs run by {@link #executeTransient(Collection, Runnable)}, which are not counted as tasks */
+    public long getTotalTransientJobsSubmitted() {
+        return transientJobCount.get();
+    }
+
+    /** number of transient jobs currently running (excluding those waiting for a thread or a {@link TaskScheduler}) */
+    public long getNumActiveTransientJobs() {
+        return activeTransientJobCount.get();
+    }
+
+    /** number of transient jobs which threw an exception */
+    public long getNumFailedTransientJobs() {
+        return failedTransientJobCount.get();
+    }
+
     private Set<Task<?>> getMutableTasksWithTag(Object tag) {
         Preconditions.checkNotNull(tag);
         tasksByTag.putIfAbsent(tag, Collections.synchronizedSet(new LinkedHashSet<Task<?>>()));
@@ -324,6 +555,61 @@ public class BasicExecutionManager implements ExecutionManager {
 		return task;
 	}
 
+    /**
+     * Runs the given job without creating a {@link Task} for it: it is not recorded by id or tag
+     * (so does not need to be garbage collected), no {@link ExecutionListener}s are notified,
+     * and only aggregate counts are kept (see {@link #getTotalTransientJobsSubmitted()}).
+     * This is for frequent fire-and-forget work which no-one inspects, such as delivering sensor events.
+     * <p>
+     * As for tasks, if one of the tags has a {@link TaskScheduler} then the job is submitted to that.
+     * While running, {@link Tasks#current()} is null; exceptions thrown by the job are logged.
+     * 
+     * @return a future which completes when the job has run
+     */
+    public Future<?> executeTransient(final Collection<?> tags, final Runnable job) {
+        checkNotNull(job, "job");
+        transientJobCount.incrementAndGet();
+        Callable<Void> wrappedJob = new Callable<Void>() { public Void call() {
+            activeTransientJobCount.incrementAndGet();
+            perThreadTransientJobTags.set(tags);
+            try {
+                job.run();
+            } catch (Throwable e) {
+                Exceptions.propagateIfFatal(e);
+                failedTransientJobCount.incrementAndGet();
+                log.warn("Error running transient job "+job+" (continuing)", e);
+            } finally {
+                perThreadTransientJobTags.remove();
+                activeTransientJobCount.decrementAndGet();
+            }
+            return null;
+        }};
+        
+        for (Object tag : tags) {
+            TaskScheduler scheduler = getTaskSchedulerForTag(tag);
+            if (scheduler != null) return scheduler.submit(wrappedJob);
+        }
+        return runner.submit(wrappedJob);
+    }
+
+    /**
+     * As {@link #executeTransient(Collection, Runnable)}, but after the given delay.
+     * 
+     * @return a future which can be used to cancel the job before it is run
+     */
+    public ScheduledFuture<?> scheduleTransient(final Collection<?> tags, final Runnable job, Duration delay) {
+        checkNotNull(job, "job");
+        return delayedRunner.schedule(new Runnable() {
+                public void run() {
+                    executeTransient(tags, job);
+                }
+                @Override
+                public String toString() {
+                    return job.toString();
+                }},
+                delay.toNanoseconds(), TimeUnit.NANOSECONDS);
+    }
+
     @SuppressWarnings("unchecked")
     protected <T> Task<T> submitNewTask(final Map<?,?> flags, final Task<T> task) {
         if (task instanceof ScheduledTask)
@@ -1,22 +1,22 @@
 package brooklyn.util.task;
 
-import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.management.Task;
 
+import com.google.common.util.concurrent.AbstractFuture;
+
 /**
  * Instances of this class ensures that {@link Task}s execute with in-order
  * single-threaded semantics.
@@ -24,20 +24,30 @@ import brooklyn.management.Task;
  * Tasks can be presented through {@link #submit(Callable)}. The order of execution is the
  * sumbission order.
  * <p>
- * This implementation does so by blocking on a {@link ConcurrentLinkedQueue}, <em>after</em>
- * the task is started in a thread (and {@link Task#isBegun()} returns true), but (of course)
- * <em>before</em> the {@link TaskInternal#getJob()} actually gets invoked.
+ * This implementation is a lock-free mailbox: submitters (any number of threads) append to a
+ * {@link ConcurrentLinkedQueue}, and whichever thread wins the {@link #running} flag hands the head of the
+ * queue to the executor. When that job completes, its thread releases the flag and, if anything is queued,
+ * tries to win it again for the next job. Thus at most one job runs at a time, in queue order, and no
+ * thread is ever parked waiting for its turn.
+ * <p>
+ * The futures returned complete when the job runs (or is cancelled); a job cancelled while queued is
+ * skipped. The depth of the queue is available from {@link #getQueueSize()} and {@link #getMaxQueueSize()}.
  */
 public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     private static final Logger LOG = LoggerFactory.getLogger(SingleThreadedScheduler.class);
-    
+
     private final Queue<QueuedSubmission<?>> order = new ConcurrentLinkedQueue<QueuedSubmission<?>>();
     private final AtomicBoolean running = new AtomicBoolean(false);
-    
+
+    // ConcurrentLinkedQueue.size() is O(n), so track size separately
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicInteger maxQueueSize = new AtomicInteger();
+    private final AtomicLong totalSubmitted = new AtomicLong();
+
     private ExecutorService executor;
 
     private String name;
-    
+
     @Override
     public void setName(String name) {
         this.name = name;
@@ -47,144 +57,100 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     public String toString() {
         return name!=null ? "SingleThreadedScheduler["+name+"]" : super.toString();
     }
-    
+
     @Override
     public void injectExecutor(ExecutorService executor) {
         this.executor = executor;
     }
 
     @Override
-    public synchronized <T> Future<T> submit(Callable<T> c) {
-        if (running.compareAndSet(false, true)) {
-            return executeNow(c);
-        } else {
-            WrappingFuture<T> f = new WrappingFuture<T>();
-            order.add(new QueuedSubmission<T>(c, f));
-            int size = order.size();
-            if (size>0 && (size == 50 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
-                LOG.warn("{} is backing up, {} tasks queued", this, size);
-                lastSizeWarn = size;
-            }
-            return f;
-        }
+    public <T> Future<T> submit(Callable<T> c) {
+        QueuedSubmission<T> qs = new QueuedSubmission<T>(c);
+        totalSubmitted.incrementAndGet();
+        int size = queueSize.incrementAndGet();
+        int max;
+        while (size > (max = maxQueueSize.get()) && !maxQueueSize.compareAndSet(max, size)) {}
+        order.add(qs);
+
+        scheduleNext();
+        return qs;
     }
-    int lastSizeWarn = 0;
-
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-    private synchronized void onEnd() {
-        boolean done = false;
-        while (!done) {
-            if (order.isEmpty()) {
-                running.set(false);
-                done = true;
-            } else {
-                QueuedSubmission<?> qs = order.remove();
-                if (!qs.f.isCancelled()) {
-                    Future future = executeNow(qs.c);
-                    qs.f.setDelegate(future);
-                    done = true;
+
+    /** the number of submitted jobs which have not yet started (including the next one, if it is just being handed to the executor) */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /** the largest value {@link #getQueueSize()} has reached */
+    public int getMaxQueueSize() {
+        return maxQueueSize.get();
+    }
+
+    public long getTotalSubmitted() {
+        return totalSubmitted.get();
+    }
+
+    /** hands the next queued job to the executor, unless one is already running (in which case it will do so when done) */
+    private void scheduleNext() {
+        while (!order.isEmpty() && running.compareAndSet(false, true)) {
+            QueuedSubmission<?> qs = order.poll();
+            while (qs != null) {
+                queueSize.decrementAndGet();
+                if (!qs.isCancelled()) {
+                    try {
+                        executor.execute(qs);
+                        return;
+                    } catch (RejectedExecutionException e) {
+                        if (LOG.isDebugEnabled()) LOG.debug("{} could not run queued job (rejected by executor): {}", this, e);
+                        qs.setException(e);
+                    }
                 }
+                qs = order.poll();
             }
+            running.set(false);
+            // loop, in case something was added after the poll above returned null but before running was cleared
         }
     }
 
-    private synchronized <T> Future<T> executeNow(final Callable<T> c) {
-        return executor.submit(new Callable<T>() {
-            @Override public T call() throws Exception {
-                try {
-                    return c.call();
-                } finally {
-                    onEnd();
-                }
-            }});
+    private void onEnd() {
+        running.set(false);
+        scheduleNext();
     }
-    
-    
-    private static class QueuedSubmission<T> {
+
+    private class QueuedSubmission<T> extends AbstractFuture<T> implements Runnable {
         final Callable<T> c;
-        final WrappingFuture<T> f;
-        
-        QueuedSubmission(Callable<T> c, WrappingFuture<T> f) {
+        volatile Thread thread;
+
+        QueuedSubmission(Callable<T> c) {
             this.c = c;
-            this.f = f;
-        }
-    }
-    
-    /**
-     * A future, where the task may not yet have been submitted to the real executor.
-     * It delegates to the real future if present, and otherwise waits for that to appear
-     */
-    private static class WrappingFuture<T> implements Future<T> {
-        private volatile Future<T> delegate;
-        private boolean cancelled;
-        
-        void setDelegate(Future<T> delegate) {
-            synchronized (this) {
-                this.delegate = delegate;
-                notifyAll();
-            }
         }
-        
-        @Override public boolean cancel(boolean mayInterruptIfRunning) {
-            if (delegate != null) {
-                return delegate.cancel(mayInterruptIfRunning);
-            } else {
-                cancelled = true;
-                synchronized (this) {
-                    notifyAll();
+
+        @Override
+        public void run() {
+            try {
+                if (isCancelled()) return;
+                thread = Thread.currentThread();
+                try {
+                    set(c.call());
+                } catch (Throwable t) {
+                    setException(t);
+                } finally {
+                    thread = null;
                 }
-                return true;
-            }
-        }
-        
-        @Override public boolean isCancelled() {
-            if (delegate != null) {
-                return delegate.isCancelled();
-            } else {
-                return cancelled;
+            } finally {
+                onEnd();
             }
         }
-        
-        @Override public boolean isDone() {
-            return (delegate != null) ? delegate.isDone() : cancelled;
-        }
-        
-        @Override public T get() throws CancellationException, ExecutionException, InterruptedException {
-            if (cancelled) {
-                throw new CancellationException();
-            } else if (delegate != null) {
-                return delegate.get();
-            } else {
-                synchronized (this) {
-                    while (delegate == null && !cancelled) {
-                        wait();
-                    }
-                }
-                return get();
-            }
+
+        @Override // to make it visible to the scheduler
+        protected boolean setException(Throwable throwable) {
+            return super.setException(throwable);
         }
-        
-        @Override public T get(long timeout, TimeUnit unit) throws CancellationException, ExecutionException, InterruptedException, TimeoutException {
-            long endtime = System.currentTimeMillis()+unit.toMillis(timeout);
-            
-            if (cancelled) {
-                throw new CancellationException();
-            } else if (delegate != null) {
-                return delegate.get(timeout, unit);
-            } else if (System.currentTimeMillis() >= endtime) {
-                throw new TimeoutException();
-            } else {
-                synchronized (this) {
-                    while (delegate == null && !cancelled && System.currentTimeMillis() < endtime) {
-                        long remaining = endtime - System.currentTimeMillis();
-                        if (remaining > 0) {
-                            wait(remaining);
-                        }
-                    }
-                }
-                long remaining = endtime - System.currentTimeMillis();
-                return get(remaining, TimeUnit.MILLISECONDS);
-            }
+
+        @Override
+        protected void interruptTask() {
+            Thread t = thread;
+            if (t != null) t.interrupt();
         }
     }
 }
@@ -2,10 +2,19 @@ package brooklyn.util.xstream;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
@@ -17,6 +26,16 @@ import brooklyn.util.exceptions.Exceptions;
 
 public class XmlUtil {
 
+    // XMLInputFactory implementations are not guaranteed to be thread-safe
+    private static final ThreadLocal<XMLInputFactory> STREAM_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory result = XMLInputFactory.newInstance();
+            result.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            return result;
+        }
+    };
+
     public static Object xpath(String xml, String xpath) {
         // TODO Could share factory/doc in thread-local storage; see http://stackoverflow.com/questions/9828254/is-documentbuilderfactory-thread-safe-in-java-5
         try {
@@ -38,4 +57,42 @@ public class XmlUtil {
             throw Exceptions.propagate(e);
         }
     }
+
+    /**
+     * Returns the text of the first occurrence of each of the given elements which are direct children of the root,
+     * e.g. for {@code <entity><id>abc</id><type>x.Y</type>...</entity>} and names {@code id, type}.
+     * <p>
+     * Unlike {@link #xpath(String, String)} this streams the document, rather than building a DOM,
+     * and stops as soon as all the elements have been found, so is much cheaper when the elements are near the top
+     * of a large document. Elements not found are absent from the returned map.
+     */
+    public static Map<String, String> readRootChildElements(String xml, String... names) {
+        List<String> wanted = Arrays.asList(names);
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        try {
+            XMLStreamReader reader = STREAM_FACTORY.get().createXMLStreamReader(new StringReader(xml));
+            try {
+                int depth = 0;
+                while (reader.hasNext() && result.size() < wanted.size()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String name = reader.getLocalName();
+                        if (depth == 2 && wanted.contains(name) && !result.containsKey(name)) {
+                            // getElementText consumes the end element
+                            result.put(name, reader.getElementText());
+                            depth--;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return result;
+        } catch (XMLStreamException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
 }
@@ -27,10 +27,14 @@ public class AttributeMapTest {
     public void setUp() {
         app = new TestApplicationImpl()
         TestEntity e = new TestEntityImpl(app)
-        map = new AttributeMap(e, Collections.synchronizedMap(new LinkedHashMap()));
+        map = newAttributeMap(e);
         Entities.startManagement(app);
     }
     
+    protected AttributeMap newAttributeMap(AbstractEntity entity) {
+        return new AttributeMap(entity, Collections.synchronizedMap(new LinkedHashMap()));
+    }
+    
     @AfterMethod(alwaysRun=true)
     public void tearDown() {
         if (app != null) Entities.destroyAll(app.getManagementContext());
@@ -183,6 +183,44 @@ public class EntityConfigMapUsageTest {
         assertEquals(e3.getConfig(strKey), "aval");
     }
 
+    @Test
+    public void testConfigChangeSeenAfterValueRetrieved() throws Exception {
+        TestEntity parent = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(strKey, "aval"));
+        TestEntity entity = parent.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity entity2 = entity.createAndManageChild(EntitySpec.create(TestEntity.class));
+        assertEquals(entity.getConfig(strKey), "aval");
+        assertEquals(entity2.getConfig(strKey), "aval");
+        
+        ((EntityLocal)parent).setConfig(strKey, "diffval");
+        assertEquals(entity.getConfig(strKey), "diffval");
+        assertEquals(entity2.getConfig(strKey), "diffval");
+        
+        ((EntityLocal)entity).setConfig(strKey, "ownval");
+        assertEquals(entity.getConfig(strKey), "ownval");
+        assertEquals(entity2.getConfig(strKey), "ownval");
+    }
+    
+    @Test
+    public void testDefaultValueChangeSeenAfterDefaultRetrieved() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        assertEquals(entity.getConfig(intKeyWithDefault), (Integer)1);
+        assertEquals(entity.getConfig(intKeyWithDefault, 3), (Integer)3);
+        
+        ((EntityLocal)app).setConfig(intKeyWithDefault, 2);
+        assertEquals(entity.getConfig(intKeyWithDefault), (Integer)2);
+    }
+    
+    @Test
+    public void testKeysWithSameNameAndDifferentDefaultsRetrieveTheirOwnDefaults() throws Exception {
+        ConfigKey<Integer> intKeyWithOtherDefault = new BasicConfigKey<Integer>(Integer.class, "ckey", "c key", 2);
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        
+        assertEquals(entity.getConfig(intKeyWithDefault), (Integer)1);
+        assertEquals(entity.getConfig(intKeyWithOtherDefault), (Integer)2);
+        assertEquals(entity.getConfig(intKeyWithDefault), (Integer)1);
+    }
+    
     // This has been relaxed to a warning, with a message saying "may not be supported in future versions"
     @Test(enabled=false)
     public void testConfigCannotBeSetAfterApplicationIsStarted() throws Exception {
@@ -169,6 +169,19 @@ public class EntityTypeTest {
                 Predicates.equalTo(ImmutableList.of(new BasicSensorEvent(SENSOR_ADDED, entity, TEST_SENSOR))));
     }
 
+    @Test
+    public void testAddSensorDoesNotAffectOtherInstancesOfSameClass() throws Exception{
+        EntityInternal entity2 = (EntityInternal) app.createAndManageChild(EntitySpec.create(Entity.class, EmptyEntityForTesting.class));
+        entity.getMutableEntityType().addSensor(TEST_SENSOR);
+        
+        assertEquals(entity.getEntityType().getSensors(), 
+                ImmutableSet.builder().addAll(DEFAULT_SENSORS).add(TEST_SENSOR).build());
+        assertEquals(entity2.getEntityType().getSensors(), DEFAULT_SENSORS);
+        
+        EntityInternal entity3 = (EntityInternal) app.createAndManageChild(EntitySpec.create(Entity.class, EmptyEntityForTesting.class));
+        assertEquals(entity3.getEntityType().getSensors(), DEFAULT_SENSORS);
+    }
+
     @Test
     public void testAddSensorValueThroughEntity() throws Exception{
         entity.setAttribute(TEST_SENSOR, "abc");
@@ -0,0 +1,188 @@
+package brooklyn.entity.basic;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.SensorPublishPolicy;
+import brooklyn.event.basic.Sensors;
+import brooklyn.management.internal.AbstractManagementContext;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class SensorPublishPolicyTest {
+
+    private static final AttributeSensor<String> ON_CHANGE_SENSOR = Sensors.newSensorWithPublishPolicy(
+            SensorPublishPolicy.ON_CHANGE, Sensors.newStringSensor("test.onChange"));
+
+    private TestApplication app;
+    private final List<Object> values = new CopyOnWriteArrayList<Object>();
+    private SensorEventListener<Object> listener;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        values.clear();
+        listener = new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+                values.add(event.getValue());
+            }};
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (app != null) Entities.destroyAll(app.getManagementContext());
+    }
+
+    @Test
+    public void testPublishesUnchangedValuesByDefault() throws Exception {
+        TestEntityImpl entity = newEntity(MutableMap.of());
+        app.subscribe(entity, TestEntity.NAME, listener);
+
+        entity.setAttribute(TestEntity.NAME, "a");
+        entity.setAttribute(TestEntity.NAME, "a");
+
+        assertValuesEventually(ImmutableList.of("a", "a"));
+        assertEquals(entity.getNumSuppressedAttributeEvents(), 0);
+    }
+
+    @Test
+    public void testOnChangeConfiguredPerSensor() throws Exception {
+        TestEntityImpl entity = newEntity(MutableMap.of(BrooklynConfigKeys.SENSOR_PUBLISH_POLICIES.subKey(TestEntity.NAME.getName()), SensorPublishPolicy.valueOf("onChange")));
+        app.subscribe(entity, TestEntity.NAME, listener);
+        app.subscribe(entity, TestEntity.SEQUENCE, listener);
+
+        entity.setAttribute(TestEntity.NAME, "a");
+        entity.setAttribute(TestEntity.NAME, "a");
+        entity.setAttribute(TestEntity.NAME, "b");
+        entity.setAttribute(TestEntity.NAME, null);
+        entity.setAttribute(TestEntity.NAME, null);
+        // other sensors are unaffected
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+
+        assertValuesEventually(Lists.<Object>newArrayList("a", "b", null, 1, 1));
+        assertEquals(entity.getAttribute(TestEntity.NAME), null);
+        assertEquals(entity.getNumSuppressedAttributeEvents(), 2);
+    }
+
+    @Test
+    public void testOnChangeDeclaredOnSensor() throws Exception {
+        TestEntityImpl entity = newEntity(MutableMap.of());
+        app.subscribe(entity, ON_CHANGE_SENSOR, listener);
+
+        entity.setAttribute(ON_CHANGE_SENSOR, "a");
+        entity.setAttribute(ON_CHANGE_SENSOR, "a");
+        entity.setAttribute(ON_CHANGE_SENSOR, "b");
+
+        assertValuesEventually(ImmutableList.of("a", "b"));
+    }
+
+    @Test
+    public void testEntityConfigOverridesPolicyDeclaredOnSensor() throws Exception {
+        TestEntityImpl entity = newEntity(MutableMap.of(BrooklynConfigKeys.SENSOR_PUBLISH_POLICIES.subKey(ON_CHANGE_SENSOR.getName()), SensorPublishPolicy.ALWAYS));
+        app.subscribe(entity, ON_CHANGE_SENSOR, listener);
+
+        entity.setAttribute(ON_CHANGE_SENSOR, "a");
+        entity.setAttribute(ON_CHANGE_SENSOR, "a");
+
+        assertValuesEventually(ImmutableList.of("a", "a"));
+    }
+
+    @Test
+    public void testDefaultPolicyIsInherited() throws Exception {
+        app.setConfig(BrooklynConfigKeys.DEFAULT_SENSOR_PUBLISH_POLICY, SensorPublishPolicy.ON_CHANGE);
+        TestEntityImpl entity = newEntity(MutableMap.of());
+        app.subscribe(entity, TestEntity.SEQUENCE, listener);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+
+        assertValuesEventually(ImmutableList.of(1, 2));
+    }
+
+    @Test
+    public void testRateLimitedPublishesLatestValueAtEndOfPeriod() throws Exception {
+        TestEntityImpl entity = newEntity(MutableMap.of(BrooklynConfigKeys.SENSOR_PUBLISH_POLICIES.subKey(TestEntity.SEQUENCE.getName()), SensorPublishPolicy.atMostEvery(Duration.millis(500))));
+        app.subscribe(entity, TestEntity.SEQUENCE, listener);
+
+        for (int i = 1; i <= 10; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        assertEquals(entity.getAttribute(TestEntity.SEQUENCE), (Integer) 10);
+
+        assertValuesEventually(ImmutableList.of(1, 10));
+        // values 2 to 9 were superseded before the end of the period
+        assertEquals(entity.getNumSuppressedAttributeEvents(), 8);
+        assertEquals(((AbstractManagementContext)app.getManagementContext()).getSuppressedAttributeEvents().getRateLimited(), 8);
+    }
+
+    @Test
+    public void testRateLimitedValueNotPublishedAfterUnmanaged() throws Exception {
+        TestEntityImpl entity = newEntity(MutableMap.of(BrooklynConfigKeys.SENSOR_PUBLISH_POLICIES.subKey(TestEntity.SEQUENCE.getName()), SensorPublishPolicy.atMostEvery(Duration.millis(200))));
+        app.subscribe(entity, TestEntity.SEQUENCE, listener);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+        assertValuesEventually(ImmutableList.of(1));
+        Entities.unmanage(entity);
+
+        Asserts.succeedsContinually(MutableMap.of("timeout", 500), new Runnable() {
+            @Override public void run() {
+                assertEquals(values(), ImmutableList.of(1));
+            }});
+    }
+
+    @Test
+    public void testPolicyParsedFromString() throws Exception {
+        assertEquals(SensorPublishPolicy.valueOf("always"), SensorPublishPolicy.ALWAYS);
+        assertEquals(SensorPublishPolicy.valueOf("on_change"), SensorPublishPolicy.ON_CHANGE);
+        assertEquals(SensorPublishPolicy.valueOf("atMostEvery 2s"), SensorPublishPolicy.atMostEvery(Duration.seconds(2)));
+        assertEquals(SensorPublishPolicy.valueOf(SensorPublishPolicy.atMostEvery(Duration.millis(250)).toString()),
+                SensorPublishPolicy.atMostEvery(Duration.millis(250)));
+    }
+
+    private void assertValuesEventually(final List<?> expected) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(values(), expected);
+            }});
+        Asserts.succeedsContinually(MutableMap.of("timeout", 100), new Runnable() {
+            @Override public void run() {
+                assertEquals(values(), expected);
+            }});
+    }
+
+    private List<Object> values() {
+        return Lists.newArrayList(values);
+    }
+
+    // the real entity (rather than a proxy), to get its counts
+    @SuppressWarnings("unchecked")
+    private TestEntityImpl newEntity(Map<?, ?> config) {
+        TestEntityImpl result = new TestEntityImpl(app);
+        for (Map.Entry<?, ?> entry : config.entrySet()) {
+            result.setConfig((ConfigKey<Object>) entry.getKey(), entry.getValue());
+        }
+        Entities.manage(result);
+        return result;
+    }
+}
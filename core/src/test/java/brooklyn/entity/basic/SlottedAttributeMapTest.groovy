@@ -0,0 +1,128 @@
+package brooklyn.entity.basic
+
+import static org.testng.Assert.assertEquals
+import static org.testng.Assert.assertNull
+import static org.testng.Assert.assertTrue
+
+import org.testng.annotations.Test
+
+import brooklyn.config.BrooklynProperties
+import brooklyn.config.BrooklynServerConfig
+import brooklyn.entity.Entity
+import brooklyn.entity.proxying.EntitySpec
+import brooklyn.event.basic.AttributeMap
+import brooklyn.event.basic.BasicAttributeSensor
+import brooklyn.management.internal.LocalManagementContext
+import brooklyn.test.entity.TestApplication
+import brooklyn.test.entity.TestEntity
+import brooklyn.test.entity.TestEntityImpl
+
+public class SlottedAttributeMapTest extends AttributeMapTest {
+
+    @Override
+    protected AttributeMap newAttributeMap(AbstractEntity entity) {
+        return new AttributeMap(entity);
+    }
+
+    @Test
+    public void testIsSlotted() {
+        assertTrue(map.isSlotted())
+    }
+    
+    @Test
+    public void testRemove() {
+        BasicAttributeSensor<String> sensor1 = [ String, "a", "" ]
+        BasicAttributeSensor<String> sensor2 = [ String, "b.c", "" ]
+        
+        map.update(sensor1, "1val")
+        map.update(sensor2, "2val")
+        map.remove(sensor1)
+        map.remove(["b", "c"])
+        
+        assertNull(map.getValue(sensor1))
+        assertNull(map.getValue(sensor2))
+        assertEquals(map.asMap(), [:])
+        assertEquals(map.asRawMap(), [:])
+    }
+    
+    @Test
+    public void testNullValueIsPresentInMap() {
+        BasicAttributeSensor<String> sensor1 = [ String, "a", "" ]
+        
+        assertNull(map.update(sensor1, null))
+        assertNull(map.getValue(sensor1))
+        assertTrue(map.asMap().containsKey("a"))
+        assertEquals(map.update(sensor1, "1val"), null)
+        assertEquals(map.update(sensor1, "2val"), "1val")
+    }
+    
+    @Test
+    public void testAsMapUsesSensorNames() {
+        BasicAttributeSensor<String> sensor1 = [ String, "a", "" ]
+        BasicAttributeSensor<String> sensor2 = [ String, "b.c", "" ]
+        
+        map.update(sensor1, "1val")
+        map.update(sensor2, "2val")
+        
+        assertEquals(map.asMap(), [a:"1val", "b.c":"2val"])
+        assertEquals(map.asRawMap(), [(["a"]):"1val", (["b","c"]):"2val"])
+    }
+    
+    @Test
+    public void testEntitiesOfSameTypeHaveIndependentValues() {
+        AttributeMap map2 = newAttributeMap(new TestEntityImpl(app))
+        BasicAttributeSensor<String> sensor1 = [ String, "a", "" ]
+        BasicAttributeSensor<String> sensor2 = [ String, "b", "" ]
+        
+        map.update(sensor1, "1val")
+        map2.update(sensor2, "2val")
+        
+        assertEquals(map.asMap(), [a:"1val"])
+        assertEquals(map2.asMap(), [b:"2val"])
+        assertNull(map.getValue(sensor2))
+    }
+    
+    @Test
+    public void testSensorsBeyondIndexSizeKeptInMap() {
+        // an entity type of its own, so that its index is not shared with the other tests
+        AttributeMap map2 = newAttributeMap(new ManySensorsEntityImpl(app))
+        int num = 1100 // more than the index's maximum size
+        for (int i = 0; i < num; i++) {
+            map2.update(new BasicAttributeSensor<Integer>(Integer, "s."+i, ""), i)
+        }
+        
+        assertEquals(map2.asMap().size(), num)
+        assertEquals(map2.asRawMap().get(["s", "1050"]), 1050)
+        assertEquals(map2.getValue(new BasicAttributeSensor<Integer>(Integer, "s.1099", "")), 1099)
+        assertEquals(map2.update(["s", "1099"], 0), 1099)
+        map2.remove(["s", "1099"])
+        assertNull(map2.getValue(["s", "1099"]))
+        assertEquals(map2.asMap().size(), num-1)
+    }
+    
+    @Test
+    public void testManagedEntityUsesSlotsWhenConfigured() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty()
+        props.put(BrooklynServerConfig.ENTITY_ATTRIBUTE_SLOTS, true)
+        LocalManagementContext mgmt = new LocalManagementContext(props)
+        try {
+            TestApplication app2 = ApplicationBuilder.newManagedApp(TestApplication.class, mgmt)
+            TestEntity entity = app2.createAndManageChild(EntitySpec.create(TestEntity.class))
+            entity.setAttribute(TestEntity.NAME, "myname")
+            
+            // the values are not in the management context's storage
+            assertTrue(mgmt.getStorage().getMap(entity.getId()+"-attributes").isEmpty())
+            assertEquals(entity.getAttribute(TestEntity.NAME), "myname")
+            assertEquals(entity.getAttribute(TestEntity.SEQUENCE), null)
+            assertEquals(((EntityInternal)entity).getAllAttributes().get(TestEntity.NAME), "myname")
+        } finally {
+            Entities.destroyAll(mgmt)
+        }
+    }
+}
+
+class ManySensorsEntityImpl extends TestEntityImpl {
+    public ManySensorsEntityImpl(Entity parent) {
+        super(parent)
+    }
+}
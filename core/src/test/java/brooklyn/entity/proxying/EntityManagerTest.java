@@ -9,9 +9,11 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.Entity;
 import brooklyn.entity.basic.Entities;
 import brooklyn.management.EntityManager;
 import brooklyn.management.ManagementContext;
+import brooklyn.management.internal.EntityManagerInternal;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
@@ -70,4 +72,31 @@ public class EntityManagerTest {
         Asserts.assertEqualsIgnoringOrder(entityManager.findEntities(Predicates.instanceOf(TestApplication.class)), ImmutableList.of(app, app2));
         Asserts.assertEqualsIgnoringOrder(entityManager.findEntitiesInApplication(app, Predicates.instanceOf(TestApplication.class)), ImmutableList.of(app));
     }
+    
+    @Test
+    public void testGetEntitiesOfType() {
+        TestApplication app2 = ApplicationBuilder.newManagedApp(TestApplication.class, mgmt);
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity child = entity.createAndManageChild(EntitySpec.create(TestEntity.class));
+        EntityManagerInternal entityManagerInternal = (EntityManagerInternal) entityManager;
+        
+        assertEquals(entityManagerInternal.getEntitiesOfType(TestApplication.class), ImmutableList.of(app, app2));
+        assertEquals(entityManagerInternal.getEntitiesOfType(TestEntity.class), ImmutableList.of(entity, child));
+        Asserts.assertEqualsIgnoringOrder(entityManagerInternal.getEntitiesOfType(Entity.class), ImmutableList.of(app, entity, child, app2));
+    }
+    
+    @Test
+    public void testUnmanagedEntitiesRemovedFromIndexes() {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity child = entity.createAndManageChild(EntitySpec.create(TestEntity.class));
+        Entities.unmanage(child);
+        
+        assertEquals(entityManager.getEntities(), ImmutableList.of(app, entity));
+        assertEquals(entityManager.getEntitiesInApplication(app), ImmutableList.of(app, entity));
+        assertEquals(((EntityManagerInternal)entityManager).getEntitiesOfType(TestEntity.class), ImmutableList.of(entity));
+        
+        Entities.unmanage(app);
+        assertEquals(entityManager.getEntitiesInApplication(app), ImmutableList.of());
+        assertEquals(((EntityManagerInternal)entityManager).getEntitiesOfType(TestEntity.class), ImmutableList.of());
+    }
 }
@@ -1,11 +1,17 @@
 package brooklyn.entity.rebind.persister;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 import org.testng.annotations.Test;
 
 import brooklyn.entity.rebind.RebindTestUtils;
 import brooklyn.management.ManagementContext;
+import brooklyn.mementos.BrooklynMemento;
 import brooklyn.util.time.Duration;
 
+import com.google.common.collect.Iterables;
+
 @Test
 public class BrooklynMementoPersisterInMemoryTest extends BrooklynMementoPersisterTestFixture {
 
@@ -13,4 +19,37 @@ public class BrooklynMementoPersisterInMemoryTest extends BrooklynMementoPersist
         return RebindTestUtils.managementContextBuilder(classLoader, new InMemoryObjectStore())
             .persistPeriod(Duration.millis(10)).buildStarted();
     }
+
+    @Test
+    public void testConvertFormatAndLoadMemento() throws Exception {
+        RebindTestUtils.waitForPersisted(localManagementContext);
+        localManagementContext.getRebindManager().stop();
+        PersistenceObjectStore objectStore = ((BrooklynMementoPersisterToObjectStore)persister).getObjectStore();
+        
+        int converted = BrooklynMementoPersisterToObjectStore.convertFormat(objectStore, MementoFormat.COMPRESSED_XML);
+        assertTrue(converted >= 5, "converted="+converted);
+        assertTrue(CompressedXmlMementoSerializer.isCompressed(objectStore.newAccessor("entities/"+entity.getId()).get()));
+        assertEquals(BrooklynMementoPersisterToObjectStore.convertFormat(objectStore, MementoFormat.COMPRESSED_XML), 0);
+        
+        persister = new BrooklynMementoPersisterToObjectStore(objectStore, classLoader);
+        BrooklynMemento reloadedMemento = loadMemento();
+        assertTrue(Iterables.contains(reloadedMemento.getEntityIds(), entity.getId()));
+        assertEquals(Iterables.getOnlyElement(reloadedMemento.getLocationIds()), location.getId());
+        assertEquals(Iterables.getOnlyElement(reloadedMemento.getPolicyIds()), policy.getId());
+        assertEquals(Iterables.getOnlyElement(reloadedMemento.getEnricherIds()), enricher.getId());
+        
+        assertEquals(BrooklynMementoPersisterToObjectStore.convertFormat(objectStore, MementoFormat.XML), converted);
+    }
+
+    @Test
+    public void testFormatNamesResolved() throws Exception {
+        assertEquals(BrooklynMementoPersisterToObjectStore.toMementoFormat(null), MementoFormat.XML);
+        assertEquals(BrooklynMementoPersisterToObjectStore.toMementoFormat("xml"), MementoFormat.XML);
+        assertEquals(BrooklynMementoPersisterToObjectStore.toMementoFormat("compressed_xml"), MementoFormat.COMPRESSED_XML);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownFormatRejected() throws Exception {
+        BrooklynMementoPersisterToObjectStore.toMementoFormat("json");
+    }
 }
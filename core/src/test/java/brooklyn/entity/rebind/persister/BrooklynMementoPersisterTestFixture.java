@@ -6,6 +6,7 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Set;
 import java.util.concurrent.TimeoutException;
 
 import org.testng.annotations.AfterMethod;
@@ -27,14 +28,21 @@ import brooklyn.location.LocationSpec;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.management.ManagementContext;
 import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.BrooklynMementoManifest;
 import brooklyn.mementos.BrooklynMementoPersister;
 import brooklyn.policy.Enricher;
 import brooklyn.policy.Policy;
 import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestApplicationImpl;
 import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
 import brooklyn.test.policy.TestPolicy;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 
 /**
  * @author Andrea Turli
@@ -117,4 +125,30 @@ public abstract class BrooklynMementoPersisterTestFixture {
         assertFalse(Iterables.contains(reloadedMemento.getEntityIds(), entity.getId()));
         assertEquals(Iterables.getOnlyElement(reloadedMemento.getLocationIds()), location.getId());
     }
+
+    @Test
+    public void testLoadMementoManifest() throws IOException, TimeoutException, InterruptedException {
+        RebindTestUtils.waitForPersisted(localManagementContext);
+        RecordingRebindExceptionHandler failFast = new RecordingRebindExceptionHandler(RebindFailureMode.FAIL_FAST, RebindFailureMode.FAIL_FAST);
+        BrooklynMementoManifest manifest = persister.loadMementoManifest(failFast);
+        
+        assertEquals(manifest.getEntityIdToType().get(entity.getId()), TestEntityImpl.class.getName());
+        assertEquals(manifest.getEntityIdToType().get(app.getId()), TestApplicationImpl.class.getName());
+        assertEquals(manifest.getLocationIdToType(), ImmutableMap.of(location.getId(), location.getClass().getName()));
+        assertEquals(manifest.getPolicyIdToType(), ImmutableMap.of(policy.getId(), policy.getClass().getName()));
+        assertEquals(manifest.getEnricherIdToType(), ImmutableMap.of(enricher.getId(), enricher.getClass().getName()));
+    }
+
+    @Test
+    public void testLoadMementoWithManyEntities() throws IOException, TimeoutException, InterruptedException {
+        Set<String> ids = Sets.newLinkedHashSet();
+        for (int i = 0; i < 50; i++) {
+            ids.add(app.createAndManageChild(EntitySpec.create(TestEntity.class)).getId());
+        }
+        
+        BrooklynMemento reloadedMemento = loadMemento();
+        
+        assertTrue(reloadedMemento.getEntityIds().containsAll(ids), "missing="+Sets.difference(ids, ImmutableSet.copyOf(reloadedMemento.getEntityIds())));
+        assertEquals(ImmutableList.copyOf(reloadedMemento.getApplicationIds()), ImmutableList.of(app.getId()));
+    }
 }
@@ -0,0 +1,187 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.BrooklynMementoPersister.Delta;
+import brooklyn.mementos.EnricherMemento;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.PolicyMemento;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
+public class BrooklynMementoPersisterWriteBehindTest {
+
+    private BlockingObjectStore objectStore;
+    private BrooklynMementoPersisterToObjectStore persister;
+
+    /** blocks in {@link #prepareForContendedWrite()} (i.e. at the start of each flush) until released */
+    private static class BlockingObjectStore extends InMemoryObjectStore {
+        final CountDownLatch flushStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean failNextFlush;
+
+        @Override
+        public void prepareForContendedWrite() {
+            flushStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            if (failNextFlush) {
+                failNextFlush = false;
+                throw new IllegalStateException("Simulated failure to flush");
+            }
+        }
+    }
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        objectStore = new BlockingObjectStore();
+        objectStore.prepareForUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        persister = new BrooklynMementoPersisterToObjectStore(objectStore, getClass().getClassLoader());
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (objectStore != null) objectStore.release.countDown();
+        if (persister != null) persister.stop();
+    }
+
+    private BrooklynMemento newMemento(String id, String displayName) {
+        return BrooklynMementoImpl.builder()
+                .entity(BasicEntityMemento.builder().id(id).type(TestEntity.class.getName()).displayName(displayName).build())
+                .build();
+    }
+
+    @Test
+    public void testCoalescesWritesToSameObjectWhileFlushing() throws Exception {
+        persister.checkpoint(newMemento("e1", "v1"));
+        assertTrue(objectStore.flushStarted.await(10, TimeUnit.SECONDS));
+
+        // v1 is being flushed; v2 is superseded by v3 before the next flush
+        persister.checkpoint(newMemento("e1", "v2"));
+        persister.checkpoint(newMemento("e1", "v3"));
+        persister.checkpoint(newMemento("e2", "other"));
+        assertEquals(persister.getNumPendingWrites(), 2);
+        assertEquals(persister.getTotalWritesRequested(), 4);
+        assertEquals(persister.getTotalWritesCoalesced(), 1);
+
+        objectStore.release.countDown();
+        persister.waitForWritesCompleted(Duration.TEN_SECONDS);
+
+        assertEquals(persister.getNumPendingWrites(), 0);
+        assertEquals(persister.getTotalFlushes(), 2);
+        String contents = objectStore.newAccessor("entities/e1").get();
+        assertTrue(contents.contains("v3"), "contents="+contents);
+        assertTrue(objectStore.newAccessor("entities/e2").exists());
+    }
+
+    @Test
+    public void testDeleteSupersedesPendingWrite() throws Exception {
+        persister.checkpoint(newMemento("e0", "v1"));
+        assertTrue(objectStore.flushStarted.await(10, TimeUnit.SECONDS));
+
+        persister.checkpoint(newMemento("e1", "v1"));
+        persister.delta(new RemovedEntitiesDelta("e1"));
+        assertEquals(persister.getTotalWritesCoalesced(), 1);
+
+        objectStore.release.countDown();
+        persister.waitForWritesCompleted(Duration.TEN_SECONDS);
+
+        assertTrue(objectStore.newAccessor("entities/e0").exists());
+        assertNull(objectStore.newAccessor("entities/e1").get());
+    }
+
+    @Test
+    public void testWritesRequestedDuringFailedFlushAreFlushed() throws Exception {
+        persister.checkpoint(newMemento("e0", "v1"));
+        assertTrue(objectStore.flushStarted.await(10, TimeUnit.SECONDS));
+        objectStore.failNextFlush = true;
+        persister.checkpoint(newMemento("e1", "v1"));
+
+        objectStore.release.countDown();
+        persister.waitForWritesCompleted(Duration.TEN_SECONDS);
+
+        assertNull(objectStore.newAccessor("entities/e0").get());
+        assertTrue(objectStore.newAccessor("entities/e1").exists());
+        assertEquals(persister.getNumPendingWrites(), 0);
+    }
+
+    @Test
+    public void testStopFlushesPendingWrites() throws Exception {
+        persister.checkpoint(newMemento("e0", "v1"));
+        assertTrue(objectStore.flushStarted.await(10, TimeUnit.SECONDS));
+        persister.checkpoint(newMemento("e1", "v1"));
+
+        Thread releaser = new Thread() {
+            public void run() {
+                Time.sleep(Duration.millis(100));
+                objectStore.release.countDown();
+            }};
+        releaser.start();
+        persister.stop();
+        releaser.join();
+
+        assertTrue(objectStore.newAccessor("entities/e0").exists());
+        assertTrue(objectStore.newAccessor("entities/e1").exists());
+        assertEquals(persister.getNumPendingWrites(), 0);
+        
+        // no longer accepts writes
+        persister.checkpoint(newMemento("e2", "v1"));
+        assertEquals(persister.getNumPendingWrites(), 0);
+    }
+
+    @Test
+    public void testStopDiscardsPendingWritesAfterTimeout() throws Exception {
+        persister.checkpoint(newMemento("e0", "v1"));
+        assertTrue(objectStore.flushStarted.await(10, TimeUnit.SECONDS));
+        persister.checkpoint(newMemento("e1", "v1"));
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        persister.stop(Duration.millis(100));
+        assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) < 10*1000, "elapsed="+stopwatch);
+        assertEquals(persister.getNumPendingWrites(), 0);
+
+        objectStore.release.countDown();
+        persister.waitForWritesCompleted(Duration.TEN_SECONDS);
+        assertTrue(objectStore.newAccessor("entities/e0").exists());
+        assertNull(objectStore.newAccessor("entities/e1").get());
+    }
+
+    private static class RemovedEntitiesDelta implements Delta {
+        final List<String> removedEntityIds;
+
+        RemovedEntitiesDelta(String... removedEntityIds) {
+            this.removedEntityIds = ImmutableList.copyOf(removedEntityIds);
+        }
+        @Override public Collection<LocationMemento> locations() { return ImmutableList.of(); }
+        @Override public Collection<EntityMemento> entities() { return ImmutableList.of(); }
+        @Override public Collection<PolicyMemento> policies() { return ImmutableList.of(); }
+        @Override public Collection<EnricherMemento> enrichers() { return ImmutableList.of(); }
+        @Override public Collection<String> removedLocationIds() { return ImmutableList.of(); }
+        @Override public Collection<String> removedEntityIds() { return removedEntityIds; }
+        @Override public Collection<String> removedPolicyIds() { return ImmutableList.of(); }
+        @Override public Collection<String> removedEnricherIds() { return ImmutableList.of(); }
+    }
+}
@@ -0,0 +1,64 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/** runs all the {@link XmlMementoSerializerTest} tests in the compressed format, plus conversion to and from xml */
+public class CompressedXmlMementoSerializerTest extends XmlMementoSerializerTest {
+
+    @Override
+    protected XmlMementoSerializer<Object> newSerializer() {
+        return new CompressedXmlMementoSerializer<Object>(CompressedXmlMementoSerializerTest.class.getClassLoader());
+    }
+
+    private EntityMemento newEntityMemento() {
+        return BasicEntityMemento.builder()
+                .id("myid")
+                .type(TestEntity.class.getName())
+                .displayName("my display name")
+                .children(ImmutableList.of("child1", "child2"))
+                .build();
+    }
+
+    @Test
+    public void testWritesCompressedXml() throws Exception {
+        EntityMemento memento = newEntityMemento();
+        String compressed = serializer.toString(memento);
+        String xml = new XmlMementoSerializer<Object>(getClass().getClassLoader()).toString(memento);
+        
+        assertTrue(CompressedXmlMementoSerializer.isCompressed(compressed));
+        assertFalse(CompressedXmlMementoSerializer.isCompressed(xml));
+    }
+
+    @Test
+    public void testConvertsToAndFromXml() throws Exception {
+        EntityMemento memento = newEntityMemento();
+        XmlMementoSerializer<Object> xmlSerializer = new XmlMementoSerializer<Object>(getClass().getClassLoader());
+        String xml = xmlSerializer.toString(memento);
+        
+        String compressed = CompressedXmlMementoSerializer.fromXml(xml);
+        assertEquals(CompressedXmlMementoSerializer.toXml(compressed), xml);
+        
+        // either serializer reads either format (mementos do not implement equals, so compare their xml)
+        assertEquals(xmlSerializer.toString(serializer.fromString(compressed)), xml);
+        assertEquals(xmlSerializer.toString(xmlSerializer.fromString(compressed)), xml);
+        assertEquals(xmlSerializer.toString(serializer.fromString(xml)), xml);
+    }
+
+    @Test
+    public void testReadRootChildElements() throws Exception {
+        String compressed = serializer.toString(newEntityMemento());
+        assertEquals(CompressedXmlMementoSerializer.readRootChildElements(compressed, "id", "type"), 
+                ImmutableMap.of("id", "myid", "type", TestEntity.class.getName()));
+    }
+}
@@ -40,11 +40,15 @@ public class XmlMementoSerializerTest {
     @SuppressWarnings("unused")
     private static final Logger LOG = LoggerFactory.getLogger(XmlMementoSerializerTest.class);
 
-    private XmlMementoSerializer<Object> serializer;
+    protected XmlMementoSerializer<Object> serializer;
 
     @BeforeMethod(alwaysRun=true)
     public void setUp() throws Exception {
-        serializer = new XmlMementoSerializer<Object>(XmlMementoSerializerTest.class.getClassLoader());
+        serializer = newSerializer();
+    }
+
+    protected XmlMementoSerializer<Object> newSerializer() {
+        return new XmlMementoSerializer<Object>(XmlMementoSerializerTest.class.getClassLoader());
     }
 
     @Test
@@ -178,7 +182,7 @@ public class XmlMementoSerializerTest {
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T assertSerializeAndDeserialize(T obj) throws Exception {
+    protected <T> T assertSerializeAndDeserialize(T obj) throws Exception {
         String serializedForm = serializer.toString(obj);
         System.out.println("serializedForm="+serializedForm);
         Object deserialized = serializer.fromString(serializedForm);
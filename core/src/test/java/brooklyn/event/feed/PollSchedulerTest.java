@@ -0,0 +1,264 @@
+package brooklyn.event.feed;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.test.Asserts;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Ticker;
+
+public class PollSchedulerTest {
+
+    private PollScheduler scheduler;
+    private ExecutorService executor;
+    private PollScheduler.Dispatcher dispatcher;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        scheduler = new PollScheduler(Duration.millis(5), 8, 0);
+        executor = Executors.newCachedThreadPool();
+        dispatcher = new PollScheduler.Dispatcher() {
+            @Override public void dispatch(Runnable poll) {
+                executor.execute(poll);
+            }
+        };
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (scheduler != null) scheduler.stop();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Test
+    public void testPollsRepeatedlyUntilCancelled() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        // period longer than one revolution of the wheel (8 ticks of 5ms)
+        PollScheduler.Handle handle = scheduler.schedule("myfeed", Duration.millis(60), dispatcher, new Runnable() {
+            @Override public void run() {
+                counter.incrementAndGet();
+            }});
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(counter.get() >= 3, "counter="+counter);
+            }});
+
+        handle.cancel();
+        Thread.sleep(100);
+        final int countAfterCancel = counter.get();
+        Asserts.succeedsContinually(MutableMap.of("timeout", 200), new Runnable() {
+            @Override public void run() {
+                assertEquals(counter.get(), countAfterCancel);
+            }});
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(scheduler.getNumScheduled(), 0);
+            }});
+
+        PollScheduler.PollStats stats = scheduler.getStats().get("myfeed");
+        assertEquals(stats.getPolls(), countAfterCancel);
+        assertEquals(stats.getSkipped(), 0);
+    }
+
+    @Test
+    public void testSkipsPollWhilePreviousInProgress() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger counter = new AtomicInteger();
+        scheduler.schedule("myfeed", Duration.millis(10), dispatcher, new Runnable() {
+            @Override public void run() {
+                counter.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }});
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(scheduler.getStats().get("myfeed").getSkipped() >= 2);
+            }});
+        assertEquals(counter.get(), 1);
+
+        release.countDown();
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(counter.get() > 1, "counter="+counter);
+            }});
+    }
+
+    @Test
+    public void testRecordsDurationAndLatenessPerFeedType() throws Exception {
+        final CountDownLatch polled = new CountDownLatch(2);
+        Runnable poll = new Runnable() {
+            @Override public void run() {
+                polled.countDown();
+            }};
+        scheduler.schedule("feed1", Duration.ONE_SECOND, dispatcher, poll);
+        scheduler.schedule("feed2", Duration.ONE_SECOND, dispatcher, poll);
+        assertTrue(polled.await(10, TimeUnit.SECONDS));
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(scheduler.getStats().keySet(), MutableMap.of("feed1", 1, "feed2", 2).keySet());
+                assertEquals(scheduler.getStats().get("feed1").getPolls(), 1);
+                assertEquals(scheduler.getStats().get("feed2").getPolls(), 1);
+                assertTrue(scheduler.getStats().get("feed1").getTotalDuration().toNanoseconds() > 0);
+            }});
+    }
+
+    @Test
+    public void testPollsOfSamePhaseKeyRunTogether() throws Exception {
+        scheduler.stop();
+        scheduler = new PollScheduler(Duration.millis(5), 8, 0.5);
+        final List<Long> times1 = new CopyOnWriteArrayList<Long>();
+        final List<Long> times2 = new CopyOnWriteArrayList<Long>();
+        scheduler.scheduleInPhase("myfeed", Duration.millis(50), "key", dispatcher, new Runnable() {
+            @Override public void run() {
+                times1.add(System.nanoTime());
+            }});
+        Thread.sleep(20);
+        // scheduled later, and with a multiple of the period
+        scheduler.scheduleInPhase("myfeed", Duration.millis(100), "key", dispatcher, new Runnable() {
+            @Override public void run() {
+                times2.add(System.nanoTime());
+            }});
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(times2.size() >= 5, "times2="+times2);
+            }});
+        // each run of the second is in the same tick as a run of the first, not jittered
+        for (long time2 : times2) {
+            long closest = Long.MAX_VALUE;
+            for (long time1 : times1) {
+                closest = Math.min(closest, Math.abs(time1 - time2));
+            }
+            assertTrue(closest < TimeUnit.MILLISECONDS.toNanos(10), "closest="+closest+"; times1="+times1+"; times2="+times2);
+        }
+    }
+
+    @Test
+    public void testJitteredPeriodIsWithinBounds() throws Exception {
+        scheduler.stop();
+        scheduler = new PollScheduler(Duration.millis(5), 8, 0.5);
+        final AtomicInteger counter = new AtomicInteger();
+        scheduler.schedule("myfeed", Duration.millis(100), dispatcher, new Runnable() {
+            @Override public void run() {
+                counter.incrementAndGet();
+            }});
+
+        // with periods of 50-150ms, there are at least 3 polls in 1 second (the first being up to 50ms late),
+        // and at most one per 50ms of the time actually slept
+        long startTime = System.nanoTime();
+        Thread.sleep(1000);
+        int count = counter.get();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        assertTrue(count >= 3 && count <= elapsedMillis/50 + 1, "count="+count+"; elapsed="+elapsedMillis+"ms");
+    }
+
+    @Test
+    public void testCatchesUpOnTicksWhenWheelFallsBehind() throws Exception {
+        scheduler.stop();
+        final AtomicLong nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override public long read() {
+                return nanos.get();
+            }};
+        scheduler = new PollScheduler(Duration.millis(5), 8, 0, 1, ticker);
+        final AtomicInteger counter = new AtomicInteger();
+        // due at 0, then at tick 20 (i.e. in the 3rd revolution of the wheel's 8 ticks)
+        scheduler.schedule("myfeed", Duration.millis(100), dispatcher, new Runnable() {
+            @Override public void run() {
+                counter.incrementAndGet();
+            }});
+
+        nanos.set(Duration.millis(6).toNanoseconds());
+        assertCounterEventually(counter, 1);
+
+        // the wheel falls behind by 11 ticks, then by 9 ticks, passing the entry's bucket each revolution
+        nanos.set(Duration.millis(60).toNanoseconds());
+        Thread.sleep(50);
+        assertEquals(counter.get(), 1);
+        nanos.set(Duration.millis(106).toNanoseconds());
+        assertCounterEventually(counter, 2);
+        assertEquals(scheduler.getStats().get("myfeed").getSkipped(), 0);
+    }
+
+    @Test
+    public void testSlowDispatcherDoesNotDelayOtherPolls() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        PollScheduler.Dispatcher slowDispatcher = new PollScheduler.Dispatcher() {
+            @Override public void dispatch(Runnable poll) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                executor.execute(poll);
+            }
+        };
+        final AtomicInteger slowCounter = new AtomicInteger();
+        final AtomicInteger counter = new AtomicInteger();
+        try {
+            scheduler.schedule("slowfeed", Duration.millis(10), slowDispatcher, new Runnable() {
+                @Override public void run() {
+                    slowCounter.incrementAndGet();
+                }});
+            scheduler.schedule("myfeed", Duration.millis(10), dispatcher, new Runnable() {
+                @Override public void run() {
+                    counter.incrementAndGet();
+                }});
+
+            assertCounterEventually(counter, 5);
+            assertEquals(slowCounter.get(), 0);
+        } finally {
+            release.countDown();
+        }
+        assertCounterEventually(slowCounter, 1);
+    }
+
+    @Test
+    public void testRejectedDispatchDoesNotBlockLaterPolls() throws Exception {
+        final AtomicInteger rejections = new AtomicInteger();
+        PollScheduler.Dispatcher rejectingDispatcher = new PollScheduler.Dispatcher() {
+            @Override public void dispatch(Runnable poll) {
+                if (rejections.incrementAndGet() <= 3) throw new RejectedExecutionException("simulated");
+                executor.execute(poll);
+            }
+        };
+        final AtomicInteger counter = new AtomicInteger();
+        scheduler.schedule("myfeed", Duration.millis(10), rejectingDispatcher, new Runnable() {
+            @Override public void run() {
+                counter.incrementAndGet();
+            }});
+
+        assertCounterEventually(counter, 2);
+        PollScheduler.PollStats stats = scheduler.getStats().get("myfeed");
+        assertEquals(stats.getDispatchFailures(), 3);
+    }
+
+    private void assertCounterEventually(final AtomicInteger counter, final int min) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(counter.get() >= min, "counter="+counter);
+            }});
+    }
+}
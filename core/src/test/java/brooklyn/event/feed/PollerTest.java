@@ -1,10 +1,15 @@
 package brooklyn.event.feed;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,13 +20,19 @@ import org.testng.annotations.Test;
 import brooklyn.entity.basic.ApplicationBuilder;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.management.ExecutionContext;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.DynamicTasks;
 import brooklyn.util.time.Duration;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
 public class PollerTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(PollerTest.class);
@@ -87,4 +98,71 @@ public class PollerTest {
             }
         });
     }
+
+    @Test
+    public void testAsyncPollCallsHandlerOnCompletionAndSkipsWhileInProgress() throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicReference<SettableFuture<Integer>> inProgress = new AtomicReference<SettableFuture<Integer>>();
+        final List<Integer> results = new CopyOnWriteArrayList<Integer>();
+        final AtomicReference<ExecutionContext> handlerContext = new AtomicReference<ExecutionContext>();
+        poller.scheduleAsyncAtFixedRate(
+                new Poller.AsyncJob<Integer>() {
+                    @Override public ListenableFuture<Integer> call() {
+                        started.incrementAndGet();
+                        SettableFuture<Integer> result = SettableFuture.create();
+                        inProgress.set(result);
+                        return result;
+                    }
+                },
+                new RecordingPollHandler(results) {
+                    @Override public void onSuccess(Integer val) {
+                        handlerContext.compareAndSet(null, BasicExecutionContext.getCurrentExecutionContext());
+                        super.onSuccess(val);
+                    }
+                },
+                Duration.millis(10));
+        poller.start();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(started.get(), 1);
+            }});
+        // the poll has not completed, so no more are started
+        Asserts.succeedsContinually(MutableMap.of("timeout", 100), new Runnable() {
+            @Override public void run() {
+                assertEquals(started.get(), 1);
+                assertEquals(results, ImmutableList.of());
+            }});
+        
+        inProgress.get().set(123);
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(results.get(0), (Integer)123);
+                assertTrue(started.get() > 1);
+            }});
+        // the handler runs in the entity's context, not in the thread which completed the poll
+        assertSame(handlerContext.get(), entity.getExecutionContext());
+    }
+    
+    private static class RecordingPollHandler implements PollHandler<Integer> {
+        final List<Integer> results;
+        
+        RecordingPollHandler(List<Integer> results) {
+            this.results = results;
+        }
+        @Override public boolean checkSuccess(Integer val) {
+            return true;
+        }
+        @Override public void onSuccess(Integer val) {
+            results.add(val);
+        }
+        @Override public void onFailure(Integer val) {
+        }
+        @Override public void onException(Exception exception) {
+            LOG.info("Exception in test poller", exception);
+        }
+        @Override public String getDescription() {
+            return "recordingpollhandler";
+        }
+    }
 }
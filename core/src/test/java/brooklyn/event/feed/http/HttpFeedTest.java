@@ -25,6 +25,7 @@ import brooklyn.event.basic.Sensors;
 import brooklyn.event.feed.FeedConfig;
 import brooklyn.event.feed.PollConfig;
 import brooklyn.location.Location;
+import brooklyn.management.internal.AbstractManagementContext;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
@@ -100,6 +101,23 @@ public class HttpFeedTest {
         assertSensorEventually(SENSOR_STRING, "{\"foo\":\"myfoo\"}", TIMEOUT_MS);
     }
     
+    @Test
+    public void testUsesManagementContextClientPool() throws Exception {
+        HttpFeedClientPool clientPool = ((AbstractManagementContext)app.getManagementContext()).getHttpFeedClientPool();
+        long requestsBefore = clientPool.getTotalRequests();
+        
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(baseUrl)
+                .poll(HttpPollConfig.forSensor(SENSOR_INT)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .build();
+        
+        assertSensorEventually(SENSOR_INT, (Integer)200, TIMEOUT_MS);
+        assertTrue(clientPool.getTotalRequests() > requestsBefore);
+    }
+    
     @Test
     public void testSetsConnectionTimeout() throws Exception {
         feed = HttpFeed.builder()
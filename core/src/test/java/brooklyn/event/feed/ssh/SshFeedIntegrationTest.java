@@ -23,6 +23,7 @@ import brooklyn.util.stream.Streams;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 public class SshFeedIntegrationTest {
 
@@ -121,4 +122,45 @@ public class SshFeedIntegrationTest {
                 assertTrue(val != null && val.contains("Exit status 123"), "val=" + val);
             }});
     }
+
+    @Test(groups="Integration")
+    public void testExecInBatchRunsCommandsOfFeedsInOneSession() throws Exception {
+        EntityLocal entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        SshPollBatcher batcher = SshPollBatcher.forMachine(machine, app.getManagementContext().getExecutionManager());
+        long batchesBefore = batcher.getBatchesRun();
+        
+        feed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .execInBatch()
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command("echo hello")
+                        .onSuccess(SshValueFunctions.stdout()))
+                .poll(new SshPollConfig<Integer>(SENSOR_INT)
+                        .command("exit 123")
+                        .checkSuccess(Predicates.alwaysTrue())
+                        .onSuccess(SshValueFunctions.exitStatus()))
+                .build();
+        SshFeed feed2 = SshFeed.builder()
+                .entity(entity2)
+                .machine(machine)
+                .execInBatch()
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command("echo $GREETING")
+                        .env(ImmutableMap.of("GREETING", "hi"))
+                        .onSuccess(SshValueFunctions.stdout()))
+                .build();
+        
+        try {
+            EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_STRING, "hello\n");
+            EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+            EntityTestUtils.assertAttributeEqualsEventually(entity2, SENSOR_STRING, "hi\n");
+            
+            // on average, more than one command per session
+            long batches = batcher.getBatchesRun() - batchesBefore;
+            assertTrue(batcher.getCommandsRun() > batches, "batches="+batches+"; commands="+batcher.getCommandsRun());
+        } finally {
+            feed2.stop();
+        }
+    }
 }
@@ -0,0 +1,192 @@
+package brooklyn.event.feed.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.test.Asserts;
+import brooklyn.test.EntityTestUtils;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.internal.ssh.SshConnectionManagerTest.RecordingSshTool;
+import brooklyn.util.internal.ssh.SshTool;
+import brooklyn.util.internal.ssh.process.ProcessTool;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Runs the batch command of {@link SshPollBatcher} with a local shell, checking each command's output
+ * is framed and parsed correctly.
+ */
+public class SshPollBatcherTest {
+
+    final static AttributeSensor<String> SENSOR_STRING = Sensors.newStringSensor("aString", "");
+
+    /** An ssh tool which runs the commands with a local shell. */
+    public static class LocalSshTool extends RecordingSshTool {
+        public LocalSshTool(Map<?,?> props) {
+            super(props);
+        }
+        @Override public int execCommands(Map<String, ?> props, List<String> commands, Map<String, ?> env) {
+            super.execCommands(props, commands, env);
+            return new ProcessTool().execCommands(MutableMap.of("out", (OutputStream) props.get("out"), "err", (OutputStream) props.get("err")),
+                    commands, env);
+        }
+    }
+
+    @Test
+    public void testRunsCommandsAndParsesTheirOutput() throws Exception {
+        List<SshPollBatcher.Command> commands = ImmutableList.of(
+                new SshPollBatcher.Command("echo hello", null),
+                new SshPollBatcher.Command("echo oops >&2; exit 3", null),
+                new SshPollBatcher.Command("echo \"$GREETING, $NAME\"", ImmutableMap.of("GREETING", "hi", "NAME", "it's \"$HOME\"")),
+                // output which looks like a frame, and has no trailing newline
+                new SshPollBatcher.Command("printf 'BROOKLYN-SSH-POLL-FRAME 0 0 0 0\\nlast'", null));
+
+        List<SshPollValue> values = runBatch(commands);
+
+        assertValue(values.get(0), 0, "hello\n", "");
+        assertValue(values.get(1), 3, "", "oops\n");
+        assertValue(values.get(2), 0, "hi, it's \"$HOME\"\n", "");
+        assertValue(values.get(3), 0, "BROOKLYN-SSH-POLL-FRAME 0 0 0 0\nlast", "");
+    }
+
+    @Test
+    public void testRunsCommandsInParallel() throws Exception {
+        long startTime = System.currentTimeMillis();
+        List<SshPollValue> values = runBatch(ImmutableList.of(
+                new SshPollBatcher.Command("sleep 1; echo a", null),
+                new SshPollBatcher.Command("sleep 1; echo b", null),
+                new SshPollBatcher.Command("sleep 1; echo c", null)));
+        long duration = System.currentTimeMillis() - startTime;
+
+        assertValue(values.get(0), 0, "a\n", "");
+        assertValue(values.get(2), 0, "c\n", "");
+        assertEquals(duration < 2500, true, "duration="+duration);
+    }
+
+    @Test
+    public void testKillsOnlyCommandsWhichTimeOut() throws Exception {
+        long startTime = System.currentTimeMillis();
+        List<SshPollValue> values = runBatch(ImmutableList.of(
+                new SshPollBatcher.Command("echo a", null),
+                new SshPollBatcher.Command("echo started; sleep 60; echo finished", null),
+                new SshPollBatcher.Command("sleep 1; echo c", null)),
+                Duration.seconds(2));
+        long duration = System.currentTimeMillis() - startTime;
+
+        assertValue(values.get(0), 0, "a\n", "");
+        assertValue(values.get(1), SshPollBatcher.TIMED_OUT_EXIT_STATUS, "started\n", "Timed out after 2s\n");
+        assertValue(values.get(2), 0, "c\n", "");
+        assertTrue(duration < 10*1000, "duration="+duration);
+    }
+
+    @Test
+    public void testFailsIfOutputMissing() throws Exception {
+        try {
+            SshPollBatcher.parseBatchOutput(null, "BROOKLYN-SSH-POLL-FRAME 0 0 2 0\nok".getBytes(), 2);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected: no frame for command 1
+        }
+        try {
+            SshPollBatcher.parseBatchOutput(null, "BROOKLYN-SSH-POLL-FRAME 0 0 5 0\nok".getBytes(), 1);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected: truncated
+        }
+    }
+
+    @Test
+    public void testFeedsOfOneMachineShareSession() throws Exception {
+        TestApplication app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        try {
+            SshMachineLocation machine = app.getManagementContext().getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class)
+                    .configure("address", "localhost")
+                    .configure(SshTool.PROP_TOOL_CLASS, LocalSshTool.class.getName()));
+            TestEntity entity1 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            TestEntity entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            // feeds of different entities, started half a period apart
+            SshFeed.builder().entity(entity1).machine(machine).execInBatch().period(500)
+                    .poll(new SshPollConfig<String>(SENSOR_STRING).command("echo one").onSuccess(SshValueFunctions.stdout()))
+                    .build();
+            EntityTestUtils.assertAttributeEqualsEventually(entity1, SENSOR_STRING, "one\n");
+            Thread.sleep(250);
+            SshFeed.builder().entity(entity2).machine(machine).execInBatch().period(500)
+                    .poll(new SshPollConfig<String>(SENSOR_STRING).command("echo two").onSuccess(SshValueFunctions.stdout()))
+                    .build();
+            EntityTestUtils.assertAttributeEqualsEventually(entity1, SENSOR_STRING, "one\n");
+            EntityTestUtils.assertAttributeEqualsEventually(entity2, SENSOR_STRING, "two\n");
+
+            final SshPollBatcher batcher = SshPollBatcher.forMachine(machine, app.getManagementContext().getExecutionManager());
+            final long batchesBefore = batcher.getBatchesRun();
+            final long commandsBefore = batcher.getCommandsRun();
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    assertTrue(batcher.getBatchesRun() - batchesBefore >= 4, "batches="+batcher.getBatchesRun());
+                }});
+            // one session per tick, for the polls of both feeds
+            long batches = batcher.getBatchesRun() - batchesBefore;
+            long commands = batcher.getCommandsRun() - commandsBefore;
+            assertEquals(commands, 2*batches, "batches="+batches+"; commands="+commands);
+        } finally {
+            Entities.destroyAll(app.getManagementContext());
+        }
+    }
+
+    @Test
+    public void testFailsSubmissionsIfBatchCannotBeScheduled() throws Exception {
+        BasicExecutionManager executionManager = new BasicExecutionManager("test");
+        executionManager.shutdownNow();
+        SshPollBatcher batcher = SshPollBatcher.forMachine(new SshMachineLocation(MutableMap.of("address", "localhost")), executionManager);
+
+        ListenableFuture<List<SshPollValue>> future = batcher.submit(ImmutableList.of(new SshPollBatcher.Command("echo hello", null)));
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException, "cause="+e.getCause());
+        }
+    }
+
+    private List<SshPollValue> runBatch(List<SshPollBatcher.Command> commands) {
+        return runBatch(commands, SshPollBatcher.COMMAND_TIMEOUT);
+    }
+
+    private List<SshPollValue> runBatch(List<SshPollBatcher.Command> commands, Duration timeout) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int exitStatus = new ProcessTool().execCommands(MutableMap.of("out", out, "err", err),
+                ImmutableList.of(SshPollBatcher.toBatchCommand(commands, timeout)), null);
+        assertEquals(exitStatus, 0, "stderr="+new String(err.toByteArray()));
+        return SshPollBatcher.parseBatchOutput(null, out.toByteArray(), commands.size());
+    }
+
+    private void assertValue(SshPollValue value, int exitStatus, String stdout, String stderr) {
+        assertEquals(value.getExitStatus(), exitStatus);
+        assertEquals(value.getStdout(), stdout);
+        assertEquals(value.getStderr(), stderr);
+    }
+}
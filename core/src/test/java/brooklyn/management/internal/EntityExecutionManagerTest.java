@@ -1,6 +1,7 @@
 package brooklyn.management.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -25,6 +26,7 @@ import brooklyn.entity.basic.BrooklynTaskTags.WrappedEntity;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.event.basic.BasicAttributeSensor;
+import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
@@ -154,6 +156,56 @@ public class EntityExecutionManagerTest {
         }
     }
     
+    @Test
+    public void testCompletedTasksGcedForMaxPerTagAsTheyComplete() throws Exception {
+        BrooklynProperties brooklynProperties = BrooklynProperties.Factory.newEmpty();
+        brooklynProperties.put(BrooklynGarbageCollector.GC_PERIOD, 60*1000);
+        brooklynProperties.put(BrooklynGarbageCollector.MAX_TASKS_PER_TAG, 2);
+        
+        LocalManagementContext mgmt = new LocalManagementContext(brooklynProperties);
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, mgmt);
+        ExecutionManager em = mgmt.getExecutionManager();
+        
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            Task<?> task = em.submit(MutableMap.of("tags", ImmutableList.of(ManagementContextInternal.NON_TRANSIENT_TASK_TAG, "mytag")), 
+                    new Runnable() { public void run() {} });
+            task.get();
+            tasks.add(task);
+        }
+        
+        assertEquals(em.getTasksWithTag("mytag"), ImmutableSet.copyOf(tasks.subList(3, 5)));
+        assertEquals(mgmt.getGarbageCollector().getTotalTasksEvicted(), 3);
+    }
+    
+    @Test
+    public void testCompletedTasksExpiredForAgeAndTagForgotten() throws Exception {
+        BrooklynProperties brooklynProperties = BrooklynProperties.Factory.newEmpty();
+        brooklynProperties.put(BrooklynGarbageCollector.GC_PERIOD, 10);
+        brooklynProperties.put(BrooklynGarbageCollector.MAX_TASK_AGE, 500);
+        
+        final LocalManagementContext mgmt = new LocalManagementContext(brooklynProperties);
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, mgmt);
+        final ExecutionManager em = mgmt.getExecutionManager();
+        
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            Task<?> task = em.submit(MutableMap.of("tags", ImmutableList.of(ManagementContextInternal.NON_TRANSIENT_TASK_TAG, "mytag")), 
+                    new Runnable() { public void run() {} });
+            task.get();
+            tasks.add(task);
+        }
+        assertEquals(em.getTasksWithTag("mytag"), ImmutableSet.copyOf(tasks));
+        assertTrue(mgmt.getGarbageCollector().hasCompletedTasks("mytag"));
+        
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            @Override public void run() {
+                assertEquals(em.getTasksWithTag("mytag"), ImmutableSet.of());
+                assertFalse(mgmt.getGarbageCollector().hasCompletedTasks("mytag"));
+            }});
+        assertTrue(mgmt.getGarbageCollector().getTotalTasksExpired() >= 3);
+    }
+    
     // FIXME DynamicSequentialTask creates a secondaryJobMaster task (DstJob) so we have these extra tasks interfering.
     // We can't just mark that task as transient, as all sub-tasks of the sequential-task have that as its
     // context so are automatically deleted. We probably don't want to make that secondaryJobMaster a child of the 
@@ -1,12 +1,14 @@
 package brooklyn.management.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.fail;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.testng.annotations.AfterMethod;
@@ -20,10 +22,13 @@ import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicSensorEvent;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
+import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
 
 /**
  * testing the {@link SubscriptionManager} and associated classes.
@@ -129,6 +134,102 @@ public class LocalSubscriptionManagerTest {
         assertEquals(events.get(0).getSource().getId(), member.getId());
     }
     
+    @Test
+    public void testUnsubscribeRemovesFromIndex() throws Exception {
+        LocalSubscriptionManager subsManager = (LocalSubscriptionManager) app.getManagementContext().getSubscriptionManager();
+        SensorEventListener<Object> noopListener = new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+            }};
+        SubscriptionHandle handle = subsManager.subscribe(entity, TestEntity.SEQUENCE, noopListener);
+        assertEquals(subsManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size(), 1);
+        
+        long publishedBefore = subsManager.getTotalEventsPublished();
+        entity.setSequenceValue(1234);
+        assertEquals(subsManager.getTotalEventsPublished(), publishedBefore+1);
+        
+        subsManager.unsubscribe(handle);
+        assertEquals(subsManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size(), 0);
+        assertFalse(subsManager.subscriptionsByToken.containsKey(AbstractSubscriptionManager.makeEntitySensorToken(entity, TestEntity.SEQUENCE)));
+    }
+    
+    @Test
+    public void testEventWithNoSourceDeliveredOnceToEachSubscriber() throws Exception {
+        LocalSubscriptionManager subsManager = (LocalSubscriptionManager) app.getManagementContext().getSubscriptionManager();
+        final List<SensorEvent<?>> sensorEvents = new CopyOnWriteArrayList<SensorEvent<?>>();
+        final List<SensorEvent<?>> wildcardEvents = new CopyOnWriteArrayList<SensorEvent<?>>();
+        subsManager.subscribe(null, TestEntity.SEQUENCE, new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+                if (event.getSource() == null) sensorEvents.add(event);
+            }});
+        subsManager.subscribe(null, null, new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+                if (event.getSource() == null) wildcardEvents.add(event);
+            }});
+        
+        long deliveredBefore = subsManager.getTotalEventsDelivered();
+        subsManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, null, 1234));
+        assertEquals(subsManager.getTotalEventsDelivered(), deliveredBefore+2);
+        
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(sensorEvents.size(), 1);
+                assertEquals(wildcardEvents.size(), 1);
+            }});
+    }
+    
+    @Test
+    public void testBatchedDeliveryPreservesOrder() throws Exception {
+        final int numEvents = 1000;
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(numEvents);
+        app.getManagementContext().getSubscriptionManager().subscribe(
+                MutableMap.<String,Object>of("subscriber", app, "deliveryMode", "batched", "deliveryMailboxCapacity", 10), 
+                entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        values.add(event.getValue());
+                        latch.countDown();
+                    }});
+        for (int i = 0; i < numEvents; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for batched events; received "+values.size());
+        }
+        for (int i = 0; i < numEvents; i++) {
+            assertEquals(values.get(i), (Integer)i);
+        }
+    }
+    
+    @Test
+    public void testBatchedDeliveryToCyclicSubscribersDoesNotDeadlock() throws Exception {
+        final TestEntity entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        final int numEvents = 20;
+        final int chainLength = 10;
+        final AtomicInteger deliveries = new AtomicInteger();
+        // each subscriber decrements the value it receives and publishes it, which is received by the other
+        subscribeAndForward(entity, entity2, deliveries);
+        subscribeAndForward(entity2, entity, deliveries);
+        
+        for (int i = 0; i < numEvents; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, chainLength);
+        }
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(deliveries.get(), numEvents * (chainLength+1));
+            }});
+    }
+
+    private void subscribeAndForward(final TestEntity subscriber, TestEntity producer, final AtomicInteger deliveries) {
+        app.getManagementContext().getSubscriptionManager().subscribe(
+                MutableMap.<String,Object>of("subscriber", subscriber, "deliveryMode", "batched", 
+                        "deliveryMailboxCapacity", 1, "deliveryMailboxBlockTimeout", "10ms"), 
+                producer, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        deliveries.incrementAndGet();
+                        if (event.getValue() > 0) subscriber.setAttribute(TestEntity.SEQUENCE, event.getValue() - 1);
+                    }});
+    }
+    
     // Regression test for ConcurrentModificationException in issue #327
     @Test(groups="Integration")
     public void testConcurrentSubscribingAndPublishing() throws Exception {
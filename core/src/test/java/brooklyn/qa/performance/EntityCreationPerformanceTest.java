@@ -0,0 +1,53 @@
+package brooklyn.qa.performance;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicEntity;
+import brooklyn.entity.basic.BasicStartable;
+import brooklyn.entity.group.DynamicCluster;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.test.entity.TestEntity;
+
+/**
+ * Measures how quickly entities of common types can be created (but not managed) from an {@link EntitySpec};
+ * this is dominated by the type's metadata (its effectors, sensors and config keys), which is found by
+ * reflection only once per class.
+ */
+public class EntityCreationPerformanceTest extends AbstractPerformanceTest {
+
+    protected int numIterations() {
+        return 1000;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCreateBasicEntity() {
+        measureCreation("BasicEntity", EntitySpec.create(BasicEntity.class));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCreateBasicStartable() {
+        measureCreation("BasicStartable", EntitySpec.create(BasicStartable.class));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCreateTestEntity() {
+        measureCreation("TestEntity", EntitySpec.create(TestEntity.class));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCreateDynamicCluster() {
+        measureCreation("DynamicCluster", EntitySpec.create(DynamicCluster.class)
+                .configure(DynamicCluster.MEMBER_SPEC, EntitySpec.create(TestEntity.class)));
+    }
+
+    private void measureCreation(String type, final EntitySpec<? extends Entity> spec) {
+        int numIterations = numIterations();
+        double minRatePerSec = 100 * PERFORMANCE_EXPECTATION;
+
+        measureAndAssert("create-"+type, numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                app.getManagementContext().getEntityManager().createEntity(spec);
+            }});
+    }
+}
@@ -0,0 +1,69 @@
+package brooklyn.qa.performance;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.management.internal.LocalEntityManager;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
+
+/**
+ * Compares the cost of calling an entity through its proxy (see {@link brooklyn.entity.proxying.EntityProxyImpl})
+ * with calling the entity directly, for the calls most commonly made by policies and enrichers.
+ */
+public class EntityProxyPerformanceTest extends AbstractPerformanceTest {
+
+    TestEntityImpl real;
+    TestEntity proxy;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() {
+        super.setUp();
+        real = new TestEntityImpl(app);
+        proxy = ((LocalEntityManager)app.getManagementContext().getEntityManager()).getEntityFactory()
+                .createEntityProxy(EntitySpec.create(TestEntity.class), real);
+        real.setProxy(proxy);
+        Entities.manage(real);
+        real.setAttribute(TestEntity.SEQUENCE, 123);
+    }
+
+    protected int numIterations() {
+        return 100000;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testGetAttributeDirect() {
+        measureAndAssert("getAttribute-direct", numIterations(), 100000 * PERFORMANCE_EXPECTATION, new Runnable() {
+            public void run() {
+                real.getAttribute(TestEntity.SEQUENCE);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testGetAttributeViaProxy() {
+        measureAndAssert("getAttribute-proxy", numIterations(), 100000 * PERFORMANCE_EXPECTATION, new Runnable() {
+            public void run() {
+                proxy.getAttribute(TestEntity.SEQUENCE);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testGetConfigViaProxy() {
+        measureAndAssert("getConfig-proxy", numIterations(), 100000 * PERFORMANCE_EXPECTATION, new Runnable() {
+            public void run() {
+                proxy.getConfig(TestEntity.CONF_NAME);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testNonEffectorMethodViaProxy() {
+        // a method of TestEntity but not of Entity, which is checked for being an effector on every call
+        measureAndAssert("getSequenceValue-proxy", numIterations(), 100000 * PERFORMANCE_EXPECTATION, new Runnable() {
+            public void run() {
+                proxy.getSequenceValue();
+            }});
+    }
+}
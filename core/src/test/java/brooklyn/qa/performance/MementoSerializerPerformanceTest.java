@@ -0,0 +1,151 @@
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.entity.rebind.persister.CompressedXmlMementoSerializer;
+import brooklyn.entity.rebind.persister.MementoSerializer;
+import brooklyn.entity.rebind.persister.XmlMementoSerializer;
+import brooklyn.location.Location;
+import brooklyn.management.ManagementContext;
+import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.policy.Enricher;
+import brooklyn.policy.Policy;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.text.Strings;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares {@link XmlMementoSerializer} and {@link CompressedXmlMementoSerializer} on a 5000-entity memento,
+ * built by copying the mementos of real (configured, with attributes) entities.
+ */
+public class MementoSerializerPerformanceTest extends AbstractPerformanceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MementoSerializerPerformanceTest.class);
+
+    private static final int NUM_DISTINCT_ENTITIES = 100;
+    private static final int NUM_MEMENTOS = 5000;
+
+    private List<EntityMemento> mementos;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() {
+        super.setUp();
+        List<EntityMemento> templates = Lists.newArrayList();
+        for (int i = 0; i < NUM_DISTINCT_ENTITIES; i++) {
+            TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                    .configure(TestEntity.CONF_NAME, "name-"+i)
+                    .configure(TestEntity.CONF_MAP_PLAIN, MutableMap.of("key1", "val"+i, "key2", i))
+                    .configure(TestEntity.CONF_LIST_THING, ImmutableList.of("a"+i, "b"+i)));
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+            entity.setAttribute(TestEntity.NAME, "entity-"+i);
+            entity.setAttribute(TestEntity.SERVICE_UP, true);
+            templates.add(((EntityInternal)entity).getRebindSupport().getMemento());
+        }
+        mementos = Lists.newArrayList();
+        for (int i = 0; i < NUM_MEMENTOS; i++) {
+            EntityMemento template = templates.get(i % NUM_DISTINCT_ENTITIES);
+            mementos.add(BasicEntityMemento.builder().from(template).id(template.getId()+"-"+i).build());
+        }
+    }
+
+    protected int numIterations() {
+        return NUM_MEMENTOS;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testXmlSerializer() {
+        measureSerializer("xml", new XmlMementoSerializer<Object>(getClass().getClassLoader()));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCompressedXmlSerializer() {
+        measureSerializer("compressed-xml", new CompressedXmlMementoSerializer<Object>(getClass().getClassLoader()));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCompressedXmlIsSmallerThanXml() {
+        long xmlSize = totalSize(new XmlMementoSerializer<Object>(getClass().getClassLoader()));
+        long compressedSize = totalSize(new CompressedXmlMementoSerializer<Object>(getClass().getClassLoader()));
+        String msg = "Size of "+NUM_MEMENTOS+" entity mementos: xml="+Strings.makeSizeString(xmlSize)+"; compressed="+Strings.makeSizeString(compressedSize);
+        LOG.info(msg);
+        System.out.println("\n"+msg+"\n");
+        assertTrue(compressedSize < xmlSize, "xml="+xmlSize+"; compressed="+compressedSize);
+    }
+
+    private long totalSize(MementoSerializer<Object> serializer) {
+        long result = 0;
+        for (EntityMemento memento : mementos) {
+            result += serializer.toString(memento).length();
+        }
+        return result;
+    }
+
+    private void measureSerializer(String format, final MementoSerializer<Object> serializer) {
+        int numIterations = numIterations();
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+
+        final List<String> serialized = Lists.newArrayList();
+        for (EntityMemento memento : mementos) {
+            serialized.add(serializer.toString(memento));
+        }
+
+        final AtomicInteger i = new AtomicInteger();
+        measureAndAssert("serialize-"+format, numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                serializer.toString(mementos.get(i.getAndIncrement() % NUM_MEMENTOS));
+            }});
+
+        final AtomicInteger j = new AtomicInteger();
+        serializer.setLookupContext(new FailingLookupContext(app.getManagementContext()));
+        try {
+            measureAndAssert("deserialize-"+format, numIterations, minRatePerSec, new Runnable() {
+                public void run() {
+                    serializer.fromString(serialized.get(j.getAndIncrement() % NUM_MEMENTOS));
+                }});
+        } finally {
+            serializer.unsetLookupContext();
+        }
+    }
+
+    /** the mementos only refer to other entities etc by id, so nothing should need to be looked up */
+    private static class FailingLookupContext implements LookupContext {
+        private final ManagementContext mgmt;
+
+        FailingLookupContext(ManagementContext mgmt) {
+            this.mgmt = mgmt;
+        }
+        @Override public ManagementContext lookupManagementContext() {
+            return mgmt;
+        }
+        @Override public Entity lookupEntity(String id) {
+            throw new NoSuchElementException("no entity with id "+id);
+        }
+        @Override public Location lookupLocation(String id) {
+            throw new NoSuchElementException("no location with id "+id);
+        }
+        @Override public Policy lookupPolicy(String id) {
+            throw new NoSuchElementException("no policy with id "+id);
+        }
+        @Override public Enricher lookupEnricher(String id) {
+            throw new NoSuchElementException("no enricher with id "+id);
+        }
+    }
+}
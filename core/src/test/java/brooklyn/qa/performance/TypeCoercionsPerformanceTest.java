@@ -0,0 +1,77 @@
+package brooklyn.qa.performance;
+
+import groovy.lang.Closure;
+
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Lifecycle;
+import brooklyn.util.flags.TypeCoercions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Measures the rate of {@link TypeCoercions#coerce(Object, Class)} for common pairs of value and target types
+ * (the coercer for each pair is found on first use, so this is the cost of applying it).
+ */
+public class TypeCoercionsPerformanceTest extends AbstractPerformanceTest {
+
+    protected int numIterations() {
+        return 100000;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testStringToInteger() {
+        measureCoercion("string-to-integer", "1234", Integer.class);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testStringToDouble() {
+        measureCoercion("string-to-double", "12.34", Double.class);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testStringToDuration() {
+        measureCoercion("string-to-duration", "30s", Duration.class);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testStringToEnum() {
+        measureCoercion("string-to-enum", "running", Lifecycle.class);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testClosureToPredicate() {
+        Closure<Boolean> closure = new Closure<Boolean>(null) {
+            private static final long serialVersionUID = 1L;
+            @SuppressWarnings("unused")
+            public Boolean doCall(Object input) {
+                return true;
+            }
+        };
+        measureCoercion("closure-to-predicate", closure, Predicate.class);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCollectionToSet() {
+        measureCoercion("collection-to-set", ImmutableList.of("a", "b", "c"), Set.class);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCollectionToList() {
+        measureCoercion("collection-to-list", ImmutableSet.of("a", "b", "c"), List.class);
+    }
+
+    private void measureCoercion(String prefix, final Object value, final Class<?> targetType) {
+        double minRatePerSec = 10000 * PERFORMANCE_EXPECTATION;
+        measureAndAssert(prefix, numIterations(), minRatePerSec, new Runnable() {
+            public void run() {
+                TypeCoercions.coerce(value, targetType);
+            }});
+    }
+}
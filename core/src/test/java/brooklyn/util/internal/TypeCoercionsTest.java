@@ -1,6 +1,8 @@
 package brooklyn.util.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -15,6 +17,8 @@ import brooklyn.entity.basic.Lifecycle;
 import brooklyn.util.flags.ClassCoercionException;
 import brooklyn.util.flags.TypeCoercions;
 
+import com.google.common.base.Function;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.TypeToken;
@@ -162,6 +166,49 @@ public class TypeCoercionsTest {
         TypeCoercions.coerce(new Object(), TypeToken.of(Integer.class));
     }
 
+    @Test
+    public void testCoercerCachedForValueClassAndTargetType() {
+        TypeCoercions.coerce("1", Long.class);
+        assertTrue(TypeCoercions.isCoercerCached(String.class, Long.class));
+        assertFalse(TypeCoercions.isCoercerCached(StringBuilder.class, Long.class));
+        
+        CacheStats statsBefore = TypeCoercions.getCoercerCacheStats();
+        assertEquals(TypeCoercions.coerce("2", Long.class), (Long)2l);
+        CacheStats stats = TypeCoercions.getCoercerCacheStats().minus(statsBefore);
+        assertTrue(stats.hitCount() > 0, "stats="+stats);
+        assertEquals(stats.missCount(), 0, "stats="+stats);
+    }
+
+    @Test
+    public void testAdapterRegisteredAfterCoercionFailedIsUsed() {
+        try {
+            TypeCoercions.coerce(new WithNoAdapter(), WithFrom.class);
+            Assert.fail();
+        } catch (ClassCoercionException e) {
+            // expected
+        }
+        TypeCoercions.registerAdapter(WithNoAdapter.class, WithFrom.class, new Function<WithNoAdapter, WithFrom>() {
+            @Override public WithFrom apply(WithNoAdapter input) {
+                return WithFrom.fromString("4");
+            }});
+        assertEquals(TypeCoercions.coerce(new WithNoAdapter(), WithFrom.class).value, 4);
+    }
+
+    @Test
+    public void testEnumCoercionFallsBackToRegistryPerValue() {
+        assertEquals(TypeCoercions.coerce("running", Lifecycle.class), Lifecycle.RUNNING);
+        try {
+            TypeCoercions.coerce("notAState", Lifecycle.class);
+            Assert.fail();
+        } catch (ClassCoercionException e) {
+            // expected
+        }
+        assertEquals(TypeCoercions.coerce("stopped", Lifecycle.class), Lifecycle.STOPPED);
+    }
+
+    public static class WithNoAdapter {
+    }
+
     public static class WithAs {
         String value;
         public WithAs(Object x) { value = ""+x; }
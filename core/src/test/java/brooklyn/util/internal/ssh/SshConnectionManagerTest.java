@@ -0,0 +1,336 @@
+package brooklyn.util.internal.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Entities;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.Asserts;
+import brooklyn.util.pool.Lease;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class SshConnectionManagerTest {
+
+    /** An ssh tool which records its connections, and runs nothing. */
+    public static class RecordingSshTool implements SshTool {
+        static final AtomicInteger connections = new AtomicInteger();
+        static final AtomicInteger execs = new AtomicInteger();
+
+        private volatile boolean connected;
+
+        public RecordingSshTool(Map<?,?> props) {
+        }
+        @Override public void connect() {
+            connections.incrementAndGet();
+            connected = true;
+        }
+        @Override public void connect(int maxAttempts) {
+            connect();
+        }
+        @Override public void disconnect() {
+            connected = false;
+        }
+        @Override public boolean isConnected() {
+            return connected;
+        }
+        @Override public int execScript(Map<String, ?> props, List<String> commands, Map<String, ?> env) {
+            execs.incrementAndGet();
+            return 0;
+        }
+        @Override public int execScript(Map<String, ?> props, List<String> commands) {
+            return execScript(props, commands, ImmutableMap.<String,Object>of());
+        }
+        @Override public int execCommands(Map<String, ?> props, List<String> commands, Map<String, ?> env) {
+            execs.incrementAndGet();
+            return 0;
+        }
+        @Override public int execCommands(Map<String, ?> props, List<String> commands) {
+            return execCommands(props, commands, ImmutableMap.<String,Object>of());
+        }
+        @Override public int copyToServer(Map<String, ?> props, File localFile, String pathAndFileOnRemoteServer) {
+            return 0;
+        }
+        @Override public int copyToServer(Map<String, ?> props, InputStream contents, String pathAndFileOnRemoteServer) {
+            return 0;
+        }
+        @Override public int copyToServer(Map<String, ?> props, byte[] contents, String pathAndFileOnRemoteServer) {
+            return 0;
+        }
+        @Override public int copyFromServer(Map<String, ?> props, String pathAndFileOnRemoteServer, File local) {
+            return 0;
+        }
+    }
+
+    private static final Supplier<SshTool> CONNECTOR = new Supplier<SshTool>() {
+        @Override public SshTool get() {
+            SshTool result = new RecordingSshTool(ImmutableMap.of());
+            result.connect();
+            return result;
+        }};
+
+    private static final SshConnectionKey KEY = new SshConnectionKey("host1", 22, "user", "a");
+    private static final SshConnectionKey KEY_OTHER_CREDENTIALS = new SshConnectionKey("host1", 22, "user", "b");
+    private static final SshConnectionKey KEY_OTHER_HOST = new SshConnectionKey("host2", 22, "user", "a");
+
+    private SshConnectionManager manager;
+    private LocalManagementContext managementContext;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        RecordingSshTool.connections.set(0);
+        RecordingSshTool.execs.set(0);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (manager != null) manager.stop();
+        if (managementContext != null) Entities.destroyAll(managementContext);
+    }
+
+    @Test
+    public void testReusesConnectionForSameKey() throws Exception {
+        manager = newManager(10, 10, 1);
+
+        SshTool tool1 = leaseAndRelease(KEY);
+        SshTool tool2 = leaseAndRelease(KEY);
+        SshTool tool3 = leaseAndRelease(KEY_OTHER_CREDENTIALS);
+
+        assertSame(tool1, tool2);
+        assertNotSame(tool1, tool3);
+        assertEquals(manager.getNumConnections(), 2);
+        assertEquals(manager.getTotalHandshakes(), 2);
+        assertEquals(manager.getTotalHandshakesAvoided(), 1);
+        long recorded = 0;
+        for (Long count : manager.getHandshakeLatencyHistogram().values()) {
+            recorded += count;
+        }
+        assertEquals(recorded, 2);
+    }
+
+    @Test
+    public void testMultiplexesLeasesOverConnection() throws Exception {
+        manager = newManager(10, 10, 2);
+
+        Lease<SshTool> lease1 = manager.leaseConnection(KEY, Duration.ONE_MINUTE, CONNECTOR);
+        Lease<SshTool> lease2 = manager.leaseConnection(KEY, Duration.ONE_MINUTE, CONNECTOR);
+        Lease<SshTool> lease3 = manager.leaseConnection(KEY, Duration.ONE_MINUTE, CONNECTOR);
+
+        assertSame(lease1.leasedObject(), lease2.leasedObject());
+        assertNotSame(lease1.leasedObject(), lease3.leasedObject());
+        assertEquals(manager.getNumConnections(), 2);
+        assertEquals(manager.getNumLeases(), 3);
+
+        lease1.close();
+        lease2.close();
+        lease3.close();
+        assertEquals(manager.getNumLeases(), 0);
+        assertEquals(manager.getNumConnections(), 2);
+    }
+
+    @Test
+    public void testOpensUnpooledConnectionWhenAtPerHostCap() throws Exception {
+        manager = newManager(10, 1, 1);
+
+        Lease<SshTool> lease = manager.leaseConnection(KEY, Duration.ONE_MINUTE, CONNECTOR);
+        // the only pooled connection allowed to the host is in use, so this one is not pooled
+        Lease<SshTool> unpooledLease = manager.leaseConnection(KEY_OTHER_CREDENTIALS, Duration.ONE_MINUTE, CONNECTOR);
+        SshTool unpooled = unpooledLease.leasedObject();
+        assertEquals(manager.getTotalUnpooledConnections(), 1);
+        assertEquals(manager.getNumConnections(), 1);
+        unpooledLease.close();
+        assertFalse(unpooled.isConnected());
+        assertEquals(manager.getNumLeases(), 1);
+
+        // other hosts are unaffected
+        leaseAndRelease(KEY_OTHER_HOST);
+
+        // once idle, the connection is evicted to make room
+        SshTool tool = lease.leasedObject();
+        lease.close();
+        leaseAndRelease(KEY_OTHER_CREDENTIALS);
+        assertFalse(tool.isConnected());
+        assertEquals(manager.getNumConnections(), 2);
+        assertEquals(manager.getTotalEvictions(), 1);
+    }
+
+    @Test
+    public void testEvictsIdleConnections() throws Exception {
+        manager = new SshConnectionManager(10, 10, 1, Duration.millis(10));
+
+        final Lease<SshTool> lease = manager.leaseConnection(KEY, Duration.millis(10), CONNECTOR);
+        Thread.sleep(50);
+        // not evicted while in use
+        assertTrue(lease.leasedObject().isConnected());
+        final SshTool tool = lease.leasedObject();
+        lease.close();
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertFalse(tool.isConnected());
+                assertEquals(manager.getNumConnections(), 0);
+            }});
+    }
+
+    @Test
+    public void testUnmanagedEvictsIdleConnectionsWhenLeasing() throws Exception {
+        manager = SshConnectionManager.newUnmanaged();
+
+        Lease<SshTool> lease = manager.leaseConnection(KEY, Duration.millis(10), CONNECTOR);
+        SshTool tool = lease.leasedObject();
+        lease.close();
+        Thread.sleep(50);
+        assertTrue(tool.isConnected());
+
+        leaseAndRelease(KEY_OTHER_HOST);
+        assertFalse(tool.isConnected());
+        assertEquals(manager.getNumConnections(), 1);
+    }
+
+    @Test
+    public void testRetiredConnectionClosedWhenReleased() throws Exception {
+        manager = newManager(10, 10, 2);
+
+        Lease<SshTool> lease = manager.leaseConnection(KEY, Duration.ONE_MINUTE, CONNECTOR);
+        SshTool tool = lease.leasedObject();
+        Lease<SshTool> otherLease = manager.leaseConnection(KEY, Duration.ONE_MINUTE, CONNECTOR);
+        assertSame(otherLease.leasedObject(), tool);
+        manager.retire(lease);
+        lease.close();
+        // still in use by the other lease
+        assertTrue(tool.isConnected());
+        otherLease.close();
+        assertFalse(tool.isConnected());
+
+        assertNotSame(leaseAndRelease(KEY), tool);
+    }
+
+    @Test
+    public void testRetiringKeyClosesIdleAndLeasedConnections() throws Exception {
+        manager = newManager(10, 10, 1);
+
+        Lease<SshTool> lease = manager.leaseConnection(KEY, Duration.ONE_MINUTE, CONNECTOR);
+        SshTool leasedTool = lease.leasedObject();
+        SshTool idleTool = leaseAndRelease(KEY);
+        SshTool otherTool = leaseAndRelease(KEY_OTHER_CREDENTIALS);
+        assertNotSame(idleTool, leasedTool);
+
+        manager.retire(KEY);
+        assertFalse(idleTool.isConnected());
+        assertTrue(leasedTool.isConnected(), "closed while in use");
+        lease.close();
+        assertFalse(leasedTool.isConnected());
+        assertTrue(otherTool.isConnected());
+        assertEquals(manager.getNumConnections(), 1);
+    }
+
+    @Test
+    public void testConnectionsClosedWhenLastRegistrationRemoved() throws Exception {
+        manager = newManager(10, 10, 1);
+        manager.register(KEY);
+        manager.register(KEY);
+        SshTool tool = leaseAndRelease(KEY);
+        SshTool otherTool = leaseAndRelease(KEY_OTHER_CREDENTIALS);
+
+        manager.unregister(KEY);
+        assertTrue(tool.isConnected());
+        manager.unregister(KEY);
+        assertFalse(tool.isConnected());
+        assertTrue(otherTool.isConnected());
+        assertEquals(manager.getNumConnections(), 1);
+    }
+
+    @Test
+    public void testKeyFingerprintsCredentialsNotPerCommandProperties() throws Exception {
+        Map<String, ?> args = ImmutableMap.of("host", "host1", "user", "me", "privateKeyData", "secret", "scriptHeader", "#!/bin/bash");
+        SshConnectionKey key = SshConnectionKey.fromArgs(args, ImmutableSet.of("scriptHeader"));
+
+        assertEquals(key, SshConnectionKey.fromArgs(ImmutableMap.of("host", "host1", "port", "22", "user", "me", "privateKeyData", "secret"), ImmutableSet.<String>of()));
+        assertFalse(key.equals(SshConnectionKey.fromArgs(ImmutableMap.of("host", "host1", "user", "me", "privateKeyData", "other"), ImmutableSet.<String>of())));
+        assertFalse(key.toString().contains("secret"), "key="+key);
+    }
+
+    @Test
+    public void testMachinesOfManagementContextShareConnections() throws Exception {
+        managementContext = new LocalManagementContext();
+        SshMachineLocation machine1 = newMachine();
+        SshMachineLocation machine2 = newMachine();
+
+        machine1.execCommands("first", ImmutableList.of("true"));
+        machine2.execCommands("second", ImmutableList.of("true"));
+
+        assertEquals(RecordingSshTool.execs.get(), 2);
+        assertEquals(RecordingSshTool.connections.get(), 1);
+        assertEquals(managementContext.getSshConnectionManager().getNumConnections(), 1);
+        assertEquals(managementContext.getSshConnectionManager().getTotalHandshakesAvoided(), 1);
+
+        // still used by machine2
+        machine1.close();
+        assertEquals(managementContext.getSshConnectionManager().getNumConnections(), 1);
+        machine2.close();
+        assertEquals(managementContext.getSshConnectionManager().getNumConnections(), 0);
+    }
+
+    @Test
+    public void testMachineClosesConnectionsForCloseAndUniqueCommands() throws Exception {
+        managementContext = new LocalManagementContext();
+        SshConnectionManager connectionManager = managementContext.getSshConnectionManager();
+        SshMachineLocation machine = newMachine();
+
+        machine.execCommands("first", ImmutableList.of("true"));
+        assertEquals(connectionManager.getNumConnections(), 1);
+        assertEquals(connectionManager.getNumRegistrations(), 1);
+
+        // closes the machine's pooled connection too, so the next command reconnects
+        machine.execCommands(ImmutableMap.of(SshMachineLocation.CLOSE_CONNECTION.getName(), true), "close", ImmutableList.of("true"));
+        assertEquals(connectionManager.getNumConnections(), 0);
+
+        for (int i = 0; i < 3; i++) {
+            machine.execCommands(ImmutableMap.of(SshMachineLocation.UNIQUE_ID.getName(), "id"+i), "unique", ImmutableList.of("true"));
+        }
+        assertEquals(connectionManager.getNumConnections(), 0);
+        assertEquals(connectionManager.getNumRegistrations(), 1);
+        assertEquals(RecordingSshTool.connections.get(), 4);
+
+        machine.close();
+        assertEquals(connectionManager.getNumRegistrations(), 0);
+    }
+
+    private SshConnectionManager newManager(int maxConnections, int maxConnectionsPerHost, int maxSessionsPerConnection) {
+        return new SshConnectionManager(maxConnections, maxConnectionsPerHost, maxSessionsPerConnection, Duration.ONE_MINUTE);
+    }
+
+    private SshTool leaseAndRelease(SshConnectionKey key) throws Exception {
+        Lease<SshTool> lease = manager.leaseConnection(key, Duration.ONE_MINUTE, CONNECTOR);
+        try {
+            return lease.leasedObject();
+        } finally {
+            lease.close();
+        }
+    }
+
+    private SshMachineLocation newMachine() {
+        return managementContext.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class)
+                .configure("address", "localhost")
+                .configure(SshTool.PROP_TOOL_CLASS, RecordingSshTool.class.getName()));
+    }
+}
@@ -0,0 +1,221 @@
+package brooklyn.util.internal.ssh.sshj;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.transport.TransportException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.internal.ssh.SshAbstractTool.SshAction;
+import brooklyn.util.internal.ssh.sshj.SshjSharedConnection.State;
+import brooklyn.util.internal.ssh.sshj.SshjSharedConnection.Transport;
+
+import com.google.common.collect.Lists;
+
+public class SshjSharedConnectionTest {
+
+    /** A client which is "connected" when created, without any network connection. */
+    private static class FakeClient extends SSHClient {
+        volatile boolean connected = true;
+        volatile boolean authenticated = true;
+        final AtomicInteger disconnects = new AtomicInteger();
+
+        @Override public boolean isConnected() {
+            return connected;
+        }
+        @Override public boolean isAuthenticated() {
+            return connected && authenticated;
+        }
+        @Override public void disconnect() {
+            connected = false;
+            disconnects.incrementAndGet();
+        }
+    }
+
+    private static class FakeConnector implements SshAction<SSHClient> {
+        final AtomicInteger attempts = new AtomicInteger();
+        volatile int failuresRemaining;
+        volatile long delayMillis;
+
+        @Override public void clear() {
+        }
+        @Override public SSHClient create() throws Exception {
+            attempts.incrementAndGet();
+            if (delayMillis > 0) Thread.sleep(delayMillis);
+            if (failuresRemaining > 0) {
+                failuresRemaining--;
+                throw new TransportException("Simulated connect failure");
+            }
+            return new FakeClient();
+        }
+    }
+
+    private FakeConnector connector;
+    private SshjSharedConnection connection;
+    private ExecutorService executor;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        connector = new FakeConnector();
+        connection = new SshjSharedConnection(connector, 100, 1000);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentUsersShareOneConnect() throws Exception {
+        connector.delayMillis = 200;
+        List<Future<Transport>> futures = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            futures.add(executor.submit(new Callable<Transport>() {
+                @Override public Transport call() throws Exception {
+                    return connection.acquire();
+                }}));
+        }
+        Transport transport = futures.get(0).get();
+        for (Future<Transport> future : futures) {
+            assertSame(future.get(), transport);
+        }
+        assertEquals(connector.attempts.get(), 1);
+        assertEquals(connection.getReferences(), 5);
+        assertEquals(connection.getState(), State.CONNECTED);
+    }
+
+    @Test
+    public void testDisconnectDoesNotBreakInFlightUsers() throws Exception {
+        Transport transport = connection.acquire();
+        FakeClient client = (FakeClient) transport.getClient();
+
+        connection.disconnect();
+        assertFalse(connection.isConnected());
+        assertTrue(client.isConnected(), "closed while in use");
+
+        // later users get a new transport
+        Transport transport2 = connection.acquire();
+        assertEquals(transport2.getGeneration(), transport.getGeneration() + 1);
+        connection.release(transport2);
+
+        connection.release(transport);
+        assertFalse(client.isConnected());
+        assertEquals(client.disconnects.get(), 1);
+        assertTrue(transport2.getClient().isConnected());
+    }
+
+    @Test
+    public void testReconnectsWhenTransportBroken() throws Exception {
+        Transport transport = connection.acquire();
+        connection.release(transport);
+        ((FakeClient) transport.getClient()).connected = false;
+
+        Transport transport2 = connection.acquire();
+        assertEquals(transport2.getGeneration(), transport.getGeneration() + 1);
+        assertEquals(connector.attempts.get(), 2);
+    }
+
+    @Test
+    public void testClosesUnusableTransportWhenReconnecting() throws Exception {
+        Transport transport = connection.acquire();
+        connection.release(transport);
+        FakeClient client = (FakeClient) transport.getClient();
+        client.authenticated = false;
+
+        Transport transport2 = connection.acquire();
+        assertEquals(transport2.getGeneration(), transport.getGeneration() + 1);
+        assertFalse(client.isConnected());
+        assertEquals(client.disconnects.get(), 1);
+        connection.release(transport2);
+    }
+
+    @Test
+    public void testRetiresTransportOnlyForTransportFailures() throws Exception {
+        Transport transport = connection.acquire();
+
+        assertFalse(connection.retireIfBroken(transport.getGeneration(), new RuntimeException("command failed")));
+        assertTrue(connection.isConnected());
+
+        assertTrue(connection.retireIfBroken(transport.getGeneration(), new RuntimeException(new TransportException("broken pipe"))));
+        assertFalse(connection.isConnected());
+        assertTrue(transport.getClient().isConnected(), "closed while in use");
+        connection.release(transport);
+        assertFalse(transport.getClient().isConnected());
+
+        // a failure on an old transport does not retire the new one
+        Transport transport2 = connection.acquire();
+        assertFalse(connection.retireIfBroken(transport.getGeneration(), new TransportException("broken pipe")));
+        assertTrue(connection.isConnected());
+        connection.release(transport2);
+    }
+
+    @Test
+    public void testBacksOffAfterFailedConnects() throws Exception {
+        connector.failuresRemaining = 2;
+
+        assertConnectFails();
+        assertEquals(connection.getState(), State.BACKING_OFF);
+        assertEquals(connection.getConsecutiveFailures(), 1);
+
+        // waits for the 100ms backoff before trying again
+        long startTime = System.currentTimeMillis();
+        assertConnectFails();
+        assertTrue(System.currentTimeMillis() - startTime >= 90, "duration="+(System.currentTimeMillis() - startTime));
+        assertEquals(connection.getConsecutiveFailures(), 2);
+
+        // then for twice as long
+        startTime = System.currentTimeMillis();
+        Transport transport = connection.acquire();
+        assertTrue(System.currentTimeMillis() - startTime >= 190, "duration="+(System.currentTimeMillis() - startTime));
+        assertEquals(connection.getState(), State.CONNECTED);
+        assertEquals(connection.getConsecutiveFailures(), 0);
+        assertEquals(connector.attempts.get(), 3);
+        connection.release(transport);
+    }
+
+    @Test
+    public void testWaitingUsersShareFailedConnect() throws Exception {
+        connector.delayMillis = 200;
+        connector.failuresRemaining = 1;
+        List<Future<Transport>> futures = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            futures.add(executor.submit(new Callable<Transport>() {
+                @Override public Transport call() throws Exception {
+                    return connection.acquire();
+                }}));
+        }
+        for (Future<Transport> future : futures) {
+            try {
+                future.get();
+                fail();
+            } catch (Exception e) {
+                assertTrue(e.getCause() instanceof TransportException, "e="+e);
+            }
+        }
+        assertEquals(connector.attempts.get(), 1);
+    }
+
+    private void assertConnectFails() throws Exception {
+        try {
+            connection.acquire();
+            fail();
+        } catch (TransportException e) {
+            // expected
+        }
+    }
+}
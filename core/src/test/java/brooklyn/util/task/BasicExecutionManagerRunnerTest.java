@@ -0,0 +1,152 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.management.Task;
+import brooklyn.test.Asserts;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.Lists;
+
+public class BasicExecutionManagerRunnerTest {
+
+    private BasicExecutionManager em;
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (em != null) em.shutdownNow();
+    }
+
+    private BasicExecutionManager newExecutionManager(Map<String,?> props) {
+        BrooklynProperties brooklynProperties = BrooklynProperties.Factory.newEmpty();
+        brooklynProperties.putAll(props);
+        return new BasicExecutionManager("mycontext", brooklynProperties);
+    }
+
+    @Test
+    public void testBoundedRunnerBlocksSubmitterWhenQueueFull() throws Exception {
+        em = newExecutionManager(MutableMap.of(
+                BasicExecutionManager.RUNNER_TYPE.getName(), "bounded",
+                BasicExecutionManager.RUNNER_MAX_THREADS.getName(), 2,
+                BasicExecutionManager.RUNNER_QUEUE_SIZE.getName(), 2));
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Task<?>> tasks = new CopyOnWriteArrayList<Task<?>>();
+        Thread submitter = new Thread() {
+            public void run() {
+                for (int i = 0; i < 6; i++) {
+                    tasks.add(em.submit(new Callable<Void>() {
+                        public Void call() throws Exception {
+                            latch.await();
+                            return null;
+                        }}));
+                }
+            }};
+        submitter.start();
+        try {
+            // 2 running, 2 queued, and the 5th submission waiting for space
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(em.getNumQueuedTasks(), 2);
+                    assertEquals(em.getNumBlockedSubmissions(), 1);
+                    assertEquals(tasks.size(), 4);
+                }});
+        } finally {
+            latch.countDown();
+        }
+        submitter.join(10*1000);
+        assertEquals(tasks.size(), 6);
+        for (Task<?> task : tasks) {
+            task.get();
+        }
+    }
+
+    @Test(timeOut=60*1000)
+    public void testBoundedRunnerNeverBlocksItsOwnThreadsWhenQueueFull() throws Exception {
+        em = newExecutionManager(MutableMap.of(
+                BasicExecutionManager.RUNNER_TYPE.getName(), "bounded",
+                BasicExecutionManager.RUNNER_MAX_THREADS.getName(), 2,
+                BasicExecutionManager.RUNNER_QUEUE_SIZE.getName(), 2));
+        final CountDownLatch queueFull = new CountDownLatch(1);
+        final CountDownLatch childrenSubmitted = new CountDownLatch(1);
+        final Callable<Void> blocker = new Callable<Void>() {
+            public Void call() throws Exception {
+                childrenSubmitted.await();
+                return null;
+            }};
+        
+        // the parent submits more children than fit in the (full) queue, which can only be drained once it continues
+        Task<Integer> parent = em.submit(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                queueFull.await();
+                List<Task<?>> children = Lists.newArrayList();
+                for (int i = 0; i < 3; i++) {
+                    children.add(em.submit(blocker));
+                }
+                childrenSubmitted.countDown();
+                for (Task<?> child : children) {
+                    child.get();
+                }
+                return children.size();
+            }});
+        List<Task<?>> others = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            others.add(em.submit(blocker));
+        }
+        assertEquals(em.getNumQueuedTasks(), 2);
+        queueFull.countDown();
+
+        assertEquals(parent.get(), (Integer)3);
+        for (Task<?> task : others) {
+            task.get();
+        }
+        assertEquals(em.getNumBlockedSubmissions(), 0);
+    }
+
+    @Test
+    public void testBoundedRunnerKeepsSingleThreadedSchedulerOrdering() throws Exception {
+        em = newExecutionManager(MutableMap.of(
+                BasicExecutionManager.RUNNER_TYPE.getName(), "bounded",
+                BasicExecutionManager.RUNNER_MAX_THREADS.getName(), 4));
+        em.setTaskSchedulerForTag("category1", SingleThreadedScheduler.class);
+
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            final int counter = i;
+            tasks.add(em.submit(MutableMap.of("tag", "category1"), new Runnable() {
+                public void run() {
+                    result.add(counter);
+                }}));
+        }
+        for (Task<?> task : tasks) {
+            task.get();
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(result.get(i), (Integer)i);
+        }
+    }
+
+    @Test
+    public void testVirtualRunnerExecutesTasks() throws Exception {
+        // falls back to a cached thread pool on JVMs without virtual threads
+        em = newExecutionManager(MutableMap.of(BasicExecutionManager.RUNNER_TYPE.getName(), "virtual"));
+        Task<String> task = em.submit(new Callable<String>() {
+            public String call() {
+                return "done";
+            }});
+        assertEquals(task.get(10, TimeUnit.SECONDS), "done");
+        assertTrue(task.isDone());
+    }
+}
@@ -133,4 +133,27 @@ public class SingleThreadedSchedulerTest {
         latch.countDown()
         assertEquals(future.get(), 123)
     }
+    
+    @Test
+    public void testQueueSizeMetrics() {
+        final CountDownLatch latch = new CountDownLatch(1)
+        em.submit([tag:"category1"], { latch.await() })
+        SingleThreadedScheduler scheduler = em.getTaskSchedulerForTag("category1")
+        
+        List<Future> futures = []
+        for (i in 1..10) {
+            futures.add(em.submit(tag:"category1", { return i }))
+        }
+        executeUntilSucceeds {
+            assertEquals(scheduler.getQueueSize(), 10)
+        }
+        
+        latch.countDown()
+        for (Future future : futures) {
+            future.get()
+        }
+        assertEquals(scheduler.getQueueSize(), 0)
+        assertTrue(scheduler.getMaxQueueSize() >= 10)
+        assertEquals(scheduler.getTotalSubmitted(), 11)
+    }
 }
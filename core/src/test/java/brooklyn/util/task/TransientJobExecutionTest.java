@@ -0,0 +1,99 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class TransientJobExecutionTest {
+
+    private BasicExecutionManager em;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        em = new BasicExecutionManager("mycontext");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testTransientJobsAreNotRecordedAsTasks() throws Exception {
+        final AtomicBoolean ran = new AtomicBoolean();
+        Future<?> future = em.executeTransient(ImmutableList.of("mytag"), new Runnable() {
+            public void run() {
+                assertNull(Tasks.current());
+                ran.set(true);
+            }});
+        future.get(10, TimeUnit.SECONDS);
+
+        assertTrue(ran.get());
+        assertEquals(em.getTotalTransientJobsSubmitted(), 1);
+        assertEquals(em.getNumFailedTransientJobs(), 0);
+        assertEquals(em.getTotalTasksSubmitted(), 0);
+        assertEquals(em.getNumInMemoryTasks(), 0);
+        assertTrue(em.getTasksWithTag("mytag").isEmpty());
+    }
+
+    @Test
+    public void testTransientJobsUseSchedulerOfTag() throws Exception {
+        em.setTaskSchedulerForTag("category1", SingleThreadedScheduler.class);
+
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            final int counter = i;
+            futures.add(em.executeTransient(ImmutableList.of("category1"), new Runnable() {
+                public void run() {
+                    result.add(counter);
+                }}));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(result.get(i), (Integer)i);
+        }
+    }
+
+    @Test
+    public void testFailedTransientJobIsCounted() throws Exception {
+        em.executeTransient(ImmutableList.of(), new Runnable() {
+            public void run() {
+                throw new RuntimeException("simulated failure");
+            }}).get(10, TimeUnit.SECONDS);
+
+        assertEquals(em.getNumFailedTransientJobs(), 1);
+        assertEquals(em.getNumActiveTransientJobs(), 0);
+    }
+
+    @Test
+    public void testCurrentThreadRunningWithTag() throws Exception {
+        final AtomicBoolean withTag = new AtomicBoolean();
+        final AtomicBoolean withOtherTag = new AtomicBoolean(true);
+        em.executeTransient(ImmutableList.of("mytag"), new Runnable() {
+            public void run() {
+                withTag.set(BasicExecutionManager.isCurrentThreadRunningWithTag("mytag"));
+                withOtherTag.set(BasicExecutionManager.isCurrentThreadRunningWithTag("othertag"));
+            }}).get(10, TimeUnit.SECONDS);
+
+        assertTrue(withTag.get());
+        assertFalse(withOtherTag.get());
+        assertFalse(BasicExecutionManager.isCurrentThreadRunningWithTag("mytag"));
+    }
+}
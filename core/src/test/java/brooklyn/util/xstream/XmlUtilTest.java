@@ -2,8 +2,12 @@ package brooklyn.util.xstream;
 
 import static org.testng.Assert.assertEquals;
 
+import java.util.Map;
+
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableMap;
+
 
 public class XmlUtilTest {
 
@@ -12,4 +16,19 @@ public class XmlUtilTest {
         String xml = "<a><b>myb</b></a>";
         assertEquals(XmlUtil.xpath(xml, "/a/b[text()]"), "myb");
     }
+
+    @Test
+    public void testReadRootChildElements() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>\n<entity>\n  <id>myid</id>\n  <type>my.Type</type>\n"
+                + "  <children><id>nestedid</id></children>\n  <type>ignored</type>\n</entity>";
+        Map<String, String> result = XmlUtil.readRootChildElements(xml, "id", "type");
+        assertEquals(result, ImmutableMap.of("id", "myid", "type", "my.Type"));
+    }
+
+    @Test
+    public void testReadRootChildElementsIgnoresNestedElements() throws Exception {
+        String xml = "<entity><config><id>nestedid</id></config><id>myid</id></entity>";
+        Map<String, String> result = XmlUtil.readRootChildElements(xml, "id", "type");
+        assertEquals(result, ImmutableMap.of("id", "myid"));
+    }
 }
@@ -44,4 +44,16 @@ public class BrooklynMementoPersisterJcloudsObjectStoreTest extends BrooklynMeme
         super.testDeleteAndLoadMemento();
     }
     
+    @Test(groups="Integration")
+    @Override
+    public void testLoadMementoManifest() throws IOException, TimeoutException, InterruptedException {
+        super.testLoadMementoManifest();
+    }
+    
+    @Test(groups="Integration")
+    @Override
+    public void testLoadMementoWithManyEntities() throws IOException, TimeoutException, InterruptedException {
+        super.testLoadMementoWithManyEntities();
+    }
+    
 }
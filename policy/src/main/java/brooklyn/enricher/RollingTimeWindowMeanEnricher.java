@@ -1,8 +1,5 @@
 package brooklyn.enricher;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-
 import com.google.common.base.Preconditions;
 
 import brooklyn.enricher.basic.AbstractTypeTransformingEnricher;
@@ -10,6 +7,7 @@ import brooklyn.entity.Entity;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
+import brooklyn.util.collections.TimeWindowedStats;
 import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.time.Duration;
 
@@ -35,6 +33,10 @@ import brooklyn.util.time.Duration;
  * the average is no longer meaningful.
  * <p>
  * The default average when no data has been received is 0, with a confidence of 0
+ * <p>
+ * Null values, and values received out-of-order (i.e. older than the latest value), are ignored.
+ * The values are kept in a {@link TimeWindowedStats}, so the cost of each event does not depend on the
+ * number of values in the window.
  */
 public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTypeTransformingEnricher<T,Double> {
     public static class ConfidenceQualifiedNumber {
@@ -47,8 +49,7 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
         }
     }
     
-    private final LinkedList<T> values = new LinkedList<T>();
-    private final LinkedList<Long> timestamps = new LinkedList<Long>();
+    private transient volatile TimeWindowedStats values;
     volatile ConfidenceQualifiedNumber lastAverage = new ConfidenceQualifiedNumber(0d,0d);
     
     @SetFromFlag
@@ -76,9 +77,11 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
     }
     
     public void onEvent(SensorEvent<T> event, long eventTime) {
-        values.addLast(event.getValue());
-        timestamps.addLast(eventTime);
-        pruneValues(eventTime);
+        T val = event.getValue();
+        TimeWindowedStats values = getValues();
+        if (val != null && (values.isEmpty() || eventTime >= values.getLatestTimestamp())) {
+            values.add(val.doubleValue(), eventTime);
+        }
         entity.setAttribute((AttributeSensor<Double>)target, getAverage(eventTime).value); //TODO this can potentially go stale... maybe we need to timestamp as well?
     }
     
@@ -87,48 +90,36 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
     }
     
     public ConfidenceQualifiedNumber getAverage(long now) {
-        pruneValues(now);
-        if (timestamps.isEmpty()) {
-            return lastAverage = new ConfidenceQualifiedNumber(lastAverage.value, 0.0d);
-        }
+        TimeWindowedStats values = getValues();
+        synchronized (values) {
+            values.pruneValues(now);
+            if (values.isEmpty()) {
+                return lastAverage = new ConfidenceQualifiedNumber(lastAverage.value, 0.0d);
+            }
 
-        // XXX grkvlt - see email to development list
+            // XXX grkvlt - see email to development list
 
-        
-        long lastTimestamp = timestamps.get(timestamps.size()-1);
-        Double confidence = ((double)(timePeriod.toMilliseconds() - (now - lastTimestamp))) / timePeriod.toMilliseconds();
-        if (confidence <= 0.0d) {
-            double lastValue = values.get(values.size()-1).doubleValue();
-            return lastAverage = new ConfidenceQualifiedNumber(lastValue, 0.0d);
-        }
-        
-        long start = (now - timePeriod.toMilliseconds());
-        long end;
-        double weightedAverage = 0.0d;
-        
-        Iterator<T> valuesIter = values.iterator();
-        Iterator<Long> timestampsIter = timestamps.iterator();
-        while (valuesIter.hasNext()) {
-            // Ignores null and out-of-date values (and also values that are received out-of-order, but that shouldn't happen!)
-            Number val = valuesIter.next();
-            Long timestamp = timestampsIter.next();
-            if (val!=null && timestamp >= start) {
-                end = timestamp;
-                weightedAverage += ((end - start) / (confidence * timePeriod.toMilliseconds())) * val.doubleValue();
-                start = timestamp;
+            long lastTimestamp = values.getLatestTimestamp();
+            Double confidence = ((double)(timePeriod.toMilliseconds() - (now - lastTimestamp))) / timePeriod.toMilliseconds();
+            if (confidence <= 0.0d) {
+                double lastValue = values.getLatestValue();
+                return lastAverage = new ConfidenceQualifiedNumber(lastValue, 0.0d);
             }
+
+            double weightedAverage = values.getTimeWeightedMean(now - timePeriod.toMilliseconds());
+            return lastAverage = new ConfidenceQualifiedNumber(weightedAverage, confidence);
         }
-        
-        return lastAverage = new ConfidenceQualifiedNumber(weightedAverage, confidence);
     }
     
-    /**
-     * Discards out-of-date values, but keeps at least one value.
-     */
-    private void pruneValues(long now) {
-        while(timestamps.size() > 1 && timestamps.get(0) < (now - timePeriod.toMilliseconds())) {
-            timestamps.removeFirst();
-            values.removeFirst();
+    private TimeWindowedStats getValues() {
+        TimeWindowedStats result = values;
+        if (result == null) {
+            synchronized (this) {
+                // created lazily, as timePeriod is set from flags when rebinding
+                if (values == null) values = new TimeWindowedStats(timePeriod);
+                result = values;
+            }
         }
+        return result;
     }
 }
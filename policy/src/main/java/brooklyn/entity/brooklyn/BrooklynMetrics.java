@@ -1,5 +1,7 @@
 package brooklyn.entity.brooklyn;
 
+import java.util.Map;
+
 import brooklyn.entity.Entity;
 import brooklyn.entity.proxying.ImplementedBy;
 import brooklyn.event.AttributeSensor;
@@ -26,12 +28,80 @@ public interface BrooklynMetrics extends Entity {
     public static final AttributeSensor<Long> NUM_ACTIVE_TASKS = new BasicAttributeSensor<Long>(
             Long.class, "brooklyn.metrics.numActiveTasks", "Number of currently active tasks being executed");
 
+    public static final AttributeSensor<Long> NUM_QUEUED_TASKS = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.numQueuedTasks", "Number of tasks waiting for a thread (only with a bounded execution manager runner)");
+
+    public static final AttributeSensor<Long> NUM_TASKS_QUEUED_IN_SCHEDULERS = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.numTasksQueuedInSchedulers", "Number of tasks waiting in single-threaded schedulers (e.g. for subscription delivery)");
+
+    public static final AttributeSensor<Long> NUM_BLOCKED_TASK_SUBMISSIONS = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.numBlockedTaskSubmissions", "Total number of task submissions which waited because the execution manager queue was full");
+
+    public static final AttributeSensor<Long> TOTAL_TRANSIENT_JOBS_SUBMITTED = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalTransientJobsSubmitted", "Total number of fire-and-forget jobs (e.g. event deliveries and polls) run without creating tasks");
+
+    public static final AttributeSensor<Long> NUM_FAILED_TRANSIENT_JOBS = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.numFailedTransientJobs", "Total number of fire-and-forget jobs which threw an exception");
+
     public static final AttributeSensor<Long> TOTAL_EVENTS_PUBLISHED = new BasicAttributeSensor<Long>(
             Long.class, "brooklyn.metrics.totalEventsPublished", "Total number of events published");
     
+    public static final AttributeSensor<Double> EVENTS_PUBLISHED_PER_SECOND = new BasicAttributeSensor<Double>(
+            Double.class, "brooklyn.metrics.eventsPublishedPerSecond", "Rate at which events were published, over the last update period");
+    
     public static final AttributeSensor<Long> TOTAL_EVENTS_DELIVERED = new BasicAttributeSensor<Long>(
             Long.class, "brooklyn.metrics.totalEventsDelivered", "Total number of events delivered (counting an event multiple times if more than one subscriber)");
     
     public static final AttributeSensor<Long> NUM_SUBSCRIPTIONS = new BasicAttributeSensor<Long>(
             Long.class, "brooklyn.metrics.numSubscriptions", "Current number of event subscriptions");
+
+    public static final AttributeSensor<Long> TOTAL_UNCHANGED_EVENTS_SUPPRESSED = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalUnchangedEventsSuppressed", "Total number of attribute events not published because the value was unchanged (see SensorPublishPolicy)");
+
+    public static final AttributeSensor<Long> TOTAL_RATE_LIMITED_EVENTS_SUPPRESSED = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalRateLimitedEventsSuppressed", "Total number of attribute events not published because superseded within a rate-limited period (see SensorPublishPolicy)");
+
+    public static final AttributeSensor<Long> NUM_PENDING_PERSISTENCE_WRITES = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.numPendingPersistenceWrites", "Number of persisted objects with changes waiting to be written");
+    
+    public static final AttributeSensor<Double> PERSISTENCE_COALESCE_RATIO = new BasicAttributeSensor<Double>(
+            Double.class, "brooklyn.metrics.persistenceCoalesceRatio", "Fraction of requested persistence writes which were superseded by a later write before being flushed");
+    
+    public static final AttributeSensor<Double> PERSISTENCE_FLUSH_LATENCY = new BasicAttributeSensor<Double>(
+            Double.class, "brooklyn.metrics.persistenceFlushLatencyMillis", "Mean time taken to flush a batch of persistence writes, over the last update period");
+    
+    public static final AttributeSensor<Long> TOTAL_POLLS = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalPolls", "Total number of feed polls that have been run");
+    
+    public static final AttributeSensor<Long> TOTAL_POLLS_SKIPPED = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalPollsSkipped", "Total number of feed polls skipped because the previous poll was still in progress");
+    
+    public static final AttributeSensor<Double> POLL_LATENESS = new BasicAttributeSensor<Double>(
+            Double.class, "brooklyn.metrics.pollLatenessMillis", "Mean time from when feed polls were due until they started, over the last update period");
+    
+    public static final AttributeSensor<Long> TOTAL_TASKS_EVICTED = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalTasksEvicted", "Total number of completed tasks deleted because there were more than the maximum number of tasks for a tag");
+    
+    public static final AttributeSensor<Long> TOTAL_TASKS_EXPIRED = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalTasksExpired", "Total number of completed tasks deleted because they were older than the maximum task age");
+    
+    public static final AttributeSensor<Double> GC_PASS_DURATION = new BasicAttributeSensor<Double>(
+            Double.class, "brooklyn.metrics.gcPassDurationMillis", "Time taken by the most recent periodic check for tasks to delete");
+    
+    @SuppressWarnings("rawtypes")
+    public static final AttributeSensor<Map> POLL_STATS_BY_FEED_TYPE = new BasicAttributeSensor<Map>(
+            Map.class, "brooklyn.metrics.pollStatsByFeedType", "For each type of feed, the total polls and skipped polls, and the mean lateness and duration of polls (in millis)");
+    
+    public static final AttributeSensor<Long> NUM_SSH_CONNECTIONS = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.numSshConnections", "Number of open ssh connections, shared by all machines (see SshConnectionManager)");
+    
+    public static final AttributeSensor<Long> TOTAL_SSH_HANDSHAKES = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalSshHandshakes", "Total number of ssh connections made");
+    
+    public static final AttributeSensor<Long> TOTAL_SSH_HANDSHAKES_AVOIDED = new BasicAttributeSensor<Long>(
+            Long.class, "brooklyn.metrics.totalSshHandshakesAvoided", "Total number of ssh uses which reused an open connection, rather than making a new one");
+    
+    @SuppressWarnings("rawtypes")
+    public static final AttributeSensor<Map> SSH_HANDSHAKE_LATENCY_HISTOGRAM = new BasicAttributeSensor<Map>(
+            Map.class, "brooklyn.metrics.sshHandshakeLatencyHistogram", "The number of ssh handshakes by how long they took, keyed by the upper bound of each bucket");
 }
@@ -1,22 +1,41 @@
 package brooklyn.entity.brooklyn;
 
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.event.basic.AttributeMap;
+import brooklyn.event.feed.PollScheduler;
+import brooklyn.event.feed.PollScheduler.PollStats;
 import brooklyn.management.ManagementContext;
+import brooklyn.management.internal.AbstractManagementContext;
+import brooklyn.management.internal.BrooklynGarbageCollector;
 import brooklyn.management.internal.LocalSubscriptionManager;
 import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.mementos.BrooklynMementoPersister;
+import brooklyn.util.internal.ssh.SshConnectionManager;
 import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.time.Duration;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class BrooklynMetricsImpl extends AbstractEntity implements BrooklynMetrics {
 
     private ScheduledExecutorService executor;
     
+    private long lastEventsPublished = -1;
+    private long lastRefreshTime;
+    private long lastPersistenceFlushes = -1;
+    private Duration lastPersistenceFlushTime;
+    private long lastPolls = -1;
+    private Duration lastPollLateness;
+    
     public BrooklynMetricsImpl() {
     }
 
@@ -58,11 +77,104 @@ public class BrooklynMetricsImpl extends AbstractEntity implements BrooklynMetri
             setAttribute(TOTAL_TASKS_SUBMITTED, execManager.getTotalTasksSubmitted());
             setAttribute(NUM_INCOMPLETE_TASKS, execManager.getNumIncompleteTasks());
             setAttribute(NUM_ACTIVE_TASKS, execManager.getNumActiveTasks());
+            setAttribute(NUM_QUEUED_TASKS, execManager.getNumQueuedTasks());
+            setAttribute(NUM_TASKS_QUEUED_IN_SCHEDULERS, execManager.getNumTasksQueuedInSchedulers());
+            setAttribute(NUM_BLOCKED_TASK_SUBMISSIONS, execManager.getNumBlockedSubmissions());
+            setAttribute(TOTAL_TRANSIENT_JOBS_SUBMITTED, execManager.getTotalTransientJobsSubmitted());
+            setAttribute(NUM_FAILED_TRANSIENT_JOBS, execManager.getNumFailedTransientJobs());
         }
         if (subsManager != null) {
-            setAttribute(TOTAL_EVENTS_PUBLISHED, subsManager.getTotalEventsPublished());
+            long eventsPublished = subsManager.getTotalEventsPublished();
+            long now = System.currentTimeMillis();
+            if (lastEventsPublished >= 0 && now > lastRefreshTime) {
+                setAttribute(EVENTS_PUBLISHED_PER_SECOND, (eventsPublished - lastEventsPublished) * 1000.0 / (now - lastRefreshTime));
+            }
+            lastEventsPublished = eventsPublished;
+            lastRefreshTime = now;
+            setAttribute(TOTAL_EVENTS_PUBLISHED, eventsPublished);
             setAttribute(TOTAL_EVENTS_DELIVERED, subsManager.getTotalEventsDelivered());
             setAttribute(NUM_SUBSCRIPTIONS, subsManager.getNumSubscriptions());
         }
+        if (managementContext instanceof AbstractManagementContext) {
+            AttributeMap.SuppressedEvents suppressed = ((AbstractManagementContext)managementContext).getSuppressedAttributeEvents();
+            setAttribute(TOTAL_UNCHANGED_EVENTS_SUPPRESSED, suppressed.getUnchanged());
+            setAttribute(TOTAL_RATE_LIMITED_EVENTS_SUPPRESSED, suppressed.getRateLimited());
+        }
+        BrooklynMementoPersister persister = (managementContext != null ? managementContext.getRebindManager().getPersister() : null);
+        if (persister instanceof BrooklynMementoPersisterToObjectStore) {
+            BrooklynMementoPersisterToObjectStore objectStorePersister = (BrooklynMementoPersisterToObjectStore) persister;
+            long writesRequested = objectStorePersister.getTotalWritesRequested();
+            long flushes = objectStorePersister.getTotalFlushes();
+            Duration flushTime = objectStorePersister.getTotalFlushTime();
+            setAttribute(NUM_PENDING_PERSISTENCE_WRITES, (long) objectStorePersister.getNumPendingWrites());
+            if (writesRequested > 0) {
+                setAttribute(PERSISTENCE_COALESCE_RATIO, ((double) objectStorePersister.getTotalWritesCoalesced()) / writesRequested);
+            }
+            if (lastPersistenceFlushes >= 0 && flushes > lastPersistenceFlushes) {
+                setAttribute(PERSISTENCE_FLUSH_LATENCY, 
+                        flushTime.subtract(lastPersistenceFlushTime).toNanoseconds() / 1000000.0 / (flushes - lastPersistenceFlushes));
+            }
+            lastPersistenceFlushes = flushes;
+            lastPersistenceFlushTime = flushTime;
+        }
+        if (managementContext instanceof AbstractManagementContext) {
+            // not created just to report on (nor when stopping), so no polls or connections if there are none yet
+            refreshPollSensors(((AbstractManagementContext)managementContext).getPollSchedulerIfCreated());
+            refreshSshSensors(((AbstractManagementContext)managementContext).getSshConnectionManagerIfCreated());
+        }
+        BrooklynGarbageCollector gc = (managementContext instanceof AbstractManagementContext) ? 
+                ((AbstractManagementContext)managementContext).getGarbageCollector() : null;
+        if (gc != null) {
+            setAttribute(TOTAL_TASKS_EVICTED, gc.getTotalTasksEvicted());
+            setAttribute(TOTAL_TASKS_EXPIRED, gc.getTotalTasksExpired());
+            if (gc.getTotalGcPasses() > 0) {
+                setAttribute(GC_PASS_DURATION, gc.getLastGcPassDuration().toNanoseconds() / 1000000.0);
+            }
+        }
+    }
+    
+    /** @param pollScheduler  null if there is none, in which case zeros are published */
+    private void refreshPollSensors(PollScheduler pollScheduler) {
+        long polls = 0;
+        long skipped = 0;
+        Duration lateness = Duration.ZERO;
+        Map<String, Map<String, Object>> statsByFeedType = Maps.newLinkedHashMap();
+        Map<String, PollStats> allStats = (pollScheduler != null) ? pollScheduler.getStats() : ImmutableMap.<String, PollStats>of();
+        for (Map.Entry<String, PollStats> entry : allStats.entrySet()) {
+            PollStats stats = entry.getValue();
+            polls += stats.getPolls();
+            skipped += stats.getSkipped();
+            lateness = lateness.add(stats.getTotalLateness());
+            Map<String, Object> feedTypeStats = Maps.newLinkedHashMap();
+            feedTypeStats.put("polls", stats.getPolls());
+            feedTypeStats.put("skipped", stats.getSkipped());
+            if (stats.getPolls() > 0) {
+                feedTypeStats.put("meanLatenessMillis", stats.getTotalLateness().toNanoseconds() / 1000000.0 / stats.getPolls());
+                feedTypeStats.put("meanDurationMillis", stats.getTotalDuration().toNanoseconds() / 1000000.0 / stats.getPolls());
+            }
+            statsByFeedType.put(entry.getKey(), feedTypeStats);
+        }
+        setAttribute(TOTAL_POLLS, polls);
+        setAttribute(TOTAL_POLLS_SKIPPED, skipped);
+        setAttribute(POLL_STATS_BY_FEED_TYPE, statsByFeedType);
+        if (lastPolls >= 0 && polls > lastPolls) {
+            setAttribute(POLL_LATENESS, lateness.subtract(lastPollLateness).toNanoseconds() / 1000000.0 / (polls - lastPolls));
+        }
+        lastPolls = polls;
+        lastPollLateness = lateness;
+    }
+
+    /** @param sshConnectionManager  null if there is none, in which case zeros are published */
+    private void refreshSshSensors(SshConnectionManager sshConnectionManager) {
+        if (sshConnectionManager == null) {
+            setAttribute(NUM_SSH_CONNECTIONS, 0L);
+            setAttribute(TOTAL_SSH_HANDSHAKES, 0L);
+            setAttribute(TOTAL_SSH_HANDSHAKES_AVOIDED, 0L);
+            return;
+        }
+        setAttribute(NUM_SSH_CONNECTIONS, (long) sshConnectionManager.getNumConnections());
+        setAttribute(TOTAL_SSH_HANDSHAKES, sshConnectionManager.getTotalHandshakes());
+        setAttribute(TOTAL_SSH_HANDSHAKES_AVOIDED, sshConnectionManager.getTotalHandshakesAvoided());
+        setAttribute(SSH_HANDSHAKE_LATENCY_HISTOGRAM, sshConnectionManager.getHandshakeLatencyHistogram());
     }
 }
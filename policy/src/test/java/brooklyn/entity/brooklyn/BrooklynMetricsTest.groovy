@@ -14,6 +14,7 @@ import brooklyn.entity.proxying.EntitySpec
 import brooklyn.event.AttributeSensor
 import brooklyn.event.SensorEventListener
 import brooklyn.location.basic.SimulatedLocation
+import brooklyn.management.internal.AbstractManagementContext
 import brooklyn.test.entity.TestApplication
 import brooklyn.test.entity.TestEntity
 
@@ -50,7 +51,13 @@ class BrooklynMetricsTest {
             assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EVENTS_PUBLISHED) > 0)
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EVENTS_DELIVERED), 0)
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_SUBSCRIPTIONS), 0)
+            assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_TASKS_EXPIRED), 0)
+            assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_SSH_CONNECTIONS), 0)
+            assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_POLLS), 0)
         }
+        // reporting on them does not create them
+        assertNull(((AbstractManagementContext)app.getManagementContext()).getSshConnectionManagerIfCreated())
+        assertNull(((AbstractManagementContext)app.getManagementContext()).getPollSchedulerIfCreated())
     }
     
     @Test
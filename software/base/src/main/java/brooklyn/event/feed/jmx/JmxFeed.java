@@ -1,5 +1,7 @@
 package brooklyn.event.feed.jmx;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -16,6 +18,7 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.entity.basic.SoftwareProcessImpl;
+import brooklyn.entity.java.UsesJmx;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
@@ -24,9 +27,13 @@ import brooklyn.event.feed.Poller;
 import brooklyn.util.time.Duration;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 
@@ -64,6 +71,11 @@ import com.google.common.collect.Sets;
  * }
  * </pre>
  * 
+ * Attributes polled from the same ObjectName at the same period are fetched together, with a single
+ * {@code getAttributes} call per poll. Feeds which are not given a {@link JmxHelper} share one (and so one
+ * JMX connection) with the other such feeds for the same JMX URL and credentials, for as long as any of them
+ * is running.
+ * 
  * @author aled
  */
 public class JmxFeed extends AbstractFeed {
@@ -72,6 +84,18 @@ public class JmxFeed extends AbstractFeed {
 
 	public static final long JMX_CONNECTION_TIMEOUT_MS = 120*1000;
 
+    /** The helpers shared by feeds which were not given one, keyed by url, user and password. */
+    private static final Map<List<String>, SharedHelper> sharedHelpers = Maps.newHashMap();
+
+    private static class SharedHelper {
+        final JmxHelper helper;
+        int users;
+        
+        SharedHelper(JmxHelper helper) {
+            this.helper = helper;
+        }
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -143,7 +167,7 @@ public class JmxFeed extends AbstractFeed {
 
     protected JmxFeed(Builder builder) {
         super(builder.entity);
-        this.helper = (builder.helper != null) ? builder.helper : new JmxHelper(entity);
+        this.helper = (builder.helper != null) ? builder.helper : acquireSharedHelper(entity);
         this.ownHelper = (builder.helper == null);
         this.jmxUri = helper.getUrl();
         this.jmxConnectionTimeout = builder.jmxConnectionTimeout;
@@ -167,6 +191,11 @@ public class JmxFeed extends AbstractFeed {
         return jmxUri;
     }
     
+    @VisibleForTesting
+    JmxHelper getHelper() {
+        return helper;
+    }
+    
     @VisibleForTesting
     @SuppressWarnings("unchecked")
     protected Poller<Object> getPoller() {
@@ -221,9 +250,28 @@ public class JmxFeed extends AbstractFeed {
             });
         }
         
-        // Setup polling of sensors
-        for (final String jmxAttributeName : attributePolls.keys()) {
-            registerAttributePoller(attributePolls.get(jmxAttributeName));
+        // Setup polling of sensors: one poll for each ObjectName and period, fetching all of its attributes
+        Map<List<?>, List<String>> attributePollsByObjectNameAndPeriod = Maps.newLinkedHashMap();
+        for (String jmxAttributeName : attributePolls.keySet()) {
+            Set<JmxAttributePollConfig<?>> configs = attributePolls.get(jmxAttributeName);
+            List<?> objectNameAndPeriod = ImmutableList.of(Iterables.get(configs, 0).getObjectName(), getMinPeriod(configs));
+            List<String> keys = attributePollsByObjectNameAndPeriod.get(objectNameAndPeriod);
+            if (keys == null) {
+                keys = Lists.newArrayList();
+                attributePollsByObjectNameAndPeriod.put(objectNameAndPeriod, keys);
+            }
+            keys.add(jmxAttributeName);
+        }
+        for (List<String> keys : attributePollsByObjectNameAndPeriod.values()) {
+            if (keys.size() == 1) {
+                registerAttributePoller(attributePolls.get(keys.get(0)));
+            } else {
+                List<Set<JmxAttributePollConfig<?>>> configsOfAttributes = Lists.newArrayList();
+                for (String key : keys) {
+                    configsOfAttributes.add(attributePolls.get(key));
+                }
+                registerAttributesPoller(configsOfAttributes);
+            }
         }
         
         // Setup polling of operations
@@ -245,7 +293,48 @@ public class JmxFeed extends AbstractFeed {
     @Override
     protected void postStop() {
         super.postStop();
-        if (helper != null && ownHelper) helper.disconnect();
+        if (helper != null && ownHelper) releaseSharedHelper(helper);
+    }
+    
+    /**
+     * Returns the helper for the entity's JMX URL and credentials shared by feeds, creating it if there is none;
+     * each call must be matched by a call to {@link #releaseSharedHelper(JmxHelper)}.
+     */
+    private static JmxHelper acquireSharedHelper(EntityLocal entity) {
+        List<String> key = Arrays.asList(JmxHelper.toJmxUrl(entity), entity.getAttribute(UsesJmx.JMX_USER), entity.getAttribute(UsesJmx.JMX_PASSWORD));
+        synchronized (sharedHelpers) {
+            SharedHelper shared = sharedHelpers.get(key);
+            if (shared == null) {
+                shared = new SharedHelper(new JmxHelper(entity));
+                sharedHelpers.put(key, shared);
+            }
+            shared.users++;
+            return shared.helper;
+        }
+    }
+    
+    /** Releases a helper from {@link #acquireSharedHelper(EntityLocal)}, disconnecting it if no other feed is using it. */
+    private static void releaseSharedHelper(JmxHelper helper) {
+        List<String> key = Arrays.asList(helper.url, helper.user, helper.password);
+        synchronized (sharedHelpers) {
+            SharedHelper shared = sharedHelpers.get(key);
+            if (shared == null || shared.helper != helper) {
+                log.warn("JMX helper for {} released when not shared; disconnecting", helper.getUrl());
+            } else if (--shared.users > 0) {
+                return;
+            } else {
+                sharedHelpers.remove(key);
+            }
+        }
+        helper.disconnect();
+    }
+    
+    @VisibleForTesting
+    static int getSharedHelperUsers(JmxHelper helper) {
+        synchronized (sharedHelpers) {
+            SharedHelper shared = sharedHelpers.get(Arrays.asList(helper.url, helper.user, helper.password));
+            return (shared != null && shared.helper == helper) ? shared.users : 0;
+        }
     }
     
     /**
@@ -305,6 +394,154 @@ public class JmxFeed extends AbstractFeed {
                 new DelegatingPollHandler(handlers), minPeriod);
     }
 
+    /**
+     * Registers to poll several jmx-attributes of an ObjectName with one call, where each of the given sets of configs
+     * is for one attribute, and all are for the same ObjectName and period.
+     */
+    private void registerAttributesPoller(List<Set<JmxAttributePollConfig<?>>> configsOfAttributes) {
+        final ObjectName objectName = Iterables.get(configsOfAttributes.get(0), 0).getObjectName();
+        final Map<String, PollHandler<Object>> handlers = Maps.newLinkedHashMap();
+        
+        for (Set<JmxAttributePollConfig<?>> configs : configsOfAttributes) {
+            Set<AttributePollHandler<Object>> handlersOfAttribute = Sets.newLinkedHashSet();
+            for (JmxAttributePollConfig<?> config : configs) {
+                handlersOfAttribute.add(new AttributePollHandler<Object>(config, getEntity(), this));
+            }
+            handlers.put(Iterables.get(configs, 0).getAttributeName(), new DelegatingPollHandler(handlersOfAttribute));
+        }
+        final List<String> jmxAttributeNames = ImmutableList.copyOf(handlers.keySet());
+        
+        getAttributesPoller().scheduleAtFixedRate(
+                new Callable<AttributeValues>() {
+                    public AttributeValues call() throws Exception {
+                        if (log.isTraceEnabled()) log.trace("jmx attributes polling for {} sensors at {} -> {}", new Object[] {getEntity(), jmxUri, jmxAttributeNames});
+                        return getAttributes(objectName, jmxAttributeNames);
+                    }
+                }, 
+                new AttributesPollHandler(handlers), getMinPeriod(Iterables.concat(configsOfAttributes)));
+    }
+
+    /**
+     * Gets the attributes with one call; any not returned by it (e.g. because not found, or the getter threw) are 
+     * then got individually, so that the failure of each is reported as it would be if polled alone.
+     */
+    private AttributeValues getAttributes(ObjectName objectName, List<String> jmxAttributeNames) {
+        Map<String, Object> values;
+        try {
+            values = helper.getAttributes(objectName, jmxAttributeNames);
+        } catch (RuntimeException e) {
+            if (isConnectionFailure(e)) throw e;
+            // the MBean's getAttributes failed (rather than the connection); fall back to getting each attribute
+            if (log.isDebugEnabled()) log.debug("jmx attributes polling for {} at {} failed for {}; getting individually: {}", new Object[] {getEntity(), jmxUri, objectName, e});
+            values = ImmutableMap.of();
+        }
+        
+        Map<String, Exception> failures = Maps.newLinkedHashMap();
+        if (values.size() < jmxAttributeNames.size()) {
+            values = Maps.newLinkedHashMap(values);
+            for (String jmxAttributeName : jmxAttributeNames) {
+                if (values.containsKey(jmxAttributeName)) continue;
+                try {
+                    values.put(jmxAttributeName, helper.getAttribute(objectName, jmxAttributeName));
+                } catch (Exception e) {
+                    failures.put(jmxAttributeName, e);
+                }
+            }
+        }
+        return new AttributeValues(values, failures);
+    }
+
+    private static boolean isConnectionFailure(Throwable t) {
+        for (Throwable cause : Throwables.getCausalChain(t)) {
+            if (cause instanceof IOException) return true;
+        }
+        return false;
+    }
+
+    private static long getMinPeriod(Iterable<? extends JmxAttributePollConfig<?>> configs) {
+        long minPeriod = Integer.MAX_VALUE;
+        for (JmxAttributePollConfig<?> config : configs) {
+            if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+        }
+        return minPeriod;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Poller<AttributeValues> getAttributesPoller() {
+        return (Poller) poller;
+    }
+
+    /** The values of the attributes of one poll, and the failures of those which could not be got. */
+    private static class AttributeValues {
+        final Map<String, Object> values;
+        final Map<String, Exception> failures;
+        
+        AttributeValues(Map<String, Object> values, Map<String, Exception> failures) {
+            this.values = values;
+            this.failures = failures;
+        }
+    }
+
+    /** passes the value (or failure) of each attribute to the handler of that attribute */
+    private static class AttributesPollHandler implements PollHandler<AttributeValues> {
+        private final Map<String, PollHandler<Object>> handlers;
+
+        AttributesPollHandler(Map<String, PollHandler<Object>> handlers) {
+            this.handlers = ImmutableMap.copyOf(handlers);
+        }
+
+        @Override
+        public boolean checkSuccess(AttributeValues val) {
+            // success or failure is checked for each attribute
+            return true;
+        }
+
+        @Override
+        public void onSuccess(AttributeValues vals) {
+            for (Map.Entry<String, PollHandler<Object>> entry : handlers.entrySet()) {
+                PollHandler<Object> handler = entry.getValue();
+                try {
+                    Exception failure = vals.failures.get(entry.getKey());
+                    if (failure != null) {
+                        handler.onException(failure);
+                        continue;
+                    }
+                    Object val = vals.values.get(entry.getKey());
+                    if (handler.checkSuccess(val)) {
+                        handler.onSuccess(val);
+                    } else {
+                        handler.onFailure(val);
+                    }
+                } catch (Exception e) {
+                    handler.onException(e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(AttributeValues vals) {
+            onSuccess(vals);
+        }
+
+        @Override
+        public void onException(Exception exception) {
+            for (PollHandler<Object> handler : handlers.values()) {
+                handler.onException(exception);
+            }
+        }
+
+        @Override
+        public String getDescription() {
+            StringBuilder result = new StringBuilder("attributes[");
+            int count = 0;
+            for (PollHandler<Object> handler : handlers.values()) {
+                if (count++ > 0) result.append("; ");
+                result.append(handler.getDescription());
+            }
+            return result.append("]").toString();
+        }
+    }
+
     /**
      * Registers to subscribe to notifications for an ObjectName, where all the given configs are for that same ObjectName + filter.
      */
@@ -9,6 +9,7 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -18,6 +19,8 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -137,9 +140,9 @@ public class JmxHelper {
 
     private volatile JMXConnector connector;
     private volatile MBeanServerConnection connection;
-    private boolean triedConnecting;
-    private boolean failedReconnecting;
-    private long failedReconnectingTime;
+    private volatile boolean triedConnecting;
+    private volatile boolean failedReconnecting;
+    private volatile long failedReconnectingTime;
     private int minTimeBetweenReconnectAttempts = 1000;
 
     // Tracks the MBeans we have failed to find for this JmsHelper's connection URL (so can log just once for each)
@@ -396,14 +399,15 @@ public class JmxHelper {
     /**
      * Gets a usable MBeanServerConnection.
      *
-     * Method is threadsafe.
+     * Method is threadsafe, and does not block while another thread is (re)connecting.
      *
      * @returns the MBeanServerConnection
      * @throws IllegalStateException if not connected.
      */
-    private synchronized MBeanServerConnection getConnectionOrFail() {
-        if (isConnected())
-            return getConnection();
+    private MBeanServerConnection getConnectionOrFail() {
+        MBeanServerConnection result = connection;
+        if (result != null)
+            return result;
 
         if (triedConnecting) {
             throw new IllegalStateException("Failed to connect to JMX at "+url);
@@ -415,12 +419,13 @@ public class JmxHelper {
     }
 
     private <T> T invokeWithReconnect(Callable<T> task) {
+        MBeanServerConnection connectionUsed = connection;
         try {
             return task.call();
         } catch (Exception e) {
             if (shouldRetryOn(e)) {
                 try {
-                    reconnectWithRetryDampened();
+                    reconnectUnlessReconnected(connectionUsed);
                     return task.call();
                 } catch (Exception e2) {
                     throw Throwables.propagate(e2);
@@ -431,6 +436,21 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Reconnects (dampened), unless another thread has already reconnected since the given connection failed.
+     * <p>
+     * When a connection shared by many pollers breaks, they all fail at about the same time; without this
+     * check, each would disconnect and reconnect in turn, breaking the new connections of those before it.
+     */
+    private synchronized void reconnectUnlessReconnected(MBeanServerConnection failedConnection) throws IOException {
+        MBeanServerConnection current = connection;
+        if (current != null && current != failedConnection) {
+            if (LOG.isTraceEnabled()) LOG.trace("Not reconnecting to JMX at {}; already reconnected by another caller", url);
+            return;
+        }
+        reconnectWithRetryDampened();
+    }
+
     // ====================== query related calls =======================================
 
     /**
@@ -563,6 +583,34 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Returns the values of several attributes of a JMX {@link ObjectName}, fetched in a single call, keyed by
+     * attribute name. Attributes which could not be read (e.g. not found, or whose getter threw) are absent
+     * from the result. If the ObjectName is a pattern which matches no MBean, all the attributes are given
+     * null values (as with {@link #getAttribute(ObjectName, String)}).
+     */
+    public Map<String, Object> getAttributes(ObjectName objectName, Collection<String> attributes) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        final String[] attributeNames = attributes.toArray(new String[attributes.size()]);
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        
+        if (realObjectName != null) {
+            AttributeList values = invokeWithReconnect(new Callable<AttributeList>() {
+                    public AttributeList call() throws Exception {
+                        return getConnectionOrFail().getAttributes(realObjectName, attributeNames);
+                    }});
+            for (Attribute value : values.asList()) {
+                result.put(value.getName(), value.getValue());
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("From {}, for jmx attributes {}.{}, got values {}", new Object[] {url, objectName.getCanonicalName(), attributes, result});
+        } else {
+            for (String attribute : attributeNames) {
+                result.put(attribute, null);
+            }
+        }
+        return result;
+    }
+
     public void setAttribute(String objectName, String attribute, Object val) {
         setAttribute(createObjectName(objectName), attribute, val);
     }
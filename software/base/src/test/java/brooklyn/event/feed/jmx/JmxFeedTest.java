@@ -2,6 +2,8 @@ package brooklyn.event.feed.jmx;
 
 import static brooklyn.test.TestUtils.executeUntilSucceeds;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Collections;
@@ -151,6 +153,70 @@ public class JmxFeedTest {
         assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
     }
 
+    @Test
+    public void testJmxAttributesOfSameObjectNamePolledTogether() throws Exception {
+        GeneralisedDynamicMBean mbean = jmxService.registerMBean(ImmutableMap.of(attributeName, 42, "myotherattrib", "abc"), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .period(50)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .attributeName("myotherattrib"))
+                .build();
+        
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "abc", TIMEOUT_MS);
+
+        mbean.updateAttributeValue(attributeName, 64);
+        mbean.updateAttributeValue("myotherattrib", "def");
+        assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "def", TIMEOUT_MS);
+    }
+
+    @Test
+    public void testFeedsForSameJmxUrlShareHelper() throws Exception {
+        jmxService.registerMBean(ImmutableMap.of(attributeName, 42, "myotherattrib", "abc"), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName(attributeName))
+                .build();
+        JmxFeed feed2 = JmxFeed.builder()
+                .entity(entity)
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("myotherattrib"))
+                .build();
+        final JmxHelper helper = feed.getHelper();
+        try {
+            assertSame(feed2.getHelper(), helper);
+            assertEquals(JmxFeed.getSharedHelperUsers(helper), 2);
+            assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+            assertSensorEventually(stringAttribute, "abc", TIMEOUT_MS);
+        } finally {
+            feed2.stop();
+        }
+        
+        // still connected for the remaining feed; disconnected once it stops
+        assertEquals(JmxFeed.getSharedHelperUsers(helper), 1);
+        assertTrue(helper.isConnected());
+        feed.stop();
+        feed = null;
+        assertEquals(JmxFeed.getSharedHelperUsers(helper), 0);
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertFalse(helper.isConnected());
+            }});
+    }
+
     @Test
     public void testJmxAttributeOfTypeTabularDataProviderConvertedToMap() throws Exception {
         // Create the CompositeType and TabularData
@@ -6,6 +6,7 @@ import static org.testng.Assert.fail;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import javax.management.DynamicMBean;
 import javax.management.MBeanOperationInfo;
@@ -76,6 +77,20 @@ public class JmxHelperTest {
         assertEquals(jmxHelper.getAttribute(jmxObjectName, "myattr"), "myval");
     }
 
+    @Test
+    public void testGetAttributes() throws Exception {
+        GeneralisedDynamicMBean mbean = jmxService.registerMBean(MutableMap.of("myattr", "myval", "myattr2", 2), objectName);
+        
+        // an attribute which cannot be read is absent from the result
+        assertEquals(jmxHelper.getAttributes(jmxObjectNameWithWildcard, ImmutableList.of("myattr", "myattr2", "notthere")), 
+                ImmutableMap.of("myattr", "myval", "myattr2", 2));
+        
+        // if no MBean matches the pattern, all attributes are null
+        Map<String, Object> result = jmxHelper.getAttributes(new ObjectName("Brooklyn:type=NotThere,name=*"), ImmutableList.of("myattr"));
+        assertEquals(result.size(), 1);
+        assertEquals(result.get("myattr"), null);
+    }
+
     @Test
     public void testGetAttributeUsingObjectNameWildcard() throws Exception {
         GeneralisedDynamicMBean mbean = jmxService.registerMBean(MutableMap.of("myattr", "myval"), objectName);
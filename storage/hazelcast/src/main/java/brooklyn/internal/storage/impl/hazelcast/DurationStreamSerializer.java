@@ -0,0 +1,33 @@
+package brooklyn.internal.storage.impl.hazelcast;
+
+import java.io.IOException;
+
+import brooklyn.util.time.Duration;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+/** Writes a {@link Duration} as its number of nanoseconds, rather than using java serialization. */
+class DurationStreamSerializer implements StreamSerializer<Duration> {
+
+    @Override
+    public Duration read(ObjectDataInput in) throws IOException {
+        return Duration.nanos(in.readLong());
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, Duration duration) throws IOException {
+        out.writeLong(duration.toNanoseconds());
+    }
+
+    @Override
+    public int getTypeId() {
+        return 5001;
+    }
+
+    @Override
+    public void destroy() {
+        //no-op
+    }
+}
@@ -7,9 +7,13 @@ import com.hazelcast.nio.ObjectDataOutput;
 import com.hazelcast.nio.serialization.StreamSerializer;
 
 import java.io.IOException;
+import java.lang.reflect.Proxy;
 
 import static java.lang.String.format;
 
+/**
+ * Writes an entity as its id, and reads it as the entity of that id in this member's management context.
+ */
 class EntityStreamSerializer implements StreamSerializer {
 
     private HazelcastDataGrid hazelcastDataGrid;
@@ -20,12 +24,16 @@ class EntityStreamSerializer implements StreamSerializer {
 
     @Override
     public Object read(ObjectDataInput in) throws IOException {
-        EntityId id = in.readObject();
-        Entity entity = hazelcastDataGrid.getManagementContext().getEntityManager().getEntity(id.getId());
+        String id = in.readUTF();
+        Entity entity = hazelcastDataGrid.getManagementContext().getEntityManager().getEntity(id);
         if (entity == null) {
             throw new IllegalStateException(format("Entity with id [%s] is not found", id));
         }
-        return java.lang.reflect.Proxy.newProxyInstance(
+        if (Proxy.isProxyClass(entity.getClass())) {
+            // already the entity's proxy, as normally returned by the entity manager
+            return entity;
+        }
+        return Proxy.newProxyInstance(
                 entity.getClass().getClassLoader(),
                 entity.getClass().getInterfaces(),
                 new EntityProxyImpl(entity));
@@ -34,7 +42,7 @@ class EntityStreamSerializer implements StreamSerializer {
     @Override
     public void write(ObjectDataOutput out, Object object) throws IOException {
         Entity entity = (Entity) object;
-        out.writeObject(new EntityId(entity.getId()));
+        out.writeUTF(entity.getId());
     }
 
     @Override
@@ -0,0 +1,44 @@
+package brooklyn.internal.storage.impl.hazelcast;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+/**
+ * Writes an enum constant (such as {@link brooklyn.entity.basic.Lifecycle}, commonly the value of a sensor)
+ * as its type and name, rather than using java serialization.
+ */
+@SuppressWarnings("rawtypes")
+class EnumStreamSerializer implements StreamSerializer<Enum> {
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Enum read(ObjectDataInput in) throws IOException {
+        String type = in.readUTF();
+        String name = in.readUTF();
+        ClassLoader classLoader = (in.getClassLoader() != null) ? in.getClassLoader() : getClass().getClassLoader();
+        try {
+            return Enum.valueOf((Class<? extends Enum>) Class.forName(type, true, classLoader), name);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Enum type "+type+" not found, for value "+name, e);
+        }
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, Enum value) throws IOException {
+        out.writeUTF(value.getDeclaringClass().getName());
+        out.writeUTF(value.name());
+    }
+
+    @Override
+    public int getTypeId() {
+        return 5002;
+    }
+
+    @Override
+    public void destroy() {
+        //no-op
+    }
+}
@@ -5,52 +5,119 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
+import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.internal.storage.DataGrid;
 import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.util.time.Duration;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.hazelcast.config.Config;
 import com.hazelcast.config.SerializerConfig;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.HazelcastInstanceNotActiveException;
+import com.hazelcast.nio.serialization.StreamSerializer;
 
+/**
+ * A {@link DataGrid} backed by Hazelcast maps.
+ * <p>
+ * Unless disabled with {@link #NEAR_CACHE_ENABLED}, each map keeps the values read by this member
+ * (see {@link NearCachedMap}), so that frequently read values are not fetched and deserialized every time.
+ * <p>
+ * When this creates the Hazelcast instance, it registers serializers for entities (written as their ids),
+ * {@link Duration}s and enums, which are common values of sensors and config.
+ */
 public class HazelcastDataGrid implements DataGrid {
 
+    public static final ConfigKey<Boolean> NEAR_CACHE_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.hazelcast.nearCache.enabled", "Whether to keep values read from the data grid locally, until changed", true);
+
+    public static final ConfigKey<Integer> NEAR_CACHE_MAX_SIZE = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.hazelcast.nearCache.maxSize", "Maximum number of values kept locally per map of the data grid", 10000);
+
     private final HazelcastInstance hz;
     private final ManagementContextInternal managementContext;
+    private final boolean nearCacheEnabled;
+    private final int nearCacheMaxSize;
+    private final ConcurrentMap<String, NearCachedMap<?, ?>> nearCachedMaps = Maps.newConcurrentMap();
 
     public HazelcastDataGrid(ManagementContextInternal managementContext, HazelcastInstance hazelcastInstance) {
+        this(managementContext, hazelcastInstance, null);
+    }
+
+    /**
+     * Creates a Hazelcast instance from the given config (or the default config, if null),
+     * with brooklyn's serializers added; the config is modified, so should not be shared with other data grids.
+     */
+    public HazelcastDataGrid(ManagementContextInternal managementContext, Config config) {
+        this(managementContext, null, config);
+    }
+
+    private HazelcastDataGrid(ManagementContextInternal managementContext, HazelcastInstance hazelcastInstance, Config config) {
         this.managementContext = managementContext;
+        this.nearCacheEnabled = managementContext.getConfig().getConfig(NEAR_CACHE_ENABLED);
+        this.nearCacheMaxSize = managementContext.getConfig().getConfig(NEAR_CACHE_MAX_SIZE);
         if (hazelcastInstance == null) {
-            Config config = new Config();
-            SerializerConfig entitySerializeConfig = new SerializerConfig();
-            entitySerializeConfig.setTypeClassName(Entity.class.getName());
-            entitySerializeConfig.setImplementation(new EntityStreamSerializer(this));
-            config.getSerializationConfig().addSerializerConfig(entitySerializeConfig);
+            if (config == null) config = new Config();
+            addSerializer(config, Entity.class, new EntityStreamSerializer(this));
+            addSerializer(config, Duration.class, new DurationStreamSerializer());
+            addSerializer(config, Enum.class, new EnumStreamSerializer());
             this.hz = Hazelcast.newHazelcastInstance(config);
         } else {
             this.hz = hazelcastInstance;
         }
     }
 
+    private static void addSerializer(Config config, Class<?> type, StreamSerializer<?> serializer) {
+        SerializerConfig serializerConfig = new SerializerConfig();
+        serializerConfig.setTypeClassName(type.getName());
+        serializerConfig.setImplementation(serializer);
+        config.getSerializationConfig().addSerializerConfig(serializerConfig);
+    }
+
     public ManagementContextInternal getManagementContext() {
         return managementContext;
     }
 
+    public HazelcastInstance getHazelcastInstance() {
+        return hz;
+    }
+
+    @SuppressWarnings("unchecked")
     @Override
     public <K, V> ConcurrentMap<K, V> getMap(String id) {
-        return hz.getMap(id);
+        if (!nearCacheEnabled) {
+            return hz.getMap(id);
+        }
+        NearCachedMap<K, V> result = (NearCachedMap<K, V>) nearCachedMaps.get(id);
+        if (result == null) {
+            NearCachedMap<K, V> newMap = new NearCachedMap<K, V>(hz.<K, V>getMap(id), nearCacheMaxSize);
+            result = (NearCachedMap<K, V>) nearCachedMaps.putIfAbsent(id, newMap);
+            if (result == null) {
+                result = newMap;
+            } else {
+                newMap.dispose();
+            }
+        }
+        return result;
     }
 
     @Override
     public void remove(String id) {
+        NearCachedMap<?, ?> nearCachedMap = nearCachedMaps.remove(id);
+        if (nearCachedMap != null) nearCachedMap.dispose();
         hz.getMap(id).destroy();
     }
 
     @Override
     public void terminate() {
+        for (NearCachedMap<?, ?> nearCachedMap : nearCachedMaps.values()) {
+            nearCachedMap.dispose();
+        }
+        nearCachedMaps.clear();
         try {
             hz.getLifecycleService().shutdown();
         } catch (HazelcastInstanceNotActiveException ignore) {
@@ -60,7 +127,21 @@ public class HazelcastDataGrid implements DataGrid {
     @Override
     public Map<String, Object> getDatagridMetrics() {
         // TODO would like to have better metrics
-        return ImmutableMap.<String,Object>of("name", hz.getName(), "isRunning", hz.getLifecycleService().isRunning());
+        long hits = 0;
+        long misses = 0;
+        long cachedSize = 0;
+        for (NearCachedMap<?, ?> nearCachedMap : nearCachedMaps.values()) {
+            hits += nearCachedMap.getHits();
+            misses += nearCachedMap.getMisses();
+            cachedSize += nearCachedMap.getCachedSize();
+        }
+        return ImmutableMap.<String,Object>builder()
+                .put("name", hz.getName())
+                .put("isRunning", hz.getLifecycleService().isRunning())
+                .put("nearCacheHits", hits)
+                .put("nearCacheMisses", misses)
+                .put("nearCacheSize", cachedSize)
+                .build();
     }
     
     @Override
@@ -0,0 +1,182 @@
+package brooklyn.internal.storage.impl.hazelcast;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ForwardingConcurrentMap;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
+import com.hazelcast.core.IMap;
+
+/**
+ * A Hazelcast {@link IMap} which keeps a local copy of the values it reads, so that repeated reads of a key
+ * neither go to the member that owns it nor deserialize the value again.
+ * <p>
+ * Cached entries are invalidated on local writes, and on the map's entry events (i.e. on writes by any member);
+ * as those events are asynchronous, a read on one member can briefly see the previous value after a write on another.
+ * At most {@code maxSize} values are cached, evicting the least recently used. Absent keys are not cached.
+ */
+class NearCachedMap<K, V> extends ForwardingConcurrentMap<K, V> {
+
+    private final IMap<K, V> delegate;
+    private final Cache<K, V> cache;
+    private final String listenerId;
+
+    // incremented on every invalidation, so that a value read concurrently with a change is not left cached
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    NearCachedMap(IMap<K, V> delegate, int maxSize) {
+        this.delegate = delegate;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        this.listenerId = delegate.addEntryListener(new EntryListener<K, V>() {
+            @Override public void entryAdded(EntryEvent<K, V> event) {
+                invalidate(event.getKey());
+            }
+            @Override public void entryRemoved(EntryEvent<K, V> event) {
+                invalidate(event.getKey());
+            }
+            @Override public void entryUpdated(EntryEvent<K, V> event) {
+                invalidate(event.getKey());
+            }
+            @Override public void entryEvicted(EntryEvent<K, V> event) {
+                invalidate(event.getKey());
+            }
+        }, false);
+    }
+
+    @Override
+    protected IMap<K, V> delegate() {
+        return delegate;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    int getCachedSize() {
+        return (int) cache.size();
+    }
+
+    /** stops listening for changes and discards cached values; the underlying map is unaffected */
+    void dispose() {
+        try {
+            delegate.removeEntryListener(listenerId);
+        } catch (HazelcastInstanceNotActiveException ignore) {
+        }
+        invalidateAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        V result = cache.getIfPresent(key);
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+        misses.incrementAndGet();
+        long invalidationsBefore = invalidationCount.get();
+        result = delegate.get(key);
+        if (result != null && invalidationCount.get() == invalidationsBefore) {
+            cache.put((K) key, result);
+            // an invalidation between the check and the put would otherwise leave the old value cached
+            if (invalidationCount.get() != invalidationsBefore) {
+                cache.asMap().remove(key, result);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        try {
+            return delegate.put(key, value);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        try {
+            return delegate.putIfAbsent(key, value);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        try {
+            delegate.putAll(map);
+        } finally {
+            for (K key : map.keySet()) {
+                invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        try {
+            return delegate.remove(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        try {
+            return delegate.remove(key, value);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        try {
+            return delegate.replace(key, value);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        try {
+            return delegate.replace(key, oldValue, newValue);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            delegate.clear();
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    private void invalidate(Object key) {
+        invalidationCount.incrementAndGet();
+        cache.invalidate(key);
+    }
+
+    private void invalidateAll() {
+        invalidationCount.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,109 @@
+package brooklyn.storage.impl.hazelcast;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.Lifecycle;
+import brooklyn.internal.storage.impl.hazelcast.HazelcastDataGrid;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.qa.performance.AbstractPerformanceTest;
+
+import com.google.common.collect.Lists;
+import com.hazelcast.core.Hazelcast;
+
+/**
+ * Compares reads and writes of a map in the {@link brooklyn.internal.storage.BrooklynStorage} of a management context
+ * using the (default) in-memory data grid, and using a Hazelcast data grid of two members on this machine
+ * with and without the near-cache (see {@link HazelcastDataGrid#NEAR_CACHE_ENABLED}).
+ */
+public class HazelcastStoragePerformanceTest extends AbstractPerformanceTest {
+
+    private static final int NUM_KEYS = 100;
+
+    private List<LocalManagementContext> managementContexts = Lists.newArrayList();
+
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        for (LocalManagementContext managementContext : managementContexts) {
+            managementContext.terminate();
+        }
+        managementContexts.clear();
+        Hazelcast.shutdownAll();
+    }
+
+    protected int numIterations() {
+        return 10000;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testInmemoryMapGet() {
+        LocalManagementContext managementContext = new LocalManagementContext();
+        managementContexts.add(managementContext);
+        measureGets("inmemory-get", managementContext.getStorage().<String,Object>getMap("mymap"), 100000);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testHazelcastMapGetWithNearCache() {
+        measureGets("hazelcast-nearcache-get", newHazelcastMap(true), 10000);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testHazelcastMapGetWithoutNearCache() {
+        measureGets("hazelcast-get", newHazelcastMap(false), 100);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testInmemoryMapPut() {
+        LocalManagementContext managementContext = new LocalManagementContext();
+        managementContexts.add(managementContext);
+        measurePuts("inmemory-put", managementContext.getStorage().<String,Object>getMap("mymap"), 100000);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testHazelcastMapPutWithNearCache() {
+        measurePuts("hazelcast-nearcache-put", newHazelcastMap(true), 100);
+    }
+
+    /** the map of a member of a new two-member data grid, populated with values of a few common types */
+    private Map<String,Object> newHazelcastMap(boolean nearCacheEnabled) {
+        BrooklynProperties properties = BrooklynProperties.Factory.newEmpty();
+        properties.put(HazelcastDataGrid.NEAR_CACHE_ENABLED, nearCacheEnabled);
+        LocalManagementContext managementContext = HazelcastStorageTest.newLocalManagementContext(properties);
+        managementContexts.add(managementContext);
+        managementContexts.add(HazelcastStorageTest.newLocalManagementContext(properties));
+        return managementContext.getStorage().getMap("mymap");
+    }
+
+    private void measureGets(String prefix, final Map<String,Object> map, double minRatePerSec) {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            map.put("key"+i, valueFor(i));
+        }
+        measureAndAssert(prefix, numIterations(), minRatePerSec * PERFORMANCE_EXPECTATION, new Runnable() {
+            int i = 0;
+            public void run() {
+                map.get("key"+(i++ % NUM_KEYS));
+            }});
+    }
+
+    private void measurePuts(String prefix, final Map<String,Object> map, double minRatePerSec) {
+        measureAndAssert(prefix, numIterations(), minRatePerSec * PERFORMANCE_EXPECTATION, new Runnable() {
+            int i = 0;
+            public void run() {
+                map.put("key"+(i % NUM_KEYS), valueFor(i++));
+            }});
+    }
+
+    private Object valueFor(int i) {
+        switch (i % 3) {
+        case 0: return "value"+i;
+        case 1: return i;
+        default: return Lifecycle.values()[i % Lifecycle.values().length];
+        }
+    }
+}
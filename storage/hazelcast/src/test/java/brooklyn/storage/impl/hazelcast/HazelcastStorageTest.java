@@ -1,6 +1,7 @@
 package brooklyn.storage.impl.hazelcast;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.List;
@@ -11,15 +12,21 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.Lifecycle;
 import brooklyn.internal.storage.BrooklynStorage;
+import brooklyn.internal.storage.DataGrid;
 import brooklyn.internal.storage.DataGridFactory;
 import brooklyn.internal.storage.Reference;
 import brooklyn.internal.storage.impl.BrooklynStorageImpl;
 import brooklyn.internal.storage.impl.hazelcast.HazelcastDataGrid;
 import brooklyn.internal.storage.impl.hazelcast.HazelcastDataGridFactory;
 import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.test.Asserts;
 import brooklyn.util.collections.MutableList;
+import brooklyn.util.time.Duration;
 
+import com.hazelcast.config.Config;
 import com.hazelcast.core.Hazelcast;
 
 @Test(groups="Integration")
@@ -87,4 +94,114 @@ public class HazelcastStorageTest {
         storage.remove("somemap");
         assertEquals(null, map.get("foo"));
     }
+
+    @Test
+    public void testNearCacheSeesChangesByOtherMember() throws Exception {
+        LocalManagementContext localManagementContext = newLocalManagementContext();
+        LocalManagementContext otherManagementContext = newLocalManagementContext();
+        try {
+            Map<String,String> map = localManagementContext.getStorage().getMap("somemap");
+            final Map<String,String> otherMap = otherManagementContext.getStorage().getMap("somemap");
+            map.put("foo", "bar");
+            assertEquals(otherMap.get("foo"), "bar");
+            assertEquals(otherMap.get("foo"), "bar");
+
+            map.put("foo", "baz");
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(otherMap.get("foo"), "baz");
+                }});
+
+            map.remove("foo");
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertNull(otherMap.get("foo"));
+                }});
+        } finally {
+            localManagementContext.terminate();
+            otherManagementContext.terminate();
+        }
+    }
+
+    @Test
+    public void testNearCacheSeesLocalChangesImmediately() {
+        Map<String,String> map = storage.getMap("somemap");
+        map.put("foo", "bar");
+        assertEquals(map.get("foo"), "bar");
+        map.put("foo", "baz");
+        assertEquals(map.get("foo"), "baz");
+        map.remove("foo");
+        assertNull(map.get("foo"));
+
+        Map<String, Object> metrics = ((BrooklynStorageImpl)storage).getDataGrid().getDatagridMetrics();
+        assertTrue((Long)metrics.get("nearCacheMisses") > 0, "metrics="+metrics);
+    }
+
+    @Test
+    public void testNearCacheKeepsMostRecentlyReadValues() {
+        BrooklynProperties properties = BrooklynProperties.Factory.newDefault();
+        properties.put(HazelcastDataGrid.NEAR_CACHE_MAX_SIZE, 10);
+        LocalManagementContext localManagementContext = newLocalManagementContext(properties);
+        try {
+            final DataGrid dataGrid = ((BrooklynStorageImpl)localManagementContext.getStorage()).getDataGrid();
+            final Map<String,String> map = localManagementContext.getStorage().getMap("somemap");
+            for (int i = 0; i < 100; i++) {
+                map.put("key"+i, "val"+i);
+            }
+
+            // (retrying, as the entry events of the puts invalidate asynchronously)
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        assertEquals(map.get("key"+i), "val"+i);
+                    }
+                    // the latest keys read are cached, rather than only the first ones
+                    long hitsBefore = (Long) dataGrid.getDatagridMetrics().get("nearCacheHits");
+                    assertEquals(map.get("key99"), "val99");
+                    assertEquals(dataGrid.getDatagridMetrics().get("nearCacheHits"), hitsBefore + 1);
+                }});
+            long cachedSize = (Long) dataGrid.getDatagridMetrics().get("nearCacheSize");
+            assertTrue(cachedSize > 0 && cachedSize <= 10, "cachedSize="+cachedSize);
+        } finally {
+            localManagementContext.terminate();
+        }
+    }
+
+    @Test
+    public void testDurationsAndEnumsStoredByOneMemberReadByAnother() throws Exception {
+        LocalManagementContext localManagementContext = newLocalManagementContext();
+        LocalManagementContext otherManagementContext = newLocalManagementContext();
+        try {
+            Map<String,Object> map = localManagementContext.getStorage().getMap("somemap");
+            Map<String,Object> otherMap = otherManagementContext.getStorage().getMap("somemap");
+            map.put("duration", Duration.seconds(30));
+            map.put("lifecycle", Lifecycle.RUNNING);
+            assertEquals(otherMap.get("duration"), Duration.seconds(30));
+            assertEquals(otherMap.get("lifecycle"), Lifecycle.RUNNING);
+        } finally {
+            localManagementContext.terminate();
+            otherManagementContext.terminate();
+        }
+    }
+
+    /** a data grid which joins only members on this machine, so tests can use several members */
+    static LocalManagementContext newLocalManagementContext() {
+        return newLocalManagementContext(BrooklynProperties.Factory.newDefault());
+    }
+
+    static LocalManagementContext newLocalManagementContext(BrooklynProperties properties) {
+        return new LocalManagementContext(properties, new DataGridFactory() {
+            @Override
+            public DataGrid newDataGrid(ManagementContextInternal managementContext) {
+                return new HazelcastDataGrid(managementContext, newLocalConfig());
+            }
+        });
+    }
+
+    static Config newLocalConfig() {
+        Config config = new Config();
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        return config;
+    }
 }
@@ -0,0 +1,45 @@
+package brooklyn.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.TearDown;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
+
+/**
+ * Common state for benchmarks which need a management context with an application.
+ * Sub-classes call {@link #setUpApp()} from their own {@code @Setup} method.
+ */
+public abstract class AbstractEntityBenchmark {
+
+    protected LocalManagementContext managementContext;
+    protected TestApplication app;
+
+    protected void setUpApp() {
+        managementContext = new LocalManagementContext(BrooklynProperties.Factory.newEmpty());
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, managementContext);
+    }
+
+    /**
+     * Creates and manages a child of the app, returning the entity itself rather than its proxy,
+     * so that calls on it measure the entity rather than the proxy.
+     */
+    protected TestEntityImpl newRealEntity() {
+        TestEntityImpl result = new TestEntityImpl(app);
+        TestEntity proxy = managementContext.getEntityFactory().createEntityProxy(EntitySpec.create(TestEntity.class), result);
+        result.setProxy(proxy);
+        Entities.manage(result);
+        return result;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownApp() {
+        if (managementContext != null) Entities.destroyAll(managementContext);
+    }
+}
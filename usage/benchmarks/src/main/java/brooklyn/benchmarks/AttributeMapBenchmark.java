@@ -0,0 +1,51 @@
+package brooklyn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import brooklyn.event.basic.AttributeMap;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
+
+/**
+ * Setting and getting an attribute of an entity (with no subscribers), i.e. {@link AttributeMap#update(brooklyn.event.AttributeSensor, Object)}
+ * with publishing of the change, and {@link AttributeMap#getValue(brooklyn.event.AttributeSensor)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AttributeMapBenchmark extends AbstractEntityBenchmark {
+
+    private TestEntityImpl entity;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        setUpApp();
+        entity = newRealEntity();
+        entity.setAttribute(TestEntity.NAME, "myname");
+    }
+
+    @Benchmark
+    public Object updateChangedValue() {
+        return entity.setAttribute(TestEntity.SEQUENCE, counter++);
+    }
+
+    @Benchmark
+    public Object updateUnchangedValue() {
+        return entity.setAttribute(TestEntity.NAME, "myname");
+    }
+
+    @Benchmark
+    public Object getValue() {
+        return entity.getAttribute(TestEntity.NAME);
+    }
+}
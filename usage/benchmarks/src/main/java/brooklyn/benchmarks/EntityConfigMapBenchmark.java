@@ -0,0 +1,59 @@
+package brooklyn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import brooklyn.entity.basic.EntityConfigMap;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
+import brooklyn.util.collections.MutableMap;
+
+/**
+ * Looking up config with {@link EntityConfigMap#getConfig(brooklyn.config.ConfigKey)}: a value set on the entity,
+ * a value inherited from the parent, a default list value, and a map value (neither of which is cached).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EntityConfigMapBenchmark extends AbstractEntityBenchmark {
+
+    private EntityConfigMap configMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        setUpApp();
+        app.setConfig(TestEntity.CONF_OBJECT, "inherited");
+        TestEntityImpl entity = newRealEntity();
+        entity.setConfig(TestEntity.CONF_NAME, "myname");
+        entity.setConfig(TestEntity.CONF_MAP_PLAIN, MutableMap.of("key1", "val1", "key2", 2));
+        configMap = entity.getConfigMap();
+    }
+
+    @Benchmark
+    public Object getLocalValue() {
+        return configMap.getConfig(TestEntity.CONF_NAME);
+    }
+
+    @Benchmark
+    public Object getInheritedValue() {
+        return configMap.getConfig(TestEntity.CONF_OBJECT);
+    }
+
+    @Benchmark
+    public Object getDefaultValue() {
+        return configMap.getConfig(TestEntity.CONF_LIST_PLAIN);
+    }
+
+    @Benchmark
+    public Object getMapValue() {
+        return configMap.getConfig(TestEntity.CONF_MAP_PLAIN);
+    }
+}
@@ -0,0 +1,48 @@
+package brooklyn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import brooklyn.entity.basic.BasicEntity;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.proxying.InternalEntityFactory;
+import brooklyn.test.entity.TestEntity;
+
+/**
+ * Creating (but not managing) entities from an {@link EntitySpec} with {@link InternalEntityFactory#createEntity(EntitySpec)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EntityCreationBenchmark extends AbstractEntityBenchmark {
+
+    private InternalEntityFactory entityFactory;
+    private EntitySpec<BasicEntity> basicEntitySpec;
+    private EntitySpec<TestEntity> testEntitySpec;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        setUpApp();
+        entityFactory = managementContext.getEntityFactory();
+        basicEntitySpec = EntitySpec.create(BasicEntity.class);
+        testEntitySpec = EntitySpec.create(TestEntity.class).configure(TestEntity.CONF_NAME, "myname");
+    }
+
+    @Benchmark
+    public Object createBasicEntity() {
+        return entityFactory.createEntity(basicEntitySpec);
+    }
+
+    @Benchmark
+    public Object createConfiguredTestEntity() {
+        return entityFactory.createEntity(testEntitySpec);
+    }
+}
@@ -0,0 +1,86 @@
+package brooklyn.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.SingleThreadedScheduler;
+
+/**
+ * Running trivial jobs with {@link BasicExecutionManager}: as tasks, directly or through a
+ * {@link SingleThreadedScheduler}, and as transient jobs (which create no task).
+ * <p>
+ * As there is no garbage collector here, tasks are deleted when done, so the cost of that is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ExecutionManagerBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final String SINGLE_THREADED_TAG = "single-threaded";
+
+    private BasicExecutionManager executionManager;
+
+    private final Runnable job = new Runnable() {
+        @Override public void run() {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executionManager = new BasicExecutionManager("benchmark");
+        executionManager.setTaskSchedulerForTag(SINGLE_THREADED_TAG, SingleThreadedScheduler.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (executionManager != null) executionManager.shutdownNow();
+    }
+
+    @Benchmark
+    public Object submitAndGet() throws Exception {
+        Task<?> task = executionManager.submit(job);
+        Object result = task.get();
+        executionManager.deleteTask(task);
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void submitToSingleThreadedScheduler() throws Exception {
+        Task<?>[] tasks = new Task<?>[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            tasks[i] = executionManager.submit(MutableMap.of("tag", SINGLE_THREADED_TAG), job);
+        }
+        // tasks run in order, so when the last is done all are
+        tasks[BATCH_SIZE-1].get();
+        for (Task<?> task : tasks) {
+            executionManager.deleteTask(task);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void executeTransientWithSingleThreadedScheduler() throws Exception {
+        Future<?> last = null;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            last = executionManager.executeTransient(Collections.singleton(SINGLE_THREADED_TAG), job);
+        }
+        last.get();
+    }
+}
@@ -0,0 +1,75 @@
+package brooklyn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicSensorEvent;
+import brooklyn.management.internal.LocalSubscriptionManager;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+
+/**
+ * Publishing a sensor event with {@link LocalSubscriptionManager#publish(SensorEvent)}, to a number of subscribers
+ * (each with its own subscriber, so delivered in parallel).
+ * <p>
+ * Each invocation publishes a batch of events and waits for all to be delivered, so this is the throughput of
+ * publishing and delivery, without an unbounded backlog of undelivered events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SubscriptionPublishBenchmark extends AbstractEntityBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"1", "10", "100"})
+    public int numSubscribers;
+
+    private TestEntity producer;
+    private LocalSubscriptionManager subscriptionManager;
+    private final AtomicLong delivered = new AtomicLong();
+    private long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        setUpApp();
+        producer = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        subscriptionManager = (LocalSubscriptionManager) managementContext.getSubscriptionManager();
+        SensorEventListener<Integer> listener = new SensorEventListener<Integer>() {
+            @Override
+            public void onEvent(SensorEvent<Integer> event) {
+                delivered.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < numSubscribers; i++) {
+            subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", "subscriber"+i), producer, TestEntity.SEQUENCE, listener);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void publish() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, producer, i));
+        }
+        published += BATCH_SIZE;
+        long expected = published * numSubscribers;
+        while (delivered.get() < expected) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package brooklyn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import brooklyn.enricher.RollingTimeWindowMeanEnricher;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.BasicSensorEvent;
+import brooklyn.event.basic.Sensors;
+import brooklyn.test.entity.TestEntityImpl;
+import brooklyn.util.collections.TimeWindowedList;
+import brooklyn.util.collections.TimeWindowedStats;
+import brooklyn.util.time.Duration;
+
+/**
+ * Time-windowed statistics of a sensor receiving 1000 events per second (of simulated time, each operation
+ * advancing the clock by 1ms), so the window holds 1000 values per second of its length:
+ * {@link RollingTimeWindowMeanEnricher#onEvent(brooklyn.event.SensorEvent, long)} (including publishing the mean),
+ * and adding to and querying {@link TimeWindowedStats} (as done by the enricher and by the auto-scaler's
+ * size history), and, for comparison, adding to and getting the window of a {@link TimeWindowedList}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TimeWindowedStatsBenchmark extends AbstractEntityBenchmark {
+
+    private static final AttributeSensor<Double> SOURCE = Sensors.newDoubleSensor("benchmark.source", "Source");
+    private static final AttributeSensor<Double> MEAN = Sensors.newDoubleSensor("benchmark.mean", "Rolling mean of source");
+
+    @Param({"10", "60"})
+    public int windowSeconds;
+
+    private TestEntityImpl entity;
+    private RollingTimeWindowMeanEnricher<Double> enricher;
+    private TimeWindowedStats stats;
+    private TimeWindowedList<Double> list;
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        setUpApp();
+        entity = newRealEntity();
+        Duration window = Duration.seconds(windowSeconds);
+        enricher = new RollingTimeWindowMeanEnricher<Double>(entity, SOURCE, MEAN, window);
+        entity.addEnricher(enricher);
+        stats = new TimeWindowedStats(window);
+        list = new TimeWindowedList<Double>(window);
+
+        // fill the windows, so that each operation also discards the oldest value
+        for (time = 0; time < window.toMilliseconds(); time++) {
+            enricher.onEvent(new BasicSensorEvent<Double>(SOURCE, entity, valueAt(time), time), time);
+            stats.add(valueAt(time), time);
+            list.add(valueAt(time), time);
+        }
+    }
+
+    private static double valueAt(long time) {
+        return time % 100;
+    }
+
+    @Benchmark
+    public Object enricherOnEvent() {
+        long now = time++;
+        enricher.onEvent(new BasicSensorEvent<Double>(SOURCE, entity, valueAt(now), now), now);
+        return entity.getAttribute(MEAN);
+    }
+
+    @Benchmark
+    public double statsAddAndTimeWeightedMean() {
+        long now = time++;
+        stats.add(valueAt(now), now);
+        return stats.getTimeWeightedMean(now - windowSeconds * 1000L);
+    }
+
+    @Benchmark
+    public double statsAddAndMinMax() {
+        long now = time++;
+        stats.add(valueAt(now), now);
+        long since = now - windowSeconds * 1000L / 2;
+        return stats.getMax(since) - stats.getMin(since);
+    }
+
+    @Benchmark
+    public Object listAddAndGetValuesInWindow() {
+        long now = time++;
+        list.add(valueAt(now), now);
+        return list.getValuesInWindow(now, Duration.seconds(windowSeconds / 2));
+    }
+}
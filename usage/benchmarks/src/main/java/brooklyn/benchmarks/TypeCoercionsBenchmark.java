@@ -0,0 +1,60 @@
+package brooklyn.benchmarks;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import brooklyn.entity.basic.Lifecycle;
+import brooklyn.util.flags.TypeCoercions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * {@link TypeCoercions#coerce(Object, Class)} for common pairs of value and target types,
+ * as done when reading config and setting fields from flags.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TypeCoercionsBenchmark {
+
+    private final List<String> list = ImmutableList.of("a", "b", "c");
+
+    @Benchmark
+    public Object alreadyOfType() {
+        return TypeCoercions.coerce("1234", String.class);
+    }
+
+    @Benchmark
+    public Object stringToInteger() {
+        return TypeCoercions.coerce("1234", Integer.class);
+    }
+
+    @Benchmark
+    public Object integerToLong() {
+        return TypeCoercions.coerce(1234, Long.class);
+    }
+
+    @Benchmark
+    public Object stringToDuration() {
+        return TypeCoercions.coerce("30s", Duration.class);
+    }
+
+    @Benchmark
+    public Object stringToEnum() {
+        return TypeCoercions.coerce("running", Lifecycle.class);
+    }
+
+    @Benchmark
+    public Object listToSet() {
+        return TypeCoercions.coerce(list, Set.class);
+    }
+}
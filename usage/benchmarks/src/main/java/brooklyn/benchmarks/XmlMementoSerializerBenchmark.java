@@ -0,0 +1,96 @@
+package brooklyn.benchmarks;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.rebind.persister.XmlMementoSerializer;
+import brooklyn.location.Location;
+import brooklyn.management.ManagementContext;
+import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.policy.Enricher;
+import brooklyn.policy.Policy;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Serializing and deserializing the memento of a configured entity (with attributes) with {@link XmlMementoSerializer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class XmlMementoSerializerBenchmark extends AbstractEntityBenchmark {
+
+    private XmlMementoSerializer<Object> serializer;
+    private EntityMemento memento;
+    private String serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        setUpApp();
+        TestEntityImpl entity = newRealEntity();
+        entity.setConfig(TestEntity.CONF_NAME, "myname");
+        entity.setConfig(TestEntity.CONF_MAP_PLAIN, MutableMap.of("key1", "val1", "key2", 2));
+        entity.setConfig(TestEntity.CONF_LIST_PLAIN, ImmutableList.of("a", "b"));
+        entity.setAttribute(TestEntity.SEQUENCE, 123);
+        entity.setAttribute(TestEntity.NAME, "myname");
+        entity.setAttribute(TestEntity.SERVICE_UP, true);
+        memento = entity.getRebindSupport().getMemento();
+
+        serializer = new XmlMementoSerializer<Object>(getClass().getClassLoader());
+        serializer.setLookupContext(new FailingLookupContext(managementContext));
+        serialized = serializer.toString(memento);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return serializer.toString(memento);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.fromString(serialized);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        return serializer.fromString(serializer.toString(memento));
+    }
+
+    /** the memento only refers to other entities etc by id, so nothing should need to be looked up */
+    private static class FailingLookupContext implements LookupContext {
+        private final ManagementContext mgmt;
+
+        FailingLookupContext(ManagementContext mgmt) {
+            this.mgmt = mgmt;
+        }
+        @Override public ManagementContext lookupManagementContext() {
+            return mgmt;
+        }
+        @Override public Entity lookupEntity(String id) {
+            throw new NoSuchElementException("no entity with id "+id);
+        }
+        @Override public Location lookupLocation(String id) {
+            throw new NoSuchElementException("no location with id "+id);
+        }
+        @Override public Policy lookupPolicy(String id) {
+            throw new NoSuchElementException("no policy with id "+id);
+        }
+        @Override public Enricher lookupEnricher(String id) {
+            throw new NoSuchElementException("no enricher with id "+id);
+        }
+    }
+}
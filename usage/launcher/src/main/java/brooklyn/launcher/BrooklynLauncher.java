@@ -540,7 +540,9 @@ public class BrooklynLauncher {
             RebindManager rebindManager = managementContext.getRebindManager();
 
             BrooklynMementoPersisterToObjectStore persister = new BrooklynMementoPersisterToObjectStore(objectStore,
-                    managementContext.getCatalog().getRootClassLoader());
+                    managementContext.getCatalog().getRootClassLoader(),
+                    managementContext.getConfig().getConfig(BrooklynServerConfig.PERSISTENCE_LOAD_THREADS),
+                    managementContext.getConfig().getConfig(BrooklynServerConfig.PERSISTENCE_FORMAT));
             ((RebindManagerImpl) rebindManager).setPeriodicPersistPeriod(persistPeriod);
             rebindManager.setPersister(persister);
         }
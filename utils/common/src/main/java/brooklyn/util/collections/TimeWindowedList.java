@@ -1,12 +1,14 @@
 package brooklyn.util.collections;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import brooklyn.util.time.Duration;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
 /**
  * Keeps a list of timestamped values that are in the given time-period (millis).
@@ -14,11 +16,12 @@ import com.google.common.collect.ImmutableList;
  * and to keep the given number of out-of-date values.
  * 
  * For example, this is useful if we want to determine if a metric has been consistently high.
+ * For summary statistics of numeric values (e.g. their mean or maximum), see {@link TimeWindowedStats}.
  * 
  * @author aled
  */
 public class TimeWindowedList<T> {
-    private final LinkedList<TimestampedValue<T>> values = new LinkedList<TimestampedValue<T>>();
+    private final ArrayDeque<TimestampedValue<T>> values = new ArrayDeque<TimestampedValue<T>>();
     private volatile Duration timePeriod;
     private final int minVals;
     private final int minExpiredVals;
@@ -57,7 +60,7 @@ public class TimeWindowedList<T> {
     }
     
     public synchronized T getLatestValue() {
-        return (values.isEmpty()) ? null : values.get(values.size()-1).getValue();
+        return (values.isEmpty()) ? null : values.peekLast().getValue();
     }
     
     public List<TimestampedValue<T>> getValues() {
@@ -71,7 +74,7 @@ public class TimeWindowedList<T> {
     
     public synchronized List<TimestampedValue<T>> getValuesInWindow(long now, Duration subTimePeriod) {
         long startTime = now - subTimePeriod.toMilliseconds();
-        List<TimestampedValue<T>> result = new LinkedList<TimestampedValue<T>>();
+        List<TimestampedValue<T>> result = new ArrayList<TimestampedValue<T>>();
         TimestampedValue<T> mostRecentExpired = null;
         for (TimestampedValue<T> val : values) {
             if (val.getTimestamp() < startTime) {
@@ -87,7 +90,7 @@ public class TimeWindowedList<T> {
         
         if (result.size() < minVals) {
             int minIndex = Math.max(0, values.size()-minVals);
-            return ImmutableList.copyOf(values.subList(minIndex, values.size()));
+            return ImmutableList.copyOf(Iterables.skip(values, minIndex));
         } else {
             return result;
         }
@@ -98,7 +101,7 @@ public class TimeWindowedList<T> {
     }
     
     public synchronized void add(T val, long timestamp) {
-        values.add(values.size(), new TimestampedValue<T>(val, timestamp));
+        values.addLast(new TimestampedValue<T>(val, timestamp));
         pruneValues(timestamp);
     }
     
@@ -0,0 +1,305 @@
+package brooklyn.util.collections;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import brooklyn.util.time.Duration;
+
+/**
+ * Keeps the numeric values (with their timestamps) in the given time-period, in primitive ring buffers,
+ * and maintains statistics of them incrementally: their sum, time-weighted mean, minimum and maximum.
+ * <p>
+ * Like {@link TimeWindowedList} (with {@code minExpiredVals} of 1), values older than the time-period are
+ * discarded, except for the most recent of them: that is the value in effect at the start of the window.
+ * <p>
+ * Adding a value takes amortized constant time, as does getting the time-weighted mean over the window.
+ * Getting the minimum or maximum since a given time takes logarithmic time. Nothing is allocated other than
+ * when a buffer grows, so this is suitable for high-frequency sensors (e.g. thousands of events per second).
+ * <p>
+ * Timestamps are expected to be non-decreasing; a value with an earlier timestamp than the latest is
+ * treated as having the latest timestamp.
+ * <p>
+ * This class is thread-safe.
+ */
+public class TimeWindowedStats {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile Duration timePeriod;
+
+    // the values, as a ring buffer; the value with sequence number seq is at index (seq & mask)
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private long headSeq;
+    private long tailSeq;
+
+    // sequence numbers of the candidates for the maximum (or minimum) of any suffix of the values,
+    // with values strictly decreasing (or increasing)
+    private final SeqDeque maxCandidates = new SeqDeque();
+    private final SeqDeque minCandidates = new SeqDeque();
+
+    // the sum of the values, and of each value multiplied by the time since its predecessor;
+    // recomputed periodically, so that rounding errors from subtracting removed values do not accumulate
+    private double sum;
+    private double weightedSum;
+    private int removalsSinceRecompute;
+
+    public TimeWindowedStats(Duration timePeriod) {
+        this.timePeriod = checkNotNull(timePeriod, "timePeriod");
+    }
+
+    public void setTimePeriod(Duration newTimePeriod) {
+        timePeriod = checkNotNull(newTimePeriod, "timePeriod");
+    }
+
+    public Duration getTimePeriod() {
+        return timePeriod;
+    }
+
+    public void add(double val) {
+        add(val, System.currentTimeMillis());
+    }
+
+    public synchronized void add(double val, long timestamp) {
+        if (tailSeq > headSeq) {
+            long latestTimestamp = timestampAt(tailSeq - 1);
+            if (timestamp < latestTimestamp) timestamp = latestTimestamp;
+            weightedSum += val * (timestamp - latestTimestamp);
+        }
+        if (tailSeq - headSeq > mask) grow();
+        int index = (int) (tailSeq & mask);
+        timestamps[index] = timestamp;
+        values[index] = val;
+        sum += val;
+
+        while (!maxCandidates.isEmpty() && valueAt(maxCandidates.peekLast()) <= val) {
+            maxCandidates.removeLast();
+        }
+        maxCandidates.addLast(tailSeq);
+        while (!minCandidates.isEmpty() && valueAt(minCandidates.peekLast()) >= val) {
+            minCandidates.removeLast();
+        }
+        minCandidates.addLast(tailSeq);
+        tailSeq++;
+
+        pruneValues(timestamp);
+    }
+
+    /**
+     * Discards the values older than the time-period before the given time, other than the most recent of them.
+     */
+    public synchronized void pruneValues(long now) {
+        long startTime = now - timePeriod.toMilliseconds();
+        while (tailSeq - headSeq > 1 && timestampAt(headSeq + 1) < startTime) {
+            removeFirst();
+        }
+    }
+
+    public synchronized int size() {
+        return (int) (tailSeq - headSeq);
+    }
+
+    public synchronized boolean isEmpty() {
+        return tailSeq == headSeq;
+    }
+
+    /** @return the most recent value, or NaN if there are none */
+    public synchronized double getLatestValue() {
+        return isEmpty() ? Double.NaN : valueAt(tailSeq - 1);
+    }
+
+    /** @return the timestamp of the most recent value, or -1 if there are none */
+    public synchronized long getLatestTimestamp() {
+        return isEmpty() ? -1 : timestampAt(tailSeq - 1);
+    }
+
+    /** @return the timestamp of the oldest value kept, or -1 if there are none */
+    public synchronized long getEarliestTimestamp() {
+        return isEmpty() ? -1 : timestampAt(headSeq);
+    }
+
+    /** @return the sum of the values kept */
+    public synchronized double getSum() {
+        return sum;
+    }
+
+    /**
+     * The time-weighted mean of the values between the given time and the most recent value, where each value
+     * is taken to hold for the time since the value before it (i.e. values are not extrapolated beyond the
+     * most recent one). Values before the given time are ignored, other than to give the start of the period
+     * held by the first value after it.
+     * <p>
+     * This takes constant time if at most one value kept is older than the given time (e.g. if it is the
+     * start of the time-period of the values pruned); otherwise it is proportional to the number of such values.
+     *
+     * @return the mean, or NaN if there are no values after the given time
+     */
+    public synchronized double getTimeWeightedMean(long since) {
+        if (isEmpty() || getLatestTimestamp() <= since) return Double.NaN;
+
+        // the values before the first one at or after since only count for the time from since
+        double weightedSumBefore = 0;
+        long seq = headSeq;
+        while (timestampAt(seq) < since) {
+            seq++;
+            weightedSumBefore += valueAt(seq) * (timestampAt(seq) - timestampAt(seq - 1));
+        }
+        double weightedSumSince = (weightedSum - weightedSumBefore) + valueAt(seq) * (timestampAt(seq) - since);
+        return weightedSumSince / (getLatestTimestamp() - since);
+    }
+
+    /**
+     * Whether there is a value known for all the time since the given time: i.e. whether the oldest value kept
+     * is no later than it.
+     */
+    public synchronized boolean covers(long since) {
+        return !isEmpty() && timestampAt(headSeq) <= since;
+    }
+
+    /**
+     * The maximum of the values in effect since the given time: the values after it, and the most recent
+     * value before it (if any are kept).
+     *
+     * @return the maximum, or NaN if there are no values
+     */
+    public synchronized double getMax(long since) {
+        if (isEmpty()) return Double.NaN;
+        return valueAt(maxCandidates.firstAtOrAfter(seqInEffectAt(since)));
+    }
+
+    /**
+     * The minimum of the values in effect since the given time: the values after it, and the most recent
+     * value before it (if any are kept).
+     *
+     * @return the minimum, or NaN if there are no values
+     */
+    public synchronized double getMin(long since) {
+        if (isEmpty()) return Double.NaN;
+        return valueAt(minCandidates.firstAtOrAfter(seqInEffectAt(since)));
+    }
+
+    /** the sequence number of the most recent value before the given time, or of the oldest value if none */
+    private long seqInEffectAt(long since) {
+        // binary search for the first value at or after since
+        long low = headSeq;
+        long high = tailSeq;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (timestampAt(mid) < since) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Math.max(headSeq, low - 1);
+    }
+
+    private void removeFirst() {
+        double val = valueAt(headSeq);
+        sum -= val;
+        weightedSum -= valueAt(headSeq + 1) * (timestampAt(headSeq + 1) - timestampAt(headSeq));
+        if (maxCandidates.peekFirst() == headSeq) maxCandidates.removeFirst();
+        if (minCandidates.peekFirst() == headSeq) minCandidates.removeFirst();
+        headSeq++;
+
+        if (++removalsSinceRecompute > mask) recomputeSums();
+    }
+
+    private void recomputeSums() {
+        double newSum = 0;
+        double newWeightedSum = 0;
+        for (long seq = headSeq; seq < tailSeq; seq++) {
+            newSum += valueAt(seq);
+            if (seq > headSeq) newWeightedSum += valueAt(seq) * (timestampAt(seq) - timestampAt(seq - 1));
+        }
+        sum = newSum;
+        weightedSum = newWeightedSum;
+        removalsSinceRecompute = 0;
+    }
+
+    private void grow() {
+        int capacity = values.length * 2;
+        long[] newTimestamps = new long[capacity];
+        double[] newValues = new double[capacity];
+        for (long seq = headSeq; seq < tailSeq; seq++) {
+            newTimestamps[(int) (seq & (capacity - 1))] = timestampAt(seq);
+            newValues[(int) (seq & (capacity - 1))] = valueAt(seq);
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        mask = capacity - 1;
+    }
+
+    private long timestampAt(long seq) {
+        return timestamps[(int) (seq & mask)];
+    }
+
+    private double valueAt(long seq) {
+        return values[(int) (seq & mask)];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "timePeriod="+timePeriod+", size="+size()+", sum="+sum+", latest="+getLatestValue();
+    }
+
+    /** A double-ended queue of increasing sequence numbers, as a ring buffer of primitives. */
+    private static class SeqDeque {
+        private long[] seqs = new long[INITIAL_CAPACITY];
+        private int head;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peekFirst() {
+            return seqs[head];
+        }
+
+        long peekLast() {
+            return get(size - 1);
+        }
+
+        void removeFirst() {
+            head = (head + 1) & (seqs.length - 1);
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void addLast(long seq) {
+            if (size == seqs.length) {
+                long[] newSeqs = new long[seqs.length * 2];
+                for (int i = 0; i < size; i++) {
+                    newSeqs[i] = get(i);
+                }
+                seqs = newSeqs;
+                head = 0;
+            }
+            seqs[(head + size) & (seqs.length - 1)] = seq;
+            size++;
+        }
+
+        /** the first sequence number at or after the given one (which must be no later than the last) */
+        long firstAtOrAfter(long seq) {
+            int low = 0;
+            int high = size - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid) < seq) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return get(low);
+        }
+
+        private long get(int i) {
+            return seqs[(head + i) & (seqs.length - 1)];
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package brooklyn.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.Lists;
+
+public class TimeWindowedStatsTest {
+
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void testEmpty() {
+        TimeWindowedStats stats = new TimeWindowedStats(Duration.ONE_SECOND);
+        assertTrue(stats.isEmpty());
+        assertEquals(stats.getLatestTimestamp(), -1);
+        assertTrue(Double.isNaN(stats.getLatestValue()));
+        assertTrue(Double.isNaN(stats.getMax(0)));
+        assertTrue(Double.isNaN(stats.getTimeWeightedMean(0)));
+        assertFalse(stats.covers(0));
+    }
+
+    @Test
+    public void testKeepsMostRecentExpiredValue() {
+        TimeWindowedStats stats = new TimeWindowedStats(Duration.millis(1000));
+        stats.add(1, 0);
+        stats.add(2, 100);
+        stats.add(3, 1500);
+
+        // the value at 100 was in effect at the start of the window, so is kept
+        assertEquals(stats.size(), 2);
+        assertEquals(stats.getEarliestTimestamp(), 100);
+        assertEquals(stats.getSum(), 5d);
+
+        stats.pruneValues(5000);
+        assertEquals(stats.size(), 1);
+        assertEquals(stats.getLatestValue(), 3d);
+    }
+
+    @Test
+    public void testTimeWeightedMean() {
+        TimeWindowedStats stats = new TimeWindowedStats(Duration.millis(1000));
+        stats.add(10, 1000);
+        stats.add(20, 1100);
+        stats.add(30, 1300);
+        stats.add(40, 1600);
+        stats.add(50, 2000);
+
+        // each value holds for the time since the one before
+        assertEquals(stats.getTimeWeightedMean(1000), (20*0.1d)+(30*0.2d)+(40*0.3d)+(50*0.4d), DELTA);
+        assertEquals(stats.getTimeWeightedMean(1200), (30*100+40*300+50*400)/800d, DELTA);
+        assertTrue(Double.isNaN(stats.getTimeWeightedMean(2000)));
+    }
+
+    @Test
+    public void testMinAndMaxIncludeValueInEffectAtStart() {
+        TimeWindowedStats stats = new TimeWindowedStats(Duration.millis(1000));
+        stats.add(5, 0);
+        stats.add(9, 100);
+        stats.add(2, 200);
+        stats.add(4, 300);
+
+        assertEquals(stats.getMax(250), 4d);
+        assertEquals(stats.getMin(250), 2d);
+        assertEquals(stats.getMax(150), 9d);
+        assertEquals(stats.getMin(50), 2d);
+        assertEquals(stats.getMax(1000), 4d);
+        assertTrue(stats.covers(0));
+        assertFalse(stats.covers(-1));
+    }
+
+    @Test
+    public void testOutOfOrderValueTreatedAsLatest() {
+        TimeWindowedStats stats = new TimeWindowedStats(Duration.millis(1000));
+        stats.add(1, 100);
+        stats.add(2, 50);
+
+        assertEquals(stats.getLatestTimestamp(), 100);
+        assertEquals(stats.getLatestValue(), 2d);
+        assertEquals(stats.getMax(100), 2d);
+    }
+
+    @Test
+    public void testMatchesRecomputedStatisticsOverManyValues() {
+        Random random = new Random(1234);
+        long period = 500;
+        TimeWindowedStats stats = new TimeWindowedStats(Duration.millis(period));
+        List<Long> timestamps = Lists.newArrayList();
+        List<Double> values = Lists.newArrayList();
+
+        long now = 0;
+        for (int i = 0; i < 20000; i++) {
+            now += random.nextInt(5);
+            double val = random.nextInt(1000) / 10d;
+            stats.add(val, now);
+            timestamps.add(now);
+            values.add(val);
+
+            if (i % 97 == 0) {
+                long since = now - random.nextInt((int) period);
+                assertEquals(stats.getMax(since), expectedMax(timestamps, values, since), "i="+i);
+                assertEquals(stats.getMin(since), -expectedMax(timestamps, negate(values), since), "i="+i);
+                assertEquals(stats.getTimeWeightedMean(now - period), expectedMean(timestamps, values, now - period), DELTA, "i="+i);
+            }
+        }
+    }
+
+    private static double expectedMax(List<Long> timestamps, List<Double> values, long since) {
+        int first = 0;
+        for (int i = 0; i < timestamps.size(); i++) {
+            if (timestamps.get(i) < since) first = i;
+        }
+        double result = Double.NEGATIVE_INFINITY;
+        for (int i = first; i < values.size(); i++) {
+            result = Math.max(result, values.get(i));
+        }
+        return result;
+    }
+
+    private static double expectedMean(List<Long> timestamps, List<Double> values, long since) {
+        long start = since;
+        double total = 0;
+        for (int i = 0; i < values.size(); i++) {
+            if (timestamps.get(i) >= start) {
+                total += (timestamps.get(i) - start) * values.get(i);
+                start = timestamps.get(i);
+            }
+        }
+        return total / (timestamps.get(timestamps.size()-1) - since);
+    }
+
+    private static List<Double> negate(List<Double> values) {
+        List<Double> result = Lists.newArrayList();
+        for (Double val : values) {
+            result.add(-val);
+        }
+        return result;
+    }
+}